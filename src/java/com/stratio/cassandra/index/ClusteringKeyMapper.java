@@ -22,6 +22,7 @@ import com.stratio.cassandra.index.util.ByteBufferUtils;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.db.ArrayBackedSortedColumns;
+import org.apache.cassandra.db.BufferCell;
 import org.apache.cassandra.db.Cell;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.Row;
@@ -33,13 +34,15 @@ import org.apache.cassandra.db.filter.ColumnSlice;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.CompositeType;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.util.BytesRef;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
 
@@ -99,9 +102,9 @@ public abstract class ClusteringKeyMapper
 
     public final void addFields(Document document, CellName cellName)
     {
-        String serializedKey = ByteBufferUtils.toString(cellName.toByteBuffer());
-        Field field = new StringField(FIELD_NAME, serializedKey, Field.Store.YES);
-        document.add(field);
+        BytesRef bytesRef = ByteBufferUtils.bytesRef(cellName.toByteBuffer());
+        document.add(new KeyField(FIELD_NAME, bytesRef));
+        document.add(new BinaryDocValuesField(FIELD_NAME, bytesRef));
     }
 
     public final CellName clusteringKey(ColumnFamily columnFamily)
@@ -210,11 +213,20 @@ public abstract class ClusteringKeyMapper
         return clusteringKey(row.cf);
     }
 
-    public final CellName clusteringKey(Document document)
+    /**
+     * Returns the clustering key of the specified document, read from the clustering key doc values.
+     *
+     * @param reader The {@link AtomicReader} containing the document.
+     * @param docId  The document id, relative to {@code reader}.
+     * @return The clustering key of the specified document.
+     * @throws IOException If there are I/O errors reading the doc values.
+     */
+    public final CellName clusteringKey(AtomicReader reader, int docId) throws IOException
     {
-        String string = document.get(FIELD_NAME);
-        ByteBuffer bb = ByteBufferUtils.fromString(string);
-        return cellNameType.cellFromByteBuffer(bb);
+        BinaryDocValues docValues = reader.getBinaryDocValues(FIELD_NAME);
+        BytesRef bytesRef = new BytesRef();
+        docValues.get(docId, bytesRef);
+        return clusteringKey(bytesRef);
     }
 
     /**
@@ -225,8 +237,7 @@ public abstract class ClusteringKeyMapper
      */
     public final CellName clusteringKey(BytesRef bytesRef)
     {
-        String string = bytesRef.utf8ToString();
-        ByteBuffer bb = ByteBufferUtils.fromString(string);
+        ByteBuffer bb = ByteBufferUtils.byteBuffer(bytesRef);
         return cellNameType.cellFromByteBuffer(bb);
     }
 
@@ -284,11 +295,17 @@ public abstract class ClusteringKeyMapper
     public final Map<CellName, ColumnFamily> splitRows(ColumnFamily columnFamily)
     {
         Map<CellName, ColumnFamily> columnFamilies = new LinkedHashMap<>();
+        List<Cell> staticCells = new ArrayList<>();
         ColumnFamily rowColumnFamily = null;
         CellName clusteringKey = null;
         for (Cell cell : columnFamily)
         {
             CellName cellName = cell.name();
+            if (isStatic(cellName))
+            {
+                staticCells.add(cell);
+                continue;
+            }
             if (isClusteringKey(cellName))
             {
                 if (rowColumnFamily != null)
@@ -298,15 +315,78 @@ public abstract class ClusteringKeyMapper
                 clusteringKey = cellName;
                 rowColumnFamily = ArrayBackedSortedColumns.factory.create(metadata);
             }
-            rowColumnFamily.addColumn(cell);
+            if (rowColumnFamily != null)
+            {
+                rowColumnFamily.addColumn(cell);
+            }
         }
         if (rowColumnFamily != null)
         {
             columnFamilies.put(clusteringKey, rowColumnFamily);
         }
+        addStaticCells(columnFamilies, staticCells);
+        return columnFamilies;
+    }
+
+    /**
+     * Returns the logical CQL3 column families contained in the specified written {@link ColumnFamily}, grouped by
+     * clustering key. Unlike {@link #splitRows(ColumnFamily)}, the written cells don't need to contain the CQL3 row
+     * marker, which is added to each resulting column family if it is missing. The written static cells are added to
+     * each resulting column family, but they don't produce any column family by themselves.
+     *
+     * @param columnFamily A written {@link ColumnFamily}.
+     * @return The logical CQL3 column families contained in {@code columnFamily}.
+     */
+    public final Map<CellName, ColumnFamily> splitCells(ColumnFamily columnFamily)
+    {
+        Map<CellName, ColumnFamily> columnFamilies = new LinkedHashMap<>();
+        List<Cell> staticCells = new ArrayList<>();
+        for (Cell cell : columnFamily)
+        {
+            CellName cellName = cell.name();
+            if (isStatic(cellName))
+            {
+                staticCells.add(cell);
+            }
+            else
+            {
+                CellName clusteringKey = extractClusteringKey(cellName);
+                ColumnFamily rowColumnFamily = columnFamilies.get(clusteringKey);
+                if (rowColumnFamily == null)
+                {
+                    rowColumnFamily = ArrayBackedSortedColumns.factory.create(metadata);
+                    Cell marker = new BufferCell(clusteringKey, ByteBufferUtil.EMPTY_BYTE_BUFFER, cell.timestamp());
+                    rowColumnFamily.addColumn(marker);
+                    columnFamilies.put(clusteringKey, rowColumnFamily);
+                }
+                if (!isClusteringKey(cellName))
+                {
+                    rowColumnFamily.addColumn(cell);
+                }
+            }
+        }
+        addStaticCells(columnFamilies, staticCells);
         return columnFamilies;
     }
 
+    /**
+     * Adds the specified static {@link Cell}s to each of the specified logical CQL3 column families, because the
+     * static columns are shared by all the CQL3 rows of their partition.
+     *
+     * @param columnFamilies The logical CQL3 column families.
+     * @param staticCells    The static {@link Cell}s of the partition containing {@code columnFamilies}.
+     */
+    private void addStaticCells(Map<CellName, ColumnFamily> columnFamilies, List<Cell> staticCells)
+    {
+        for (Cell staticCell : staticCells)
+        {
+            for (ColumnFamily rowColumnFamily : columnFamilies.values())
+            {
+                rowColumnFamily.addColumn(staticCell);
+            }
+        }
+    }
+
     public final ColumnSlice[] columnSlices(List<CellName> clusteringKeys)
     {
         List<CellName> sortedClusteringKeys = sort(clusteringKeys);
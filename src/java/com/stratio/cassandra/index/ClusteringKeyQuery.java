@@ -62,6 +62,27 @@ class ClusteringKeyQuery extends MultiTermQuery
                                         .toString();
     }
 
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!super.equals(o)) return false;
+
+        ClusteringKeyQuery that = (ClusteringKeyQuery) o;
+
+        return (start == null ? that.start == null : start.equals(that.start)) &&
+               (stop == null ? that.stop == null : stop.equals(that.stop));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = super.hashCode();
+        result = 31 * result + (start == null ? 0 : start.hashCode());
+        result = 31 * result + (stop == null ? 0 : stop.hashCode());
+        return result;
+    }
+
     private class FullKeyDataRangeFilteredTermsEnum extends FilteredTermsEnum
     {
 
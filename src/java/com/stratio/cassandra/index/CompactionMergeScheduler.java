@@ -0,0 +1,368 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.stratio.cassandra.index.util.Log;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.compaction.CompactionInfo;
+import org.apache.cassandra.db.compaction.CompactionManager;
+import org.apache.cassandra.db.compaction.OperationType;
+import org.apache.cassandra.db.index.SecondaryIndexMerge;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeScheduler;
+import org.apache.lucene.index.MergeTrigger;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Lucene {@link MergeScheduler} running the merges of an {@link IndexWriter} as compactions in the Cassandra {@link
+ * CompactionManager}, with at most a certain number of concurrent merges. Merges compete with compactions for the
+ * compaction threads, are listed by {@code nodetool compactionstats} and can be stopped with {@code nodetool stop
+ * INDEX_MERGE}. Indexing threads are stalled while all the merge slots are taken and there are still pending merges.
+ * The merged files must be written through a {@link #throttled(Directory)} directory, so that merges are throttled by
+ * the compaction throughput and stopped as soon as possible when requested.
+ *
+ * @author Andres de la Pena <adelapena@stratio.com>
+ */
+public class CompactionMergeScheduler extends MergeScheduler
+{
+    /** The number of merged bytes between rate limiter acquisitions and stop requests checks. */
+    private static final int THROTTLE_BYTES = 64 * 1024;
+
+    /** The max time an indexing thread stalled by pending merges waits before checking them again. */
+    private static final long STALL_MILLIS = 250;
+
+    /** The merge being run by the current thread, if any. */
+    private static final ThreadLocal<LuceneMerge> currentMerge = new ThreadLocal<>();
+
+    private final CFMetaData metadata;
+    private final int maxMerges;
+
+    /** The number of merges submitted to the compaction executor and not finished yet. */
+    private int submittedMerges = 0;
+
+    /**
+     * Builds a new {@link CompactionMergeScheduler}.
+     *
+     * @param metadata  The metadata of the indexed column family, used to describe the merges as compactions.
+     * @param maxMerges The max number of concurrent merges.
+     */
+    public CompactionMergeScheduler(CFMetaData metadata, int maxMerges)
+    {
+        this.metadata = metadata;
+        this.maxMerges = maxMerges;
+    }
+
+    /**
+     * Returns a {@link Directory} wrapping the specified one, which throttles the files written by the merges of this
+     * kind of scheduler with the compaction rate limiter, and aborts them when they are requested to stop.
+     *
+     * @param directory The {@link Directory} to be wrapped.
+     * @return A {@link Directory} wrapping {@code directory}.
+     */
+    public static Directory throttled(Directory directory)
+    {
+        return new ThrottledDirectory(directory);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Pending merges are not taken here but when a compaction thread runs them, so that aborting the pending merges,
+     * for example when the index is truncated, doesn't need to wait for a compaction thread.
+     * <p/>
+     * If all the merge slots are taken and the writer still has pending merges, the calling indexing thread is stalled
+     * until a merge finishes, as {@link org.apache.lucene.index.ConcurrentMergeScheduler} does when its max merge count
+     * is reached. Otherwise indexing could go on creating segments faster than they are merged.
+     */
+    @Override
+    public synchronized void merge(IndexWriter writer, MergeTrigger trigger, boolean newMergesFound)
+    {
+        submitMerges(writer);
+        while (submittedMerges >= maxMerges && writer.hasPendingMerges())
+        {
+            Log.debug("Stalling indexing thread until an index merge finishes");
+            try
+            {
+                // Waking up periodically to check if the pending merges have been aborted
+                wait(STALL_MILLIS);
+            }
+            catch (InterruptedException e)
+            {
+                throw new ThreadInterruptedException(e);
+            }
+        }
+    }
+
+    /**
+     * Submits pending merges of the specified writer to the compaction executor while there are free merge slots.
+     *
+     * @param writer The {@link IndexWriter} whose pending merges are to be submitted.
+     */
+    private synchronized void submitMerges(IndexWriter writer)
+    {
+        while (submittedMerges < maxMerges && writer.hasPendingMerges())
+        {
+            try
+            {
+                submit(new LuceneMerge(writer));
+                submittedMerges++;
+            }
+            catch (RejectedExecutionException e)
+            {
+                Log.warn("Index merge rejected by the compaction executor: %s", e.getMessage());
+                break;
+            }
+        }
+    }
+
+    /**
+     * Submits the specified merge to the compaction executor.
+     *
+     * @param merge The merge to be submitted.
+     */
+    void submit(SecondaryIndexMerge merge)
+    {
+        CompactionManager.instance.submitIndexMerge(merge);
+    }
+
+    /**
+     * Called when a submitted merge finishes, submitting the remaining pending merges of the specified writer and waking
+     * up the stalled indexing threads. It runs in a compaction thread, so it never stalls.
+     *
+     * @param writer The {@link IndexWriter} of the finished merge.
+     */
+    private synchronized void mergeFinished(IndexWriter writer)
+    {
+        submittedMerges--;
+        submitMerges(writer);
+        notifyAll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close()
+    {
+        // Running merges are waited by the writer
+    }
+
+    /**
+     * {@link SecondaryIndexMerge} running a single Lucene merge of an {@link IndexWriter}.
+     */
+    private class LuceneMerge extends SecondaryIndexMerge
+    {
+        private final IndexWriter writer;
+        private volatile MergePolicy.OneMerge merge;
+        private volatile long totalBytes = 0;
+        private volatile long bytesWritten = 0;
+
+        private LuceneMerge(IndexWriter writer)
+        {
+            this.writer = writer;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean next()
+        {
+            merge = writer.getNextMerge();
+            if (merge == null)
+            {
+                mergeFinished(writer);
+                return false;
+            }
+            try
+            {
+                totalBytes = merge.totalBytesSize();
+            }
+            catch (IOException e)
+            {
+                Log.warn(e, "Unable to get the size of index merge %s", merge.segString(writer.getDirectory()));
+            }
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void merge()
+        {
+            Log.debug("Running index merge %s", merge.segString(writer.getDirectory()));
+            currentMerge.set(this);
+            try
+            {
+                writer.merge(merge);
+            }
+            catch (MergePolicy.MergeAbortedException e)
+            {
+                // Stopped with nodetool, the merged segments are kept and can be merged again later
+                Log.debug("Index merge %s stopped by request", merge.segString(writer.getDirectory()));
+            }
+            catch (IOException e)
+            {
+                Log.error(e, "Error while merging index");
+                throw new RuntimeException(e);
+            }
+            finally
+            {
+                currentMerge.remove();
+                mergeFinished(writer);
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CompactionInfo getCompactionInfo()
+        {
+            return new CompactionInfo(metadata, OperationType.INDEX_MERGE, bytesWritten, totalBytes);
+        }
+    }
+
+    /**
+     * {@link FilterDirectory} throttling and stopping the outputs written by the merge run by the current thread.
+     */
+    private static class ThrottledDirectory extends FilterDirectory
+    {
+        private ThrottledDirectory(Directory in)
+        {
+            super(in);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public IndexOutput createOutput(String name, IOContext context) throws IOException
+        {
+            IndexOutput output = in.createOutput(name, context);
+            LuceneMerge merge = currentMerge.get();
+            if (merge != null && context.context == IOContext.Context.MERGE)
+            {
+                return new ThrottledIndexOutput(output, merge);
+            }
+            return output;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public IndexInputSlicer createSlicer(String name, IOContext context) throws IOException
+        {
+            return in.createSlicer(name, context);
+        }
+    }
+
+    /**
+     * {@link IndexOutput} accounting the written bytes to a {@link LuceneMerge}, acquiring them from the compaction
+     * rate limiter and aborting the merge if it has been requested to stop.
+     */
+    private static class ThrottledIndexOutput extends IndexOutput
+    {
+        private final IndexOutput out;
+        private final LuceneMerge merge;
+        private int unthrottledBytes = 0;
+
+        private ThrottledIndexOutput(IndexOutput out, LuceneMerge merge)
+        {
+            this.out = out;
+            this.merge = merge;
+        }
+
+        private void throttle(int bytes) throws IOException
+        {
+            merge.bytesWritten += bytes;
+            unthrottledBytes += bytes;
+            if (unthrottledBytes >= THROTTLE_BYTES)
+            {
+                CompactionManager.instance.getRateLimiter().acquire(unthrottledBytes);
+                unthrottledBytes = 0;
+                if (merge.isStopRequested())
+                {
+                    throw new MergePolicy.MergeAbortedException("Index merge stopped by request");
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeByte(byte b) throws IOException
+        {
+            throttle(1);
+            out.writeByte(b);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeBytes(byte[] b, int offset, int length) throws IOException
+        {
+            throttle(length);
+            out.writeBytes(b, offset, length);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void flush() throws IOException
+        {
+            out.flush();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long getFilePointer()
+        {
+            return out.getFilePointer();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @SuppressWarnings("deprecation")
+        public void seek(long pos) throws IOException
+        {
+            out.seek(pos);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long getChecksum() throws IOException
+        {
+            return out.getChecksum();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long length() throws IOException
+        {
+            return out.length();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void setLength(long length) throws IOException
+        {
+            out.setLength(length);
+        }
+    }
+}
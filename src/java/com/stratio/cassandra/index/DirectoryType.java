@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+/**
+ * The kinds of Lucene {@link org.apache.lucene.store.Directory} in which an index can be stored. All of them keep the
+ * index files in the file system, and they differ in how the files are read.
+ */
+public enum DirectoryType
+{
+    /**
+     * The best file system directory for the current platform, as chosen by Lucene.
+     */
+    FS,
+
+    /**
+     * The index files are memory mapped and unmapped as soon as they are closed. The kernel is advised to preload them
+     * into the page cache, so searches on hot indexes don't need read system calls.
+     */
+    MMAP,
+
+    /**
+     * The index files are read with positional {@link java.nio.channels.FileChannel} reads, without memory mapping.
+     */
+    NIOFS,
+
+    /**
+     * The index files are read from off-heap memory as long as they fit in the configured size, falling back to the
+     * file system otherwise. It is intended for small hot indexes.
+     */
+    OFF_HEAP;
+
+    /**
+     * Returns the {@link DirectoryType} represented by the specified option value, which is case insensitive.
+     *
+     * @param value A {@link DirectoryType} name.
+     * @return The {@link DirectoryType} represented by {@code value}.
+     */
+    public static DirectoryType fromOption(String value)
+    {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
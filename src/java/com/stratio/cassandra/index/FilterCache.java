@@ -0,0 +1,334 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.WAH8DocIdSet;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory bounded LRU cache of the per-segment {@link DocIdSet}s matched by the filtering Lucene {@link Query}s of an
+ * index, such as the {@code filter} conditions of the searches and the token ranges. It is shared by all the searches
+ * of the same {@link LuceneIndex}.
+ *
+ * The entries are keyed by the {@link Query} and the core of the segment, and they are computed without deletions,
+ * which are applied at search time, so they remain valid while the segment is alive no matter how many times the
+ * searcher is reopened. The entries of a segment are discarded when it is closed, usually after a merge. A {@link Query}
+ * is only cached after being seen twice, so the one-off range queries of paging don't pollute the cache.
+ */
+public class FilterCache
+{
+    /** The number of recently seen queries tracked to decide which ones are worth caching. */
+    public static final int HISTORY_SIZE = Integer.getInteger("cassandra.lucene_filter_cache_history_size", 1000);
+
+    /** The estimated size in bytes of a cache entry without its {@link DocIdSet}. */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final long capacity;
+    private final AtomicLong weightedSize = new AtomicLong();
+    private final Cache<Key, WAH8DocIdSet> cache;
+    private final Cache<Query, Boolean> history;
+    private final Set<Object> listenedCores = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+    private final SegmentReader.CoreClosedListener coreClosedListener = new SegmentReader.CoreClosedListener()
+    {
+        @Override
+        public void onClose(Object core)
+        {
+            evict(core);
+        }
+    };
+
+    /**
+     * Builds a new {@link FilterCache} with the specified capacity.
+     *
+     * @param capacityMB The max size in MB of the cached {@link DocIdSet}s, {@code 0} means no caching.
+     */
+    public FilterCache(int capacityMB)
+    {
+        this.capacity = capacityMB * 1024L * 1024L;
+        this.cache = CacheBuilder.newBuilder()
+                                 .maximumWeight(capacity)
+                                 .weigher(new Weigher<Key, WAH8DocIdSet>()
+                                 {
+                                     @Override
+                                     public int weigh(Key key, WAH8DocIdSet docIdSet)
+                                     {
+                                         return weight(docIdSet);
+                                     }
+                                 })
+                                 .removalListener(new RemovalListener<Key, WAH8DocIdSet>()
+                                 {
+                                     @Override
+                                     public void onRemoval(RemovalNotification<Key, WAH8DocIdSet> notification)
+                                     {
+                                         weightedSize.addAndGet(-weight(notification.getValue()));
+                                     }
+                                 })
+                                 .recordStats()
+                                 .build();
+        this.history = CacheBuilder.newBuilder().maximumSize(HISTORY_SIZE).build();
+    }
+
+    private static int weight(WAH8DocIdSet docIdSet)
+    {
+        return (int) Math.min(Integer.MAX_VALUE, ENTRY_OVERHEAD + docIdSet.ramBytesUsed());
+    }
+
+    /**
+     * Returns a constant score {@link Query} matching the same documents as the specified filtering {@link Query},
+     * whose per-segment matches are taken from this cache. If caching is disabled, the returned {@link Query} simply
+     * wraps the specified one.
+     *
+     * @param query A filtering {@link Query}.
+     * @return A constant score {@link Query} matching the same documents as {@code query}.
+     */
+    public Query query(Query query)
+    {
+        if (capacity == 0)
+        {
+            return new ConstantScoreQuery(query);
+        }
+        boolean admitted = history.asMap().put(query, Boolean.TRUE) != null;
+        return new ConstantScoreQuery(new CachingFilter(query, admitted));
+    }
+
+    /**
+     * Returns the cached {@link DocIdSet} matched by the specified {@link Query} in the specified segment, or {@code
+     * null} if it is not cached.
+     */
+    private DocIdSet get(Query query, AtomicReader reader)
+    {
+        return cache.getIfPresent(new Key(query, reader.getCoreCacheKey()));
+    }
+
+    /**
+     * Computes and caches the {@link DocIdSet} matched by the specified {@link Query} in the specified segment,
+     * ignoring the deletions.
+     */
+    private DocIdSet put(Query query, AtomicReaderContext context) throws IOException
+    {
+        AtomicReader reader = context.reader();
+        Object core = reader.getCoreCacheKey();
+        if (reader instanceof SegmentReader && listenedCores.add(core))
+        {
+            ((SegmentReader) reader).addCoreClosedListener(coreClosedListener);
+        }
+
+        WAH8DocIdSet.Builder builder = new WAH8DocIdSet.Builder();
+        DocIdSet docIdSet = new QueryWrapperFilter(query).getDocIdSet(context, null);
+        if (docIdSet != null)
+        {
+            DocIdSetIterator iterator = docIdSet.iterator();
+            if (iterator != null)
+            {
+                builder.add(iterator);
+            }
+        }
+        WAH8DocIdSet cached = builder.build();
+        weightedSize.addAndGet(weight(cached));
+        cache.put(new Key(query, core), cached);
+        return cached;
+    }
+
+    /**
+     * Discards all the entries of the specified segment core.
+     */
+    private void evict(Object core)
+    {
+        listenedCores.remove(core);
+        Iterator<Key> iterator = cache.asMap().keySet().iterator();
+        while (iterator.hasNext())
+        {
+            if (iterator.next().core == core)
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Discards all the cached entries.
+     */
+    public void invalidateAll()
+    {
+        cache.invalidateAll();
+        history.invalidateAll();
+    }
+
+    /**
+     * Returns the capacity of this cache in bytes.
+     *
+     * @return The capacity of this cache in bytes.
+     */
+    public long capacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Returns the estimated size in bytes of the cached entries.
+     *
+     * @return The estimated size in bytes of the cached entries.
+     */
+    public long weightedSize()
+    {
+        return weightedSize.get();
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return The number of cached entries.
+     */
+    public long size()
+    {
+        return cache.size();
+    }
+
+    /**
+     * Returns the number of lookups that have found a cached entry.
+     *
+     * @return The number of lookups that have found a cached entry.
+     */
+    public long hits()
+    {
+        return cache.stats().hitCount();
+    }
+
+    /**
+     * Returns the number of lookups.
+     *
+     * @return The number of lookups.
+     */
+    public long requests()
+    {
+        return cache.stats().requestCount();
+    }
+
+    /**
+     * Cache key formed by a {@link Query} and a segment core.
+     */
+    private static final class Key
+    {
+        private final Query query;
+        private final Object core;
+
+        private Key(Query query, Object core)
+        {
+            this.query = query;
+            this.core = core;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            return core == key.core && query.equals(key.query);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * query.hashCode() + System.identityHashCode(core);
+        }
+    }
+
+    /**
+     * {@link Filter} taking the per-segment {@link DocIdSet}s of a {@link Query} from the {@link FilterCache}.
+     */
+    private final class CachingFilter extends Filter
+    {
+        private final Query query;
+        private final boolean admitted;
+
+        /**
+         * Builds a new {@link CachingFilter}.
+         *
+         * @param query    The filtering {@link Query}.
+         * @param admitted If the not cached {@link DocIdSet}s must be computed and cached.
+         */
+        private CachingFilter(Query query, boolean admitted)
+        {
+            this.query = query;
+            this.admitted = admitted;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException
+        {
+            DocIdSet docIdSet = get(query, context.reader());
+            if (docIdSet == null)
+            {
+                if (!admitted)
+                {
+                    return new QueryWrapperFilter(query).getDocIdSet(context, acceptDocs);
+                }
+                docIdSet = put(query, context);
+            }
+            return BitsFilteredDocIdSet.wrap(docIdSet, acceptDocs);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            return query.equals(((CachingFilter) o).query);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode()
+        {
+            return query.hashCode();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString()
+        {
+            return "CachingFilter(" + query + ")";
+        }
+    }
+}
@@ -21,9 +21,6 @@ import org.apache.cassandra.db.composites.CellName;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.CompositeType;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.Field.Store;
-import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.Term;
 
 import java.nio.ByteBuffer;
@@ -97,8 +94,7 @@ public class FullKeyMapper
     public void addFields(Document document, DecoratedKey partitionKey, CellName clusteringKey)
     {
         ByteBuffer fullKey = byteBuffer(partitionKey, clusteringKey);
-        Field field = new StringField(FIELD_NAME, ByteBufferUtils.toString(fullKey), Store.NO);
-        document.add(field);
+        document.add(new KeyField(FIELD_NAME, ByteBufferUtils.bytesRef(fullKey)));
     }
 
     /**
@@ -112,7 +108,7 @@ public class FullKeyMapper
     public Term term(DecoratedKey partitionKey, CellName clusteringKey)
     {
         ByteBuffer fullKey = byteBuffer(partitionKey, clusteringKey);
-        return new Term(FIELD_NAME, ByteBufferUtils.toString(fullKey));
+        return new Term(FIELD_NAME, ByteBufferUtils.bytesRef(fullKey));
     }
 
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * A not tokenized and not stored Lucene {@link Field} indexing a single raw binary term. It is used for indexing the
+ * row keys without any intermediate {@code String} encoding.
+ */
+public class KeyField extends Field
+{
+    /** The type of the {@link KeyField}s. */
+    public static final FieldType TYPE = new FieldType();
+
+    static
+    {
+        TYPE.setIndexed(true);
+        TYPE.setTokenized(false);
+        TYPE.setOmitNorms(true);
+        TYPE.setIndexOptions(IndexOptions.DOCS_ONLY);
+        TYPE.setStored(false);
+        TYPE.freeze();
+    }
+
+    /**
+     * Builds a new {@link KeyField} with the specified name and binary term.
+     *
+     * @param name  The field name.
+     * @param value The binary term to be indexed.
+     */
+    public KeyField(String name, BytesRef value)
+    {
+        super(name, TYPE);
+        fieldsData = value;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TokenStream tokenStream(Analyzer analyzer)
+    {
+        return new KeyTokenStream((BytesRef) fieldsData);
+    }
+
+    /**
+     * {@link TokenStream} producing a single binary term.
+     */
+    private static final class KeyTokenStream extends TokenStream
+    {
+        private final KeyTermAttribute termAttribute = addAttribute(KeyTermAttribute.class);
+        private final BytesRef value;
+        private boolean used = false;
+
+        private KeyTokenStream(BytesRef value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public boolean incrementToken()
+        {
+            if (used)
+            {
+                return false;
+            }
+            clearAttributes();
+            termAttribute.setBytesRef(value);
+            used = true;
+            return true;
+        }
+
+        @Override
+        public void reset()
+        {
+            used = false;
+        }
+    }
+
+    /**
+     * Attribute holding a binary term.
+     */
+    public interface KeyTermAttribute extends TermToBytesRefAttribute
+    {
+        /**
+         * Sets the binary term.
+         *
+         * @param value The binary term.
+         */
+        void setBytesRef(BytesRef value);
+    }
+
+    /**
+     * Default implementation of {@link KeyTermAttribute}, found by Lucene by name. It explicitly implements {@link
+     * TermToBytesRefAttribute} because Lucene only registers the directly implemented attribute interfaces.
+     */
+    public static final class KeyTermAttributeImpl extends AttributeImpl
+            implements KeyTermAttribute, TermToBytesRefAttribute
+    {
+        private final BytesRef bytes = new BytesRef();
+
+        @Override
+        public void setBytesRef(BytesRef value)
+        {
+            bytes.bytes = value.bytes;
+            bytes.offset = value.offset;
+            bytes.length = value.length;
+        }
+
+        @Override
+        public void fillBytesRef()
+        {
+            // Nothing to do, the bytes are already set
+        }
+
+        @Override
+        public BytesRef getBytesRef()
+        {
+            return bytes;
+        }
+
+        @Override
+        public void clear()
+        {
+            bytes.length = 0;
+        }
+
+        @Override
+        public void copyTo(AttributeImpl target)
+        {
+            ((KeyTermAttribute) target).setBytesRef(bytes);
+        }
+    }
+}
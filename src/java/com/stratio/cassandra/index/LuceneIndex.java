@@ -16,6 +16,11 @@
 package com.stratio.cassandra.index;
 
 import com.stratio.cassandra.index.util.Log;
+import org.apache.cassandra.concurrent.JMXEnabledThreadPoolExecutor;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
@@ -25,112 +30,151 @@ import org.apache.lucene.index.sorter.SortingMergePolicy;
 import org.apache.lucene.search.*;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
 import org.apache.lucene.store.NRTCachingDirectory;
 import org.apache.lucene.util.Version;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Class wrapping a Lucene directory and its readers , writers and searchers for NRT.
+ * Class wrapping a Lucene directory and its readers , writers and searchers for NRT. The index can be partitioned by
+ * token into several shards, each one with its own directory, writer and searcher, which are searched in parallel.
  *
  * @author Andres de la Pena <adelapena@stratio.com>
  */
 public class LuceneIndex
 {
+    /** The commit user data key of the index format version. */
+    public static final String FORMAT_VERSION_KEY = "format_version";
+
+    /**
+     * The current index format version, in which keys are stored as binary terms and doc values, and the sortable
+     * columns and tokens have doc values.
+     */
+    public static final String FORMAT_VERSION = "3";
+
+    /** The commit user data key of the number of shards the documents have been distributed into. */
+    public static final String SHARDS_KEY = "shards";
+
+    /**
+     * The commit user data key of the base table commit log position before which all the writes are known to be
+     * included in the commit.
+     */
+    public static final String REPLAY_POSITION_KEY = "replay_position";
+
+    /**
+     * The commit user data key present while the documents have been discarded and the index hasn't been rebuilt yet.
+     * It is committed along with the discard, so a node stopped before the rebuild still knows it must rebuild.
+     */
+    public static final String REBUILD_PENDING_KEY = "rebuild_pending";
+
+    /** The max number of threads searching index shards in parallel for all the indexes of this node. */
+    private static final int SEARCH_THREADS = Integer.getInteger("cassandra.lucene_search_threads",
+                                                                 Runtime.getRuntime().availableProcessors());
+
+    /** The node-wide executor for searching index shards in parallel. */
+    private static final ExecutorService searchExecutor =
+            new JMXEnabledThreadPoolExecutor(SEARCH_THREADS,
+                                             StageManager.KEEPALIVE,
+                                             TimeUnit.SECONDS,
+                                             new LinkedBlockingQueue<Runnable>(),
+                                             new NamedThreadFactory("LuceneSearch"),
+                                             "internal");
+
     private final RowMapper rowMapper;
-    private final String path;
+    private final List<String> paths;
     private final Double refreshSeconds;
+    private final Double minRefreshSeconds;
     private final Integer ramBufferMB;
     private final Integer maxMergeMB;
     private final Integer maxCachedMB;
+    private final DirectoryType directoryType;
+    private final Integer offHeapMB;
+    private final Integer mergeThreads;
     private final Analyzer analyzer;
 
-    private File file;
-    private Directory directory;
-    private IndexWriter indexWriter;
-    private SearcherManager searcherManager;
-    private ControlledRealTimeReopenThread<IndexSearcher> searcherReopener;
+    private Shard[] shards;
+
+    /** The write batches being collected by the indexing threads, if any. */
+    private final ThreadLocal<Batch> batches = new ThreadLocal<>();
 
     private Sort sort;
 
+    private boolean rebuildNeeded;
+
     /**
-     * Builds a new {@code RowDirectory} using the specified directory path and analyzer.
+     * Builds a new {@code RowDirectory} using the specified directory paths and analyzer.
      *
-     * @param rowMapper      A {@link RowMapper}.
-     * @param path           The analyzer to be used. The path of the directory in where the Lucene files will be
-     *                       stored.
-     * @param refreshSeconds The index readers refresh time in seconds. No guarantees that the writings are visible
-     *                       until this time.
-     * @param ramBufferMB    The index writer buffer size in MB.
-     * @param maxMergeMB     NRTCachingDirectory max merge size in MB.
-     * @param maxCachedMB    NRTCachingDirectory max cached MB.
-     * @param analyzer       The default {@link Analyzer}.
+     * @param rowMapper         A {@link RowMapper}.
+     * @param paths             The paths of the directories in where the Lucene files of each shard will be stored.
+     * @param refreshSeconds    The index readers refresh time in seconds. No guarantees that the writings are visible
+     *                          until this time.
+     * @param minRefreshSeconds The min time in seconds between index readers refreshes.
+     * @param ramBufferMB       The index writer buffer size in MB.
+     * @param maxMergeMB        NRTCachingDirectory max merge size in MB.
+     * @param maxCachedMB       NRTCachingDirectory max cached MB.
+     * @param directoryType     The type of the underlying Lucene {@link Directory}.
+     * @param offHeapMB         The max off-heap MB of {@link DirectoryType#OFF_HEAP} directories.
+     * @param mergeThreads      The max number of concurrent merges of each shard in the compaction executor.
+     * @param analyzer          The default {@link Analyzer}.
      */
     public LuceneIndex(RowMapper rowMapper,
-                       String path,
+                       List<String> paths,
                        Double refreshSeconds,
+                       Double minRefreshSeconds,
                        Integer ramBufferMB,
                        Integer maxMergeMB,
                        Integer maxCachedMB,
+                       DirectoryType directoryType,
+                       Integer offHeapMB,
+                       Integer mergeThreads,
                        Analyzer analyzer)
     {
         this.rowMapper = rowMapper;
-        this.path = path;
+        this.paths = paths;
         this.refreshSeconds = refreshSeconds;
+        this.minRefreshSeconds = minRefreshSeconds;
         this.ramBufferMB = ramBufferMB;
         this.maxMergeMB = maxMergeMB;
         this.maxCachedMB = maxCachedMB;
+        this.directoryType = directoryType;
+        this.offHeapMB = offHeapMB;
+        this.mergeThreads = mergeThreads;
         this.analyzer = analyzer;
     }
 
     /**
      * Initializes this using the specified {@link Sort} for trying to keep the {@link Document}s sorted.
      *
-     * @param sort The {@link Sort} to be used.
+     * @param sort    The {@link Sort} to be used.
+     * @param metrics The {@link RowIndexMetrics} to be updated.
      */
-    public void init(Sort sort)
+    public void init(Sort sort, RowIndexMetrics metrics)
     {
-        Log.debug("Initializing index");
+        Log.debug("Initializing index with %d shards", paths.size());
         try
         {
             this.sort = sort;
-
-            // Get directory file
-            file = new File(path);
-
-            // Open or create directory
-            FSDirectory fsDirectory = FSDirectory.open(file);
-            directory = new NRTCachingDirectory(fsDirectory, maxMergeMB, maxCachedMB);
-
-            // Setup index writer
-            IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_48, analyzer);
-            config.setRAMBufferSizeMB(ramBufferMB);
-            config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
-            config.setUseCompoundFile(true);
-            config.setMergePolicy(new SortingMergePolicy(config.getMergePolicy(), sort));
-            indexWriter = new IndexWriter(directory, config);
-
-            // Setup NRT search
-            SearcherFactory searcherFactory = new SearcherFactory()
+            Shard[] shards = new Shard[paths.size()];
+            for (int i = 0; i < shards.length; i++)
             {
-                public IndexSearcher newSearcher(IndexReader reader) throws IOException
-                {
-                    IndexSearcher searcher = new IndexSearcher(reader);
-                    searcher.setSimilarity(new NoIDFSimilarity());
-                    return searcher;
-                }
-            };
-            TrackingIndexWriter trackingIndexWriter = new TrackingIndexWriter(indexWriter);
-            searcherManager = new SearcherManager(indexWriter, true, searcherFactory);
-            searcherReopener = new ControlledRealTimeReopenThread<>(trackingIndexWriter,
-                                                                    searcherManager,
-                                                                    refreshSeconds,
-                                                                    refreshSeconds);
-            searcherReopener.start(); // Start the refresher thread
+                shards[i] = new Shard(i, new File(paths.get(i)));
+                shards[i].init(metrics);
+            }
+            this.shards = shards;
         }
         catch (IOException e)
         {
@@ -139,20 +183,140 @@ public class LuceneIndex
         }
     }
 
+    /**
+     * Returns a new {@link IndexWriterConfig} with the index settings. Merges are run by the compaction executor, unless
+     * the writer itself runs in a compaction thread, where waiting for another compaction thread could deadlock.
+     *
+     * @param openMode         The {@link IndexWriterConfig.OpenMode} of the writer.
+     * @param compactionMerges If the merges must be run as compactions by a {@link CompactionMergeScheduler}.
+     * @return A new {@link IndexWriterConfig}.
+     */
+    private IndexWriterConfig indexWriterConfig(IndexWriterConfig.OpenMode openMode, boolean compactionMerges)
+    {
+        IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_48, analyzer);
+        config.setRAMBufferSizeMB(ramBufferMB);
+        config.setOpenMode(openMode);
+        config.setUseCompoundFile(true);
+        config.setMergePolicy(new SortingMergePolicy(config.getMergePolicy(), sort));
+        if (compactionMerges)
+        {
+            config.setMergeScheduler(new CompactionMergeScheduler(rowMapper.metadata, mergeThreads));
+        }
+        return config;
+    }
+
+    /**
+     * Returns the base Lucene {@link Directory} of type {@link #directoryType} for the specified path.
+     *
+     * @param file The directory path.
+     * @return The base Lucene {@link Directory}.
+     * @throws IOException If there are I/O errors.
+     */
+    private Directory directory(File file) throws IOException
+    {
+        switch (directoryType)
+        {
+            case MMAP:
+                return new MMapIndexDirectory(file);
+            case NIOFS:
+                return new NIOFSDirectory(file);
+            case OFF_HEAP:
+                return new OffHeapDirectory(FSDirectory.open(file), offHeapMB * 1024L * 1024L);
+            default:
+                return FSDirectory.open(file);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the index contents have been discarded, during this initialization or a previous one, and
+     * it must be rebuilt from the base table, {@code false} otherwise.
+     *
+     * @return {@code true} if the index must be rebuilt, {@code false} otherwise.
+     */
+    public boolean isRebuildNeeded()
+    {
+        return rebuildNeeded;
+    }
+
+    /**
+     * Returns the number of shards of this index.
+     *
+     * @return The number of shards of this index.
+     */
+    public int getNumShards()
+    {
+        return paths.size();
+    }
+
+    /**
+     * Returns the shard containing the {@link Document}s of the specified partition, which is given by its token.
+     *
+     * @param partitionKey A partition key.
+     * @return The shard containing the {@link Document}s of {@code partitionKey}.
+     */
+    public int shard(DecoratedKey partitionKey)
+    {
+        int numShards = paths.size();
+        return numShards == 1 ? 0 : (partitionKey.getToken().hashCode() & Integer.MAX_VALUE) % numShards;
+    }
+
+    /**
+     * Starts collecting the writes of the calling thread into a batch, which will be applied by {@link #flushBatch()}.
+     * Meanwhile, the writes done by the calling thread are not applied to the index.
+     */
+    public void beginBatch()
+    {
+        batches.set(new Batch(shards.length));
+    }
+
+    /**
+     * Applies the writes collected by the calling thread since the last call to {@link #beginBatch()}, and stops
+     * collecting them.
+     */
+    public void flushBatch()
+    {
+        Batch batch = batches.get();
+        if (batch != null)
+        {
+            batches.remove();
+            Log.debug("Flushing write batch");
+            try
+            {
+                batch.flush();
+            }
+            catch (IOException e)
+            {
+                Log.error(e, "Error while flushing write batch");
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     /**
      * Updates the specified {@link Document} by first deleting the documents containing {@code Term} and then adding
      * the new document. The delete and then add are atomic as seen by a reader on the same index (flush may happen only
-     * after the add).
+     * after the add). If the calling thread is collecting a batch, the update is deferred until the batch is flushed.
      *
-     * @param term     The {@link Term} to identify the document(s) to be deleted.
-     * @param document The {@link Document} to be added.
+     * @param partitionKey The partition key of the {@link Document}, which determines its shard.
+     * @param term         The {@link Term} to identify the document(s) to be deleted.
+     * @param document     The {@link Document} to be added.
      */
-    public void upsert(Term term, Document document)
+    public void upsert(DecoratedKey partitionKey, Term term, Document document)
     {
         Log.debug("Updating document %s with term %s", document, term);
         try
         {
-            indexWriter.updateDocument(term, document);
+            int shard = shard(partitionKey);
+            Batch batch = batches.get();
+            if (batch != null)
+            {
+                batch.get(shard).upsert(term, document);
+            }
+            else
+            {
+                shards[shard].trackingIndexWriter.updateDocument(term, document);
+                shards[shard].searcherReopener.written();
+            }
         }
         catch (IOException e)
         {
@@ -162,16 +326,28 @@ public class LuceneIndex
     }
 
     /**
-     * Deletes all the {@link Document}s containing the specified {@link Term}.
+     * Deletes all the {@link Document}s containing the specified {@link Term}. If the calling thread is collecting a
+     * batch, the deletion is deferred until the batch is flushed.
      *
-     * @param term The {@link Term} to identify the documents to be deleted.
+     * @param partitionKey The partition key of the {@link Document}s, which determines their shard.
+     * @param term         The {@link Term} to identify the documents to be deleted.
      */
-    public void delete(Term term)
+    public void delete(DecoratedKey partitionKey, Term term)
     {
         Log.debug(String.format("Deleting by term %s", term));
         try
         {
-            indexWriter.deleteDocuments(term);
+            int shard = shard(partitionKey);
+            Batch batch = batches.get();
+            if (batch != null)
+            {
+                batch.get(shard).delete(term);
+            }
+            else
+            {
+                shards[shard].trackingIndexWriter.deleteDocuments(term);
+                shards[shard].searcherReopener.written();
+            }
         }
         catch (IOException e)
         {
@@ -181,16 +357,28 @@ public class LuceneIndex
     }
 
     /**
-     * Deletes all the {@link Document}s satisfying the specified {@link Query}.
+     * Deletes all the {@link Document}s satisfying the specified {@link Query}. If the calling thread is collecting a
+     * batch, the deletion is deferred until the batch is flushed.
      *
-     * @param query The {@link Query} to identify the documents to be deleted.
+     * @param partitionKey The partition key of the {@link Document}s, which determines their shard.
+     * @param query        The {@link Query} to identify the documents to be deleted.
      */
-    public void delete(Query query)
+    public void delete(DecoratedKey partitionKey, Query query)
     {
         Log.debug("Deleting by query %s", query);
         try
         {
-            indexWriter.deleteDocuments(query);
+            int shard = shard(partitionKey);
+            Batch batch = batches.get();
+            if (batch != null)
+            {
+                batch.get(shard).delete(query);
+            }
+            else
+            {
+                shards[shard].trackingIndexWriter.deleteDocuments(query);
+                shards[shard].searcherReopener.written();
+            }
         }
         catch (IOException e)
         {
@@ -207,7 +395,11 @@ public class LuceneIndex
         Log.info("Truncating index");
         try
         {
-            indexWriter.deleteAll();
+            for (Shard shard : shards)
+            {
+                shard.trackingIndexWriter.deleteAll();
+                shard.searcherReopener.written();
+            }
         }
         catch (IOException e)
         {
@@ -217,14 +409,155 @@ public class LuceneIndex
     }
 
     /**
-     * Commits the pending changes.
+     * Returns the path of the directory in where the Lucene files of the specified shard are stored.
+     *
+     * @param shard A shard.
+     * @return The path of the directory in where the Lucene files of {@code shard} are stored.
+     */
+    public String getPath(int shard)
+    {
+        return paths.get(shard);
+    }
+
+    /**
+     * Returns a new standalone {@link IndexWriter} writing to the specified {@link Directory} with the same settings as
+     * the main ones, for building index segments in bulk that are later added with {@link #replace(List)} or {@link
+     * #add(List)}.
+     *
+     * @param directory The {@link Directory} where the segments will be written, which is cleared.
+     * @return A new standalone {@link IndexWriter}.
      */
-    public void commit()
+    public IndexWriter segmentWriter(Directory directory)
     {
-        Log.info("Committing");
+        Log.debug("Creating segment writer for %s", directory);
         try
         {
-            indexWriter.commit();
+            return new IndexWriter(directory, indexWriterConfig(IndexWriterConfig.OpenMode.CREATE, false));
+        }
+        catch (IOException e)
+        {
+            Log.error(e, "Error while creating segment writer for %s", directory);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Replaces all the {@link Document}s with the ones contained in the specified directories, which must
+     * have been written by {@link #segmentWriter(Directory)} writers that are already closed. Their segments are copied
+     * into this index without being analyzed again. The next commit clears the rebuild pending mark, if any.
+     *
+     * @param directories The directories containing the new {@link Document}s of each shard.
+     */
+    public void replace(List<List<Directory>> directories)
+    {
+        Log.info("Replacing index contents with segment directories");
+        try
+        {
+            for (int i = 0; i < shards.length; i++)
+            {
+                List<Directory> shardDirectories = directories.get(i);
+                Shard shard = shards[i];
+                shard.trackingIndexWriter.deleteAll();
+                shard.trackingIndexWriter.addIndexes(shardDirectories.toArray(new Directory[shardDirectories.size()]));
+                clearRebuildPending(shard.indexWriter);
+                shard.searcherReopener.written();
+            }
+        }
+        catch (IOException e)
+        {
+            Log.error(e, "Error while replacing index contents");
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds the {@link Document}s contained in the specified directories, which must have been written by {@link
+     * #segmentWriter(Directory)} writers that are already closed, keeping the existing ones. Their segments are copied
+     * into this index without being analyzed again.
+     *
+     * @param directories The directories containing the new {@link Document}s of each shard.
+     */
+    public void add(List<List<Directory>> directories)
+    {
+        Log.info("Adding segment directories to index contents");
+        try
+        {
+            for (int i = 0; i < shards.length; i++)
+            {
+                List<Directory> shardDirectories = directories.get(i);
+                Shard shard = shards[i];
+                shard.trackingIndexWriter.addIndexes(shardDirectories.toArray(new Directory[shardDirectories.size()]));
+                shard.searcherReopener.written();
+            }
+        }
+        catch (IOException e)
+        {
+            Log.error(e, "Error while adding segment directories to index contents");
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Waits until all the writes done before this call are visible to searches.
+     */
+    public void refresh()
+    {
+        Log.debug("Refreshing index searcher");
+        try
+        {
+            for (Shard shard : shards)
+            {
+                shard.searcherReopener.waitForCurrentGeneration();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Log.error(e, "Interrupted while refreshing index searcher");
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds since the oldest write not visible to searches, or {@code 0} if all writes are
+     * visible.
+     *
+     * @return The searcher staleness in milliseconds.
+     */
+    public long getSearcherStaleness()
+    {
+        Shard[] shards = this.shards;
+        long staleness = 0;
+        if (shards != null)
+        {
+            for (Shard shard : shards)
+            {
+                staleness = Math.max(staleness, shard.searcherReopener.getStalenessMillis());
+            }
+        }
+        return staleness;
+    }
+
+    /**
+     * Commits the pending changes, recording the specified base table commit log position in the commit user data.
+     *
+     * @param replayPosition The commit log position before which all the writes have been indexed, maybe {@code null}
+     *                       if it is unknown.
+     */
+    public void commit(ReplayPosition replayPosition)
+    {
+        Log.info("Committing at replay position %s", replayPosition);
+        try
+        {
+            for (Shard shard : shards)
+            {
+                if (replayPosition != null)
+                {
+                    Map<String, String> commitData = new HashMap<>(shard.indexWriter.getCommitData());
+                    commitData.put(REPLAY_POSITION_KEY, replayPosition.segment + ":" + replayPosition.position);
+                    shard.indexWriter.setCommitData(commitData);
+                }
+                shard.indexWriter.commit();
+            }
         }
         catch (IOException e)
         {
@@ -233,6 +566,40 @@ public class LuceneIndex
         }
     }
 
+    /**
+     * Returns the base table commit log position before which all the writes are included in the last commit of all
+     * the shards, so the commit log replay can reindex only the writes after it. If any shard has been committed
+     * without position, {@link ReplayPosition#NONE} is returned, meaning that all the commit log must be reindexed.
+     *
+     * @return The commit log position before which all the writes are included in the last commit.
+     */
+    public ReplayPosition getReplayPosition()
+    {
+        ReplayPosition replayPosition = null;
+        for (Shard shard : shards)
+        {
+            ReplayPosition shardPosition = ReplayPosition.NONE;
+            String data = shard.indexWriter.getCommitData().get(REPLAY_POSITION_KEY);
+            if (data != null)
+            {
+                try
+                {
+                    String[] parts = data.split(":");
+                    shardPosition = new ReplayPosition(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+                }
+                catch (RuntimeException e)
+                {
+                    Log.error(e, "Ignoring malformed replay position %s", data);
+                }
+            }
+            if (replayPosition == null || shardPosition.compareTo(replayPosition) < 0)
+            {
+                replayPosition = shardPosition;
+            }
+        }
+        return replayPosition;
+    }
+
     /**
      * Commits all changes to the index, waits for pending merges to complete, and closes all associated resources.
      */
@@ -242,10 +609,10 @@ public class LuceneIndex
         try
         {
             Log.info("Closing");
-            searcherReopener.interrupt();
-            searcherManager.close();
-            indexWriter.close();
-            directory.close();
+            for (Shard shard : shards)
+            {
+                shard.close();
+            }
             analyzer.close();
         }
         catch (IOException e)
@@ -262,61 +629,224 @@ public class LuceneIndex
     {
         Log.info("Removing");
         close();
-        FileUtils.deleteRecursive(file);
+        for (Shard shard : shards)
+        {
+            FileUtils.deleteRecursive(shard.file);
+        }
     }
 
     /**
      * Finds the top {@code count} hits for {@code query}, applying {@code clusteringKeyFilter} if non-null, and sorting
-     * the hits by the criteria in {@code sortFields}.
+     * the hits by the criteria in {@code sortFields}. If there are several shards, they are searched in parallel and
+     * their hits are merged.
      *
      * @param query        The {@link Query} to search for.
      * @param sort         The {@link Sort} to be applied.
      * @param after        The starting {@link SearchResult}.
      * @param count        Return only the top {@code count} results.
-     * @param fieldsToLoad The name of the fields to be loaded.
      * @return The found documents, sorted according to the supplied {@link Sort} instance.
      */
-    public List<SearchResult> search(Query query,
-                                     Sort sort,
-                                     SearchResult after,
-                                     Integer count,
-                                     Set<String> fieldsToLoad,
-                                     boolean usesRelevance)
+    public List<SearchResult> search(final Query query,
+                                     final Sort sort,
+                                     final SearchResult after,
+                                     final Integer count,
+                                     final boolean usesRelevance)
     {
         Log.debug("Searching by query %s", query);
         try
         {
-            IndexSearcher searcher = searcherManager.acquire();
-            try
+            final ScoreDoc start = after == null ? null : after.getScoreDoc();
+            if (shards.length == 1)
             {
-                // Search
-                ScoreDoc start = after == null ? null : after.getScoreDoc();
-                TopDocs topDocs = topDocs(searcher, query, sort, start, count, usesRelevance);
-                ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+                return search(shards[0], query, sort, start, count, usesRelevance).searchResults;
+            }
 
-                // Collect the documents from query result
-                List<SearchResult> searchResults = new ArrayList<>(scoreDocs.length);
-                for (ScoreDoc scoreDoc : scoreDocs)
+            // Search the shards in parallel, searching the first one in the calling thread
+            List<Future<ShardHits>> futures = new ArrayList<>(shards.length - 1);
+            for (int i = 1; i < shards.length; i++)
+            {
+                final Shard shard = shards[i];
+                futures.add(searchExecutor.submit(new Callable<ShardHits>()
+                {
+                    @Override
+                    public ShardHits call() throws IOException
+                    {
+                        return search(shard, query, sort, start, count, usesRelevance);
+                    }
+                }));
+            }
+            TopDocs[] shardTopDocs = new TopDocs[shards.length];
+            Map<ScoreDoc, SearchResult> searchResults = new IdentityHashMap<>();
+            for (int i = 0; i < shards.length; i++)
+            {
+                ShardHits shardHits = i == 0
+                                      ? search(shards[0], query, sort, start, count, usesRelevance)
+                                      : futures.get(i - 1).get();
+                shardTopDocs[i] = shardHits.topDocs;
+                for (SearchResult searchResult : shardHits.searchResults)
                 {
-                    Document document = searcher.doc(scoreDoc.doc, fieldsToLoad);
-                    SearchResult searchResult = rowMapper.searchResult(document, scoreDoc);
-                    searchResults.add(searchResult);
+                    searchResults.put(searchResult.getScoreDoc(), searchResult);
                 }
+            }
 
-                return searchResults;
+            // Merge the shard hits, which is done without scores when using relevance
+            Sort mergeSort = sort != null ? sort : usesRelevance ? null : this.sort;
+            TopDocs topDocs = TopDocs.merge(mergeSort, count, shardTopDocs);
+            List<SearchResult> result = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs)
+            {
+                result.add(searchResults.get(scoreDoc));
             }
-            finally
+            return result;
+        }
+        catch (IOException | InterruptedException | ExecutionException e)
+        {
+            Log.error(e, "Error while searching by query %s", query);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Finds the top {@code count} hits for {@code query} in the specified shard.
+     *
+     * @param shard         The shard to be searched.
+     * @param query         The {@link Query} to search for.
+     * @param sort          The {@link Sort} to be applied.
+     * @param after         The starting {@link ScoreDoc} of the merged hits, maybe from another shard.
+     * @param count         Return only the top {@code count} results.
+     * @param usesRelevance If the search uses relevance.
+     * @return The hits of {@code shard}.
+     * @throws IOException If there are I/O errors.
+     */
+    private ShardHits search(Shard shard, Query query, Sort sort, ScoreDoc after, int count, boolean usesRelevance)
+    throws IOException
+    {
+        IndexSearcher searcher = shard.searcherManager.acquire();
+        try
+        {
+            // Search
+            ScoreDoc start = after(shard.index, searcher.getIndexReader().maxDoc(), after);
+            TopDocs topDocs = topDocs(searcher, query, sort, start, count, usesRelevance);
+            ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+
+            // Collect the keys from the doc values of each hit segment
+            List<AtomicReaderContext> leaves = searcher.getIndexReader().leaves();
+            List<SearchResult> searchResults = new ArrayList<>(scoreDocs.length);
+            for (ScoreDoc scoreDoc : scoreDocs)
+            {
+                scoreDoc.shardIndex = shard.index;
+                AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(scoreDoc.doc, leaves));
+                int docId = scoreDoc.doc - leaf.docBase;
+                SearchResult searchResult = rowMapper.searchResult(leaf.reader(), docId, scoreDoc);
+                searchResults.add(searchResult);
+            }
+
+            return new ShardHits(topDocs, searchResults);
+        }
+        finally
+        {
+            shard.searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Returns the starting {@link ScoreDoc} to be used when searching the specified shard after the specified merged
+     * {@link ScoreDoc}. The merged hits with the same sort values are sorted by shard and then by document, so the
+     * document ID of a {@link ScoreDoc} from another shard is replaced to skip the tied hits of the previous shards and
+     * to keep the tied hits of the next ones.
+     *
+     * @param shard  The shard to be searched.
+     * @param maxDoc The max document ID plus one of the searched reader of {@code shard}.
+     * @param after  The starting {@link ScoreDoc} of the merged hits, maybe {@code null}.
+     * @return The starting {@link ScoreDoc} for {@code shard}.
+     */
+    static ScoreDoc after(int shard, int maxDoc, ScoreDoc after)
+    {
+        if (after == null || after.shardIndex == shard)
+        {
+            return after;
+        }
+        int doc = shard < after.shardIndex ? maxDoc - 1 : -1;
+        if (after instanceof FieldDoc)
+        {
+            return new FieldDoc(doc, after.score, ((FieldDoc) after).fields, shard);
+        }
+        return new ScoreDoc(doc, after.score, shard);
+    }
+
+    /**
+     * Collects all the documents satisfying the specified {@link Query} with the specified {@link Collector}, without
+     * scoring nor sorting them, returning the {@link SearchResult} of the first collected document. The shards are
+     * collected one after another.
+     *
+     * @param query     The {@link Query} to search for.
+     * @param collector The {@link Collector} to be used.
+     * @return The {@link SearchResult} of the first collected document, or {@code null} if there are no hits.
+     */
+    public SearchResult collect(Query query, Collector collector)
+    {
+        Log.debug("Collecting by query %s", query);
+        try
+        {
+            FirstHitCollector firstHit = new FirstHitCollector();
+            Collector multiCollector = MultiCollector.wrap(firstHit, collector);
+            for (Shard shard : shards)
             {
-                searcherManager.release(searcher);
+                IndexSearcher searcher = shard.searcherManager.acquire();
+                try
+                {
+                    searcher.search(query, multiCollector);
+                }
+                finally
+                {
+                    shard.searcherManager.release(searcher);
+                }
             }
+            return firstHit.searchResult;
         }
         catch (IOException e)
         {
-            Log.error(e, "Error while searching by query %s", query);
+            Log.error(e, "Error while collecting by query %s", query);
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * {@link Collector} keeping the {@link SearchResult} of the first collected document.
+     */
+    private class FirstHitCollector extends Collector
+    {
+        private AtomicReaderContext context;
+        private SearchResult searchResult;
+
+        @Override
+        public void setScorer(Scorer scorer)
+        {
+        }
+
+        @Override
+        public void collect(int doc) throws IOException
+        {
+            if (searchResult == null)
+            {
+                ScoreDoc scoreDoc = new ScoreDoc(context.docBase + doc, Float.NaN);
+                searchResult = rowMapper.searchResult(context.reader(), doc, scoreDoc);
+            }
+        }
+
+        @Override
+        public void setNextReader(AtomicReaderContext context)
+        {
+            this.context = context;
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder()
+        {
+            return true;
+        }
+    }
+
     private TopDocs topDocs(IndexSearcher searcher,
                             Query query,
                             Sort sort,
@@ -346,16 +876,19 @@ public class LuceneIndex
     }
 
     /**
-     * Optimizes the index forcing merge segments leaving one single segment. This operation blocks until all merging
-     * completes.
+     * Optimizes the index forcing merge segments leaving one single segment per shard. This operation blocks until all
+     * merging completes.
      */
     public void optimize()
     {
         Log.debug("Optimizing index");
         try
         {
-            indexWriter.forceMerge(1, true);
-            indexWriter.commit();
+            for (Shard shard : shards)
+            {
+                shard.indexWriter.forceMerge(1, true);
+                shard.indexWriter.commit();
+            }
         }
         catch (IOException e)
         {
@@ -374,21 +907,400 @@ public class LuceneIndex
         Log.debug("Getting num docs");
         try
         {
-            IndexSearcher searcher = searcherManager.acquire();
+            long numDocs = 0;
+            for (Shard shard : shards)
+            {
+                IndexSearcher searcher = shard.searcherManager.acquire();
+                try
+                {
+                    numDocs += searcher.getIndexReader().numDocs();
+                }
+                finally
+                {
+                    shard.searcherManager.release(searcher);
+                }
+            }
+            return numDocs;
+        }
+        catch (IOException e)
+        {
+            Log.error(e, "Error while getting num docs");
+            throw new RuntimeException(e);
+        }
+
+    }
+
+    /**
+     * Returns the total size in bytes of the index files.
+     *
+     * @return The total size in bytes of the index files.
+     */
+    public long getDirectorySize()
+    {
+        Shard[] shards = this.shards;
+        if (shards == null)
+        {
+            return 0;
+        }
+        long size = 0;
+        for (Shard shard : shards)
+        {
+            Directory directory = shard.directory;
             try
             {
-                return searcher.getIndexReader().numDocs();
+                for (String name : directory.listAll())
+                {
+                    try
+                    {
+                        size += directory.fileLength(name);
+                    }
+                    catch (IOException e)
+                    {
+                        // The file has been deleted in the meantime
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                Log.error(e, "Error while getting directory size");
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the size in bytes of the memory mapped index files, which is only tracked for {@link DirectoryType#MMAP}
+     * directories.
+     *
+     * @return The size in bytes of the memory mapped index files.
+     */
+    public long getMappedBytes()
+    {
+        Shard[] shards = this.shards;
+        long size = 0;
+        if (shards != null)
+        {
+            for (Shard shard : shards)
+            {
+                Directory directory = shard.baseDirectory;
+                if (directory instanceof MMapIndexDirectory)
+                {
+                    size += ((MMapIndexDirectory) directory).getMappedBytes();
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the size in bytes of the off-heap memory used by {@link DirectoryType#OFF_HEAP} directories.
+     *
+     * @return The size in bytes of the off-heap memory used by the index.
+     */
+    public long getOffHeapBytes()
+    {
+        Shard[] shards = this.shards;
+        long size = 0;
+        if (shards != null)
+        {
+            for (Shard shard : shards)
+            {
+                Directory directory = shard.baseDirectory;
+                if (directory instanceof OffHeapDirectory)
+                {
+                    size += ((OffHeapDirectory) directory).getOffHeapBytes();
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the size in bytes of the heap memory used for caching the newly flushed segments.
+     *
+     * @return The size in bytes of the heap memory used for caching the newly flushed segments.
+     */
+    public long getNRTCachedBytes()
+    {
+        Shard[] shards = this.shards;
+        long size = 0;
+        if (shards != null)
+        {
+            for (Shard shard : shards)
+            {
+                size += shard.directory.sizeInBytes();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The hits of a single shard, with their {@link SearchResult}s.
+     */
+    private static class ShardHits
+    {
+        private final TopDocs topDocs;
+        private final List<SearchResult> searchResults;
+
+        private ShardHits(TopDocs topDocs, List<SearchResult> searchResults)
+        {
+            this.topDocs = topDocs;
+            this.searchResults = searchResults;
+        }
+    }
+
+    /**
+     * The writes collected by an indexing thread, grouped by shard.
+     */
+    private class Batch
+    {
+        private final ShardBatch[] shardBatches;
+
+        private Batch(int numShards)
+        {
+            shardBatches = new ShardBatch[numShards];
+        }
+
+        /**
+         * Returns the writes collected for the specified shard.
+         *
+         * @param shard A shard.
+         * @return The writes collected for {@code shard}.
+         */
+        private ShardBatch get(int shard)
+        {
+            ShardBatch shardBatch = shardBatches[shard];
+            if (shardBatch == null)
+            {
+                shardBatch = new ShardBatch(shards[shard]);
+                shardBatches[shard] = shardBatch;
+            }
+            return shardBatch;
+        }
+
+        /**
+         * Applies the collected writes of all the shards.
+         *
+         * @throws IOException If there are I/O errors.
+         */
+        private void flush() throws IOException
+        {
+            for (ShardBatch shardBatch : shardBatches)
+            {
+                if (shardBatch != null)
+                {
+                    shardBatch.flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * The writes collected for a single shard. They are kept as deletions followed by upserts, so they can be applied
+     * with a single call for all the terms to be deleted, another one for all the deleting queries, and then the
+     * upserts. Upserts of the same term are coalesced, keeping only the last one. Any deletion requested after an
+     * upsert flushes the pending writes first, because it could affect the documents of the upsert.
+     */
+    private class ShardBatch
+    {
+        private final Shard shard;
+        private final List<Term> deleteTerms = new ArrayList<>();
+        private final List<Query> deleteQueries = new ArrayList<>();
+        private final Map<Term, Document> upserts = new LinkedHashMap<>();
+
+        private ShardBatch(Shard shard)
+        {
+            this.shard = shard;
+        }
+
+        private void upsert(Term term, Document document)
+        {
+            upserts.put(term, document);
+        }
+
+        private void delete(Term term) throws IOException
+        {
+            if (!upserts.isEmpty())
+            {
+                flush();
+            }
+            deleteTerms.add(term);
+        }
+
+        private void delete(Query query) throws IOException
+        {
+            if (!upserts.isEmpty())
+            {
+                flush();
+            }
+            deleteQueries.add(query);
+        }
+
+        /**
+         * Applies the collected writes. Upserts are applied one by one with {@link IndexWriter#updateDocument} because
+         * it is the only way of replacing a document atomically, so searchers never miss an updated row.
+         *
+         * @throws IOException If there are I/O errors.
+         */
+        private void flush() throws IOException
+        {
+            if (deleteTerms.isEmpty() && deleteQueries.isEmpty() && upserts.isEmpty())
+            {
+                return;
+            }
+            try
+            {
+                if (!deleteTerms.isEmpty())
+                {
+                    shard.trackingIndexWriter.deleteDocuments(deleteTerms.toArray(new Term[deleteTerms.size()]));
+                }
+                if (!deleteQueries.isEmpty())
+                {
+                    shard.trackingIndexWriter.deleteDocuments(deleteQueries.toArray(new Query[deleteQueries.size()]));
+                }
+                for (Map.Entry<Term, Document> entry : upserts.entrySet())
+                {
+                    shard.trackingIndexWriter.updateDocument(entry.getKey(), entry.getValue());
+                }
+                shard.searcherReopener.written();
             }
             finally
             {
-                searcherManager.release(searcher);
+                deleteTerms.clear();
+                deleteQueries.clear();
+                upserts.clear();
             }
         }
-        catch (IOException e)
+    }
+
+    /**
+     * Checks that the documents of the specified shard writer have been written with the current {@link
+     * #FORMAT_VERSION} and number of shards. Otherwise, all the existing documents are deleted and the index is marked
+     * as needing a rebuild in the same commit, so the mark survives a restart until the rebuild is done.
+     *
+     * @param indexWriter The {@link IndexWriter} of a shard.
+     * @param numShards   The current number of shards.
+     * @return {@code true} if the shard must be rebuilt, {@code false} otherwise.
+     * @throws IOException If there are I/O errors.
+     */
+    static boolean checkFormat(IndexWriter indexWriter, int numShards) throws IOException
+    {
+        Map<String, String> commitData = indexWriter.getCommitData();
+        String shardsData = commitData.get(SHARDS_KEY);
+        boolean sameShards = String.valueOf(numShards).equals(shardsData) || shardsData == null && numShards == 1;
+        if (!FORMAT_VERSION.equals(commitData.get(FORMAT_VERSION_KEY)) || !sameShards)
         {
-            Log.error(e, "Error while getting num docs");
-            throw new RuntimeException(e);
+            Map<String, String> newCommitData = new HashMap<>(commitData);
+            if (indexWriter.numDocs() > 0)
+            {
+                Log.info("Index format version %s with %s shards is outdated, index will be rebuilt",
+                         commitData.get(FORMAT_VERSION_KEY),
+                         shardsData);
+                indexWriter.deleteAll();
+                newCommitData.put(REBUILD_PENDING_KEY, Boolean.TRUE.toString());
+            }
+            newCommitData.remove(REPLAY_POSITION_KEY);
+            newCommitData.put(FORMAT_VERSION_KEY, FORMAT_VERSION);
+            newCommitData.put(SHARDS_KEY, String.valueOf(numShards));
+            indexWriter.setCommitData(newCommitData);
+            indexWriter.commit();
+            commitData = newCommitData;
+        }
+        return commitData.containsKey(REBUILD_PENDING_KEY);
+    }
+
+    /**
+     * Removes the rebuild pending mark of the specified shard writer, which is committed along with the rebuilt
+     * documents.
+     *
+     * @param indexWriter The {@link IndexWriter} of a rebuilt shard.
+     */
+    static void clearRebuildPending(IndexWriter indexWriter)
+    {
+        Map<String, String> commitData = indexWriter.getCommitData();
+        if (commitData.containsKey(REBUILD_PENDING_KEY))
+        {
+            Map<String, String> newCommitData = new HashMap<>(commitData);
+            newCommitData.remove(REBUILD_PENDING_KEY);
+            indexWriter.setCommitData(newCommitData);
+        }
+    }
+
+    /**
+     * A shard of the index, with its own directory, writer and NRT searcher.
+     */
+    private class Shard
+    {
+        private final int index;
+        private final File file;
+
+        private Directory baseDirectory;
+        private NRTCachingDirectory directory;
+        private IndexWriter indexWriter;
+        private SearcherManager searcherManager;
+        private TrackingIndexWriter trackingIndexWriter;
+        private SearcherReopener searcherReopener;
+
+        private Shard(int index, File file)
+        {
+            this.index = index;
+            this.file = file;
+        }
+
+        /**
+         * Opens or creates the shard directory and starts its writer and NRT searcher.
+         *
+         * @param metrics The {@link RowIndexMetrics} to be updated.
+         * @throws IOException If there are I/O errors.
+         */
+        private void init(RowIndexMetrics metrics) throws IOException
+        {
+            // Open or create directory
+            baseDirectory = directory(file);
+            Directory throttledDirectory = CompactionMergeScheduler.throttled(baseDirectory);
+            directory = new NRTCachingDirectory(throttledDirectory, maxMergeMB, maxCachedMB);
+
+            // Setup index writer, merging as a compaction
+            IndexWriterConfig config = indexWriterConfig(IndexWriterConfig.OpenMode.CREATE_OR_APPEND, true);
+            indexWriter = new IndexWriter(directory, config);
+
+            // Discard documents written with an older format
+            if (checkFormat(indexWriter, paths.size()))
+            {
+                rebuildNeeded = true;
+            }
+
+            // Setup NRT search
+            SearcherFactory searcherFactory = new SearcherFactory()
+            {
+                public IndexSearcher newSearcher(IndexReader reader) throws IOException
+                {
+                    IndexSearcher searcher = new IndexSearcher(reader);
+                    searcher.setSimilarity(new NoIDFSimilarity());
+                    return searcher;
+                }
+            };
+            trackingIndexWriter = new TrackingIndexWriter(indexWriter);
+            searcherManager = new SearcherManager(indexWriter, true, searcherFactory);
+            searcherReopener = new SearcherReopener(trackingIndexWriter,
+                                                    searcherManager,
+                                                    refreshSeconds,
+                                                    minRefreshSeconds,
+                                                    metrics);
+            searcherReopener.start(); // Start the refresher thread
         }
 
+        /**
+         * Commits all changes to the shard, waits for pending merges to complete, and closes all associated resources.
+         *
+         * @throws IOException If there are I/O errors.
+         */
+        private void close() throws IOException
+        {
+            searcherReopener.close();
+            searcherManager.close();
+            indexWriter.close();
+            directory.close();
+        }
     }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.apache.cassandra.utils.CLibrary;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.MMapDirectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link MMapDirectory} that unmaps the closed files when it is supported by the JVM, and advises the kernel to preload
+ * into the page cache the files opened for searching. It also keeps track of the size of the mapped files.
+ */
+public class MMapIndexDirectory extends MMapDirectory
+{
+    private final Map<String, Long> mappedFiles = new ConcurrentHashMap<>();
+
+    /**
+     * Builds a new {@link MMapIndexDirectory} for the specified path.
+     *
+     * @param path The directory path.
+     * @throws IOException If there are I/O errors.
+     */
+    public MMapIndexDirectory(File path) throws IOException
+    {
+        super(path);
+        setUseUnmap(UNMAP_SUPPORTED);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IndexInput openInput(String name, IOContext context) throws IOException
+    {
+        advise(name, context);
+        return super.openInput(name, context);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IndexInputSlicer createSlicer(String name, IOContext context) throws IOException
+    {
+        advise(name, context);
+        return super.createSlicer(name, context);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteFile(String name) throws IOException
+    {
+        super.deleteFile(name);
+        mappedFiles.remove(name);
+    }
+
+    /**
+     * Returns the total size in bytes of the files that have been mapped and not deleted yet. It is an upper bound of
+     * the page cache used by the index searches.
+     *
+     * @return The total size in bytes of the mapped files.
+     */
+    public long getMappedBytes()
+    {
+        long mappedBytes = 0;
+        for (long length : mappedFiles.values())
+        {
+            mappedBytes += length;
+        }
+        return mappedBytes;
+    }
+
+    private void advise(String name, IOContext context) throws IOException
+    {
+        mappedFiles.put(name, fileLength(name));
+        if (context.context != IOContext.Context.MERGE)
+        {
+            CLibrary.tryWillNeed(new File(getDirectory(), name).getPath());
+        }
+    }
+}
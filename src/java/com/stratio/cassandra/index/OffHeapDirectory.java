@@ -0,0 +1,315 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.stratio.cassandra.index.util.Log;
+import org.apache.cassandra.cache.RefCountedMemory;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link FilterDirectory} that keeps a copy of the read files in off-heap memory, as long as they fit in a max size.
+ * Files are always written and synced to the delegate directory, so the index is as durable as with the delegate one.
+ * The off-heap copy of a file is dropped when the file is deleted or written again, because a few Lucene files, such as
+ * {@code segments.gen}, are rewritten in place. Files read for merging are not loaded, and the memory of a dropped file
+ * is released when its last input is closed.
+ */
+public class OffHeapDirectory extends FilterDirectory
+{
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final long maxBytes;
+    private final Map<String, RefCountedMemory> files = new HashMap<>();
+    private long usedBytes = 0;
+
+    /**
+     * Builds a new {@link OffHeapDirectory} over the specified {@link Directory}.
+     *
+     * @param in       The delegate {@link Directory}.
+     * @param maxBytes The max size in bytes of the files kept in off-heap memory.
+     */
+    public OffHeapDirectory(Directory in, long maxBytes)
+    {
+        super(in);
+        this.maxBytes = maxBytes;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IndexInput openInput(String name, IOContext context) throws IOException
+    {
+        RefCountedMemory memory = load(name, context);
+        if (memory == null)
+        {
+            return in.openInput(name, context);
+        }
+        return new OffHeapIndexInput("OffHeapIndexInput(name=" + name + ")", memory, 0, memory.size());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IndexInputSlicer createSlicer(final String name, IOContext context) throws IOException
+    {
+        final RefCountedMemory memory = load(name, context);
+        if (memory == null)
+        {
+            return in.createSlicer(name, context);
+        }
+        return new IndexInputSlicer()
+        {
+            @Override
+            public IndexInput openSlice(String sliceDescription, long offset, long length) throws IOException
+            {
+                if (!memory.reference())
+                {
+                    throw new IOException("Off-heap file " + name + " has already been released");
+                }
+                String description = "OffHeapIndexInput(" + sliceDescription + " in name=" + name + ")";
+                return new OffHeapIndexInput(description, memory, offset, length);
+            }
+
+            @Override
+            @SuppressWarnings("deprecation")
+            public IndexInput openFullSlice() throws IOException
+            {
+                return openSlice("full-slice", 0, memory.size());
+            }
+
+            @Override
+            public void close()
+            {
+                memory.unreference();
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IndexOutput createOutput(String name, IOContext context) throws IOException
+    {
+        release(name);
+        return in.createOutput(name, context);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteFile(String name) throws IOException
+    {
+        release(name);
+        in.deleteFile(name);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (this)
+        {
+            for (RefCountedMemory memory : files.values())
+            {
+                memory.unreference();
+            }
+            files.clear();
+            usedBytes = 0;
+        }
+        in.close();
+    }
+
+    /**
+     * Returns the size in bytes of the off-heap memory used by the index files.
+     *
+     * @return The size in bytes of the off-heap memory used by the index files.
+     */
+    public synchronized long getOffHeapBytes()
+    {
+        return usedBytes;
+    }
+
+    /**
+     * Returns a referenced off-heap copy of the specified file, loading it if it is not already loaded. It returns
+     * {@code null} if the file must be read from the delegate directory, because it is read for merging, it is rewritten
+     * in place or it doesn't fit in the remaining off-heap space.
+     *
+     * @param name    The file name.
+     * @param context The {@link IOContext} of the read.
+     * @return A referenced off-heap copy of the file, or {@code null} if it must be read from the delegate directory.
+     * @throws IOException If there are I/O errors.
+     */
+    private synchronized RefCountedMemory load(String name, IOContext context) throws IOException
+    {
+        RefCountedMemory memory = files.get(name);
+        if (memory != null)
+        {
+            return memory.reference() ? memory : null;
+        }
+
+        // segments.gen is rewritten in place, so it could be read while it is being written
+        if (context.context == IOContext.Context.MERGE || IndexFileNames.SEGMENTS_GEN.equals(name))
+        {
+            return null;
+        }
+
+        long length = in.fileLength(name);
+        if (length == 0 || usedBytes + length > maxBytes)
+        {
+            return null;
+        }
+
+        memory = new RefCountedMemory(length);
+        IndexInput input = in.openInput(name, IOContext.READONCE);
+        try
+        {
+            byte[] buffer = new byte[(int) Math.min(COPY_BUFFER_SIZE, length)];
+            long position = 0;
+            while (position < length)
+            {
+                int count = (int) Math.min(buffer.length, length - position);
+                input.readBytes(buffer, 0, count);
+                memory.setBytes(position, buffer, 0, count);
+                position += count;
+            }
+        }
+        catch (IOException e)
+        {
+            memory.unreference();
+            throw e;
+        }
+        finally
+        {
+            input.close();
+        }
+
+        Log.debug("Loaded %d bytes of file %s into off-heap memory", length, name);
+        files.put(name, memory);
+        usedBytes += length;
+        memory.reference();
+        return memory;
+    }
+
+    /**
+     * Releases the off-heap copy of the specified deleted or rewritten file, if any.
+     *
+     * @param name The file name.
+     */
+    private synchronized void release(String name)
+    {
+        RefCountedMemory memory = files.remove(name);
+        if (memory != null)
+        {
+            usedBytes -= memory.size();
+            memory.unreference();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString()
+    {
+        return "OffHeapDirectory(" + in.toString() + ")";
+    }
+
+    /**
+     * {@link IndexInput} reading a region of a {@link RefCountedMemory}. Each non-cloned input holds a reference to the
+     * memory, which is released when the input is closed.
+     */
+    private static final class OffHeapIndexInput extends IndexInput
+    {
+        private final RefCountedMemory memory;
+        private final long offset;
+        private final long length;
+        private long position = 0;
+        private boolean isClone = false;
+        private boolean closed = false;
+
+        private OffHeapIndexInput(String resourceDescription, RefCountedMemory memory, long offset, long length)
+        {
+            super(resourceDescription);
+            this.memory = memory;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public byte readByte() throws IOException
+        {
+            if (position >= length)
+            {
+                throw new EOFException("read past EOF: " + this);
+            }
+            return memory.getByte(offset + position++);
+        }
+
+        @Override
+        public void readBytes(byte[] b, int off, int len) throws IOException
+        {
+            if (position + len > length)
+            {
+                throw new EOFException("read past EOF: " + this);
+            }
+            memory.getBytes(offset + position, b, off, len);
+            position += len;
+        }
+
+        @Override
+        public long getFilePointer()
+        {
+            return position;
+        }
+
+        @Override
+        public void seek(long pos) throws IOException
+        {
+            if (pos < 0 || pos > length)
+            {
+                throw new EOFException("seek past EOF: " + this);
+            }
+            position = pos;
+        }
+
+        @Override
+        public long length()
+        {
+            return length;
+        }
+
+        @Override
+        public OffHeapIndexInput clone()
+        {
+            OffHeapIndexInput clone = (OffHeapIndexInput) super.clone();
+            clone.isClone = true;
+            return clone;
+        }
+
+        @Override
+        public void close()
+        {
+            if (!isClone && !closed)
+            {
+                closed = true;
+                memory.unreference();
+            }
+        }
+    }
+}
@@ -25,14 +25,17 @@ import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.Row;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.dht.IPartitioner;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
-import org.apache.lucene.document.Field.Store;
-import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
 
@@ -94,9 +97,9 @@ public class PartitionKeyMapper
      */
     public void addFields(Document document, DecoratedKey partitionKey)
     {
-        String serializedKey = ByteBufferUtils.toString(partitionKey.getKey());
-        Field field = new StringField(FIELD_NAME, serializedKey, Store.YES);
-        document.add(field);
+        BytesRef bytesRef = ByteBufferUtils.bytesRef(partitionKey.getKey());
+        document.add(new KeyField(FIELD_NAME, bytesRef));
+        document.add(new BinaryDocValuesField(FIELD_NAME, bytesRef));
     }
 
     /**
@@ -107,8 +110,8 @@ public class PartitionKeyMapper
      */
     public Term term(DecoratedKey partitionKey)
     {
-        String serializedKey = ByteBufferUtils.toString(partitionKey.getKey());
-        return new Term(FIELD_NAME, serializedKey);
+        BytesRef bytesRef = ByteBufferUtils.bytesRef(partitionKey.getKey());
+        return new Term(FIELD_NAME, bytesRef);
     }
 
     /**
@@ -123,15 +126,19 @@ public class PartitionKeyMapper
     }
 
     /**
-     * Returns the {@link DecoratedKey} contained in the specified Lucene {@link Document}.
+     * Returns the {@link DecoratedKey} of the specified document, read from the partition key doc values.
      *
-     * @param document the {@link Document} containing the partition key to be get.
-     * @return The {@link DecoratedKey} contained in the specified Lucene {@link Document}.
+     * @param reader The {@link AtomicReader} containing the document.
+     * @param docId  The document id, relative to {@code reader}.
+     * @return The {@link DecoratedKey} of the specified document.
+     * @throws IOException If there are I/O errors reading the doc values.
      */
-    public DecoratedKey partitionKey(Document document)
+    public DecoratedKey partitionKey(AtomicReader reader, int docId) throws IOException
     {
-        String string = document.get(FIELD_NAME);
-        ByteBuffer partitionKey = ByteBufferUtils.fromString(string);
+        BinaryDocValues docValues = reader.getBinaryDocValues(FIELD_NAME);
+        BytesRef bytesRef = new BytesRef();
+        docValues.get(docId, bytesRef);
+        ByteBuffer partitionKey = ByteBufferUtils.byteBuffer(bytesRef);
         return partitionKey(partitionKey);
     }
 
@@ -68,9 +68,9 @@ public class RegularCellsMapper
         ColumnFamily columnFamily = row.cf;
         Columns columns = new Columns();
 
-        // Get row's columns iterator skipping clustering column
+        // Get row's columns iterator, the CQL3 row marker is skipped because it has no column definition, and it
+        // isn't always the first cell because static cells are sorted before it
         Iterator<Cell> cellIterator = columnFamily.iterator();
-        cellIterator.next();
 
         // Stuff for grouping collection columns (sets, lists and maps)
         String name;
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.stratio.cassandra.index.util.Log;
+import com.yammer.metrics.core.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the row reading tasks of an index, possibly in parallel in an {@link Executor} shared by all the indexes, with
+ * at most a fixed number of tasks of the index running or waiting in the executor at the same time.
+ *
+ * @author Andres de la Pena <adelapena@stratio.com>
+ */
+class RowFetcher
+{
+    private final Executor executor;
+    private final int concurrency;
+    private final Semaphore permits;
+    private final Timer queueLatency;
+    private final Timer latency;
+
+    /**
+     * Builds a new {@link RowFetcher}.
+     *
+     * @param executor     The {@link Executor} running the tasks in parallel.
+     * @param concurrency  The max number of tasks running in {@code executor} at the same time.
+     * @param queueLatency The {@link Timer} measuring the time spent by the tasks waiting in {@code executor}.
+     * @param latency      The {@link Timer} measuring the time spent running the tasks.
+     */
+    RowFetcher(Executor executor, int concurrency, Timer queueLatency, Timer latency)
+    {
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.permits = new Semaphore(concurrency);
+        this.queueLatency = queueLatency;
+        this.latency = latency;
+    }
+
+    /**
+     * Runs the specified row reading tasks, returning their results in the same order. If the concurrency is greater
+     * than one the tasks are run in parallel by the executor, otherwise they are run one after another in the calling
+     * thread. If a task fails or the calling thread is interrupted, the tasks that have not started yet are cancelled,
+     * and the running ones are left to finish.
+     *
+     * @param tasks The row reading tasks to be run.
+     * @param <T>   The type of the task results.
+     * @return The results of {@code tasks}, in the same order.
+     */
+    <T> List<T> fetch(List<Callable<T>> tasks)
+    {
+        List<T> results = new ArrayList<>(tasks.size());
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try
+        {
+            if (concurrency == 1 || tasks.size() == 1)
+            {
+                for (Callable<T> task : tasks)
+                {
+                    results.add(fetch(task, System.nanoTime()));
+                }
+            }
+            else
+            {
+                for (final Callable<T> task : tasks)
+                {
+                    permits.acquire();
+                    final long submitTime = System.nanoTime();
+                    // The permit is released by whoever claims the task first: the task itself when it starts running,
+                    // which keeps the permit until it finishes, or the cancellation of a task that never ran
+                    final AtomicBoolean claimed = new AtomicBoolean();
+                    FutureTask<T> future = new FutureTask<T>(new Callable<T>()
+                    {
+                        @Override
+                        public T call() throws Exception
+                        {
+                            if (!claimed.compareAndSet(false, true))
+                            {
+                                throw new CancellationException();
+                            }
+                            try
+                            {
+                                return fetch(task, submitTime);
+                            }
+                            finally
+                            {
+                                permits.release();
+                            }
+                        }
+                    })
+                    {
+                        @Override
+                        protected void done()
+                        {
+                            // Called once the task has finished, failed or been cancelled, even if it never ran
+                            if (claimed.compareAndSet(false, true))
+                            {
+                                permits.release();
+                            }
+                        }
+                    };
+                    try
+                    {
+                        executor.execute(future);
+                    }
+                    catch (RejectedExecutionException e)
+                    {
+                        permits.release();
+                        throw e;
+                    }
+                    futures.add(future);
+                }
+                for (Future<T> future : futures)
+                {
+                    results.add(future.get());
+                }
+            }
+            return results;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            cancel(futures);
+            Log.debug("Interrupted while fetching rows");
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e)
+        {
+            cancel(futures);
+            Log.error(e, "Error while fetching rows");
+            throw new RuntimeException(e.getCause());
+        }
+        catch (Exception e)
+        {
+            cancel(futures);
+            Log.error(e, "Error while fetching rows");
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Cancels the specified tasks that have not started yet. The running tasks are not interrupted, because an
+     * interrupt closes the {@link java.nio.channels.FileChannel} of the SSTable reader in use, which would then be
+     * recycled closed and fail the next reads of the same SSTable.
+     *
+     * @param futures The tasks to be cancelled.
+     */
+    private static void cancel(List<? extends Future<?>> futures)
+    {
+        for (Future<?> future : futures)
+        {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Runs the specified row reading task, updating the fetch metrics.
+     *
+     * @param task       The row reading task to be run.
+     * @param submitTime The time in nanoseconds at which {@code task} was submitted.
+     * @param <T>        The type of the task result.
+     * @return The result of {@code task}.
+     * @throws Exception If {@code task} fails.
+     */
+    private <T> T fetch(Callable<T> task, long submitTime) throws Exception
+    {
+        long startTime = System.nanoTime();
+        queueLatency.update(startTime - submitTime, TimeUnit.NANOSECONDS);
+        try
+        {
+            return task.call();
+        }
+        finally
+        {
+            latency.update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Returns the number of tasks that can still be submitted to the executor without blocking.
+     *
+     * @return The number of available permits.
+     */
+    int availablePermits()
+    {
+        return permits.availablePermits();
+    }
+}
@@ -21,14 +21,19 @@ import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.commitlog.CommitLog;
+import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.composites.CellName;
 import org.apache.cassandra.db.index.PerRowSecondaryIndex;
+import org.apache.cassandra.db.index.SecondaryIndexBuilder;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
 import org.apache.cassandra.db.index.SecondaryIndexSearcher;
 import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.utils.concurrent.OpOrder;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -54,7 +59,7 @@ public class RowIndex extends PerRowSecondaryIndex
 
     private RowService rowService;
 
-    // Concurrency lock
+    // Concurrency lock, only exclusive for the operations replacing or dropping the row service
     private ReadWriteLock lock = new ReentrantReadWriteLock();
 
     @Override
@@ -123,6 +128,13 @@ public class RowIndex extends PerRowSecondaryIndex
 
         // Build row mapper
         rowService = RowService.build(baseCfs, columnDefinition);
+
+        // Force a rebuild if the Lucene index has been discarded due to an outdated format, now or in a previous start
+        if (rowService.isRebuildNeeded())
+        {
+            Log.info("Index %s must be rebuilt", logName);
+            setIndexRemoved();
+        }
     }
 
     /**
@@ -156,7 +168,8 @@ public class RowIndex extends PerRowSecondaryIndex
     }
 
     /**
-     * cleans up deleted columns from cassandra cleanup compaction
+     * cleans up deleted columns from cassandra cleanup compaction. The deletion is ordered with the indexing of the same
+     * partition, so it only excludes the index removal and reinitialization.
      *
      * @param key The partition key of the physical row to be deleted.
      */
@@ -164,11 +177,13 @@ public class RowIndex extends PerRowSecondaryIndex
     public void delete(DecoratedKey key, OpOrder.Group opGroup)
     {
         Log.debug("Removing row %s from index %s", key, logName);
-        lock.writeLock().lock();
+        lock.readLock().lock();
         try
         {
-            rowService.delete(key);
-            rowService = null;
+            if (rowService != null)
+            {
+                rowService.delete(key);
+            }
         }
         catch (RuntimeException e)
         {
@@ -177,7 +192,7 @@ public class RowIndex extends PerRowSecondaryIndex
         }
         finally
         {
-            lock.writeLock().unlock();
+            lock.readLock().unlock();
         }
     }
 
@@ -312,14 +327,24 @@ public class RowIndex extends PerRowSecondaryIndex
         Log.info("Reloading index %s", logName);
     }
 
+    /**
+     * Commits the index, recording the current commit log position. Before committing, it waits for the running writes,
+     * so all the writes before that position have been indexed and the commit log replay can start from it. The wait is
+     * done without holding the lock, because the running writes could be waiting for it.
+     */
     @Override
     public void forceBlockingFlush()
     {
         Log.info("Flushing index %s", logName);
-        lock.writeLock().lock();
+        ReplayPosition replayPosition = CommitLog.instance.getContext();
+        baseCfs.keyspace.writeOrder.awaitNewBarrier();
+        lock.readLock().lock();
         try
         {
-            rowService.commit();
+            if (rowService != null)
+            {
+                rowService.commit(replayPosition);
+            }
             Log.info("Flushed index %s", logName);
         }
         catch (RuntimeException e)
@@ -329,8 +354,53 @@ public class RowIndex extends PerRowSecondaryIndex
         }
         finally
         {
-            lock.writeLock().unlock();
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the commit log position before which all the writes are included in the last index commit.
+     *
+     * @return The commit log position before which all the writes are included in the last index commit.
+     */
+    @Override
+    public ReplayPosition getReplayPosition()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return rowService == null ? null : rowService.getReplayPosition();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a {@link RowIndexBuilder} for indexing the specified SSTables in bulk. If they contain all the base table
+     * data, the index is rebuilt from them. Otherwise, they are new SSTables, such as the ones received by streaming,
+     * and the index segments built from them are added to the index, reindexing one at a time only the partitions that
+     * may have more columns in other SSTables.
+     *
+     * @param sstables The SSTables to be indexed.
+     * @return A {@link RowIndexBuilder}, or {@code null} if the SSTables must be indexed one partition at a time.
+     */
+    @Override
+    public SecondaryIndexBuilder getBulkBuilder(Collection<SSTableReader> sstables)
+    {
+        RowService rowService = this.rowService;
+        if (rowService == null)
+        {
+            return null;
+        }
+        if (sstables.containsAll(baseCfs.getSSTables()))
+        {
+            Log.info("Index %s will be rebuilt in bulk", logName);
+            return new RowIndexBuilder(baseCfs, indexName, rowService);
         }
+        Log.info("Index %s will be built in bulk for %d new SSTables", logName, sstables.size());
+        return new RowIndexBuilder(baseCfs, indexName, rowService, sstables);
     }
 
     @Override
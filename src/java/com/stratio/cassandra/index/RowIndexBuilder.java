@@ -0,0 +1,484 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.stratio.cassandra.index.util.Log;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.db.ArrayBackedSortedColumns;
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.columniterator.IdentityQueryFilter;
+import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
+import org.apache.cassandra.db.compaction.CompactionInfo;
+import org.apache.cassandra.db.compaction.CompactionInterruptedException;
+import org.apache.cassandra.db.compaction.CompactionManager;
+import org.apache.cassandra.db.compaction.ICompactionScanner;
+import org.apache.cassandra.db.compaction.OperationType;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.index.SecondaryIndexBuilder;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.CloseableIterator;
+import org.apache.cassandra.utils.MergeIterator;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link SecondaryIndexBuilder} rebuilding a {@link RowIndex} in bulk. The base table SSTables are sequentially
+ * scanned and merged, and the {@link Document}s are built directly from the merged partitions, without reading them
+ * again. The {@link Document}s are written into independent Lucene indexes by several threads, and these indexes then
+ * replace the contents of the {@link RowIndex} with {@link IndexWriter#addIndexes(Directory...)}.
+ * <p/>
+ * It can also index just some new SSTables, such as the ones received by streaming during bootstrap or repair. In
+ * that case, only the new SSTables are scanned and the resulting indexes are added to the contents of the {@link
+ * RowIndex}. The partitions that may have more data in the other SSTables are not written into these indexes, but
+ * read from the base table and reindexed one at a time at the end.
+ * <p/>
+ * The partitions written while the rebuild is running are reindexed at the end, so the index is consistent with the
+ * base table without blocking writes. The progress is reported as an index build in the active compactions.
+ */
+public class RowIndexBuilder extends SecondaryIndexBuilder
+{
+    /** The number of merged partitions waiting to be indexed per writing thread. */
+    private static final int QUEUE_SIZE_PER_THREAD = 64;
+
+    /** The max time in milliseconds to wait for a queue operation before checking the writing threads status. */
+    private static final long QUEUE_TIMEOUT_MILLIS = 100;
+
+    /** Marker for the end of the merged partitions. */
+    private static final Row END = new Row((DecoratedKey) null, null);
+
+    private static final Comparator<OnDiskAtomIterator> COMPARE_BY_KEY = new Comparator<OnDiskAtomIterator>()
+    {
+        public int compare(OnDiskAtomIterator o1, OnDiskAtomIterator o2)
+        {
+            return DecoratedKey.comparator.compare(o1.getKey(), o2.getKey());
+        }
+    };
+
+    private final ColumnFamilyStore baseCfs;
+    private final String indexName;
+    private final RowService rowService;
+    private final Collection<SSTableReader> newSSTables;
+    private final int numThreads;
+    private final BlockingQueue<Row> queue;
+    private final AtomicLong numDocs = new AtomicLong();
+
+    private volatile List<ICompactionScanner> scanners = Collections.emptyList();
+    private volatile boolean aborted = false;
+
+    /**
+     * Builds a new {@link RowIndexBuilder} for rebuilding the specified index.
+     *
+     * @param baseCfs    The base column family store.
+     * @param indexName  The name of the index to be rebuilt.
+     * @param rowService The {@link RowService} of the index to be rebuilt.
+     */
+    public RowIndexBuilder(ColumnFamilyStore baseCfs, String indexName, RowService rowService)
+    {
+        this(baseCfs, indexName, rowService, null);
+    }
+
+    /**
+     * Builds a new {@link RowIndexBuilder} for indexing the specified new SSTables, which must be already added to the
+     * base table and referenced by the caller.
+     *
+     * @param baseCfs     The base column family store.
+     * @param indexName   The name of the index to be built.
+     * @param rowService  The {@link RowService} of the index to be built.
+     * @param newSSTables The SSTables to be indexed, or {@code null} for rebuilding the index from all the SSTables.
+     */
+    public RowIndexBuilder(ColumnFamilyStore baseCfs,
+                           String indexName,
+                           RowService rowService,
+                           Collection<SSTableReader> newSSTables)
+    {
+        super(baseCfs, Collections.singleton(indexName));
+        this.baseCfs = baseCfs;
+        this.indexName = indexName;
+        this.rowService = rowService;
+        this.newSSTables = newSSTables;
+        this.numThreads = rowService.getRebuildThreads();
+        this.queue = new ArrayBlockingQueue<>(numThreads * QUEUE_SIZE_PER_THREAD);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompactionInfo getCompactionInfo()
+    {
+        long bytesRead = 0;
+        long totalBytes = 0;
+        for (ICompactionScanner scanner : scanners)
+        {
+            bytesRead += scanner.getCurrentPosition();
+            totalBytes += scanner.getLengthInBytes();
+        }
+        return new CompactionInfo(baseCfs.metadata, OperationType.INDEX_BUILD, bytesRead, totalBytes);
+    }
+
+    /**
+     * {@inheritDoc} The builds of the same index are run one at a time, because each one tracks the partitions written
+     * while it is running, and because a rebuild replaces the segments added by any concurrent build.
+     */
+    @Override
+    public void build()
+    {
+        synchronized (rowService)
+        {
+            buildInner();
+        }
+    }
+
+    private void buildInner()
+    {
+        if (newSSTables == null)
+        {
+            Log.info("Rebuilding index %s in bulk with %d threads", indexName, numThreads);
+        }
+        else
+        {
+            Log.info("Indexing %d new SSTables in %s in bulk with %d threads", newSSTables.size(), indexName, numThreads);
+        }
+        long startTime = System.currentTimeMillis();
+        long timestamp = startTime;
+        boolean finished = false;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, new NamedThreadFactory("LuceneRebuild"));
+        int numShards = rowService.getNumShards();
+        List<List<Directory>> directories = new ArrayList<>(numShards);
+        for (int shard = 0; shard < numShards; shard++)
+        {
+            directories.add(new ArrayList<Directory>(numThreads));
+        }
+        List<Future<Void>> futures = new ArrayList<>(numThreads);
+        Collection<SSTableReader> sstables = Collections.emptyList();
+        try
+        {
+            // Track the writes before flushing, so no write is missed by both the rebuild and the tracking
+            rowService.beginRebuild();
+            baseCfs.forceBlockingFlush();
+            sstables = baseCfs.markCurrentSSTablesReferenced();
+
+            // The other SSTables may have more data for the partitions in the new ones
+            Collection<SSTableReader> scannedSSTables = sstables;
+            List<SSTableReader> otherSSTables = Collections.emptyList();
+            if (newSSTables != null)
+            {
+                scannedSSTables = newSSTables;
+                otherSSTables = new ArrayList<>(sstables);
+                otherSSTables.removeAll(newSSTables);
+            }
+            List<DecoratedKey> keysToReindex = new ArrayList<>();
+
+            // Start the segment writers, each one writing a segment directory per shard in the shard data directory
+            for (int i = 0; i < numThreads; i++)
+            {
+                IndexWriter[] indexWriters = new IndexWriter[numShards];
+                for (int shard = 0; shard < numShards; shard++)
+                {
+                    File file = new File(rowService.getPath(shard) + "-build-" + i);
+                    FileUtils.deleteRecursive(file); // Discard leftovers of interrupted rebuilds
+                    Directory directory = FSDirectory.open(file);
+                    directories.get(shard).add(directory);
+                    indexWriters[shard] = rowService.segmentWriter(directory);
+                }
+                futures.add(executor.submit(new SegmentWriter(indexWriters, timestamp)));
+            }
+
+            // Scan and merge the SSTables
+            List<ICompactionScanner> scanners = new ArrayList<>(scannedSSTables.size());
+            for (SSTableReader sstable : scannedSSTables)
+            {
+                scanners.add(sstable.getScanner(CompactionManager.instance.getRateLimiter()));
+            }
+            this.scanners = scanners;
+            CloseableIterator<Row> rows = merge(scanners, timestamp);
+            try
+            {
+                while (rows.hasNext())
+                {
+                    if (isStopRequested())
+                    {
+                        throw new CompactionInterruptedException(getCompactionInfo());
+                    }
+                    Row row = rows.next();
+                    if (mayBePresent(row.key, otherSSTables))
+                    {
+                        keysToReindex.add(row.key);
+                    }
+                    else
+                    {
+                        put(row, futures);
+                    }
+                }
+            }
+            finally
+            {
+                rows.close();
+            }
+
+            // Wait for the segment writers
+            for (int i = 0; i < numThreads; i++)
+            {
+                put(END, futures);
+            }
+            for (Future<Void> future : futures)
+            {
+                future.get();
+            }
+
+            if (newSSTables == null)
+            {
+                rowService.finishRebuild(directories, timestamp);
+            }
+            else
+            {
+                rowService.finishBuild(directories, keysToReindex, timestamp);
+            }
+            finished = true;
+            Log.info("Built index %s with %d documents in %d ms",
+                     indexName,
+                     numDocs.get(),
+                     System.currentTimeMillis() - startTime);
+        }
+        catch (CompactionInterruptedException e)
+        {
+            throw e;
+        }
+        catch (ExecutionException e)
+        {
+            Log.error(e, "Error while rebuilding index %s", indexName);
+            throw new RuntimeException(e.getCause());
+        }
+        catch (Exception e)
+        {
+            Log.error(e, "Error while rebuilding index %s", indexName);
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            if (!finished)
+            {
+                aborted = true;
+                rowService.abortRebuild();
+            }
+            executor.shutdown();
+            awaitTermination(executor);
+            SSTableReader.releaseReferences(sstables);
+            scanners = Collections.emptyList();
+            for (List<Directory> shardDirectories : directories)
+            {
+                for (Directory directory : shardDirectories)
+                {
+                    FileUtils.closeQuietly(directory);
+                    FileUtils.deleteRecursive(((FSDirectory) directory).getDirectory());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns if the specified partition may have data in any of the specified SSTables, according to their bloom
+     * key ranges and bloom filters.
+     *
+     * @param key      A partition key.
+     * @param sstables The SSTables to be checked.
+     * @return {@code true} if the partition may have data in any of the SSTables, {@code false} otherwise.
+     */
+    private static boolean mayBePresent(DecoratedKey key, List<SSTableReader> sstables)
+    {
+        for (SSTableReader sstable : sstables)
+        {
+            if (key.compareTo(sstable.first) >= 0 &&
+                key.compareTo(sstable.last) <= 0 &&
+                sstable.getBloomFilter().isPresent(key.getKey()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns an iterator over the merged partitions of the specified SSTable scanners.
+     *
+     * @param scanners  The SSTable scanners.
+     * @param timestamp The time stamp to purge tombstones.
+     * @return An iterator over the merged partitions.
+     */
+    private CloseableIterator<Row> merge(List<ICompactionScanner> scanners, long timestamp)
+    {
+        final int gcBefore = baseCfs.gcBefore(timestamp);
+        final long now = timestamp;
+        return MergeIterator.get(scanners, COMPARE_BY_KEY, new MergeIterator.Reducer<OnDiskAtomIterator, Row>()
+        {
+            private final List<OnDiskAtomIterator> atomIterators = new ArrayList<>();
+            private DecoratedKey key;
+            private ColumnFamily columnFamily;
+
+            @Override
+            protected void onKeyChange()
+            {
+                columnFamily = ArrayBackedSortedColumns.factory.create(baseCfs.metadata);
+            }
+
+            @Override
+            public void reduce(OnDiskAtomIterator current)
+            {
+                atomIterators.add(current);
+                key = current.getKey();
+                columnFamily.delete(current.getColumnFamily());
+            }
+
+            @Override
+            protected Row getReduced()
+            {
+                QueryFilter.collateOnDiskAtom(columnFamily, atomIterators, new IdentityQueryFilter(), gcBefore, now);
+                Row row = new Row(key, columnFamily);
+                atomIterators.clear();
+                key = null;
+                return row;
+            }
+        });
+    }
+
+    /**
+     * Puts the specified merged partition into the queue of partitions to be indexed, waiting if necessary while the
+     * segment writers are alive.
+     *
+     * @param row     A merged partition.
+     * @param futures The futures of the segment writers.
+     * @throws Exception If any of the segment writers has failed.
+     */
+    private void put(Row row, List<Future<Void>> futures) throws Exception
+    {
+        while (!queue.offer(row, QUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+        {
+            for (Future<Void> future : futures)
+            {
+                if (future.isDone())
+                {
+                    future.get(); // Segment writers only finish before the end marker if they fail
+                    throw new IllegalStateException("Segment writer finished before the end of the rebuild");
+                }
+            }
+        }
+    }
+
+    private void awaitTermination(ExecutorService executor)
+    {
+        try
+        {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Log.error(e, "Interrupted while waiting for the segment writers of index %s", indexName);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Task writing into its own Lucene indexes, one per shard, the {@link Document}s of the merged partitions taken
+     * from the queue.
+     */
+    private class SegmentWriter implements Callable<Void>
+    {
+        private final IndexWriter[] indexWriters;
+        private final long timestamp;
+
+        private SegmentWriter(IndexWriter[] indexWriters, long timestamp)
+        {
+            this.indexWriters = indexWriters;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public Void call() throws Exception
+        {
+            boolean closed = false;
+            try
+            {
+                while (!aborted)
+                {
+                    Row row = queue.poll(QUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (row == END)
+                    {
+                        for (IndexWriter indexWriter : indexWriters)
+                        {
+                            indexWriter.close();
+                        }
+                        closed = true;
+                        break;
+                    }
+                    else if (row != null)
+                    {
+                        IndexWriter indexWriter = indexWriters[rowService.shard(row.key)];
+                        for (Document document : rowService.documents(row.key, row.cf, timestamp).values())
+                        {
+                            indexWriter.addDocument(document);
+                            numDocs.incrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            }
+            finally
+            {
+                if (!closed)
+                {
+                    rollback();
+                }
+            }
+        }
+
+        private void rollback()
+        {
+            for (IndexWriter indexWriter : indexWriters)
+            {
+                try
+                {
+                    indexWriter.rollback();
+                }
+                catch (IOException e)
+                {
+                    Log.error(e, "Error while discarding segment writer of index %s", indexName);
+                }
+            }
+        }
+    }
+}
@@ -21,6 +21,8 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -35,6 +37,9 @@ public class RowIndexConfig
     private static final String REFRESH_SECONDS_OPTION = "refresh_seconds";
     private static final double DEFAULT_REFRESH_SECONDS = 60;
 
+    private static final String MIN_REFRESH_SECONDS_OPTION = "min_refresh_seconds";
+    private static final double DEFAULT_MIN_REFRESH_SECONDS = 0.1;
+
     private static final String INDEXES_DIR_NAME = "lucene";
 
     private static final String RAM_BUFFER_MB_OPTION = "ram_buffer_mb";
@@ -52,14 +57,55 @@ public class RowIndexConfig
     private static final String INDEXING_QUEUES_SIZE_OPTION = "indexing_queues_size";
     private static final int DEFAULT_INDEXING_QUEUES_SIZE = 50;
 
+    private static final String INDEXING_BATCH_SIZE_OPTION = "indexing_batch_size";
+    private static final int DEFAULT_INDEXING_BATCH_SIZE = 100;
+
+    private static final String INDEXING_BATCH_LINGER_MS_OPTION = "indexing_batch_linger_ms";
+    private static final int DEFAULT_INDEXING_BATCH_LINGER_MS = 0;
+
+    private static final String WRITE_MODE_OPTION = "write_mode";
+    private static final WriteMode DEFAULT_WRITE_MODE = WriteMode.READ_BEFORE_WRITE;
+
+    private static final String FETCH_CONCURRENCY_OPTION = "fetch_concurrency";
+    private static final int DEFAULT_FETCH_CONCURRENCY = 1;
+
+    private static final String DIRECTORY_TYPE_OPTION = "directory_type";
+    private static final DirectoryType DEFAULT_DIRECTORY_TYPE = DirectoryType.FS;
+
+    private static final String OFF_HEAP_MB_OPTION = "off_heap_mb";
+    private static final int DEFAULT_OFF_HEAP_MB = 64;
+
+    private static final String REBUILD_THREADS_OPTION = "rebuild_threads";
+    private static final int DEFAULT_REBUILD_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final String FILTER_CACHE_MB_OPTION = "filter_cache_mb";
+    private static final int DEFAULT_FILTER_CACHE_MB = 32;
+
+    private static final String SHARDS_OPTION = "shards";
+    private static final int DEFAULT_SHARDS = 1;
+
+    private static final String MERGE_THREADS_OPTION = "merge_threads";
+    private static final int DEFAULT_MERGE_THREADS = 1;
+
     private final Schema schema;
     private final double refreshSeconds;
-    private final String path;
+    private final double minRefreshSeconds;
+    private final List<String> paths;
     private final int ramBufferMB;
     private final int maxMergeMB;
     private final int maxCachedMB;
     private final int indexingThreads;
     private final int indexingQueuesSize;
+    private final int indexingBatchSize;
+    private final int indexingBatchLingerMs;
+    private final WriteMode writeMode;
+    private final int fetchConcurrency;
+    private final DirectoryType directoryType;
+    private final int offHeapMB;
+    private final int rebuildThreads;
+    private final int filterCacheMB;
+    private final int shards;
+    private final int mergeThreads;
 
     /**
      * Builds a new {@link RowIndexConfig} for the column family defined by the specified metadata using the specified
@@ -94,6 +140,37 @@ public class RowIndexConfig
             refreshSeconds = DEFAULT_REFRESH_SECONDS;
         }
 
+        // Setup min refresh seconds
+        String minRefreshOption = options.get(MIN_REFRESH_SECONDS_OPTION);
+        if (minRefreshOption != null)
+        {
+            try
+            {
+                minRefreshSeconds = Double.parseDouble(minRefreshOption);
+            }
+            catch (NumberFormatException e)
+            {
+                String msg = String.format("'%s' must be a strictly positive double", MIN_REFRESH_SECONDS_OPTION);
+                throw new RuntimeException(msg);
+            }
+            if (minRefreshSeconds <= 0)
+            {
+                String msg = String.format("'%s' must be strictly positive", MIN_REFRESH_SECONDS_OPTION);
+                throw new RuntimeException(msg);
+            }
+            if (minRefreshSeconds > refreshSeconds)
+            {
+                String msg = String.format("'%s' must not be greater than '%s'",
+                                           MIN_REFRESH_SECONDS_OPTION,
+                                           REFRESH_SECONDS_OPTION);
+                throw new RuntimeException(msg);
+            }
+        }
+        else
+        {
+            minRefreshSeconds = Math.min(DEFAULT_MIN_REFRESH_SECONDS, refreshSeconds);
+        }
+
         // Setup write buffer size
         String ramBufferSizeOption = options.get(RAM_BUFFER_MB_OPTION);
         if (ramBufferSizeOption != null)
@@ -209,6 +286,190 @@ public class RowIndexConfig
             indexingQueuesSize = DEFAULT_INDEXING_QUEUES_SIZE;
         }
 
+        // Setup the max number of queued writes applied at once by each indexing thread
+        String indexingBatchSizeOption = options.get(INDEXING_BATCH_SIZE_OPTION);
+        if (indexingBatchSizeOption != null)
+        {
+            try
+            {
+                indexingBatchSize = Integer.parseInt(indexingBatchSizeOption);
+            }
+            catch (NumberFormatException e)
+            {
+                String msg = String.format("'%s'  must be a strictly positive integer", INDEXING_BATCH_SIZE_OPTION);
+                throw new RuntimeException(msg);
+            }
+            if (indexingBatchSize <= 0)
+            {
+                String msg = String.format("'%s'  must be strictly positive", INDEXING_BATCH_SIZE_OPTION);
+                throw new RuntimeException(msg);
+            }
+        }
+        else
+        {
+            indexingBatchSize = DEFAULT_INDEXING_BATCH_SIZE;
+        }
+
+        // Setup the max time waiting for an indexing batch to fill up
+        String indexingBatchLingerMsOption = options.get(INDEXING_BATCH_LINGER_MS_OPTION);
+        if (indexingBatchLingerMsOption != null)
+        {
+            try
+            {
+                indexingBatchLingerMs = Integer.parseInt(indexingBatchLingerMsOption);
+            }
+            catch (NumberFormatException e)
+            {
+                String msg = String.format("'%s'  must be a positive integer", INDEXING_BATCH_LINGER_MS_OPTION);
+                throw new RuntimeException(msg);
+            }
+            if (indexingBatchLingerMs < 0)
+            {
+                String msg = String.format("'%s'  must be positive", INDEXING_BATCH_LINGER_MS_OPTION);
+                throw new RuntimeException(msg);
+            }
+        }
+        else
+        {
+            indexingBatchLingerMs = DEFAULT_INDEXING_BATCH_LINGER_MS;
+        }
+
+        // Setup write mode
+        String writeModeOption = options.get(WRITE_MODE_OPTION);
+        if (writeModeOption != null)
+        {
+            try
+            {
+                writeMode = WriteMode.fromOption(writeModeOption);
+            }
+            catch (IllegalArgumentException e)
+            {
+                String msg = String.format("'%s' must be one of 'read_before_write', 'blind' or 'insert_only'",
+                                           WRITE_MODE_OPTION);
+                throw new RuntimeException(msg);
+            }
+        }
+        else
+        {
+            writeMode = DEFAULT_WRITE_MODE;
+        }
+
+        // Setup concurrent row fetching
+        String fetchConcurrencyOption = options.get(FETCH_CONCURRENCY_OPTION);
+        if (fetchConcurrencyOption != null)
+        {
+            try
+            {
+                fetchConcurrency = Integer.parseInt(fetchConcurrencyOption);
+            }
+            catch (NumberFormatException e)
+            {
+                String msg = String.format("'%s'  must be a strictly positive integer", FETCH_CONCURRENCY_OPTION);
+                throw new RuntimeException(msg);
+            }
+            if (fetchConcurrency <= 0)
+            {
+                String msg = String.format("'%s'  must be strictly positive", FETCH_CONCURRENCY_OPTION);
+                throw new RuntimeException(msg);
+            }
+        }
+        else
+        {
+            fetchConcurrency = DEFAULT_FETCH_CONCURRENCY;
+        }
+
+        // Setup directory type
+        String directoryTypeOption = options.get(DIRECTORY_TYPE_OPTION);
+        if (directoryTypeOption != null)
+        {
+            try
+            {
+                directoryType = DirectoryType.fromOption(directoryTypeOption);
+            }
+            catch (IllegalArgumentException e)
+            {
+                String msg = String.format("'%s' must be one of 'fs', 'mmap', 'niofs' or 'off_heap'",
+                                           DIRECTORY_TYPE_OPTION);
+                throw new RuntimeException(msg);
+            }
+        }
+        else
+        {
+            directoryType = DEFAULT_DIRECTORY_TYPE;
+        }
+
+        // Setup off-heap directory size
+        String offHeapMBOption = options.get(OFF_HEAP_MB_OPTION);
+        if (offHeapMBOption != null)
+        {
+            try
+            {
+                offHeapMB = Integer.parseInt(offHeapMBOption);
+            }
+            catch (NumberFormatException e)
+            {
+                String msg = String.format("'%s'  must be a strictly positive integer", OFF_HEAP_MB_OPTION);
+                throw new RuntimeException(msg);
+            }
+            if (offHeapMB <= 0)
+            {
+                String msg = String.format("'%s'  must be strictly positive", OFF_HEAP_MB_OPTION);
+                throw new RuntimeException(msg);
+            }
+        }
+        else
+        {
+            offHeapMB = DEFAULT_OFF_HEAP_MB;
+        }
+
+        // Setup rebuild threads
+        String rebuildThreadsOption = options.get(REBUILD_THREADS_OPTION);
+        if (rebuildThreadsOption != null)
+        {
+            try
+            {
+                rebuildThreads = Integer.parseInt(rebuildThreadsOption);
+            }
+            catch (NumberFormatException e)
+            {
+                String msg = String.format("'%s'  must be a strictly positive integer", REBUILD_THREADS_OPTION);
+                throw new RuntimeException(msg);
+            }
+            if (rebuildThreads <= 0)
+            {
+                String msg = String.format("'%s'  must be strictly positive", REBUILD_THREADS_OPTION);
+                throw new RuntimeException(msg);
+            }
+        }
+        else
+        {
+            rebuildThreads = DEFAULT_REBUILD_THREADS;
+        }
+
+        // Setup filter cache size
+        String filterCacheMBOption = options.get(FILTER_CACHE_MB_OPTION);
+        if (filterCacheMBOption != null)
+        {
+            try
+            {
+                filterCacheMB = Integer.parseInt(filterCacheMBOption);
+            }
+            catch (NumberFormatException e)
+            {
+                String msg = String.format("'%s'  must be a positive integer", FILTER_CACHE_MB_OPTION);
+                throw new RuntimeException(msg);
+            }
+            if (filterCacheMB < 0)
+            {
+                String msg = String.format("'%s'  must be positive", FILTER_CACHE_MB_OPTION);
+                throw new RuntimeException(msg);
+            }
+        }
+        else
+        {
+            filterCacheMB = DEFAULT_FILTER_CACHE_MB;
+        }
+
         // Get columns mapping schema
         String schemaOption = options.get(SCHEMA_OPTION);
         if (schemaOption != null && !schemaOption.trim().isEmpty())
@@ -230,19 +491,76 @@ public class RowIndexConfig
             throw new RuntimeException(msg);
         }
 
-        // Get Lucene directory path
+        // Setup shards
+        String shardsOption = options.get(SHARDS_OPTION);
+        if (shardsOption != null)
+        {
+            try
+            {
+                shards = Integer.parseInt(shardsOption);
+            }
+            catch (NumberFormatException e)
+            {
+                String msg = String.format("'%s'  must be a strictly positive integer", SHARDS_OPTION);
+                throw new RuntimeException(msg);
+            }
+            if (shards <= 0)
+            {
+                String msg = String.format("'%s'  must be strictly positive", SHARDS_OPTION);
+                throw new RuntimeException(msg);
+            }
+        }
+        else
+        {
+            shards = DEFAULT_SHARDS;
+        }
+
+        // Setup max concurrent merges per shard
+        String mergeThreadsOption = options.get(MERGE_THREADS_OPTION);
+        if (mergeThreadsOption != null)
+        {
+            try
+            {
+                mergeThreads = Integer.parseInt(mergeThreadsOption);
+            }
+            catch (NumberFormatException e)
+            {
+                String msg = String.format("'%s'  must be a strictly positive integer", MERGE_THREADS_OPTION);
+                throw new RuntimeException(msg);
+            }
+            if (mergeThreads <= 0)
+            {
+                String msg = String.format("'%s'  must be strictly positive", MERGE_THREADS_OPTION);
+                throw new RuntimeException(msg);
+            }
+        }
+        else
+        {
+            mergeThreads = DEFAULT_MERGE_THREADS;
+        }
+
+        // Get Lucene directory paths, spreading the shards across the data directories
         String[] dataFileLocations = DatabaseDescriptor.getAllDataFileLocations();
-        StringBuilder directoryPathBuilder = new StringBuilder();
-        directoryPathBuilder.append(dataFileLocations[0]);
-        directoryPathBuilder.append(File.separatorChar);
-        directoryPathBuilder.append(metadata.ksName);
-        directoryPathBuilder.append(File.separatorChar);
-        directoryPathBuilder.append(metadata.cfName);
-        directoryPathBuilder.append("-");
-        directoryPathBuilder.append(ByteBufferUtil.bytesToHex(ByteBufferUtil.bytes(metadata.cfId)));
-        directoryPathBuilder.append(File.separatorChar);
-        directoryPathBuilder.append(INDEXES_DIR_NAME);
-        path = directoryPathBuilder.toString();
+        paths = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++)
+        {
+            StringBuilder directoryPathBuilder = new StringBuilder();
+            directoryPathBuilder.append(dataFileLocations[i % dataFileLocations.length]);
+            directoryPathBuilder.append(File.separatorChar);
+            directoryPathBuilder.append(metadata.ksName);
+            directoryPathBuilder.append(File.separatorChar);
+            directoryPathBuilder.append(metadata.cfName);
+            directoryPathBuilder.append("-");
+            directoryPathBuilder.append(ByteBufferUtil.bytesToHex(ByteBufferUtil.bytes(metadata.cfId)));
+            directoryPathBuilder.append(File.separatorChar);
+            directoryPathBuilder.append(INDEXES_DIR_NAME);
+            if (shards > 1)
+            {
+                directoryPathBuilder.append("-");
+                directoryPathBuilder.append(i);
+            }
+            paths.add(directoryPathBuilder.toString());
+        }
     }
 
     public Schema getSchema()
@@ -255,9 +573,14 @@ public class RowIndexConfig
         return refreshSeconds;
     }
 
-    public String getPath()
+    public double getMinRefreshSeconds()
     {
-        return path;
+        return minRefreshSeconds;
+    }
+
+    public List<String> getPaths()
+    {
+        return paths;
     }
 
     public int getRamBufferMB()
@@ -285,4 +608,54 @@ public class RowIndexConfig
         return indexingQueuesSize;
     }
 
+    public int getIndexingBatchSize()
+    {
+        return indexingBatchSize;
+    }
+
+    public int getIndexingBatchLingerMs()
+    {
+        return indexingBatchLingerMs;
+    }
+
+    public WriteMode getWriteMode()
+    {
+        return writeMode;
+    }
+
+    public int getFetchConcurrency()
+    {
+        return fetchConcurrency;
+    }
+
+    public DirectoryType getDirectoryType()
+    {
+        return directoryType;
+    }
+
+    public int getOffHeapMB()
+    {
+        return offHeapMB;
+    }
+
+    public int getRebuildThreads()
+    {
+        return rebuildThreads;
+    }
+
+    public int getFilterCacheMB()
+    {
+        return filterCacheMB;
+    }
+
+    public int getShards()
+    {
+        return shards;
+    }
+
+    public int getMergeThreads()
+    {
+        return mergeThreads;
+    }
+
 }
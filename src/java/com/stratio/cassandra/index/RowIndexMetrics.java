@@ -0,0 +1,268 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.stratio.cassandra.index.util.TaskQueue;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.util.RatioGauge;
+import org.apache.cassandra.metrics.DefaultNameFactory;
+import org.apache.cassandra.metrics.MetricNameFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics for a {@link RowIndex}. They are registered under the {@code LuceneIndex} type, using the index full name
+ * ({@code keyspace.table.index}) as scope.
+ */
+public class RowIndexMetrics
+{
+    /** The metrics type. */
+    public static final String TYPE_NAME = "LuceneIndex";
+
+    /** Number of rows indexed after reading them from the base table. */
+    public final Counter readBeforeWriteIndexings;
+
+    /** Number of rows indexed directly from the written data, without reading the base table. */
+    public final Counter blindIndexings;
+
+    /** Number of writes waiting in the indexing queues. */
+    public final Gauge<Integer> indexingQueueDepth;
+
+    /** Number of writes applied at once by the indexing threads. */
+    public final Histogram indexingBatchSize;
+
+    /** Number of writes that have had to wait for room in a full indexing queue. */
+    public final Gauge<Long> indexingBlockedSubmissions;
+
+    /** Time spent by the row fetching tasks waiting in the fetch executor queue. */
+    public final Timer fetchQueueLatency;
+
+    /** Time spent reading the rows of each fetching task from the base table. */
+    public final Timer fetchLatency;
+
+    /** Time spent reopening the index searcher, including the number of reopens. */
+    public final Timer reopenLatency;
+
+    /** Number of searcher reopens brought forward by searches requiring the latest writes. */
+    public final Counter forcedReopens;
+
+    /** Time in milliseconds since the oldest write not visible to searches. */
+    public final Gauge<Long> searcherStaleness;
+
+    /** Number of searches found already parsed in the search cache. */
+    public final Counter searchCacheHits;
+
+    /** Number of searches that have been parsed because they were not in the search cache. */
+    public final Counter searchCacheMisses;
+
+    /** Number of CQL restrictions over other columns solved by the index. */
+    public final Counter solvedExpressions;
+
+    /** Number of CQL restrictions over other columns checked against the read rows. */
+    public final Counter unsolvedExpressions;
+
+    /** Capacity in bytes of the filter cache. */
+    public final Gauge<Long> filterCacheCapacity;
+
+    /** Number of per-segment filter lookups found in the filter cache. */
+    public final Gauge<Long> filterCacheHits;
+
+    /** Number of per-segment filter lookups in the filter cache. */
+    public final Gauge<Long> filterCacheRequests;
+
+    /** Filter cache hit rate. */
+    public final Gauge<Double> filterCacheHitRate;
+
+    /** Estimated size in bytes of the filter cache entries. */
+    public final Gauge<Long> filterCacheSize;
+
+    /** Number of filter cache entries. */
+    public final Gauge<Long> filterCacheEntries;
+
+    /** Total size in bytes of the index files. */
+    public final Gauge<Long> directorySize;
+
+    /** Size in bytes of the memory mapped index files, which bounds the page cache used by searches. */
+    public final Gauge<Long> mappedBytes;
+
+    /** Size in bytes of the off-heap memory holding index files. */
+    public final Gauge<Long> offHeapBytes;
+
+    /** Size in bytes of the heap memory caching the newly flushed index segments. */
+    public final Gauge<Long> nrtCachedBytes;
+
+    private final MetricNameFactory factory;
+    private final List<MetricName> names = new ArrayList<>();
+
+    /**
+     * Builds and registers the metrics for the specified index.
+     *
+     * @param keyspaceName The keyspace name.
+     * @param tableName    The table name.
+     * @param indexName    The index name.
+     * @param luceneIndex  The {@link LuceneIndex} whose memory usage is reported.
+     * @param filterCache  The {@link FilterCache} whose usage is reported.
+     * @param indexQueue   The indexing {@link TaskQueue} whose usage is reported, maybe {@code null}.
+     */
+    public RowIndexMetrics(String keyspaceName,
+                           String tableName,
+                           String indexName,
+                           final LuceneIndex luceneIndex,
+                           final FilterCache filterCache,
+                           final TaskQueue indexQueue)
+    {
+        factory = new DefaultNameFactory(TYPE_NAME, String.format("%s.%s.%s", keyspaceName, tableName, indexName));
+        readBeforeWriteIndexings = Metrics.newCounter(name("ReadBeforeWriteIndexings"));
+        blindIndexings = Metrics.newCounter(name("BlindIndexings"));
+        indexingQueueDepth = Metrics.newGauge(name("IndexingQueueDepth"), new Gauge<Integer>()
+        {
+            public Integer value()
+            {
+                return indexQueue == null ? 0 : indexQueue.getQueuedTasks();
+            }
+        });
+        indexingBatchSize = Metrics.newHistogram(name("IndexingBatchSize"), true);
+        indexingBlockedSubmissions = Metrics.newGauge(name("IndexingBlockedSubmissions"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return indexQueue == null ? 0 : indexQueue.getBlockedSubmissions();
+            }
+        });
+        fetchQueueLatency = Metrics.newTimer(name("FetchQueueLatency"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+        fetchLatency = Metrics.newTimer(name("FetchLatency"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+        reopenLatency = Metrics.newTimer(name("ReopenLatency"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+        forcedReopens = Metrics.newCounter(name("ForcedReopens"));
+        searcherStaleness = Metrics.newGauge(name("SearcherStaleness"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return luceneIndex.getSearcherStaleness();
+            }
+        });
+        searchCacheHits = Metrics.newCounter(name("SearchCacheHits"));
+        searchCacheMisses = Metrics.newCounter(name("SearchCacheMisses"));
+        solvedExpressions = Metrics.newCounter(name("SolvedExpressions"));
+        unsolvedExpressions = Metrics.newCounter(name("UnsolvedExpressions"));
+        filterCacheCapacity = Metrics.newGauge(name("FilterCacheCapacity"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return filterCache.capacity();
+            }
+        });
+        filterCacheHits = Metrics.newGauge(name("FilterCacheHits"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return filterCache.hits();
+            }
+        });
+        filterCacheRequests = Metrics.newGauge(name("FilterCacheRequests"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return filterCache.requests();
+            }
+        });
+        filterCacheHitRate = Metrics.newGauge(name("FilterCacheHitRate"), new RatioGauge()
+        {
+            protected double getNumerator()
+            {
+                return filterCache.hits();
+            }
+
+            protected double getDenominator()
+            {
+                return filterCache.requests();
+            }
+        });
+        filterCacheSize = Metrics.newGauge(name("FilterCacheSize"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return filterCache.weightedSize();
+            }
+        });
+        filterCacheEntries = Metrics.newGauge(name("FilterCacheEntries"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return filterCache.size();
+            }
+        });
+        directorySize = Metrics.newGauge(name("DirectorySize"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return luceneIndex.getDirectorySize();
+            }
+        });
+        mappedBytes = Metrics.newGauge(name("MappedBytes"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return luceneIndex.getMappedBytes();
+            }
+        });
+        offHeapBytes = Metrics.newGauge(name("OffHeapBytes"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return luceneIndex.getOffHeapBytes();
+            }
+        });
+        nrtCachedBytes = Metrics.newGauge(name("NRTCachedBytes"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return luceneIndex.getNRTCachedBytes();
+            }
+        });
+    }
+
+    /**
+     * Returns the {@link MetricName} for the specified metric, remembering it for its later release.
+     *
+     * @param metricName A metric name.
+     * @return The {@link MetricName} for the specified metric.
+     */
+    protected final MetricName name(String metricName)
+    {
+        MetricName name = factory.createMetricName(metricName);
+        names.add(name);
+        return name;
+    }
+
+    /**
+     * Unregisters all the metrics.
+     */
+    public void release()
+    {
+        for (MetricName name : names)
+        {
+            Metrics.defaultRegistry().removeMetric(name);
+        }
+        names.clear();
+    }
+}
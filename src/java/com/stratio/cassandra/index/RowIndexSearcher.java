@@ -16,10 +16,13 @@
 package com.stratio.cassandra.index;
 
 import com.stratio.cassandra.index.query.Search;
-import com.stratio.cassandra.index.schema.Schema;
+import com.stratio.cassandra.index.util.ComparatorChain;
 import com.stratio.cassandra.index.util.Log;
+import org.apache.cassandra.db.AbstractRangeCommand;
 import org.apache.cassandra.db.DataRange;
+import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.IndexExpression;
+import org.apache.cassandra.db.ReadCommand;
 import org.apache.cassandra.db.Row;
 import org.apache.cassandra.db.filter.ExtendedFilter;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
@@ -44,9 +47,11 @@ public class RowIndexSearcher extends SecondaryIndexSearcher
 
     protected static final Logger logger = LoggerFactory.getLogger(SecondaryIndexSearcher.class);
 
+    /** The value of the {@link IndexExpression} marking the first phase of a two-phase search. */
+    public static final String KEYS_ONLY = "keys_only";
+
     private final RowIndex index;
     private final RowService rowService;
-    private final Schema schema;
     private final ByteBuffer indexedColumnName;
 
     /**
@@ -65,7 +70,6 @@ public class RowIndexSearcher extends SecondaryIndexSearcher
         super(indexManager, columns);
         this.index = index;
         this.rowService = rowService;
-        schema = rowService.getSchema();
         indexedColumnName = index.getColumnDefinition().name.bytes;
     }
 
@@ -80,8 +84,23 @@ public class RowIndexSearcher extends SecondaryIndexSearcher
         DataRange dataRange = extendedFilter.dataRange;
         List<IndexExpression> clause = extendedFilter.getClause();
         List<IndexExpression> filteredExpressions = filteredExpressions(clause);
-        Search search = search(clause);
-        return rowService.search(search, filteredExpressions, dataRange, limit, timestamp);
+        SearchCache.CachedSearch search = search(clause);
+        if (search.getSearch().usesAggregations())
+        {
+            return rowService.aggregate(search, filteredExpressions, dataRange, timestamp);
+        }
+        boolean keysOnly = isKeysOnly(clause);
+        List<Row> rows = rowService.search(search, filteredExpressions, dataRange, limit, timestamp, keysOnly);
+        if (keysOnly)
+        {
+            List<Row> keysOnlyRows = new ArrayList<>(rows.size());
+            for (Row row : rows)
+            {
+                keysOnlyRows.add(rowService.keysOnly(row, search.getSearch()));
+            }
+            return keysOnlyRows;
+        }
+        return rows;
     }
 
     /**
@@ -128,8 +147,7 @@ public class RowIndexSearcher extends SecondaryIndexSearcher
     {
         try
         {
-            String json = UTF8Type.instance.compose(indexExpression.value);
-            Search.fromJson(json).validate(schema);
+            rowService.getSearch(indexExpression.value);
         }
         catch (Exception e)
         {
@@ -143,21 +161,21 @@ public class RowIndexSearcher extends SecondaryIndexSearcher
     @Override
     public boolean requiresFullScan(List<IndexExpression> clause)
     {
-        Search search = search(clause);
-        return search.usesRelevanceOrSorting();
+        SearchCache.CachedSearch search = search(clause);
+        return search.usesRelevanceOrSorting() || search.getSearch().usesAggregations();
     }
 
     /**
-     * Returns the {@link Search} contained in the specified list of {@link IndexExpression}s.
+     * Returns the {@link Search} contained in the specified list of {@link IndexExpression}s, which is parsed only if it
+     * is not already cached.
      *
      * @param clause A list of {@link IndexExpression}s.
      * @return The {@link Search} contained in the specified list of {@link IndexExpression}s.
      */
-    private Search search(List<IndexExpression> clause)
+    private SearchCache.CachedSearch search(List<IndexExpression> clause)
     {
         IndexExpression indexedExpression = indexedExpression(clause);
-        String json = UTF8Type.instance.compose(indexedExpression.value);
-        return Search.fromJson(json);
+        return rowService.getSearch(indexedExpression.value);
     }
 
     /**
@@ -199,28 +217,140 @@ public class RowIndexSearcher extends SecondaryIndexSearcher
         return filteredExpressions;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<IndexExpression> keysOnlyClause(List<IndexExpression> clause)
+    {
+        if (isKeysOnly(clause) || search(clause).getSearch().usesAggregations())
+        {
+            return null;
+        }
+        List<IndexExpression> keysOnlyClause = new ArrayList<>(clause);
+        keysOnlyClause.add(new IndexExpression(indexedColumnName, EQ, UTF8Type.instance.decompose(KEYS_ONLY)));
+        return keysOnlyClause;
+    }
+
+    /**
+     * Returns {@code true} if the specified clause is the one of the first phase of a two-phase search, {@code false}
+     * otherwise.
+     *
+     * @param clause A list of {@link IndexExpression}s.
+     * @return {@code true} if {@code clause} only requires the keys of the rows, {@code false} otherwise.
+     */
+    private boolean isKeysOnly(List<IndexExpression> clause)
+    {
+        ByteBuffer keysOnly = UTF8Type.instance.decompose(KEYS_ONLY);
+        for (IndexExpression expression : clause)
+        {
+            if (indexedColumnName.equals(expression.column) && keysOnly.equals(expression.value))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ReadCommand> fetchCommands(AbstractRangeCommand command, List<Row> rows)
+    {
+        // Read all the required rows of each partition with a single command
+        Map<DecoratedKey, List<Row>> rowsByPartition = new LinkedHashMap<>();
+        for (Row row : rows)
+        {
+            List<Row> partitionRows = rowsByPartition.get(row.key);
+            if (partitionRows == null)
+            {
+                partitionRows = new ArrayList<>();
+                rowsByPartition.put(row.key, partitionRows);
+            }
+            partitionRows.add(row);
+        }
+        List<ReadCommand> commands = new ArrayList<>(rowsByPartition.size());
+        for (Map.Entry<DecoratedKey, List<Row>> entry : rowsByPartition.entrySet())
+        {
+            commands.add(rowService.fetchCommand(entry.getKey(), entry.getValue(), command.timestamp));
+        }
+        return commands;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Row> merge(AbstractRangeCommand command, List<Row> keysOnlyRows, List<Row> fullRows)
+    {
+        return rowService.merge(keysOnlyRows, fullRows, command.timestamp);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
     @Override
     public List<Row> sort(List<IndexExpression> clause, List<Row> rows)
+    {
+        return sort(clause, rows, Integer.MAX_VALUE);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The partial results are already sorted, so a bounded heap is used to select the first {@code limit} rows without
+     * sorting all of them. The partial results of searches with aggregations are merged into a single row.
+     */
+    @Override
+    public List<Row> sort(List<IndexExpression> clause, List<Row> rows, int limit)
     {
         int startSize = rows.size();
         long startTime = System.currentTimeMillis();
 
-        // Remove duplicates
-        TreeSet<Row> set = new TreeSet<>(rowService.comparator());
-        set.addAll(rows);
-        List<Row> result = new ArrayList<>(set);
+        Search search = search(clause).getSearch();
+        if (search.usesAggregations())
+        {
+            return rowService.mergeAggregations(rows, search);
+        }
+        // The replicas return their rows sorted by the search but with ties in hit order, so ties are broken here by
+        // Cassandra's natural order to select and return the same rows whatever the order of the partial results
+        Comparator<Row> searchComparator = rowService.comparator(search);
+        ComparatorChain<Row> comparator = new ComparatorChain<>(searchComparator);
+        comparator.addComparator(rowService.comparator());
+        Comparator<Row> reverseComparator = Collections.reverseOrder(comparator);
+
+        // Keep the first rows in a max-heap, removing duplicates
+        int capacity = Math.min(limit, rows.size());
+        PriorityQueue<Row> heap = new PriorityQueue<>(Math.max(capacity, 1), reverseComparator);
+        TreeSet<Row> heapRows = new TreeSet<>(rowService.comparator());
+        for (Row row : rows)
+        {
+            if (heapRows.contains(row))
+            {
+                continue;
+            }
+            if (heap.size() < capacity)
+            {
+                heap.add(row);
+                heapRows.add(row);
+            }
+            else if (capacity > 0 && comparator.compare(row, heap.peek()) < 0)
+            {
+                heapRows.remove(heap.poll());
+                heap.add(row);
+                heapRows.add(row);
+            }
+        }
 
         // Sort
-        Search search = search(clause);
-        Comparator<Row> comparator = rowService.comparator(search);
+        List<Row> result = new ArrayList<>(heap);
         Collections.sort(result, comparator);
 
-        String comparatorName = comparator.getClass().getSimpleName();
+        String comparatorName = searchComparator.getClass().getSimpleName();
         int endSize = result.size();
         long endTime = System.currentTimeMillis() - startTime;
 
-//        result = rowService.group(result);
-
         Log.debug("Sorted %d rows to %d with comparator %s in %d ms\n", startSize, endSize, comparatorName, endTime);
 
         return result;
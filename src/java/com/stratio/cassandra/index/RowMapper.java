@@ -19,17 +19,23 @@ import com.stratio.cassandra.index.schema.Columns;
 import com.stratio.cassandra.index.schema.Schema;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.db.Cell;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.DataRange;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.Row;
 import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.marshal.MapType;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Class for several {@link Row} mappings between Cassandra and Lucene.
@@ -47,6 +53,9 @@ public abstract class RowMapper
     protected final PartitionKeyMapper partitionKeyMapper;
     protected final RegularCellsMapper regularCellsMapper;
 
+    /** The regular and static columns whose values are added to the Lucene {@link Document}s. */
+    protected final Set<ColumnDefinition> indexedColumns;
+
     /**
      * Builds a new {@link RowMapper} for the specified column family metadata, indexed column definition and {@link
      * Schema}.
@@ -63,6 +72,15 @@ public abstract class RowMapper
         this.tokenMapper = TokenMapper.instance(metadata);
         this.partitionKeyMapper = PartitionKeyMapper.instance(metadata);
         this.regularCellsMapper = RegularCellsMapper.instance(metadata);
+        this.indexedColumns = new HashSet<>();
+        for (ColumnDefinition definition : metadata.regularAndStaticColumns())
+        {
+            // Map keys are always indexed, even if the map column is not mapped
+            if (schema.getMapper(definition.name.toString()) != null || definition.type instanceof MapType)
+            {
+                indexedColumns.add(definition);
+            }
+        }
     }
 
     /**
@@ -104,25 +122,45 @@ public abstract class RowMapper
     public abstract Document document(Row row);
 
     /**
-     * Returns the decorated partition key representing the specified raw partition key.
+     * Returns {@code true} if the specified {@link ColumnFamily}, containing a single logical row, has a live value for
+     * each of the regular and static columns whose values are indexed, {@code false} otherwise. If so, the row can be
+     * indexed without reading the already stored columns. Indexed collections are never considered complete because
+     * their written elements could be just a part of them.
      *
-     * @param key A partition key.
-     * @return The decorated partition key representing the specified raw partition key.
+     * @param columnFamily A {@link ColumnFamily} containing a single logical row.
+     * @param timestamp    The time stamp to ignore deleted columns.
+     * @return {@code true} if {@code columnFamily} has a live value for each indexed column, {@code false} otherwise.
      */
-    public final DecoratedKey partitionKey(ByteBuffer key)
+    public boolean isComplete(ColumnFamily columnFamily, long timestamp)
     {
-        return partitionKeyMapper.partitionKey(key);
+        Set<ColumnDefinition> writtenColumns = new HashSet<>();
+        for (Cell cell : columnFamily)
+        {
+            ColumnDefinition columnDefinition = metadata.getColumnDefinition(cell.name());
+            if (columnDefinition != null && cell.isLive(timestamp))
+            {
+                writtenColumns.add(columnDefinition);
+            }
+        }
+        for (ColumnDefinition columnDefinition : indexedColumns)
+        {
+            if (columnDefinition.type.isCollection() || !writtenColumns.contains(columnDefinition))
+            {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
-     * Returns the decorated partition key contained in the specified {@link Document}.
+     * Returns the decorated partition key representing the specified raw partition key.
      *
-     * @param document A {@link Document}.
-     * @return The decorated partition key contained in the specified {@link Document}.
+     * @param key A partition key.
+     * @return The decorated partition key representing the specified raw partition key.
      */
-    public final DecoratedKey partitionKey(Document document)
+    public final DecoratedKey partitionKey(ByteBuffer key)
     {
-        return partitionKeyMapper.partitionKey(document);
+        return partitionKeyMapper.partitionKey(key);
     }
 
     /**
@@ -152,6 +190,15 @@ public abstract class RowMapper
      */
     public abstract CellName makeCellName(ColumnFamily columnFamily);
 
+    /**
+     * Returns a {@link CellName} for the indexed column in the CQL3 row identified by the specified {@link
+     * SearchResult}.
+     *
+     * @param searchResult A {@link SearchResult}.
+     * @return A {@link CellName} for the indexed column in the CQL3 row identified by {@code searchResult}.
+     */
+    public abstract CellName makeCellName(SearchResult searchResult);
+
     /**
      * Returns a {@link RowComparator} using the same order that is used in Cassandra.
      *
@@ -159,6 +206,15 @@ public abstract class RowMapper
      */
     public abstract RowComparator naturalComparator();
 
-    public abstract SearchResult searchResult(Document document, ScoreDoc scoreDoc);
+    /**
+     * Returns the {@link SearchResult} for the specified document, whose keys are read from the index doc values.
+     *
+     * @param reader   The {@link AtomicReader} containing the document.
+     * @param docId    The document id, relative to {@code reader}.
+     * @param scoreDoc The {@link ScoreDoc} of the document.
+     * @return The {@link SearchResult} for the specified document.
+     * @throws IOException If there are I/O errors reading the doc values.
+     */
+    public abstract SearchResult searchResult(AtomicReader reader, int docId, ScoreDoc scoreDoc) throws IOException;
 
 }
@@ -19,16 +19,24 @@ import com.stratio.cassandra.index.schema.Columns;
 import com.stratio.cassandra.index.schema.Schema;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.db.ArrayBackedSortedColumns;
+import org.apache.cassandra.db.BufferCell;
+import org.apache.cassandra.db.Cell;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.DataRange;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.Row;
 import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.composites.Composites;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 
+import java.io.IOException;
+
 /**
  * {@link RowMapper} for skinny rows.
  *
@@ -76,6 +84,33 @@ public class RowMapperSkinny extends RowMapper
         return document;
     }
 
+    /**
+     * Returns the CQL3 {@link Row} represented by the specified written {@link ColumnFamily}, which doesn't need to
+     * contain the CQL3 row marker. Returns {@code null} if the indexed table is not a CQL3 table.
+     *
+     * @param partitionKey The partition key.
+     * @param columnFamily A written {@link ColumnFamily} without expired cells.
+     * @return The CQL3 {@link Row} represented by {@code columnFamily}.
+     */
+    public Row writtenRow(DecoratedKey partitionKey, ColumnFamily columnFamily)
+    {
+        if (!metadata.isCQL3Table())
+        {
+            return null;
+        }
+        CellName marker = metadata.comparator.rowMarker(Composites.EMPTY);
+        ColumnFamily rowColumnFamily = ArrayBackedSortedColumns.factory.create(metadata);
+        rowColumnFamily.addColumn(new BufferCell(marker, ByteBufferUtil.EMPTY_BYTE_BUFFER));
+        for (Cell cell : columnFamily)
+        {
+            if (!cell.name().equals(marker))
+            {
+                rowColumnFamily.addColumn(cell);
+            }
+        }
+        return new Row(partitionKey, rowColumnFamily);
+    }
+
     /**
      * Returns the Lucene {@link Sort} to get {@link Document}s in the same order that is used in Cassandra.
      *
@@ -104,6 +139,15 @@ public class RowMapperSkinny extends RowMapper
         return metadata.comparator.makeCellName(columnDefinition.name.bytes);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CellName makeCellName(SearchResult searchResult)
+    {
+        return metadata.comparator.makeCellName(columnDefinition.name.bytes);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -114,9 +158,9 @@ public class RowMapperSkinny extends RowMapper
     }
 
     @Override
-    public SearchResult searchResult(Document document, ScoreDoc scoreDoc)
+    public SearchResult searchResult(AtomicReader reader, int docId, ScoreDoc scoreDoc) throws IOException
     {
-        DecoratedKey partitionKey = partitionKeyMapper.partitionKey(document);
+        DecoratedKey partitionKey = partitionKeyMapper.partitionKey(reader, docId);
         return new SearchResult(partitionKey, null, scoreDoc);
     }
 }
@@ -28,9 +28,11 @@ import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -118,6 +120,15 @@ public class RowMapperWide extends RowMapper
         return clusteringKeyMapper.makeCellName(clusteringKey, columnDefinition);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CellName makeCellName(SearchResult searchResult)
+    {
+        return clusteringKeyMapper.makeCellName(searchResult.getClusteringKey(), columnDefinition);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -149,6 +160,18 @@ public class RowMapperWide extends RowMapper
         return clusteringKeyMapper.clusteringKeys(columnFamily);
     }
 
+    /**
+     * Returns the clustering prefix of the specified clustering key, that is, the clustering key without its empty
+     * column name component.
+     *
+     * @param clusteringKey A clustering key.
+     * @return The clustering prefix of {@code clusteringKey}.
+     */
+    public Composite clusteringPrefix(CellName clusteringKey)
+    {
+        return clusteringKeyMapper.start(clusteringKey);
+    }
+
     /**
      * Returns the Lucene {@link Term} to get the {@link Document}s containing the specified decorated partition key and
      * clustering key.
@@ -266,16 +289,28 @@ public class RowMapperWide extends RowMapper
         return clusteringKeyMapper.splitRows(columnFamily);
     }
 
+    /**
+     * Returns the logical CQL3 column families contained in the specified written {@link ColumnFamily}, which doesn't
+     * need to contain the CQL3 row markers.
+     *
+     * @param columnFamily A written {@link ColumnFamily}.
+     * @return The logical CQL3 column families contained in the specified written {@link ColumnFamily}.
+     */
+    public Map<CellName, ColumnFamily> splitCells(ColumnFamily columnFamily)
+    {
+        return clusteringKeyMapper.splitCells(columnFamily);
+    }
+
     public String toString(CellName cellName)
     {
         return clusteringKeyMapper.toString(cellName);
     }
 
     @Override
-    public SearchResult searchResult(Document document, ScoreDoc scoreDoc)
+    public SearchResult searchResult(AtomicReader reader, int docId, ScoreDoc scoreDoc) throws IOException
     {
-        DecoratedKey partitionKey = partitionKeyMapper.partitionKey(document);
-        CellName clusteringKey = clusteringKeyMapper.clusteringKey(document);
+        DecoratedKey partitionKey = partitionKeyMapper.partitionKey(reader, docId);
+        CellName clusteringKey = clusteringKeyMapper.clusteringKey(reader, docId);
         return new SearchResult(partitionKey, clusteringKey, scoreDoc);
     }
 }
@@ -15,26 +15,50 @@
  */
 package com.stratio.cassandra.index;
 
+import com.stratio.cassandra.index.query.Aggregator;
+import com.stratio.cassandra.index.query.Condition;
+import com.stratio.cassandra.index.query.MatchCondition;
+import com.stratio.cassandra.index.query.RangeCondition;
 import com.stratio.cassandra.index.query.Search;
+import com.stratio.cassandra.index.query.SortField;
 import com.stratio.cassandra.index.schema.Column;
+import com.stratio.cassandra.index.schema.ColumnMapper;
 import com.stratio.cassandra.index.schema.Columns;
 import com.stratio.cassandra.index.schema.Schema;
 import com.stratio.cassandra.index.util.Log;
 import com.stratio.cassandra.index.util.TaskQueue;
 import com.stratio.cassandra.index.util.TimeCounter;
+import org.apache.cassandra.concurrent.JMXEnabledThreadPoolExecutor;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.cql3.ColumnIdentifier;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.composites.CellNameType;
+import org.apache.cassandra.db.composites.Composite;
+import org.apache.cassandra.db.filter.ColumnSlice;
+import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.store.Directory;
+import org.codehaus.jackson.map.ObjectMapper;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Class for mapping rows between Cassandra and Lucene.
@@ -50,6 +74,10 @@ public abstract class RowService
     protected final ColumnIdentifier indexedColumnName;
     protected final Schema schema;
     protected final LuceneIndex luceneIndex;
+    protected final WriteMode writeMode;
+    protected final RowIndexMetrics metrics;
+    protected final SearchCache searchCache;
+    protected final FilterCache filterCache;
 
     /**
      * The max number of rows to be read per iteration
@@ -57,8 +85,50 @@ public abstract class RowService
     private static final int MAX_PAGE_SIZE = 100000;
     private static final int FILTERING_PAGE_SIZE = 1000;
 
+    /**
+     * The max number of rows to be read from Cassandra at once
+     */
+    private static final int READ_BATCH_SIZE = 1000;
+
+    /**
+     * The max number of threads reading rows in parallel for all the indexes of this node
+     */
+    private static final int FETCH_THREADS = Integer.getInteger("cassandra.lucene_fetch_threads",
+                                                                DatabaseDescriptor.getConcurrentReaders());
+
+    /**
+     * The node-wide executor for reading rows in parallel
+     */
+    private static final JMXEnabledThreadPoolExecutor fetchExecutor =
+            new JMXEnabledThreadPoolExecutor(FETCH_THREADS,
+                                             StageManager.KEEPALIVE,
+                                             TimeUnit.SECONDS,
+                                             new LinkedBlockingQueue<Runnable>(),
+                                             new NamedThreadFactory("LuceneFetch"),
+                                             "internal");
+
+    /**
+     * The JSON mapper for the aggregation results, which are returned to the clients as standard JSON
+     */
+    private static final ObjectMapper AGGREGATIONS_MAPPER = new ObjectMapper();
+
+    /**
+     * The runner of the row reading tasks of this index, bounded by the index fetch concurrency
+     */
+    private final RowFetcher rowFetcher;
+
     private TaskQueue indexQueue;
 
+    /**
+     * The number of threads writing index segments during bulk rebuilds
+     */
+    private final int rebuildThreads;
+
+    /**
+     * The partitions written while a bulk rebuild is running, which must be reindexed once it finishes
+     */
+    private volatile Set<DecoratedKey> rebuildWrittenKeys;
+
     /**
      * Returns a new {@code RowService}.
      *
@@ -76,24 +146,62 @@ public abstract class RowService
 
         this.schema = config.getSchema();
         this.rowMapper = RowMapper.build(metadata, columnDefinition, schema);
+        this.writeMode = config.getWriteMode();
+        this.rebuildThreads = config.getRebuildThreads();
 
         this.luceneIndex = new LuceneIndex(rowMapper,
-                                           config.getPath(),
+                                           config.getPaths(),
                                            config.getRefreshSeconds(),
+                                           config.getMinRefreshSeconds(),
                                            config.getRamBufferMB(),
                                            config.getMaxMergeMB(),
                                            config.getMaxCachedMB(),
+                                           config.getDirectoryType(),
+                                           config.getOffHeapMB(),
+                                           config.getMergeThreads(),
                                            schema.analyzer());
+        this.filterCache = new FilterCache(config.getFilterCacheMB());
 
         int indexingThreads = config.getIndexingThreads();
         if (indexingThreads > 0)
         {
-            this.indexQueue = new TaskQueue(indexingThreads, config.getIndexingQueuesSize());
+            // Each indexing thread applies the writes of its batches at once
+            this.indexQueue = new TaskQueue(indexingThreads,
+                                            config.getIndexingQueuesSize(),
+                                            config.getIndexingBatchSize(),
+                                            config.getIndexingBatchLingerMs(),
+                                            new TaskQueue.BatchListener()
+                                            {
+                                                @Override
+                                                public void beforeBatch()
+                                                {
+                                                    luceneIndex.beginBatch();
+                                                }
+
+                                                @Override
+                                                public void afterBatch(int numTasks)
+                                                {
+                                                    metrics.indexingBatchSize.update(numTasks);
+                                                    luceneIndex.flushBatch();
+                                                }
+                                            });
         }
         else
         {
             this.indexQueue = null;
         }
+
+        this.metrics = new RowIndexMetrics(metadata.ksName,
+                                           metadata.cfName,
+                                           columnDefinition.getIndexName(),
+                                           luceneIndex,
+                                           filterCache,
+                                           indexQueue);
+        this.searchCache = new SearchCache(schema, metrics, filterCache);
+        this.rowFetcher = new RowFetcher(fetchExecutor,
+                                         config.getFetchConcurrency(),
+                                         metrics.fetchQueueLatency,
+                                         metrics.fetchLatency);
     }
 
     /**
@@ -127,16 +235,33 @@ public abstract class RowService
     }
 
     /**
-     * Returns the names of the document fields to be loaded when reading a Lucene index.
+     * Returns the parsed and validated {@link Search} represented by the specified JSON bytes, using the cache of
+     * already parsed searches.
      *
-     * @return The names of the document fields to be loaded.
+     * @param json The UTF-8 JSON bytes of a {@link Search}.
+     * @return The {@link SearchCache.CachedSearch} represented by {@code json}.
      */
-    protected abstract Set<String> fieldsToLoad();
+    public SearchCache.CachedSearch getSearch(ByteBuffer json)
+    {
+        return searchCache.get(json);
+    }
+
+    /**
+     * Returns {@code true} if the Lucene index has been found in an outdated format and must be rebuilt from the base
+     * table, {@code false} otherwise.
+     *
+     * @return {@code true} if the Lucene index must be rebuilt, {@code false} otherwise.
+     */
+    public boolean isRebuildNeeded()
+    {
+        return luceneIndex.isRebuildNeeded();
+    }
 
     /**
      * Indexes the logical {@link Row} identified by the specified key and column family using the specified time stamp.
-     * The must be read from the {@link ColumnFamilyStore} because it could exist previously having more columns than
-     * the specified ones. The specified {@link ColumnFamily} is used for determine the cluster key. This operation is
+     * Depending on the {@link WriteMode}, the row is either read from the {@link ColumnFamilyStore}, because it could
+     * exist previously having more columns than the specified ones, or built directly from the specified {@link
+     * ColumnFamily}. The specified {@link ColumnFamily} is used for determine the cluster key. This operation is
      * performed asynchronously.
      *
      * @param key          A partition key.
@@ -145,6 +270,11 @@ public abstract class RowService
      */
     protected void index(final ByteBuffer key, final ColumnFamily columnFamily, final long timestamp)
     {
+        Set<DecoratedKey> rebuildWrittenKeys = this.rebuildWrittenKeys;
+        if (rebuildWrittenKeys != null)
+        {
+            rebuildWrittenKeys.add(rowMapper.partitionKey(key));
+        }
         if (indexQueue == null)
         {
             indexInner(key, columnFamily, timestamp);
@@ -179,13 +309,19 @@ public abstract class RowService
      */
     public void delete(final DecoratedKey partitionKey)
     {
+        Set<DecoratedKey> rebuildWrittenKeys = this.rebuildWrittenKeys;
+        if (rebuildWrittenKeys != null)
+        {
+            rebuildWrittenKeys.add(partitionKey);
+        }
         if (indexQueue == null)
         {
             deleteInner(partitionKey);
         }
         else
         {
-            indexQueue.submitAsynchronous(partitionKey, new Runnable()
+            // Use the same queue as the indexing of the partition, so both are run orderly
+            indexQueue.submitAsynchronous(partitionKey.getKey(), new Runnable()
             {
                 @Override
                 public void run()
@@ -203,6 +339,175 @@ public abstract class RowService
      */
     protected abstract void deleteInner(DecoratedKey partitionKey);
 
+    /**
+     * Returns the Lucene {@link Document}s of the logical rows contained in the specified {@link ColumnFamily}, which
+     * must contain the whole partition, indexed by the {@link Term}s identifying them. Nothing is read from the {@link
+     * ColumnFamilyStore}.
+     *
+     * @param partitionKey The partition key.
+     * @param columnFamily The whole partition data.
+     * @param timestamp    The time stamp to ignore deleted columns.
+     * @return The Lucene {@link Document}s of the logical rows contained in {@code columnFamily}.
+     */
+    public abstract Map<Term, Document> documents(DecoratedKey partitionKey, ColumnFamily columnFamily, long timestamp);
+
+    /**
+     * Returns the number of shards of the Lucene index.
+     *
+     * @return The number of shards of the Lucene index.
+     */
+    public int getNumShards()
+    {
+        return luceneIndex.getNumShards();
+    }
+
+    /**
+     * Returns the index shard containing the {@link Document}s of the specified partition.
+     *
+     * @param partitionKey A partition key.
+     * @return The index shard containing the {@link Document}s of {@code partitionKey}.
+     */
+    public int shard(DecoratedKey partitionKey)
+    {
+        return luceneIndex.shard(partitionKey);
+    }
+
+    /**
+     * Returns the path of the directory in where the Lucene files of the specified shard are stored.
+     *
+     * @param shard An index shard.
+     * @return The path of the directory in where the Lucene files of {@code shard} are stored.
+     */
+    public String getPath(int shard)
+    {
+        return luceneIndex.getPath(shard);
+    }
+
+    /**
+     * Returns the number of threads to be used for writing index segments during bulk rebuilds.
+     *
+     * @return The number of bulk rebuild threads.
+     */
+    public int getRebuildThreads()
+    {
+        return rebuildThreads;
+    }
+
+    /**
+     * Returns a new standalone {@link IndexWriter} for writing bulk rebuild segments to the specified {@link
+     * Directory}.
+     *
+     * @param directory The {@link Directory} where the segments will be written.
+     * @return A new standalone {@link IndexWriter}.
+     */
+    public IndexWriter segmentWriter(Directory directory)
+    {
+        return luceneIndex.segmentWriter(directory);
+    }
+
+    /**
+     * Starts a bulk rebuild, from now on the written partitions are tracked to be reindexed when the rebuild
+     * finishes. This must be called before taking the snapshot of the base table data to be indexed.
+     */
+    public void beginRebuild()
+    {
+        rebuildWrittenKeys = Collections.newSetFromMap(new ConcurrentHashMap<DecoratedKey, Boolean>());
+    }
+
+    /**
+     * Finishes a bulk rebuild, replacing all the indexed {@link Document}s with the segments contained in the
+     * specified directories and then reindexing the partitions written since {@link #beginRebuild()}, which could be
+     * missing or stale in these segments.
+     *
+     * @param directories The directories containing the rebuilt segments of each shard.
+     * @param timestamp   The time stamp to ignore deleted columns.
+     */
+    public void finishRebuild(List<List<Directory>> directories, long timestamp)
+    {
+        luceneIndex.replace(directories);
+        Set<DecoratedKey> writtenKeys = rebuildWrittenKeys;
+        rebuildWrittenKeys = null;
+        Log.info("Reindexing %d partitions written during rebuild", writtenKeys.size());
+        for (DecoratedKey partitionKey : writtenKeys)
+        {
+            reindex(partitionKey, timestamp);
+        }
+    }
+
+    /**
+     * Finishes a bulk build of some new SSTables, adding the segments contained in the specified directories to the
+     * indexed {@link Document}s and then reindexing both the specified partitions, which were left out of the
+     * segments, and the partitions written since {@link #beginRebuild()}, which could be missing or stale in them.
+     *
+     * @param directories   The directories containing the built segments of each shard.
+     * @param keysToReindex The partitions to be reindexed reading them from the base table.
+     * @param timestamp     The time stamp to ignore deleted columns.
+     */
+    public void finishBuild(List<List<Directory>> directories, Collection<DecoratedKey> keysToReindex, long timestamp)
+    {
+        luceneIndex.add(directories);
+        Set<DecoratedKey> writtenKeys = rebuildWrittenKeys;
+        rebuildWrittenKeys = null;
+        Log.info("Reindexing %d partitions with other data and %d partitions written during build",
+                 keysToReindex.size(),
+                 writtenKeys.size());
+        for (DecoratedKey partitionKey : keysToReindex)
+        {
+            if (!writtenKeys.contains(partitionKey))
+            {
+                reindex(partitionKey, timestamp);
+            }
+        }
+        for (DecoratedKey partitionKey : writtenKeys)
+        {
+            reindex(partitionKey, timestamp);
+        }
+    }
+
+    /**
+     * Aborts a bulk rebuild, leaving the indexed {@link Document}s untouched.
+     */
+    public void abortRebuild()
+    {
+        rebuildWrittenKeys = null;
+    }
+
+    /**
+     * Replaces the indexed {@link Document}s of the specified partition with the ones of its current data, which is
+     * read from the {@link ColumnFamilyStore}. This operation is performed asynchronously.
+     *
+     * @param partitionKey The partition key.
+     * @param timestamp    The time stamp to ignore deleted columns.
+     */
+    private void reindex(final DecoratedKey partitionKey, final long timestamp)
+    {
+        Runnable task = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                deleteInner(partitionKey);
+                QueryFilter queryFilter = QueryFilter.getIdentityFilter(partitionKey, metadata.cfName, timestamp);
+                ColumnFamily columnFamily = baseCfs.getColumnFamily(queryFilter);
+                if (columnFamily != null)
+                {
+                    for (Map.Entry<Term, Document> entry : documents(partitionKey, columnFamily, timestamp).entrySet())
+                    {
+                        luceneIndex.upsert(partitionKey, entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        };
+        if (indexQueue == null)
+        {
+            task.run();
+        }
+        else
+        {
+            indexQueue.submitAsynchronous(partitionKey.getKey(), task);
+        }
+    }
+
     /**
      * Deletes all the {@link Document}s.
      */
@@ -217,16 +522,22 @@ public abstract class RowService
     public final void delete()
     {
         luceneIndex.drop();
+        filterCache.invalidateAll();
+        metrics.release();
     }
 
     /**
-     * Commits the pending changes. This operation is performed asynchronously.
+     * Commits the pending changes, recording the specified base table commit log position. All the writes before that
+     * position must have already been submitted for indexing. This operation waits for the queued writes.
+     *
+     * @param replayPosition The commit log position before which all the writes have been indexed, maybe {@code null}
+     *                       if it is unknown.
      */
-    public final void commit()
+    public final void commit(final ReplayPosition replayPosition)
     {
         if (indexQueue == null)
         {
-            luceneIndex.commit();
+            luceneIndex.commit(replayPosition);
         }
         else
         {
@@ -235,94 +546,351 @@ public abstract class RowService
                 @Override
                 public void run()
                 {
-                    luceneIndex.commit();
+                    luceneIndex.commit(replayPosition);
                 }
             });
         }
     }
 
     /**
-     * Returns the stored and indexed {@link Row}s satisfying the specified restrictions.
+     * Returns the base table commit log position before which all the writes are included in the last index commit.
      *
-     * @param search      The {@link Search} to be performed.
-     * @param expressions A list of filtering {@link IndexExpression}s to be satisfied.
-     * @param dataRange   A {@link DataRange} to be satisfied.
-     * @param limit       The max number of {@link Row}s to be returned.
-     * @param timestamp   The operation time stamp.
+     * @return The commit log position before which all the writes are included in the last index commit.
+     */
+    public final ReplayPosition getReplayPosition()
+    {
+        return luceneIndex.getReplayPosition();
+    }
+
+    /**
+     * Returns the stored and indexed {@link Row}s satisfying the specified restrictions. The Lucene hits are lazily
+     * read from Cassandra in batches of at most {@link #READ_BATCH_SIZE} rows, and the reading stops as soon as
+     * {@code limit} rows satisfying the filtering {@link IndexExpression}s have been collected.
+     *
+     * @param cachedSearch The {@link SearchCache.CachedSearch} to be performed.
+     * @param expressions  A list of filtering {@link IndexExpression}s to be satisfied.
+     * @param dataRange    A {@link DataRange} to be satisfied.
+     * @param limit        The max number of {@link Row}s to be returned.
+     * @param timestamp    The operation time stamp.
      * @return The {@link Row}s satisfying the specified restrictions.
      */
-    public final List<Row> search(Search search,
+    public final List<Row> search(SearchCache.CachedSearch cachedSearch,
                                   List<IndexExpression> expressions,
                                   DataRange dataRange,
                                   final int limit,
                                   long timestamp)
     {
+        return search(cachedSearch, expressions, dataRange, limit, timestamp, false);
+    }
+
+    /**
+     * Returns the stored and indexed {@link Row}s satisfying the specified restrictions. If {@code keysOnly} is {@code
+     * true} the rows are read from Cassandra with only the cells required for identifying, filtering and sorting them,
+     * as the first phase of a two-phase search.
+     *
+     * @param cachedSearch The {@link SearchCache.CachedSearch} to be performed.
+     * @param expressions  A list of filtering {@link IndexExpression}s to be satisfied.
+     * @param dataRange    A {@link DataRange} to be satisfied.
+     * @param limit        The max number of {@link Row}s to be returned.
+     * @param timestamp    The operation time stamp.
+     * @param keysOnly     If only the cells required for identifying, filtering and sorting the rows must be read.
+     * @return The {@link Row}s satisfying the specified restrictions.
+     */
+    public final List<Row> search(SearchCache.CachedSearch cachedSearch,
+                                  List<IndexExpression> expressions,
+                                  DataRange dataRange,
+                                  final int limit,
+                                  long timestamp,
+                                  boolean keysOnly)
+    {
+        Search search = cachedSearch.getSearch();
         Log.debug("Searching with search %s ", search);
+        maybeRefresh(search);
 
         // Setup stats
         TimeCounter searchTime = new TimeCounter();
-        TimeCounter luceneTime = new TimeCounter();
-        TimeCounter collectTime = new TimeCounter();
-        TimeCounter sortTime = new TimeCounter();
-        int numDocs = 0;
-        int numPages = 0;
 
         searchTime.start();
 
-        // Setup search arguments
+        // Setup search arguments, solving in the index as many filtering expressions as possible
+        List<IndexExpression> unsolvedExpressions = new ArrayList<>(expressions.size());
+        Query expressionsQuery = expressionsQuery(expressions, unsolvedExpressions);
         Query rangeQuery = rowMapper.query(dataRange);
-        Query query = search.query(schema, rangeQuery);
-        Sort sort = search.sort(schema);
-        boolean usesRelevance = search.usesRelevance();
-
-        // Setup search pagination
-        List<Row> rows = new LinkedList<>(); // The row list to be returned
-        SearchResult lastDoc = null; // The last search result
-
-        // Paginate search collecting documents
-        List<SearchResult> searchResults;
-        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
-        boolean maybeMore;
-        do
-        {
-            // Search rows identifiers in Lucene
-            luceneTime.start();
-            searchResults = luceneIndex.search(query, sort, lastDoc, pageSize, fieldsToLoad(), usesRelevance);
-            numDocs += searchResults.size();
-            lastDoc = searchResults.isEmpty() ? null : searchResults.get(searchResults.size() - 1);
-            luceneTime.stop();
-
-            // Collect rows from Cassandra
-            collectTime.start();
-            for (Row row : rows(searchResults, timestamp, usesRelevance))
+        Query query = cachedSearch.query(rangeQuery, expressionsQuery);
+        Sort sort = cachedSearch.getSort();
+        boolean usesRelevance = cachedSearch.usesRelevance();
+
+        // Collect rows while there are still hits and we don't have enough rows
+        Set<ColumnDefinition> columns = keysOnly ? keysOnlyColumns(search, unsolvedExpressions) : null;
+        SearchIterator iterator = searchIterator(query,
+                                                 sort,
+                                                 usesRelevance,
+                                                 unsolvedExpressions,
+                                                 columns,
+                                                 limit,
+                                                 timestamp);
+        List<Row> rows = new ArrayList<>();
+        while (rows.size() < limit && iterator.hasNext())
+        {
+            rows.add(iterator.next());
+        }
+
+        searchTime.stop();
+
+        Log.debug("Lucene time: %s", iterator.luceneTime);
+        Log.debug("Cassandra time: %s", iterator.collectTime);
+        Log.debug("Collected %d docs and %d rows in %d pages in %s",
+                  iterator.numDocs,
+                  rows.size(),
+                  iterator.numPages,
+                  searchTime);
+
+        return rows;
+    }
+
+    /**
+     * Returns a {@link SearchIterator} over the stored {@link Row}s satisfying the specified Lucene {@link Query} and
+     * filtering {@link IndexExpression}s.
+     *
+     * @param query         The Lucene {@link Query} to be satisfied.
+     * @param sort          The Lucene {@link Sort} to be used, if any.
+     * @param usesRelevance If the hits must be sorted by relevance.
+     * @param expressions   A list of filtering {@link IndexExpression}s not solved by {@code query}.
+     * @param columns       The columns to be read besides the CQL3 row marker, {@code null} means all the columns.
+     * @param limit         The max number of {@link Row}s to be returned.
+     * @param timestamp     The operation time stamp.
+     * @return A {@link SearchIterator} over the matching {@link Row}s.
+     */
+    private SearchIterator searchIterator(final Query query,
+                                          final Sort sort,
+                                          final boolean usesRelevance,
+                                          final List<IndexExpression> expressions,
+                                          final Set<ColumnDefinition> columns,
+                                          int limit,
+                                          final long timestamp)
+    {
+        return new SearchIterator(limit, MAX_PAGE_SIZE, FILTERING_PAGE_SIZE, READ_BATCH_SIZE)
+        {
+            @Override
+            protected List<SearchResult> search(SearchResult after, int count)
             {
-                if (row != null && accepted(row, expressions))
-                {
-                    rows.add(row);
-                }
+                return luceneIndex.search(query, sort, after, count, usesRelevance);
+            }
+
+            @Override
+            protected List<Row> rows(List<SearchResult> searchResults)
+            {
+                return RowService.this.rows(searchResults, timestamp, usesRelevance, columns);
             }
-            collectTime.stop();
 
-            // Setup next iteration
-            maybeMore = searchResults.size() == pageSize;
-            pageSize = Math.min(Math.max(FILTERING_PAGE_SIZE, rows.size() - limit), MAX_PAGE_SIZE);
-            numPages++;
+            @Override
+            protected boolean accepted(Row row)
+            {
+                return RowService.this.accepted(row, expressions);
+            }
+        };
+    }
 
-            // Iterate while there are still documents to read and we don't have enough rows
-        } while (maybeMore && rows.size() < limit);
+    /**
+     * Makes the previous writes visible to the specified {@link Search} if it requires it.
+     *
+     * @param search A {@link Search}.
+     */
+    private void maybeRefresh(Search search)
+    {
+        if (search.isRefresh())
+        {
+            if (indexQueue != null)
+            {
+                indexQueue.await();
+            }
+            luceneIndex.refresh();
+        }
+    }
 
-        sortTime.start();
-        Collections.sort(rows, comparator());
-        sortTime.stop();
+    /**
+     * Returns the partial results of the aggregations of the specified search over the specified {@link DataRange}.
+     * They are computed from the index doc values, without reading Cassandra. The results are returned as a JSON map
+     * stored in the indexed column of the first hit, in a single {@link Row}, so they can be merged by the coordinator
+     * with {@link #mergeAggregations(List, Search)}. If there are no hits, no rows are returned.
+     *
+     * @param cachedSearch The {@link SearchCache.CachedSearch} to be performed.
+     * @param dataRange    A {@link DataRange} to be satisfied.
+     * @param timestamp    The operation time stamp.
+     * @return The {@link Row} containing the partial results, if there are hits.
+     */
+    public final List<Row> aggregate(SearchCache.CachedSearch cachedSearch,
+                                     List<IndexExpression> expressions,
+                                     DataRange dataRange,
+                                     long timestamp)
+    {
+        Search search = cachedSearch.getSearch();
+        Log.debug("Aggregating with search %s ", search);
 
-        searchTime.stop();
+        List<IndexExpression> unsolvedExpressions = new ArrayList<>(expressions.size());
+        Query expressionsQuery = expressionsQuery(expressions, unsolvedExpressions);
+        if (!unsolvedExpressions.isEmpty())
+        {
+            throw new IllegalArgumentException("Aggregations can't be combined with restrictions over not " +
+                                               "mapped columns");
+        }
+        maybeRefresh(search);
 
-        Log.debug("Lucene time: %s", luceneTime);
-        Log.debug("Cassandra time: %s", collectTime);
-        Log.debug("Sort time: %s", sortTime);
-        Log.debug("Collected %d docs and %d rows in %d pages in %s", numDocs, rows.size(), numPages, searchTime);
+        TimeCounter time = new TimeCounter().start();
+        Map<String, Aggregator> aggregators = search.aggregators(schema);
+        Query query = cachedSearch.query(rowMapper.query(dataRange), expressionsQuery);
+        Collector collector = MultiCollector.wrap(aggregators.values().toArray(new Collector[aggregators.size()]));
+        SearchResult firstHit = luceneIndex.collect(query, collector);
+        time.stop();
+        Log.debug("Aggregated in %s", time);
 
-        return rows;
+        if (firstHit == null)
+        {
+            return Collections.emptyList();
+        }
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (Map.Entry<String, Aggregator> entry : aggregators.entrySet())
+        {
+            results.put(entry.getKey(), entry.getValue().result());
+        }
+        CellName cellName = rowMapper.makeCellName(firstHit);
+        return Collections.singletonList(aggregationsRow(firstHit.getPartitionKey(), cellName, results, timestamp));
+    }
+
+    /**
+     * Merges the partial aggregation results returned by {@link #aggregate(SearchCache.CachedSearch, List, DataRange, long)}
+     * for several token ranges into a single {@link Row}.
+     *
+     * @param rows   The {@link Row}s containing the partial aggregation results.
+     * @param search The {@link Search} whose aggregations are merged.
+     * @return A single {@link Row} containing the merged results, or no rows if there are no partial results.
+     */
+    @SuppressWarnings("unchecked")
+    public final List<Row> mergeAggregations(List<Row> rows, Search search)
+    {
+        if (rows.isEmpty())
+        {
+            return rows;
+        }
+        Map<String, Object> merged = null;
+        long timestamp = Long.MIN_VALUE;
+        for (Row row : rows)
+        {
+            Cell cell = row.cf.getColumn(rowMapper.makeCellName(row.cf));
+            Map<String, Object> results;
+            try
+            {
+                results = AGGREGATIONS_MAPPER.readValue(UTF8Type.instance.compose(cell.value()), Map.class);
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException(e);
+            }
+            merged = merged == null ? results : search.mergeAggregations(merged, results);
+            timestamp = Math.max(timestamp, cell.timestamp());
+        }
+        Row first = rows.get(0);
+        CellName cellName = rowMapper.makeCellName(first.cf);
+        return Collections.singletonList(aggregationsRow(first.key, cellName, merged, timestamp));
+    }
+
+    /**
+     * Returns a {@link Row} containing only the specified aggregation results, as JSON, in the specified cell.
+     */
+    private Row aggregationsRow(DecoratedKey partitionKey,
+                                CellName cellName,
+                                Map<String, Object> results,
+                                long timestamp)
+    {
+        String json;
+        try
+        {
+            json = AGGREGATIONS_MAPPER.writeValueAsString(results);
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+        ColumnFamily cf = ArrayBackedSortedColumns.factory.create(baseCfs.metadata);
+        cf.addColumn(cellName, UTF8Type.instance.decompose(json), timestamp);
+        return new Row(partitionKey, cf);
+    }
+
+    /**
+     * Returns a Lucene {@link Query} solving those of the specified filtering {@link IndexExpression}s that can be
+     * solved by the index, that is, the ones over columns whose {@link ColumnMapper} keeps the order and equality of
+     * the column type. The rest of the expressions are added to {@code unsolvedExpressions}, so they can be checked
+     * against the read rows.
+     *
+     * @param expressions         A list of filtering {@link IndexExpression}s.
+     * @param unsolvedExpressions The list where the expressions not solved by the index are added.
+     * @return A Lucene {@link Query} solving the solvable {@code expressions}, or {@code null} if there are none.
+     */
+    private Query expressionsQuery(List<IndexExpression> expressions, List<IndexExpression> unsolvedExpressions)
+    {
+        BooleanQuery query = new BooleanQuery();
+        for (IndexExpression expression : expressions)
+        {
+            Condition condition = condition(expression);
+            if (condition == null)
+            {
+                unsolvedExpressions.add(expression);
+            }
+            else
+            {
+                query.add(condition.query(schema), BooleanClause.Occur.MUST);
+            }
+        }
+        metrics.solvedExpressions.inc(expressions.size() - unsolvedExpressions.size());
+        metrics.unsolvedExpressions.inc(unsolvedExpressions.size());
+        BooleanClause[] clauses = query.getClauses();
+        if (clauses.length == 0)
+        {
+            return null;
+        }
+        return clauses.length == 1 ? clauses[0].getQuery() : query;
+    }
+
+    /**
+     * Returns the {@link Condition} equivalent to the specified {@link IndexExpression}, or {@code null} if it can't be
+     * solved by the index.
+     *
+     * @param expression A filtering {@link IndexExpression}.
+     * @return The {@link Condition} equivalent to {@code expression}, or {@code null} if there is no such condition.
+     */
+    private Condition condition(IndexExpression expression)
+    {
+        ColumnDefinition def = metadata.getColumnDefinition(expression.column);
+        if (def == null)
+        {
+            return null;
+        }
+        String name = def.name.toString();
+        ColumnMapper<?> columnMapper = schema.getMapper(name);
+        if (columnMapper == null || !columnMapper.preservesOrder(def.type))
+        {
+            return null;
+        }
+        Object value = def.type.compose(expression.value);
+        if (value instanceof String && ((String) value).trim().isEmpty())
+        {
+            return null; // Blank strings are not accepted by conditions
+        }
+        switch (expression.operator)
+        {
+            case EQ:
+                return new MatchCondition(null, null, name, value);
+            case GTE:
+                return new RangeCondition(null, null, name, value, null, true, false);
+            case GT:
+                return new RangeCondition(null, null, name, value, null, false, false);
+            case LTE:
+                return new RangeCondition(null, null, name, null, value, false, true);
+            case LT:
+                return new RangeCondition(null, null, name, null, value, false, false);
+            default:
+                return null;
+        }
     }
 
     /**
@@ -405,11 +973,119 @@ public abstract class RowService
      * @param searchResults The {@link SearchResult}s
      * @param timestamp     The time stamp to ignore deleted columns.
      * @param usesRelevance If the search uses relevance.
+     * @param columns       The columns to be read besides the CQL3 row marker, {@code null} means all the columns.
      * @return The {@link Row} identified by the specified {@link Document}s
      */
     protected abstract List<Row> rows(List<SearchResult> searchResults,
                                       long timestamp,
-                                      boolean usesRelevance);
+                                      boolean usesRelevance,
+                                      Set<ColumnDefinition> columns);
+
+    /**
+     * Returns the columns to be read in the first phase of a two-phase search with the specified {@link Search} and
+     * unsolved filtering {@link IndexExpression}s, that is, the sorting columns and the filtered columns. It returns
+     * {@code null}, meaning all the columns, if the table has no CQL3 row markers to be read instead of the full rows,
+     * as it happens with compact storage tables.
+     *
+     * @param search      The {@link Search} to be performed.
+     * @param expressions The filtering {@link IndexExpression}s not solved by the index.
+     * @return The columns to be read besides the CQL3 row marker, or {@code null} if all of them must be read.
+     */
+    private Set<ColumnDefinition> keysOnlyColumns(Search search, List<IndexExpression> expressions)
+    {
+        if (!hasRowMarkers())
+        {
+            return null;
+        }
+        Set<String> sortFields = sortFields(search);
+        Set<ColumnDefinition> columns = new HashSet<>();
+        for (ColumnDefinition definition : metadata.regularAndStaticColumns())
+        {
+            String name = definition.name.toString();
+            if (!indexedColumnName.equals(definition.name) && isKeyOnlyColumn(name, sortFields))
+            {
+                columns.add(definition);
+            }
+        }
+        for (IndexExpression expression : expressions)
+        {
+            ColumnDefinition definition = metadata.getColumnDefinition(expression.column);
+            if (definition != null)
+            {
+                columns.add(definition);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Returns {@code true} if the logical rows of the indexed table have CQL3 row markers, {@code false} otherwise.
+     *
+     * @return {@code true} if the logical rows of the indexed table have CQL3 row markers, {@code false} otherwise.
+     */
+    private boolean hasRowMarkers()
+    {
+        return metadata.comparator.isCompound() && !metadata.comparator.isDense();
+    }
+
+    /**
+     * Returns the {@link ColumnSlice}s selecting the CQL3 row marker and the specified regular columns of the logical
+     * row with the specified clustering prefix.
+     *
+     * @param prefix  The clustering prefix of a logical row, empty if the table has no clustering columns.
+     * @param columns The columns to be selected, the static ones are ignored.
+     * @return The {@link ColumnSlice}s selecting the marker and {@code columns}.
+     */
+    protected final List<ColumnSlice> keysOnlySlices(Composite prefix, Set<ColumnDefinition> columns)
+    {
+        CellNameType comparator = metadata.comparator;
+        List<ColumnSlice> slices = new ArrayList<>(columns.size() + 1);
+        slices.add(comparator.rowMarker(prefix).slice());
+        for (ColumnDefinition definition : columns)
+        {
+            if (!definition.isStatic())
+            {
+                slices.add(comparator.create(prefix, definition).slice());
+            }
+        }
+        return slices;
+    }
+
+    /**
+     * Runs the specified row reading tasks, returning their results in the same order. If the fetch concurrency of
+     * this index is greater than one the tasks are run in parallel by the node-wide fetch executor, with at most
+     * {@code fetch_concurrency} tasks of this index running at the same time. Otherwise they are run one after another
+     * in the calling thread.
+     *
+     * @param tasks The row reading tasks to be run.
+     * @param <T>   The type of the task results.
+     * @return The results of {@code tasks}, in the same order.
+     */
+    protected final <T> List<T> fetch(List<Callable<T>> tasks)
+    {
+        return rowFetcher.fetch(tasks);
+    }
+
+    /**
+     * Returns {@code true} if the specified written {@link ColumnFamily}, containing a single logical row, can be
+     * indexed without reading the row from the {@link ColumnFamilyStore}, according to the {@link WriteMode}.
+     *
+     * @param columnFamily A written {@link ColumnFamily} containing a single logical row.
+     * @param timestamp    The time stamp to ignore deleted columns.
+     * @return {@code true} if {@code columnFamily} can be indexed without reading, {@code false} otherwise.
+     */
+    protected boolean isBlindWritable(ColumnFamily columnFamily, long timestamp)
+    {
+        switch (writeMode)
+        {
+            case INSERT_ONLY:
+                return true;
+            case BLIND:
+                return rowMapper.isComplete(columnFamily, timestamp);
+            default:
+                return false;
+        }
+    }
 
     /**
      * Returns a {@link ColumnFamily} composed by the non expired {@link Cell}s of the specified  {@link ColumnFamily}.
@@ -452,6 +1128,143 @@ public abstract class RowService
         return new Row(row.key, dcf);
     }
 
+    /**
+     * Returns a copy of the specified {@link Row} containing only the cells required for identifying and sorting it
+     * according to the specified {@link Search}, that is, its CQL3 row marker, the score cell and the cells of the
+     * sorting columns. These key-only rows are returned by the first phase of a two-phase search.
+     *
+     * @param row    A {@link Row} satisfying {@code search}.
+     * @param search The {@link Search} that produced {@code row}.
+     * @return The key-only version of {@code row}.
+     */
+    public Row keysOnly(Row row, Search search)
+    {
+        Set<String> sortFields = sortFields(search);
+        ColumnFamily cf = ArrayBackedSortedColumns.factory.create(baseCfs.metadata);
+        for (Cell cell : row.cf)
+        {
+            CellName cellName = cell.name();
+            ColumnDefinition columnDefinition = metadata.getColumnDefinition(cellName);
+            if (columnDefinition == null)
+            {
+                // The CQL3 row marker, which is named by the clustering prefix and an empty column name
+                if (hasRowMarkers() && !cellName.cql3ColumnName(metadata).bytes.hasRemaining())
+                {
+                    cf.addColumn(cell);
+                }
+            }
+            else if (isKeyOnlyColumn(columnDefinition.name.toString(), sortFields))
+            {
+                cf.addColumn(cell);
+            }
+        }
+        return new Row(row.key, cf);
+    }
+
+    /**
+     * Returns the names of the fields used for sorting by the specified {@link Search}.
+     *
+     * @param search A {@link Search}.
+     * @return The names of the fields used for sorting by {@code search}.
+     */
+    private static Set<String> sortFields(Search search)
+    {
+        Set<String> sortFields = new HashSet<>();
+        if (search.usesSorting())
+        {
+            for (SortField sortField : search.getSort())
+            {
+                sortFields.add(sortField.getField());
+            }
+        }
+        return sortFields;
+    }
+
+    private boolean isKeyOnlyColumn(String name, Set<String> sortFields)
+    {
+        if (indexedColumnName.toString().equals(name))
+        {
+            return true;
+        }
+        for (String field : sortFields)
+        {
+            if (field.equals(name) || field.startsWith(name + "."))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the {@link ReadCommand} for reading the full version of the specified key-only {@link Row}s of the same
+     * partition, obtained in the first phase of a two-phase search.
+     *
+     * @param partitionKey The partition key of {@code rows}.
+     * @param rows         Key-only {@link Row}s of the partition identified by {@code partitionKey}.
+     * @param timestamp    The operation time stamp.
+     * @return The {@link ReadCommand} for reading the full version of {@code rows}.
+     */
+    public abstract ReadCommand fetchCommand(DecoratedKey partitionKey, List<Row> rows, long timestamp);
+
+    /**
+     * Returns the full {@link Row}s identified by the specified key-only {@link Row}s, taking them from the partitions
+     * read by the commands returned by {@link #fetchCommand(DecoratedKey, List, long)}. The full rows are decorated
+     * with their scores, if any. The rows that have been deleted between the two phases of the search are skipped.
+     *
+     * @param keysOnlyRows The sorted key-only {@link Row}s.
+     * @param partitions   The read partitions, maybe containing {@code null}s.
+     * @param timestamp    The time stamp to ignore deleted columns.
+     * @return The full {@link Row}s, in the same order as {@code keysOnlyRows}.
+     */
+    public List<Row> merge(List<Row> keysOnlyRows, List<Row> partitions, long timestamp)
+    {
+        Map<DecoratedKey, Map<CellName, ColumnFamily>> logicalRows = new HashMap<>(partitions.size());
+        for (Row partition : partitions)
+        {
+            if (partition != null && partition.cf != null)
+            {
+                logicalRows.put(partition.key, logicalRows(cleanExpired(partition.cf, timestamp)));
+            }
+        }
+
+        List<Row> rows = new ArrayList<>(keysOnlyRows.size());
+        for (Row keysOnlyRow : keysOnlyRows)
+        {
+            Map<CellName, ColumnFamily> partitionRows = logicalRows.get(keysOnlyRow.key);
+            ColumnFamily cf = partitionRows == null ? null : partitionRows.get(clusteringKey(keysOnlyRow));
+            if (cf == null || !cf.hasColumns())
+            {
+                continue;
+            }
+            Cell scoreCell = keysOnlyRow.cf.getColumn(rowMapper.makeCellName(keysOnlyRow.cf));
+            if (scoreCell != null)
+            {
+                cf.addColumn(scoreCell);
+            }
+            rows.add(new Row(keysOnlyRow.key, cf));
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the logical CQL3 rows contained in the specified partition {@link ColumnFamily}, grouped by clustering
+     * key.
+     *
+     * @param cf A partition {@link ColumnFamily} read by {@link #fetchCommand(DecoratedKey, List, long)}.
+     * @return The logical CQL3 rows contained in {@code cf}, grouped by clustering key.
+     */
+    protected abstract Map<CellName, ColumnFamily> logicalRows(ColumnFamily cf);
+
+    /**
+     * Returns the clustering key of the specified {@link Row}, which is {@code null} if the table has no clustering
+     * columns.
+     *
+     * @param row A logical CQL3 {@link Row}.
+     * @return The clustering key of {@code row}, maybe {@code null}.
+     */
+    protected abstract CellName clusteringKey(Row row);
+
     /**
      * Returns the {@link RowComparator} to be used for ordering the {@link Row}s obtained from the specified {@link
      * Search}. This {@link Comparator} is useful for merging the partial results obtained from running the specified
@@ -20,16 +20,26 @@ import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.ReadCommand;
 import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.SliceFromReadCommand;
+import org.apache.cassandra.db.columniterator.IdentityQueryFilter;
+import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.composites.Composites;
+import org.apache.cassandra.db.filter.ColumnSlice;
+import org.apache.cassandra.db.filter.IDiskAtomFilter;
 import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.Term;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * {@link RowService} that manages simple rows.
@@ -38,15 +48,6 @@ import java.util.Set;
  */
 public class RowServiceSkinny extends RowService
 {
-    /** The names of the Lucene fields to be loaded. */
-    private static final Set<String> FIELDS_TO_LOAD;
-
-    static
-    {
-        FIELDS_TO_LOAD = new HashSet<>();
-        FIELDS_TO_LOAD.add(PartitionKeyMapper.FIELD_NAME);
-    }
-
     /** The used row mapper. */
     private final RowMapperSkinny rowMapper;
 
@@ -60,18 +61,7 @@ public class RowServiceSkinny extends RowService
     {
         super(baseCfs, columnDefinition);
         this.rowMapper = (RowMapperSkinny) super.rowMapper;
-        luceneIndex.init(rowMapper.sort());
-    }
-
-    /**
-     * {@inheritDoc}
-     * <p/>
-     * These fields are just the partition key.
-     */
-    @Override
-    public Set<String> fieldsToLoad()
-    {
-        return FIELDS_TO_LOAD;
+        luceneIndex.init(rowMapper.sort(), metrics);
     }
 
     /**
@@ -86,9 +76,25 @@ public class RowServiceSkinny extends RowService
         if (columnFamily.iterator().hasNext()) // Create or update row
         {
             Log.debug("Adding PK " + partitionKey + " term: " + term);
-            Row row = row(partitionKey, timestamp); // Read row
-            Document document = rowMapper.document(row);
-            luceneIndex.upsert(term, document); // Store document
+            Row row = null;
+            if (isBlindWritable(columnFamily, timestamp))
+            {
+                row = rowMapper.writtenRow(partitionKey, cleanExpired(columnFamily, timestamp)); // Build row
+            }
+            if (row != null)
+            {
+                metrics.blindIndexings.inc();
+            }
+            else
+            {
+                row = row(partitionKey, timestamp); // Read row
+                metrics.readBeforeWriteIndexings.inc();
+            }
+            if (row != null)
+            {
+                Document document = rowMapper.document(row);
+                luceneIndex.upsert(partitionKey, term, document); // Store document
+            }
         }
         else if (columnFamily.deletionInfo() != null) // Delete full row
         {
@@ -98,9 +104,9 @@ public class RowServiceSkinny extends RowService
                 // This is set or map elements deletion actually
                 Row row = row(partitionKey, timestamp); // Read row
                 Document document = rowMapper.document(row);
-                luceneIndex.upsert(term, document); // Store document
+                luceneIndex.upsert(partitionKey, term, document); // Store document
             }else{
-                luceneIndex.delete(term);
+                luceneIndex.delete(partitionKey, term);
             }
         }
     }
@@ -110,23 +116,55 @@ public class RowServiceSkinny extends RowService
     public void deleteInner(DecoratedKey partitionKey)
     {
         Term term = rowMapper.term(partitionKey);
-        luceneIndex.delete(term);
+        luceneIndex.delete(partitionKey, term);
     }
 
     /** {@inheritDoc} */
-    protected List<Row> rows(List<SearchResult> searchResults, long timestamp, boolean usesRelevance)
+    @Override
+    public Map<Term, Document> documents(DecoratedKey partitionKey, ColumnFamily columnFamily, long timestamp)
     {
-        List<Row> rows = new ArrayList<>(searchResults.size());
+        ColumnFamily cleanColumnFamily = cleanExpired(columnFamily, timestamp);
+        if (!cleanColumnFamily.iterator().hasNext())
+        {
+            return Collections.emptyMap();
+        }
+        Document document = rowMapper.document(new Row(partitionKey, cleanColumnFamily));
+        return Collections.singletonMap(rowMapper.term(partitionKey), document);
+    }
+
+    /** {@inheritDoc} */
+    protected List<Row> rows(List<SearchResult> searchResults,
+                             final long timestamp,
+                             boolean usesRelevance,
+                             Set<ColumnDefinition> columns)
+    {
+        final IDiskAtomFilter dataFilter = dataFilter(columns);
+
+        // Read partitions, possibly in parallel
+        List<Callable<Row>> tasks = new ArrayList<>(searchResults.size());
         for (SearchResult searchResult : searchResults)
         {
+            final DecoratedKey partitionKey = searchResult.getPartitionKey();
+            tasks.add(new Callable<Row>()
+            {
+                @Override
+                public Row call()
+                {
+                    return row(partitionKey, dataFilter, timestamp);
+                }
+            });
+        }
+        List<Row> partitionRows = fetch(tasks);
 
-            // Extract row from document
-            DecoratedKey partitionKey = searchResult.getPartitionKey();
-            Row row = row(partitionKey, timestamp);
+        List<Row> rows = new ArrayList<>(searchResults.size());
+        for (int i = 0; i < searchResults.size(); i++)
+        {
+            SearchResult searchResult = searchResults.get(i);
+            Row row = partitionRows.get(i);
 
             if (row == null)
             {
-                return null;
+                continue;
             }
 
             // Return decorated row
@@ -144,17 +182,75 @@ public class RowServiceSkinny extends RowService
         return rows;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public ReadCommand fetchCommand(DecoratedKey partitionKey, List<Row> rows, long timestamp)
+    {
+        return new SliceFromReadCommand(metadata.ksName,
+                                        partitionKey.getKey(),
+                                        metadata.cfName,
+                                        timestamp,
+                                        new IdentityQueryFilter());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected Map<CellName, ColumnFamily> logicalRows(ColumnFamily cf)
+    {
+        return Collections.singletonMap(null, cf);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected CellName clusteringKey(Row row)
+    {
+        return null;
+    }
+
     /**
-     * Returns the CQL3 {@link Row} identified by the specified key pair, using the specified time stamp to ignore
+     * Returns the {@link IDiskAtomFilter} for reading the specified columns of a CQL3 row, including its CQL3 row
+     * marker.
+     *
+     * @param columns The columns to be read, {@code null} means all the columns.
+     * @return The {@link IDiskAtomFilter} for reading {@code columns}.
+     */
+    private IDiskAtomFilter dataFilter(Set<ColumnDefinition> columns)
+    {
+        if (columns == null)
+        {
+            return new IdentityQueryFilter();
+        }
+        List<ColumnSlice> slices = keysOnlySlices(Composites.EMPTY, columns);
+        ColumnSlice[] sortedSlices = ColumnSlice.deoverlapSlices(slices.toArray(new ColumnSlice[slices.size()]),
+                                                                 metadata.comparator);
+        return new SliceQueryFilter(sortedSlices, false, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the CQL3 {@link Row} identified by the specified partition key, using the specified time stamp to ignore
      * deleted columns. The {@link Row} is retrieved from the storage engine, so it involves IO operations.
      *
      * @param partitionKey The partition key.
      * @param timestamp    The time stamp to ignore deleted columns.
-     * @return The CQL3 {@link Row} identified by the specified key pair.
+     * @return The CQL3 {@link Row} identified by the specified partition key.
      */
     private Row row(DecoratedKey partitionKey, long timestamp)
     {
-        QueryFilter queryFilter = QueryFilter.getIdentityFilter(partitionKey, metadata.cfName, timestamp);
+        return row(partitionKey, new IdentityQueryFilter(), timestamp);
+    }
+
+    /**
+     * Returns the CQL3 {@link Row} identified by the specified partition key, using the specified time stamp to ignore
+     * deleted columns. The {@link Row} is retrieved from the storage engine, so it involves IO operations.
+     *
+     * @param partitionKey The partition key.
+     * @param dataFilter   The {@link IDiskAtomFilter} selecting the columns to be read.
+     * @param timestamp    The time stamp to ignore deleted columns.
+     * @return The CQL3 {@link Row} identified by the specified partition key.
+     */
+    private Row row(DecoratedKey partitionKey, IDiskAtomFilter dataFilter, long timestamp)
+    {
+        QueryFilter queryFilter = new QueryFilter(partitionKey, metadata.cfName, dataFilter, timestamp);
         ColumnFamily columnFamily = baseCfs.getColumnFamily(queryFilter);
         if (columnFamily != null)
         {
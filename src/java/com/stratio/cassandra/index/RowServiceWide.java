@@ -28,6 +28,7 @@ import org.apache.lucene.search.Query;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * {@link RowService} that manages wide rows.
@@ -36,16 +37,6 @@ import java.util.*;
  */
 public class RowServiceWide extends RowService
 {
-    /** The names of the Lucene fields to be loaded. */
-    private static final Set<String> FIELDS_TO_LOAD;
-
-    static
-    {
-        FIELDS_TO_LOAD = new HashSet<>();
-        FIELDS_TO_LOAD.add(PartitionKeyMapper.FIELD_NAME);
-        FIELDS_TO_LOAD.add(ClusteringKeyMapper.FIELD_NAME);
-    }
-
     /** The used row mapper. */
     private final RowMapperWide rowMapper;
 
@@ -59,18 +50,7 @@ public class RowServiceWide extends RowService
     {
         super(baseCfs, columnDefinition);
         this.rowMapper = (RowMapperWide) super.rowMapper;
-        luceneIndex.init(rowMapper.sort());
-    }
-
-    /**
-     * {@inheritDoc}
-     * <p/>
-     * These fields are the partition and clustering keys.
-     */
-    @Override
-    public Set<String> fieldsToLoad()
-    {
-        return FIELDS_TO_LOAD;
+        luceneIndex.init(rowMapper.sort(), metrics);
     }
 
     /** {@inheritDoc} */
@@ -82,15 +62,44 @@ public class RowServiceWide extends RowService
 
         if (columnFamily.iterator().hasNext())
         {
-            List<CellName> clusteringKeys = rowMapper.clusteringKeys(columnFamily);
-            Map<CellName, Row> rows = rows(partitionKey, clusteringKeys, timestamp);
-            for (Map.Entry<CellName, Row> entry : rows.entrySet())
+            List<CellName> clusteringKeys;
+            if (writeMode == WriteMode.READ_BEFORE_WRITE)
             {
-                CellName clusteringKey = entry.getKey();
-                Row row = entry.getValue();
-                Document document = rowMapper.document(row);
-                Term term = rowMapper.term(partitionKey, clusteringKey);
-                luceneIndex.upsert(term, document); // Store document
+                clusteringKeys = rowMapper.clusteringKeys(columnFamily);
+            }
+            else
+            {
+                // Index the complete written rows, collecting the rest to be read
+                clusteringKeys = new ArrayList<>();
+                Map<CellName, ColumnFamily> writtenRows = rowMapper.splitCells(columnFamily);
+                Map<CellName, ColumnFamily> liveRows = rowMapper.splitCells(cleanExpired(columnFamily, timestamp));
+                for (Map.Entry<CellName, ColumnFamily> entry : writtenRows.entrySet())
+                {
+                    CellName clusteringKey = entry.getKey();
+                    ColumnFamily liveRow = liveRows.get(clusteringKey);
+                    if (liveRow != null && isBlindWritable(entry.getValue(), timestamp))
+                    {
+                        upsert(partitionKey, clusteringKey, new Row(partitionKey, liveRow));
+                        metrics.blindIndexings.inc();
+                    }
+                    else
+                    {
+                        clusteringKeys.add(clusteringKey);
+                    }
+                }
+            }
+
+            if (!clusteringKeys.isEmpty())
+            {
+                Map<CellName, Row> rows = rows(partitionKey, dataFilter(clusteringKeys), timestamp);
+                if (rows != null)
+                {
+                    for (Map.Entry<CellName, Row> entry : rows.entrySet())
+                    {
+                        upsert(partitionKey, entry.getKey(), entry.getValue());
+                    }
+                }
+                metrics.readBeforeWriteIndexings.inc(clusteringKeys.size());
             }
         }
         else if (deletionInfo != null)
@@ -102,23 +111,52 @@ public class RowServiceWide extends RowService
                 {
                     RangeTombstone rangeTombstone = iterator.next();
                     Query query = rowMapper.query(partitionKey, rangeTombstone);
-                    luceneIndex.delete(query);
+                    luceneIndex.delete(partitionKey, query);
                 }
             }
             else
             {
                 Term term = rowMapper.term(partitionKey);
-                luceneIndex.delete(term);
+                luceneIndex.delete(partitionKey, term);
             }
         }
     }
 
+    /**
+     * Puts in the Lucene index the specified logical {@link Row}.
+     *
+     * @param partitionKey  The partition key.
+     * @param clusteringKey The clustering key.
+     * @param row           The logical {@link Row} to be indexed.
+     */
+    private void upsert(DecoratedKey partitionKey, CellName clusteringKey, Row row)
+    {
+        Document document = rowMapper.document(row);
+        Term term = rowMapper.term(partitionKey, clusteringKey);
+        luceneIndex.upsert(partitionKey, term, document); // Store document
+    }
+
     /** {@inheritDoc} */
     @Override
     public void deleteInner(DecoratedKey partitionKey)
     {
         Term term = rowMapper.term(partitionKey);
-        luceneIndex.delete(term);
+        luceneIndex.delete(partitionKey, term);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<Term, Document> documents(DecoratedKey partitionKey, ColumnFamily columnFamily, long timestamp)
+    {
+        Map<CellName, ColumnFamily> columnFamilies = rowMapper.splitRows(cleanExpired(columnFamily, timestamp));
+        Map<Term, Document> documents = new LinkedHashMap<>(columnFamilies.size());
+        for (Map.Entry<CellName, ColumnFamily> entry : columnFamilies.entrySet())
+        {
+            Term term = rowMapper.term(partitionKey, entry.getKey());
+            Document document = rowMapper.document(new Row(partitionKey, entry.getValue()));
+            documents.put(term, document);
+        }
+        return documents;
     }
 
     /**
@@ -127,14 +165,17 @@ public class RowServiceWide extends RowService
      * The {@link Row} is a logical one.
      */
     @Override
-    protected List<Row> rows(List<SearchResult> searchResults, long timestamp, boolean usesRelevance)
+    protected List<Row> rows(List<SearchResult> searchResults,
+                             final long timestamp,
+                             boolean usesRelevance,
+                             final Set<ColumnDefinition> columns)
     {
         // Initialize result
         List<Row> rows = new ArrayList<>(searchResults.size());
 
         // Group key queries by partition keys
         Map<CellName, Float> scoresByClusteringKey = new HashMap<>(searchResults.size());
-        Map<DecoratedKey, List<CellName>> keys = new HashMap<>();
+        Map<DecoratedKey, List<CellName>> keys = new LinkedHashMap<>(); // Keep the hits order
         for (SearchResult searchResult : searchResults)
         {
             DecoratedKey partitionKey = searchResult.getPartitionKey();
@@ -150,26 +191,43 @@ public class RowServiceWide extends RowService
             clusteringKeys.add(clusteringKey);
         }
 
+        // Read partitions, possibly in parallel
+        List<Callable<Map<CellName, Row>>> tasks = new ArrayList<>();
         for (Map.Entry<DecoratedKey, List<CellName>> entry : keys.entrySet())
         {
-            DecoratedKey partitionKey = entry.getKey();
-            for (List<CellName> clusteringKeys : Lists.partition(entry.getValue(), 1000))
+            final DecoratedKey partitionKey = entry.getKey();
+            for (final List<CellName> clusteringKeys : Lists.partition(entry.getValue(), 1000))
             {
-                Map<CellName, Row> partitionRows = rows(partitionKey, clusteringKeys, timestamp);
-                for (Map.Entry<CellName, Row> entry1 : partitionRows.entrySet())
+                tasks.add(new Callable<Map<CellName, Row>>()
                 {
-                    Row row = entry1.getValue();
-                    if (usesRelevance)
+                    @Override
+                    public Map<CellName, Row> call()
                     {
-                        CellName clusteringKey = entry1.getKey();
-                        Float score = scoresByClusteringKey.get(clusteringKey);
-                        Row scoredRow = addScoreColumn(row, timestamp, score);
-                        rows.add(scoredRow);
-                    }
-                    else
-                    {
-                        rows.add(row);
+                        return rows(partitionKey, dataFilter(clusteringKeys, columns), timestamp);
                     }
+                });
+            }
+        }
+
+        for (Map<CellName, Row> partitionRows : fetch(tasks))
+        {
+            if (partitionRows == null)
+            {
+                continue;
+            }
+            for (Map.Entry<CellName, Row> entry : partitionRows.entrySet())
+            {
+                Row row = entry.getValue();
+                if (usesRelevance)
+                {
+                    CellName clusteringKey = entry.getKey();
+                    Float score = scoresByClusteringKey.get(clusteringKey);
+                    Row scoredRow = addScoreColumn(row, timestamp, score);
+                    rows.add(scoredRow);
+                }
+                else
+                {
+                    rows.add(row);
                 }
             }
         }
@@ -180,27 +238,13 @@ public class RowServiceWide extends RowService
      * Returns the CQL3 {@link Row} identified by the specified key pair, using the specified time stamp to ignore
      * deleted columns. The {@link Row} is retrieved from the storage engine, so it involves IO operations.
      *
-     * @param partitionKey   The partition key.
-     * @param clusteringKeys The clustering keys.
-     * @param timestamp      The time stamp to ignore deleted columns.
+     * @param partitionKey The partition key.
+     * @param dataFilter   The {@link SliceQueryFilter} selecting the CQL3 rows to be read.
+     * @param timestamp    The time stamp to ignore deleted columns.
      * @return The CQL3 {@link Row} identified by the specified key pair.
      */
-    private Map<CellName, Row> rows(DecoratedKey partitionKey, List<CellName> clusteringKeys, long timestamp)
+    private Map<CellName, Row> rows(DecoratedKey partitionKey, SliceQueryFilter dataFilter, long timestamp)
     {
-        ColumnSlice[] slices = rowMapper.columnSlices(clusteringKeys);
-
-        if (baseCfs.metadata.hasStaticColumns())
-        {
-            LinkedList<ColumnSlice> l = new LinkedList<>(Arrays.asList(slices));
-            l.addFirst(baseCfs.metadata.comparator.staticPrefix().slice());
-            slices = new ColumnSlice[l.size()];
-            slices = l.toArray(slices);
-        }
-
-        SliceQueryFilter dataFilter = new SliceQueryFilter(slices,
-                                                           false,
-                                                           Integer.MAX_VALUE,
-                                                           baseCfs.metadata.clusteringColumns().size());
         QueryFilter queryFilter = new QueryFilter(partitionKey, baseCfs.name, dataFilter, timestamp);
 
         ColumnFamily queryColumnFamily = baseCfs.getColumnFamily(queryFilter);
@@ -218,7 +262,7 @@ public class RowServiceWide extends RowService
         Map<CellName, ColumnFamily> columnFamilies = rowMapper.splitRows(cleanQueryColumnFamily);
 
         // Build and return rows
-        Map<CellName, Row> rows = new HashMap<>(columnFamilies.size());
+        Map<CellName, Row> rows = new LinkedHashMap<>(columnFamilies.size());
         for (Map.Entry<CellName, ColumnFamily> entry : columnFamilies.entrySet())
         {
             Row row = new Row(partitionKey, entry.getValue());
@@ -227,4 +271,89 @@ public class RowServiceWide extends RowService
         return rows;
     }
 
+    /**
+     * Returns the {@link SliceQueryFilter} for reading the CQL3 rows identified by the specified clustering keys,
+     * including the static columns if any.
+     *
+     * @param clusteringKeys The clustering keys.
+     * @return The {@link SliceQueryFilter} for reading the CQL3 rows identified by {@code clusteringKeys}.
+     */
+    private SliceQueryFilter dataFilter(List<CellName> clusteringKeys)
+    {
+        ColumnSlice[] slices = rowMapper.columnSlices(clusteringKeys);
+
+        if (baseCfs.metadata.hasStaticColumns())
+        {
+            LinkedList<ColumnSlice> l = new LinkedList<>(Arrays.asList(slices));
+            l.addFirst(baseCfs.metadata.comparator.staticPrefix().slice());
+            slices = new ColumnSlice[l.size()];
+            slices = l.toArray(slices);
+        }
+
+        return new SliceQueryFilter(slices, false, Integer.MAX_VALUE, baseCfs.metadata.clusteringColumns().size());
+    }
+
+    /**
+     * Returns the {@link SliceQueryFilter} for reading the specified columns of the CQL3 rows identified by the
+     * specified clustering keys, including their CQL3 row markers.
+     *
+     * @param clusteringKeys The clustering keys.
+     * @param columns        The columns to be read, {@code null} means all the columns.
+     * @return The {@link SliceQueryFilter} for reading {@code columns} of the CQL3 rows identified by {@code
+     * clusteringKeys}.
+     */
+    private SliceQueryFilter dataFilter(List<CellName> clusteringKeys, Set<ColumnDefinition> columns)
+    {
+        if (columns == null)
+        {
+            return dataFilter(clusteringKeys);
+        }
+
+        List<ColumnSlice> slices = new ArrayList<>();
+        for (ColumnDefinition definition : columns)
+        {
+            if (definition.isStatic())
+            {
+                slices.add(metadata.comparator.create(metadata.comparator.staticPrefix(), definition).slice());
+            }
+        }
+        for (CellName clusteringKey : clusteringKeys)
+        {
+            slices.addAll(keysOnlySlices(rowMapper.clusteringPrefix(clusteringKey), columns));
+        }
+        ColumnSlice[] sortedSlices = ColumnSlice.deoverlapSlices(slices.toArray(new ColumnSlice[slices.size()]),
+                                                                 metadata.comparator);
+        return new SliceQueryFilter(sortedSlices, false, Integer.MAX_VALUE, metadata.clusteringColumns().size());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ReadCommand fetchCommand(DecoratedKey partitionKey, List<Row> rows, long timestamp)
+    {
+        List<CellName> clusteringKeys = new ArrayList<>(rows.size());
+        for (Row row : rows)
+        {
+            clusteringKeys.add(rowMapper.clusteringKey(row.cf));
+        }
+        return new SliceFromReadCommand(metadata.ksName,
+                                        partitionKey.getKey(),
+                                        metadata.cfName,
+                                        timestamp,
+                                        dataFilter(clusteringKeys));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected Map<CellName, ColumnFamily> logicalRows(ColumnFamily cf)
+    {
+        return rowMapper.splitRows(cf);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected CellName clusteringKey(Row row)
+    {
+        return rowMapper.clusteringKey(row.cf);
+    }
+
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.stratio.cassandra.index.query.Search;
+import com.stratio.cassandra.index.schema.Schema;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Bounded cache of the {@link Search}es of an index, keyed by their raw JSON bytes. Each entry holds the parsed and
+ * validated {@link Search} together with its Lucene {@link Query}s and {@link Sort}, so repeated searches, as the ones
+ * of prepared statements, don't need to be parsed and built again. Entries built with an older Cassandra schema version
+ * are rebuilt. The filtering {@link Query}s are resolved through the index {@link FilterCache}.
+ */
+public class SearchCache
+{
+    /** The max number of cached searches per index. */
+    public static final int CACHE_SIZE = Integer.getInteger("cassandra.lucene_search_cache_size", 1000);
+
+    private final Schema schema;
+    private final RowIndexMetrics metrics;
+    private final FilterCache filterCache;
+    private final Cache<ByteBuffer, CachedSearch> cache;
+
+    /**
+     * Builds a new {@link SearchCache} for the specified {@link Schema}.
+     *
+     * @param schema      The index {@link Schema}.
+     * @param metrics     The index {@link RowIndexMetrics}.
+     * @param filterCache The index {@link FilterCache}.
+     */
+    public SearchCache(Schema schema, RowIndexMetrics metrics, FilterCache filterCache)
+    {
+        this.schema = schema;
+        this.metrics = metrics;
+        this.filterCache = filterCache;
+        this.cache = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+    }
+
+    /**
+     * Returns the {@link CachedSearch} represented by the specified JSON bytes, parsing and validating it if it is not
+     * cached.
+     *
+     * @param json The UTF-8 JSON bytes of a {@link Search}.
+     * @return The {@link CachedSearch} represented by {@code json}.
+     */
+    public CachedSearch get(ByteBuffer json)
+    {
+        UUID schemaVersion = org.apache.cassandra.config.Schema.instance.getVersion();
+        CachedSearch cachedSearch = cache.getIfPresent(json);
+        if (cachedSearch != null && equals(schemaVersion, cachedSearch.schemaVersion))
+        {
+            metrics.searchCacheHits.inc();
+            return cachedSearch;
+        }
+        metrics.searchCacheMisses.inc();
+        Search search = Search.fromJson(UTF8Type.instance.compose(json));
+        cachedSearch = new CachedSearch(search, schema, schemaVersion, filterCache);
+        cache.put(ByteBufferUtil.clone(json), cachedSearch); // Don't retain the request buffer
+        return cachedSearch;
+    }
+
+    private static boolean equals(UUID a, UUID b)
+    {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * A parsed and validated {@link Search} with its Lucene {@link Query}s and {@link Sort}.
+     */
+    public static final class CachedSearch
+    {
+        private final Search search;
+        private final Query relevanceQuery;
+        private final Query filterQuery;
+        private final Sort sort;
+        private final UUID schemaVersion;
+        private final FilterCache filterCache;
+
+        private CachedSearch(Search search, Schema schema, UUID schemaVersion, FilterCache filterCache)
+        {
+            this.search = search;
+            this.relevanceQuery = search.relevanceQuery(schema);
+            this.filterQuery = search.filterQuery(schema);
+            this.sort = search.sort(schema);
+            this.schemaVersion = schemaVersion;
+            this.filterCache = filterCache;
+        }
+
+        /**
+         * Returns the parsed {@link Search}.
+         *
+         * @return The parsed {@link Search}.
+         */
+        public Search getSearch()
+        {
+            return search;
+        }
+
+        /**
+         * Returns the Lucene {@link Query} of the search combined with the specified range {@link Query}. The result is
+         * equivalent to {@link Search#query(Schema, Query)}, but the conditions are not built again, and both the
+         * filtering and the range {@link Query}s are resolved through the {@link FilterCache}.
+         *
+         * @param rangeQuery An additional range {@link Query}, maybe {@code null}.
+         * @return The Lucene {@link Query} of the search restricted to {@code rangeQuery}.
+         */
+        public Query query(Query rangeQuery)
+        {
+            return query(rangeQuery, null);
+        }
+
+        /**
+         * Returns the Lucene {@link Query} of the search combined with the specified range {@link Query} and the
+         * specified {@link Query} solving other CQL restrictions. Both additional {@link Query}s are resolved through
+         * the {@link FilterCache}.
+         *
+         * @param rangeQuery       An additional range {@link Query}, maybe {@code null}.
+         * @param expressionsQuery An additional {@link Query} solving CQL restrictions, maybe {@code null}.
+         * @return The Lucene {@link Query} of the search restricted to {@code rangeQuery} and {@code expressionsQuery}.
+         */
+        public Query query(Query rangeQuery, Query expressionsQuery)
+        {
+            if (relevanceQuery == null && filterQuery == null && rangeQuery == null && expressionsQuery == null)
+            {
+                return new MatchAllDocsQuery();
+            }
+            BooleanQuery booleanQuery = new BooleanQuery();
+            if (relevanceQuery != null)
+            {
+                booleanQuery.add(relevanceQuery, BooleanClause.Occur.MUST);
+            }
+            if (filterQuery != null)
+            {
+                booleanQuery.add(filterCache.query(filterQuery), BooleanClause.Occur.MUST);
+            }
+            if (rangeQuery != null)
+            {
+                booleanQuery.add(filterCache.query(rangeQuery), BooleanClause.Occur.MUST);
+            }
+            if (expressionsQuery != null)
+            {
+                booleanQuery.add(filterCache.query(expressionsQuery), BooleanClause.Occur.MUST);
+            }
+            return booleanQuery;
+        }
+
+        /**
+         * Returns the Lucene {@link Sort} of the search, maybe {@code null} meaning no sorting.
+         *
+         * @return The Lucene {@link Sort} of the search.
+         */
+        public Sort getSort()
+        {
+            return sort;
+        }
+
+        /**
+         * Returns {@code true} if the search uses relevance, {@code false} otherwise.
+         *
+         * @return {@code true} if the search uses relevance, {@code false} otherwise.
+         */
+        public boolean usesRelevance()
+        {
+            return search.usesRelevance();
+        }
+
+        /**
+         * Returns {@code true} if the search uses relevance or sorting, {@code false} otherwise.
+         *
+         * @return {@code true} if the search uses relevance or sorting, {@code false} otherwise.
+         */
+        public boolean usesRelevanceOrSorting()
+        {
+            return search.usesRelevanceOrSorting();
+        }
+    }
+}
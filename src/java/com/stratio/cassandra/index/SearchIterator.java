@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.google.common.collect.AbstractIterator;
+import com.stratio.cassandra.index.util.TimeCounter;
+import org.apache.cassandra.db.Row;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link Iterator} over the {@link Row}s satisfying a search. The Lucene index is paginated and the hits of each page
+ * are read from Cassandra in batches, so only a bounded number of not yet accepted rows is kept in memory. The rows
+ * are returned in the same order as the hits.
+ *
+ * @author Andres de la Pena <adelapena@stratio.com>
+ */
+abstract class SearchIterator extends AbstractIterator<Row>
+{
+    private final int limit;
+    private final int maxPageSize;
+    private final int filteringPageSize;
+    private final int batchSize;
+
+    final TimeCounter luceneTime = new TimeCounter();
+    final TimeCounter collectTime = new TimeCounter();
+    int numDocs = 0;
+    int numPages = 0;
+    private int numRows = 0;
+
+    private SearchResult lastDoc = null; // The last search result
+    private boolean maybeMore = true; // If there could be more hits in the Lucene index
+    private Iterator<SearchResult> searchResults = Collections.emptyIterator(); // The current page hits
+    private Iterator<Row> rows = Collections.emptyIterator(); // The current batch rows
+
+    /**
+     * Builds a new {@link SearchIterator}.
+     *
+     * @param limit             The max number of {@link Row}s that are going to be requested.
+     * @param maxPageSize       The max number of hits to be searched in the index at once.
+     * @param filteringPageSize The min number of hits to be searched in the index after the first page.
+     * @param batchSize         The max number of rows to be read from Cassandra at once.
+     */
+    SearchIterator(int limit, int maxPageSize, int filteringPageSize, int batchSize)
+    {
+        this.limit = limit;
+        this.maxPageSize = maxPageSize;
+        this.filteringPageSize = filteringPageSize;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the next page of Lucene hits.
+     *
+     * @param after The last hit of the previous page, {@code null} if this is the first page.
+     * @param count The max number of hits to be returned.
+     * @return The next page of at most {@code count} Lucene hits.
+     */
+    protected abstract List<SearchResult> search(SearchResult after, int count);
+
+    /**
+     * Returns the {@link Row}s identified by the specified Lucene hits, in the same order.
+     *
+     * @param searchResults A batch of Lucene hits.
+     * @return The {@link Row}s identified by {@code searchResults}.
+     */
+    protected abstract List<Row> rows(List<SearchResult> searchResults);
+
+    /**
+     * Returns {@code true} if the specified read {@link Row} must be returned, {@code false} otherwise.
+     *
+     * @param row A read {@link Row}.
+     * @return {@code true} if {@code row} must be returned, {@code false} otherwise.
+     */
+    protected abstract boolean accepted(Row row);
+
+    /** {@inheritDoc} */
+    @Override
+    protected Row computeNext()
+    {
+        while (true)
+        {
+            collectTime.start();
+            while (rows.hasNext())
+            {
+                Row row = rows.next();
+                if (row != null && accepted(row))
+                {
+                    collectTime.stop();
+                    numRows++;
+                    return row;
+                }
+            }
+            collectTime.stop();
+
+            List<SearchResult> batch = nextBatch();
+            if (batch.isEmpty())
+            {
+                return endOfData();
+            }
+
+            // Collect rows from Cassandra
+            collectTime.start();
+            rows = rows(batch).iterator();
+            collectTime.stop();
+        }
+    }
+
+    /**
+     * Returns the next batch of at most {@link #batchSize} Lucene hits, searching the next index page if the current
+     * one is exhausted.
+     *
+     * @return The next batch of Lucene hits, which is empty if there are no more hits.
+     */
+    private List<SearchResult> nextBatch()
+    {
+        if (!searchResults.hasNext() && maybeMore)
+        {
+            // Search rows identifiers in Lucene
+            luceneTime.start();
+            int pageSize = numPages == 0
+                           ? Math.min(limit, maxPageSize)
+                           : Math.min(Math.max(filteringPageSize, limit - numRows), maxPageSize);
+            List<SearchResult> page = search(lastDoc, pageSize);
+            numDocs += page.size();
+            numPages++;
+            lastDoc = page.isEmpty() ? null : page.get(page.size() - 1);
+            maybeMore = page.size() == pageSize;
+            searchResults = page.iterator();
+            luceneTime.stop();
+        }
+
+        List<SearchResult> batch = new ArrayList<>(Math.min(batchSize, limit));
+        while (searchResults.hasNext() && batch.size() < batchSize)
+        {
+            batch.add(searchResults.next());
+        }
+        return batch;
+    }
+}
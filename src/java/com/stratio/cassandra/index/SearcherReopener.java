@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.stratio.cassandra.index.util.Log;
+import org.apache.lucene.index.TrackingIndexWriter;
+import org.apache.lucene.search.ReferenceManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread reopening the index searchers with an adaptive policy, replacing Lucene's {@code
+ * ControlledRealTimeReopenThread} fixed staleness:
+ * <ul>
+ * <li>If there are searches waiting for a generation newer than the searchable one, the searcher is reopened as soon as
+ * the min interval between reopens allows it.</li>
+ * <li>If there are not waiting searches but there are writes not visible yet, the searcher is reopened when the oldest
+ * of them reaches the max staleness.</li>
+ * <li>If the index is idle, the thread sleeps until the next write or waiting search.</li>
+ * </ul>
+ * The min interval between reopens grows with the reopen cost, so searchers are not reopened continuously under heavy
+ * writes.
+ */
+public class SearcherReopener extends Thread implements Closeable
+{
+    /** The min ratio between the time between reopens and the time spent reopening. */
+    private static final int REOPEN_COST_FACTOR = 10;
+
+    private final TrackingIndexWriter writer;
+    private final ReferenceManager<?> manager;
+    private final long maxStaleNanos;
+    private final long minStaleNanos;
+    private final RowIndexMetrics metrics;
+
+    /** The time of the oldest write not visible to searches, or {@code 0} if all writes are visible. */
+    private final AtomicLong unseenWriteNanos = new AtomicLong(0);
+
+    private volatile boolean finish = false;
+    private volatile long searchingGen = 0;
+    private long waitingGen = 0;
+    private long lastReopenNanos = System.nanoTime();
+    private long lastReopenCostNanos = 0;
+
+    /**
+     * Builds a new {@link SearcherReopener}. It must be started with {@link #start()}.
+     *
+     * @param writer       The {@link TrackingIndexWriter} whose writes must be made visible.
+     * @param manager      The searchers {@link ReferenceManager}.
+     * @param maxStaleSecs The max time in seconds that a write can remain not visible to searches.
+     * @param minStaleSecs The min time in seconds between reopens.
+     * @param metrics      The index {@link RowIndexMetrics}.
+     */
+    public SearcherReopener(TrackingIndexWriter writer,
+                            ReferenceManager<?> manager,
+                            double maxStaleSecs,
+                            double minStaleSecs,
+                            RowIndexMetrics metrics)
+    {
+        this.writer = writer;
+        this.manager = manager;
+        this.maxStaleNanos = (long) (maxStaleSecs * 1000000000);
+        this.minStaleNanos = (long) (minStaleSecs * 1000000000);
+        this.metrics = metrics;
+        setName("Lucene searcher reopener");
+        setDaemon(true);
+    }
+
+    /**
+     * Notifies this that a write has been done in the index, so it must eventually be made visible.
+     */
+    public void written()
+    {
+        if (unseenWriteNanos.compareAndSet(0, System.nanoTime()))
+        {
+            synchronized (this)
+            {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until all the writes done before this call are visible to searches, reopening the searcher as soon as
+     * possible.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void waitForCurrentGeneration() throws InterruptedException
+    {
+        long targetGen = writer.getGeneration();
+        synchronized (this)
+        {
+            if (targetGen > waitingGen)
+            {
+                waitingGen = targetGen;
+                notifyAll();
+            }
+            while (searchingGen < targetGen && !finish)
+            {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds since the oldest write not visible to searches, or {@code 0} if all writes are
+     * visible.
+     *
+     * @return The current searcher staleness in milliseconds.
+     */
+    public long getStalenessMillis()
+    {
+        long writeNanos = unseenWriteNanos.get();
+        return writeNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - writeNanos);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void run()
+    {
+        while (!finish)
+        {
+            boolean forced;
+            synchronized (this)
+            {
+                long now = System.nanoTime();
+                long minInterval = Math.max(minStaleNanos, REOPEN_COST_FACTOR * lastReopenCostNanos);
+                long minIntervalWait = minInterval - (now - lastReopenNanos);
+                long writeNanos = unseenWriteNanos.get();
+                long waitNanos;
+                forced = waitingGen > searchingGen;
+                if (forced)
+                {
+                    waitNanos = minIntervalWait;
+                }
+                else if (writeNanos != 0)
+                {
+                    waitNanos = Math.max(maxStaleNanos - (now - writeNanos), minIntervalWait);
+                }
+                else
+                {
+                    waitNanos = Long.MAX_VALUE; // Idle, wait for a write or a waiting search
+                }
+
+                if (waitNanos > 0)
+                {
+                    try
+                    {
+                        if (waitNanos == Long.MAX_VALUE)
+                        {
+                            wait();
+                        }
+                        else
+                        {
+                            wait(waitNanos / 1000000, (int) (waitNanos % 1000000));
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    continue; // Recompute the wait time with the new state
+                }
+            }
+            reopen(forced);
+        }
+    }
+
+    private void reopen(boolean forced)
+    {
+        long startTime = System.nanoTime();
+        unseenWriteNanos.set(0);
+        long refreshStartGen = writer.getAndIncrementGeneration();
+        try
+        {
+            manager.maybeRefreshBlocking();
+        }
+        catch (IOException e)
+        {
+            Log.error(e, "Error while reopening searcher");
+        }
+        long cost = System.nanoTime() - startTime;
+
+        metrics.reopenLatency.update(cost, TimeUnit.NANOSECONDS);
+        if (forced)
+        {
+            metrics.forcedReopens.inc();
+        }
+
+        synchronized (this)
+        {
+            searchingGen = refreshStartGen;
+            lastReopenNanos = System.nanoTime();
+            lastReopenCostNanos = cost;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops this thread, waking up the waiting searches.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (this)
+        {
+            finish = true;
+            notifyAll();
+        }
+        try
+        {
+            join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
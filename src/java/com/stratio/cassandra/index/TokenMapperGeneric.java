@@ -22,10 +22,8 @@ import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.dht.Token.TokenFactory;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.Field.Store;
-import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
 import org.apache.lucene.util.BytesRef;
@@ -35,7 +33,7 @@ import java.nio.ByteBuffer;
 
 /**
  * {@link TokenMapper} to be used when any {@link IPartitioner} when there is not a more specific implementation. It
- * indexes the token raw binary value as a Lucene string field.
+ * indexes the token raw binary value as a Lucene binary term with doc values.
  *
  * @author Andres de la Pena <adelapena@stratio.com>
  */
@@ -59,10 +57,9 @@ public class TokenMapperGeneric extends TokenMapper
     @SuppressWarnings("unchecked")
     public void addFields(Document document, DecoratedKey partitionKey)
     {
-        ByteBuffer bb = factory.toByteArray(partitionKey.getToken());
-        String serialized = ByteBufferUtils.toString(bb);
-        Field field = new StringField(FIELD_NAME, serialized, Store.YES);
-        document.add(field);
+        BytesRef bytesRef = bytesRef(partitionKey.getToken());
+        document.add(new KeyField(FIELD_NAME, bytesRef));
+        document.add(new BinaryDocValuesField(FIELD_NAME, bytesRef));
     }
 
     /** {@inheritDoc} */
@@ -107,8 +104,7 @@ public class TokenMapperGeneric extends TokenMapper
      */
     Token token(BytesRef bytesRef)
     {
-        String string = bytesRef.utf8ToString();
-        ByteBuffer bb = ByteBufferUtils.fromString(string);
+        ByteBuffer bb = ByteBufferUtils.byteBuffer(bytesRef);
         return factory.fromByteArray(bb);
     }
 
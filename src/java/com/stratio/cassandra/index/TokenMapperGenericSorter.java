@@ -16,9 +16,10 @@
 package com.stratio.cassandra.index;
 
 import org.apache.cassandra.dht.Token;
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.BinaryDocValues;
-import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.search.FieldComparator;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
@@ -123,8 +124,12 @@ public class TokenMapperGenericSorter extends FieldComparator<BytesRef>
     @Override
     public FieldComparator<BytesRef> setNextReader(AtomicReaderContext context) throws IOException
     {
-        docTerms = FieldCache.DEFAULT.getTerms(context.reader(), field, true);
-        docsWithField = FieldCache.DEFAULT.getDocsWithField(context.reader(), field);
+        // Read the binary doc values directly, never uninverting the field into the heap
+        AtomicReader reader = context.reader();
+        BinaryDocValues binaryDocValues = reader.getBinaryDocValues(field);
+        Bits bits = reader.getDocsWithField(field);
+        docTerms = binaryDocValues == null ? DocValues.EMPTY_BINARY : binaryDocValues;
+        docsWithField = bits == null ? new Bits.MatchNoBits(reader.maxDoc()) : bits;
         return this;
     }
 
@@ -23,13 +23,14 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.SortField;
 
 /**
  * {@link PartitionKeyMapper} to be used when {@link Murmur3Partitioner} is used. It indexes the token long value as a
- * Lucene long field.
+ * Lucene long field, with numeric doc values for sorting.
  *
  * @author Andres de la Pena <adelapena@stratio.com>
  */
@@ -55,6 +56,7 @@ public class TokenMapperMurmur extends TokenMapper
         Long value = (Long) partitionKey.getToken().getTokenValue();
         Field tokenField = new LongField(FIELD_NAME, value, Store.NO);
         document.add(tokenField);
+        document.add(new NumericDocValuesField(FIELD_NAME, value));
     }
 
     /** {@inheritDoc} */
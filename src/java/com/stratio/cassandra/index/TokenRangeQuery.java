@@ -91,6 +91,33 @@ public class TokenRangeQuery extends MultiTermQuery
                                         .toString();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!super.equals(o)) return false;
+
+        TokenRangeQuery that = (TokenRangeQuery) o;
+
+        return includeLower == that.includeLower &&
+               includeUpper == that.includeUpper &&
+               (lower == null ? that.lower == null : lower.equals(that.lower)) &&
+               (upper == null ? that.upper == null : upper.equals(that.upper));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode()
+    {
+        int result = super.hashCode();
+        result = 31 * result + (lower == null ? 0 : lower.hashCode());
+        result = 31 * result + (upper == null ? 0 : upper.hashCode());
+        result = 31 * result + (includeLower ? 1 : 0);
+        result = 31 * result + (includeUpper ? 1 : 0);
+        return result;
+    }
+
     /**
      * {@link FilteredTermsEnum} for generic tokens.
      */
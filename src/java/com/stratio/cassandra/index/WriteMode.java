@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+/**
+ * The ways in which a written row can be indexed.
+ * <p/>
+ * The modes indexing the written data directly don't know if it wins against the already stored data, so they are
+ * only correct if writes are never superseded by older ones, for example through {@code USING TIMESTAMP} clauses with
+ * past time stamps. Indexed static columns are considered to be part of each written row.
+ */
+public enum WriteMode
+{
+    /**
+     * The row is always read from the base table before indexing it. It is the safest and slowest mode.
+     */
+    READ_BEFORE_WRITE,
+
+    /**
+     * The row is indexed directly from the written data if it contains all the mapped columns, otherwise it is read
+     * from the base table.
+     */
+    BLIND,
+
+    /**
+     * The row is always indexed directly from the written data. It is only correct for tables whose rows are never
+     * partially updated.
+     */
+    INSERT_ONLY;
+
+    /**
+     * Returns the {@link WriteMode} represented by the specified option value, which is case insensitive.
+     *
+     * @param value A {@link WriteMode} name.
+     * @return The {@link WriteMode} represented by {@code value}.
+     */
+    public static WriteMode fromOption(String value)
+    {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.query;
+
+import com.stratio.cassandra.index.schema.Schema;
+import org.codehaus.jackson.annotate.JsonSubTypes;
+import org.codehaus.jackson.annotate.JsonTypeInfo;
+
+/**
+ * The abstract base class for the aggregations of a {@link Search}. Aggregations are computed by each replica over the
+ * index documents satisfying the search, without reading the rows, and the partial results are merged by the
+ * coordinator.
+ * <p/>
+ * Known subclasses are: <ul> <li> {@link CountAggregation} <li> {@link TermsAggregation} <li> {@link RangeAggregation}
+ * </ul>
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = CountAggregation.class, name = "count"),
+        @JsonSubTypes.Type(value = TermsAggregation.class, name = "terms"),
+        @JsonSubTypes.Type(value = RangeAggregation.class, name = "range"),})
+public abstract class Aggregation
+{
+    /**
+     * Returns a new {@link Aggregator} computing this aggregation over the documents of a search.
+     *
+     * @param schema The {@link Schema} to be used.
+     * @return A new {@link Aggregator} computing this aggregation.
+     */
+    public abstract Aggregator aggregator(Schema schema);
+
+    /**
+     * Returns the merge of the specified partial results of this aggregation, as returned by {@link
+     * Aggregator#result()} or parsed back from their JSON representation.
+     *
+     * @param result1 A partial result.
+     * @param result2 Another partial result.
+     * @return The merge of {@code result1} and {@code result2}.
+     */
+    public abstract Object merge(Object result1, Object result2);
+}
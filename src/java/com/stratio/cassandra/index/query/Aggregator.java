@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.query;
+
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+/**
+ * Lucene {@link Collector} computing an {@link Aggregation} over the collected documents. Scores are not used, so
+ * documents can be collected in any order.
+ */
+public abstract class Aggregator extends Collector
+{
+    /** {@inheritDoc} */
+    @Override
+    public void setScorer(Scorer scorer)
+    {
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean acceptsDocsOutOfOrder()
+    {
+        return true;
+    }
+
+    /**
+     * Returns the result of the aggregation over the collected documents. It must be serializable to JSON.
+     *
+     * @return The result of the aggregation over the collected documents.
+     */
+    public abstract Object result();
+}
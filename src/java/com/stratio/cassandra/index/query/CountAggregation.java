@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.query;
+
+import com.stratio.cassandra.index.schema.Schema;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.codehaus.jackson.annotate.JsonCreator;
+
+/**
+ * An {@link Aggregation} counting the documents satisfying a search, that is, the number of matching CQL rows.
+ */
+public class CountAggregation extends Aggregation
+{
+    /**
+     * Builds a new {@link CountAggregation}.
+     */
+    @JsonCreator
+    public CountAggregation()
+    {
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Aggregator aggregator(Schema schema)
+    {
+        return new Aggregator()
+        {
+            private long count = 0;
+
+            @Override
+            public void collect(int doc)
+            {
+                count++;
+            }
+
+            @Override
+            public void setNextReader(AtomicReaderContext context)
+            {
+            }
+
+            @Override
+            public Object result()
+            {
+                return count;
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object merge(Object result1, Object result2)
+    {
+        return ((Number) result1).longValue() + ((Number) result2).longValue();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString()
+    {
+        return new ToStringBuilder(this).toString();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.query;
+
+import com.stratio.cassandra.index.schema.ColumnMapper;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+
+/**
+ * {@link Aggregator} over the values of a mapped column, which are read from the doc values of the index. String based
+ * columns are read as ordinals of their sorted doc values, and numeric columns as the raw long of their numeric doc
+ * values. Documents without a value for the column are ignored.
+ */
+public abstract class FieldAggregator extends Aggregator
+{
+    /** The name of the aggregated field. */
+    protected final String field;
+
+    /** The base class of the aggregated field mapper. */
+    protected final Class<?> clazz;
+
+    /** The sorted doc values of the current segment, if the field is string based. */
+    protected SortedDocValues sortedValues;
+
+    private NumericDocValues numericValues;
+    private Bits docsWithField;
+
+    /**
+     * Builds a new {@link FieldAggregator} for the specified field.
+     *
+     * @param field        The name of the field to be aggregated.
+     * @param columnMapper The {@link ColumnMapper} of the field to be aggregated.
+     */
+    protected FieldAggregator(String field, ColumnMapper<?> columnMapper)
+    {
+        this.field = field;
+        this.clazz = columnMapper.baseClass();
+        if (clazz != String.class &&
+            clazz != Integer.class &&
+            clazz != Long.class &&
+            clazz != Float.class &&
+            clazz != Double.class)
+        {
+            String message = String.format("Aggregations are not supported by %s mapper", clazz.getSimpleName());
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException
+    {
+        AtomicReader reader = context.reader();
+        if (clazz == String.class)
+        {
+            sortedValues = reader.getSortedDocValues(field);
+        }
+        else
+        {
+            numericValues = reader.getNumericDocValues(field);
+            docsWithField = reader.getDocsWithField(field);
+        }
+        setNextSegment();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void collect(int doc)
+    {
+        if (sortedValues != null)
+        {
+            int ord = sortedValues.getOrd(doc);
+            if (ord >= 0)
+            {
+                collectOrd(ord);
+            }
+        }
+        else if (numericValues != null && docsWithField != null && docsWithField.get(doc))
+        {
+            collectValue(numericValues.get(doc));
+        }
+    }
+
+    /**
+     * Returns {@code true} if the field values are floating point numbers, {@code false} otherwise.
+     *
+     * @return {@code true} if the field values are floating point numbers, {@code false} otherwise.
+     */
+    protected boolean isFloatingPoint()
+    {
+        return clazz == Float.class || clazz == Double.class;
+    }
+
+    /**
+     * Returns the numeric value represented by the specified raw numeric doc value.
+     *
+     * @param value A raw numeric doc value.
+     * @return The numeric value represented by {@code value}.
+     */
+    protected Number number(long value)
+    {
+        if (clazz == Float.class)
+        {
+            return Float.intBitsToFloat((int) value);
+        }
+        else if (clazz == Double.class)
+        {
+            return Double.longBitsToDouble(value);
+        }
+        else if (clazz == Integer.class)
+        {
+            return (int) value;
+        }
+        return value;
+    }
+
+    /**
+     * Called when the collection moves to a new segment, after loading its doc values.
+     */
+    protected abstract void setNextSegment();
+
+    /**
+     * Collects a document of the current segment whose value has the specified sorted doc values ordinal.
+     *
+     * @param ord The ordinal of the document value in {@link #sortedValues}.
+     */
+    protected abstract void collectOrd(int ord);
+
+    /**
+     * Collects a document of the current segment whose value has the specified raw numeric doc value.
+     *
+     * @param value The raw numeric doc value of the document.
+     */
+    protected abstract void collectValue(long value);
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.query;
+
+import com.stratio.cassandra.index.schema.ColumnMapper;
+import com.stratio.cassandra.index.schema.Schema;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.lucene.util.BytesRef;
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link Aggregation} counting the documents satisfying a search whose value of a field is inside each of a list of
+ * ranges, as a list with a count per range. Ranges include their lower value and exclude their upper value, and they
+ * may overlap.
+ */
+public class RangeAggregation extends Aggregation
+{
+    /** The name of the field to be aggregated. */
+    @JsonProperty("field")
+    private final String field;
+
+    /** The ranges to be counted. */
+    @JsonProperty("ranges")
+    private final List<Range> ranges;
+
+    /**
+     * Builds a new {@link RangeAggregation}.
+     *
+     * @param field  The name of the field to be aggregated.
+     * @param ranges The ranges to be counted.
+     */
+    @JsonCreator
+    public RangeAggregation(@JsonProperty("field") String field, @JsonProperty("ranges") List<Range> ranges)
+    {
+        this.field = field;
+        this.ranges = ranges;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Aggregator aggregator(Schema schema)
+    {
+        if (field == null || field.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("Field name required");
+        }
+        if (ranges == null || ranges.isEmpty())
+        {
+            throw new IllegalArgumentException("Ranges required");
+        }
+        ColumnMapper<?> columnMapper = schema.getMapper(field);
+        if (columnMapper == null)
+        {
+            throw new IllegalArgumentException("Not found mapper for field " + field);
+        }
+        return new RangeAggregator(field, columnMapper, ranges);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object merge(Object result1, Object result2)
+    {
+        List<Number> counts1 = (List<Number>) result1;
+        List<Number> counts2 = (List<Number>) result2;
+        List<Long> merged = new ArrayList<>(counts1.size());
+        for (int i = 0; i < counts1.size(); i++)
+        {
+            merged.add(counts1.get(i).longValue() + counts2.get(i).longValue());
+        }
+        return merged;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString()
+    {
+        return new ToStringBuilder(this).append("field", field).append("ranges", ranges).toString();
+    }
+
+    /**
+     * A range of a {@link RangeAggregation}.
+     */
+    public static class Range
+    {
+        /** The lower accepted value, maybe {@code null} meaning no lower limit. */
+        @JsonProperty("lower")
+        private final Object lower;
+
+        /** The upper not accepted value, maybe {@code null} meaning no upper limit. */
+        @JsonProperty("upper")
+        private final Object upper;
+
+        /**
+         * Builds a new {@link Range}.
+         *
+         * @param lower The lower accepted value, maybe {@code null} meaning no lower limit.
+         * @param upper The upper not accepted value, maybe {@code null} meaning no upper limit.
+         */
+        @JsonCreator
+        public Range(@JsonProperty("lower") Object lower, @JsonProperty("upper") Object upper)
+        {
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString()
+        {
+            return new ToStringBuilder(this).append("lower", lower).append("upper", upper).toString();
+        }
+    }
+
+    /**
+     * {@link FieldAggregator} for {@link RangeAggregation}s. The string ranges are translated to ordinal ranges for
+     * each segment.
+     */
+    private static final class RangeAggregator extends FieldAggregator
+    {
+        private final int numRanges;
+        private final long[] counts;
+
+        // String bounds, translated to ordinals for each segment
+        private final BytesRef[] lowerTerms;
+        private final BytesRef[] upperTerms;
+        private final int[] lowerOrds;
+        private final int[] upperOrds;
+
+        // Numeric bounds, null meaning no limit
+        private final Number[] lowerValues;
+        private final Number[] upperValues;
+
+        private RangeAggregator(String field, ColumnMapper<?> columnMapper, List<Range> ranges)
+        {
+            super(field, columnMapper);
+            numRanges = ranges.size();
+            counts = new long[numRanges];
+            lowerTerms = new BytesRef[numRanges];
+            upperTerms = new BytesRef[numRanges];
+            lowerOrds = new int[numRanges];
+            upperOrds = new int[numRanges];
+            lowerValues = new Number[numRanges];
+            upperValues = new Number[numRanges];
+            for (int i = 0; i < numRanges; i++)
+            {
+                Range range = ranges.get(i);
+                Object lower = range.lower == null ? null : columnMapper.queryValue(field, range.lower);
+                Object upper = range.upper == null ? null : columnMapper.queryValue(field, range.upper);
+                if (clazz == String.class)
+                {
+                    lowerTerms[i] = lower == null ? null : new BytesRef((String) lower);
+                    upperTerms[i] = upper == null ? null : new BytesRef((String) upper);
+                }
+                else
+                {
+                    lowerValues[i] = (Number) lower;
+                    upperValues[i] = (Number) upper;
+                }
+            }
+        }
+
+        @Override
+        protected void setNextSegment()
+        {
+            if (sortedValues != null)
+            {
+                for (int i = 0; i < numRanges; i++)
+                {
+                    lowerOrds[i] = lowerTerms[i] == null ? 0 : ceilingOrd(lowerTerms[i]);
+                    upperOrds[i] = upperTerms[i] == null ? sortedValues.getValueCount() : ceilingOrd(upperTerms[i]);
+                }
+            }
+        }
+
+        /**
+         * Returns the ordinal of the first value of the current segment which is greater than or equal to the
+         * specified one.
+         */
+        private int ceilingOrd(BytesRef term)
+        {
+            int ord = sortedValues.lookupTerm(term);
+            return ord >= 0 ? ord : -ord - 1;
+        }
+
+        @Override
+        protected void collectOrd(int ord)
+        {
+            for (int i = 0; i < numRanges; i++)
+            {
+                if (ord >= lowerOrds[i] && ord < upperOrds[i])
+                {
+                    counts[i]++;
+                }
+            }
+        }
+
+        @Override
+        protected void collectValue(long rawValue)
+        {
+            Number value = number(rawValue);
+            for (int i = 0; i < numRanges; i++)
+            {
+                if (accepts(value, lowerValues[i], upperValues[i]))
+                {
+                    counts[i]++;
+                }
+            }
+        }
+
+        private boolean accepts(Number value, Number lower, Number upper)
+        {
+            if (isFloatingPoint())
+            {
+                double doubleValue = value.doubleValue();
+                return (lower == null || doubleValue >= lower.doubleValue()) &&
+                       (upper == null || doubleValue < upper.doubleValue());
+            }
+            long longValue = value.longValue();
+            return (lower == null || longValue >= lower.longValue()) &&
+                   (upper == null || longValue < upper.longValue());
+        }
+
+        @Override
+        public Object result()
+        {
+            List<Long> result = new ArrayList<>(numRanges);
+            for (long count : counts)
+            {
+                result.add(count);
+            }
+            return result;
+        }
+    }
+}
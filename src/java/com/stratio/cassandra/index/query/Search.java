@@ -23,9 +23,13 @@ import org.apache.lucene.search.*;
 import org.codehaus.jackson.annotate.JsonCreator;
 import org.codehaus.jackson.annotate.JsonProperty;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Class representing an Lucene index search. It is formed by an optional querying {@link Condition} and an optional
- * filtering {@link Condition}. It can be translated to a Lucene {@link Query} using a {@link Schema}.
+ * filtering {@link Condition}. It can be translated to a Lucene {@link Query} using a {@link Schema}. It may also
+ * contain {@link Aggregation}s, which are computed over the matching documents instead of returning rows.
  *
  * @author Andres de la Pena <adelapena@stratio.com>
  */
@@ -46,6 +50,14 @@ public class Search
     @JsonProperty("sort")
     private Sort sort;
 
+    /** If the index searcher must be refreshed before searching, so all the previous writes are visible. */
+    @JsonProperty("refresh")
+    private boolean refresh;
+
+    /** The {@link Aggregation}s to be computed by name, maybe {@code null} meaning no aggregations. */
+    @JsonProperty("aggregations")
+    private Map<String, Aggregation> aggregations;
+
     /**
      * Returns a new {@link Search} composed by the specified querying and filtering conditions.
      *
@@ -53,15 +65,23 @@ public class Search
      * @param filterCondition The {@link Condition} for filtering, maybe {@code null} meaning no filtering.
      * @param sort            The {@link Sort} for the query. Note that is the order in which the data will be read
      *                        before querying, not the order of the results after querying.
+     * @param refresh         If the index searcher must be refreshed before searching, maybe {@code null} meaning no
+     *                        refresh.
+     * @param aggregations    The {@link Aggregation}s to be computed by name, maybe {@code null} meaning no
+     *                        aggregations.
      */
     @JsonCreator
     public Search(@JsonProperty("query") Condition queryCondition,
                   @JsonProperty("filter") Condition filterCondition,
-                  @JsonProperty("sort") Sort sort)
+                  @JsonProperty("sort") Sort sort,
+                  @JsonProperty("refresh") Boolean refresh,
+                  @JsonProperty("aggregations") Map<String, Aggregation> aggregations)
     {
         this.queryCondition = queryCondition;
         this.filterCondition = filterCondition;
         this.sort = sort;
+        this.refresh = refresh != null && refresh;
+        this.aggregations = aggregations;
     }
 
     /**
@@ -139,6 +159,79 @@ public class Search
         return sort != null;
     }
 
+    /**
+     * Returns {@code true} if the index searcher must be refreshed before searching, so all the previous writes are
+     * visible, {@code false} otherwise.
+     *
+     * @return {@code true} if the index searcher must be refreshed before searching, {@code false} otherwise.
+     */
+    public boolean isRefresh()
+    {
+        return refresh;
+    }
+
+    /**
+     * Returns {@code true} if this search computes {@link Aggregation}s instead of returning rows, {@code false}
+     * otherwise.
+     *
+     * @return {@code true} if this search computes {@link Aggregation}s, {@code false} otherwise.
+     */
+    public boolean usesAggregations()
+    {
+        return aggregations != null && !aggregations.isEmpty();
+    }
+
+    /**
+     * Returns the {@link Aggregator}s computing the {@link Aggregation}s of this search by name.
+     *
+     * @param schema The {@link Schema} to be used.
+     * @return The {@link Aggregator}s computing the {@link Aggregation}s of this search by name.
+     */
+    public Map<String, Aggregator> aggregators(Schema schema)
+    {
+        Map<String, Aggregator> aggregators = new LinkedHashMap<>();
+        if (aggregations != null)
+        {
+            for (Map.Entry<String, Aggregation> entry : aggregations.entrySet())
+            {
+                aggregators.put(entry.getKey(), entry.getValue().aggregator(schema));
+            }
+        }
+        return aggregators;
+    }
+
+    /**
+     * Returns the merge of the specified partial results of the {@link Aggregation}s of this search, as returned by
+     * {@link Aggregator#result()} or parsed back from their JSON representation.
+     *
+     * @param results1 Some partial results by aggregation name.
+     * @param results2 Other partial results by aggregation name.
+     * @return The merge of {@code results1} and {@code results2}.
+     */
+    public Map<String, Object> mergeAggregations(Map<String, Object> results1, Map<String, Object> results2)
+    {
+        Map<String, Object> merged = new LinkedHashMap<>();
+        for (Map.Entry<String, Aggregation> entry : aggregations.entrySet())
+        {
+            String name = entry.getKey();
+            Object result1 = results1.get(name);
+            Object result2 = results2.get(name);
+            if (result1 == null)
+            {
+                merged.put(name, result2);
+            }
+            else if (result2 == null)
+            {
+                merged.put(name, result1);
+            }
+            else
+            {
+                merged.put(name, entry.getValue().merge(result1, result2));
+            }
+        }
+        return merged;
+    }
+
     /**
      * Returns the field sorting to be used, maybe {@code null} meaning no field sorting.
      *
@@ -179,12 +272,12 @@ public class Search
         BooleanQuery booleanQuery = new BooleanQuery();
         if (queryCondition != null)
         {
-            Query query = queryCondition.query(schema);
+            Query query = relevanceQuery(schema);
             booleanQuery.add(query, BooleanClause.Occur.MUST);
         }
         if (filterCondition != null)
         {
-            Query query = new ConstantScoreQuery(filterCondition.query(schema));
+            Query query = new ConstantScoreQuery(filterQuery(schema));
             booleanQuery.add(query, BooleanClause.Occur.MUST);
         }
         if (rangeQuery != null)
@@ -194,6 +287,30 @@ public class Search
         return booleanQuery;
     }
 
+    /**
+     * Returns the Lucene {@link Query} representation of the querying {@link Condition}, which is the one used for
+     * relevance, or {@code null} if there is no querying {@link Condition}.
+     *
+     * @param schema The {@link Schema} to be used.
+     * @return The Lucene {@link Query} representation of the querying {@link Condition}.
+     */
+    public Query relevanceQuery(Schema schema)
+    {
+        return queryCondition == null ? null : queryCondition.query(schema);
+    }
+
+    /**
+     * Returns the Lucene {@link Query} representation of the filtering {@link Condition}, or {@code null} if there is
+     * no filtering {@link Condition}. It doesn't take part in relevance.
+     *
+     * @param schema The {@link Schema} to be used.
+     * @return The Lucene {@link Query} representation of the filtering {@link Condition}.
+     */
+    public Query filterQuery(Schema schema)
+    {
+        return filterCondition == null ? null : filterCondition.query(schema);
+    }
+
     /**
      * Validates this {@link Search} against the specified {@link Schema}.
      *
@@ -209,6 +326,7 @@ public class Search
         {
             sort.sort(schema);
         }
+        aggregators(schema);
     }
 
     /** {@inheritDoc} */
@@ -218,6 +336,8 @@ public class Search
         return new ToStringBuilder(this).append("queryCondition", queryCondition)
                                         .append("filterCondition", filterCondition)
                                         .append("sorting", sort)
+                                        .append("refresh", refresh)
+                                        .append("aggregations", aggregations)
                                         .toString();
     }
 
@@ -66,6 +66,16 @@ public class SortField
         this.mapper = mapper;
     }
 
+    /**
+     * Returns the name of the field to sort by.
+     *
+     * @return The name of the field to sort by.
+     */
+    public String getField()
+    {
+        return field;
+    }
+
     /**
      * Returns the Lucene {@link org.apache.lucene.search.SortField} representing this {@link SortField}.
      *
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.query;
+
+import com.stratio.cassandra.index.schema.ColumnMapper;
+import com.stratio.cassandra.index.schema.Schema;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.util.BytesRef;
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An {@link Aggregation} counting the documents satisfying a search for each value of a field, as a map from the
+ * indexed values to their counts. All the values are returned, so it is intended for low cardinality fields.
+ */
+public class TermsAggregation extends Aggregation
+{
+    /** The name of the field to be aggregated. */
+    @JsonProperty("field")
+    private final String field;
+
+    /**
+     * Builds a new {@link TermsAggregation}.
+     *
+     * @param field The name of the field to be aggregated.
+     */
+    @JsonCreator
+    public TermsAggregation(@JsonProperty("field") String field)
+    {
+        this.field = field;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Aggregator aggregator(Schema schema)
+    {
+        if (field == null || field.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("Field name required");
+        }
+        ColumnMapper<?> columnMapper = schema.getMapper(field);
+        if (columnMapper == null)
+        {
+            throw new IllegalArgumentException("Not found mapper for field " + field);
+        }
+        return new TermsAggregator(field, columnMapper);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object merge(Object result1, Object result2)
+    {
+        Map<String, Long> merged = new TreeMap<>();
+        for (Object result : new Object[]{result1, result2})
+        {
+            for (Map.Entry<String, Number> entry : ((Map<String, Number>) result).entrySet())
+            {
+                Long count = merged.get(entry.getKey());
+                long value = entry.getValue().longValue();
+                merged.put(entry.getKey(), count == null ? value : count + value);
+            }
+        }
+        return merged;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString()
+    {
+        return new ToStringBuilder(this).append("field", field).toString();
+    }
+
+    /**
+     * {@link FieldAggregator} for {@link TermsAggregation}s. String values are counted by ordinal for each segment.
+     */
+    private static final class TermsAggregator extends FieldAggregator
+    {
+        private final Map<String, Long> counts = new TreeMap<>();
+        private final Map<Long, long[]> valueCounts = new HashMap<>();
+        private int[] ordCounts;
+
+        private TermsAggregator(String field, ColumnMapper<?> columnMapper)
+        {
+            super(field, columnMapper);
+        }
+
+        @Override
+        public void setNextReader(AtomicReaderContext context) throws IOException
+        {
+            flushOrdCounts(); // Ordinals must be resolved before moving to the next segment
+            super.setNextReader(context);
+        }
+
+        @Override
+        protected void setNextSegment()
+        {
+            ordCounts = sortedValues == null ? null : new int[sortedValues.getValueCount()];
+        }
+
+        @Override
+        protected void collectOrd(int ord)
+        {
+            ordCounts[ord]++;
+        }
+
+        @Override
+        protected void collectValue(long value)
+        {
+            long[] count = valueCounts.get(value);
+            if (count == null)
+            {
+                valueCounts.put(value, new long[]{1});
+            }
+            else
+            {
+                count[0]++;
+            }
+        }
+
+        private void flushOrdCounts()
+        {
+            if (ordCounts != null)
+            {
+                BytesRef term = new BytesRef();
+                for (int ord = 0; ord < ordCounts.length; ord++)
+                {
+                    if (ordCounts[ord] > 0)
+                    {
+                        sortedValues.lookupOrd(ord, term);
+                        add(term.utf8ToString(), ordCounts[ord]);
+                    }
+                }
+                ordCounts = null;
+            }
+        }
+
+        private void add(String value, long count)
+        {
+            Long previous = counts.get(value);
+            counts.put(value, previous == null ? count : previous + count);
+        }
+
+        @Override
+        public Object result()
+        {
+            flushOrdCounts();
+            for (Map.Entry<Long, long[]> entry : valueCounts.entrySet())
+            {
+                add(number(entry.getKey()).toString(), entry.getValue()[0]);
+            }
+            valueCounts.clear();
+            return counts;
+        }
+    }
+}
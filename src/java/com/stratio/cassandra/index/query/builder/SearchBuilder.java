@@ -15,10 +15,14 @@
  */
 package com.stratio.cassandra.index.query.builder;
 
+import com.stratio.cassandra.index.query.Aggregation;
 import com.stratio.cassandra.index.query.Condition;
 import com.stratio.cassandra.index.query.Search;
 import com.stratio.cassandra.index.query.Sort;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * {@link Builder} for building a new {@link Search}.
  *
@@ -38,6 +42,12 @@ public class SearchBuilder implements Builder<Search>
      */
     private Sort sort;
 
+    /** If the index searcher must be refreshed before searching. */
+    private boolean refresh;
+
+    /** The {@link Aggregation}s to be computed by name. */
+    private Map<String, Aggregation> aggregations;
+
     /**
      * Returns this builder with the specified querying condition.
      *
@@ -74,6 +84,35 @@ public class SearchBuilder implements Builder<Search>
         return this;
     }
 
+    /**
+     * Returns this builder with the specified searcher refresh option.
+     *
+     * @param refresh If the index searcher must be refreshed before searching, so all the previous writes are visible.
+     * @return This builder with the specified searcher refresh option.
+     */
+    public SearchBuilder refresh(boolean refresh)
+    {
+        this.refresh = refresh;
+        return this;
+    }
+
+    /**
+     * Returns this builder with the specified aggregation added.
+     *
+     * @param name        The name of the aggregation result.
+     * @param aggregation The {@link Aggregation} to be computed.
+     * @return This builder with the specified aggregation added.
+     */
+    public SearchBuilder aggregation(String name, Aggregation aggregation)
+    {
+        if (aggregations == null)
+        {
+            aggregations = new LinkedHashMap<>();
+        }
+        aggregations.put(name, aggregation);
+        return this;
+    }
+
     /**
      * Returns the {@link Search} represented by this builder.
      *
@@ -82,7 +121,7 @@ public class SearchBuilder implements Builder<Search>
     @Override
     public Search build()
     {
-        return new Search(queryCondition, filterCondition, sort);
+        return new Search(queryCondition, filterCondition, sort, refresh, aggregations);
     }
 
     /**
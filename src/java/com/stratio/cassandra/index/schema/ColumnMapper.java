@@ -91,6 +91,20 @@ public abstract class ColumnMapper<BASE>
      */
     public abstract Iterable<Field> fields(String name, Object value);
 
+    /**
+     * Returns the doc values Lucene {@link Field} used for sorting by {@code value}, using {@code name} as field's name,
+     * or {@code null} if this mapper doesn't support doc values. Doc values are read from the index files when sorting,
+     * instead of being uninverted into the heap. Only one of them is indexed per field and document.
+     *
+     * @param name  The name of the Lucene {@link Field}.
+     * @param value The value of the Lucene {@link Field}.
+     * @return The doc values Lucene {@link Field}, or {@code null} if this mapper doesn't support doc values.
+     */
+    public Field docValuesField(String name, Object value)
+    {
+        return null;
+    }
+
     /**
      * Returns the Lucene type for this mapper.
      *
@@ -151,6 +165,19 @@ public abstract class ColumnMapper<BASE>
         return false;
     }
 
+    /**
+     * Returns {@code true} if the values of the specified Cassandra type/marshaller are indexed keeping the same
+     * equality and order defined by the type, {@code false} otherwise. CQL restrictions over the columns of these types
+     * can be solved by the index instead of checking the read rows.
+     *
+     * @param type A Cassandra type/marshaller.
+     * @return {@code true} if the indexed values of {@code type} keep its equality and order, {@code false} otherwise.
+     */
+    public boolean preservesOrder(AbstractType<?> type)
+    {
+        return false;
+    }
+
     /**
      * Returns {@code true} if the specified Cassandra type/marshaller can be used as clustering key, {@code false}.
      * otherwise.
@@ -20,9 +20,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.SortField.Type;
+import org.apache.lucene.util.BytesRef;
 import org.codehaus.jackson.annotate.JsonCreator;
 import org.codehaus.jackson.annotate.JsonProperty;
 
@@ -184,6 +186,13 @@ public class ColumnMapperBigDecimal extends ColumnMapper<String>
         return Arrays.asList((Field)new StringField(name, string, STORE));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Field docValuesField(String name, Object value)
+    {
+        return new SortedDocValuesField(name, new BytesRef(indexValue(name, value)));
+    }
+
     /** {@inheritDoc} */
     @Override
     public SortField sortField(String field, boolean reverse)
@@ -22,9 +22,11 @@ import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.SortField.Type;
+import org.apache.lucene.util.BytesRef;
 import org.codehaus.jackson.annotate.JsonCreator;
 
 import java.util.Arrays;
@@ -109,6 +111,13 @@ public class ColumnMapperBoolean extends ColumnMapper<String>
         return Arrays.asList((Field)new StringField(name, indexValue(name, value), STORE));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Field docValuesField(String name, Object value)
+    {
+        return new SortedDocValuesField(name, new BytesRef(indexValue(name, value)));
+    }
+
     /** {@inheritDoc} */
     @Override
     public SortField sortField(String field, boolean reverse)
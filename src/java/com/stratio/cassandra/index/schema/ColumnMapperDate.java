@@ -20,6 +20,7 @@ import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.SortField.Type;
 import org.codehaus.jackson.annotate.JsonCreator;
@@ -130,6 +131,13 @@ public class ColumnMapperDate extends ColumnMapper<Long>
         return Arrays.asList((Field)new LongField(name, indexValue(name, value), STORE));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Field docValuesField(String name, Object value)
+    {
+        return new NumericDocValuesField(name, indexValue(name, value));
+    }
+
     /** {@inheritDoc} */
     @Override
     public SortField sortField(String field, boolean reverse)
@@ -144,6 +152,13 @@ public class ColumnMapperDate extends ColumnMapper<Long>
         return Long.class;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean preservesOrder(AbstractType<?> type)
+    {
+        return type instanceof TimestampType;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString()
@@ -18,6 +18,7 @@ package com.stratio.cassandra.index.schema;
 import org.apache.cassandra.db.marshal.*;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.DoubleDocValuesField;
 import org.apache.lucene.document.DoubleField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.search.SortField;
@@ -114,6 +115,13 @@ public class ColumnMapperDouble extends ColumnMapper<Double>
         return Arrays.asList(field);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Field docValuesField(String name, Object value)
+    {
+        return new DoubleDocValuesField(name, indexValue(name, value));
+    }
+
     /** {@inheritDoc} */
     @Override
     public SortField sortField(String field, boolean reverse)
@@ -128,6 +136,13 @@ public class ColumnMapperDouble extends ColumnMapper<Double>
         return Double.class;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean preservesOrder(AbstractType<?> type)
+    {
+        return type instanceof Int32Type || type instanceof FloatType || type instanceof DoubleType;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString()
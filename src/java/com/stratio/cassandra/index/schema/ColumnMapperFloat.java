@@ -19,6 +19,7 @@ import org.apache.cassandra.db.marshal.*;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FloatDocValuesField;
 import org.apache.lucene.document.FloatField;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.SortField.Type;
@@ -114,6 +115,13 @@ public class ColumnMapperFloat extends ColumnMapper<Float>
         return Arrays.asList(field);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Field docValuesField(String name, Object value)
+    {
+        return new FloatDocValuesField(name, indexValue(name, value));
+    }
+
     /** {@inheritDoc} */
     @Override
     public SortField sortField(String field, boolean reverse)
@@ -128,6 +136,13 @@ public class ColumnMapperFloat extends ColumnMapper<Float>
         return Float.class;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean preservesOrder(AbstractType<?> type)
+    {
+        return type instanceof FloatType;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String toString()
@@ -35,8 +35,10 @@ import org.codehaus.jackson.annotate.JsonProperty;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * Class for several columns mappings between Cassandra and Lucene.
@@ -146,6 +148,7 @@ public class Schema
      */
     public void addFields(Document document, Columns columns)
     {
+        Set<String> docValuesFields = new HashSet<>();
         for (Column column : columns)
         {
             String name = column.getName();
@@ -162,6 +165,17 @@ public class Schema
                 for(Field field : columnMapper.fields(fieldName,value)){
                    document.add(field);
                 }
+
+                // Multivalued columns are sorted by their first value
+                if (!docValuesFields.contains(fieldName))
+                {
+                    Field docValuesField = columnMapper.docValuesField(fieldName, value);
+                    if (docValuesField != null)
+                    {
+                        document.add(docValuesField);
+                        docValuesFields.add(fieldName);
+                    }
+                }
             }
         }
     }
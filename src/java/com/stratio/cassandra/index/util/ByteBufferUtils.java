@@ -19,9 +19,11 @@ import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.CompositeType;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.Hex;
+import org.apache.lucene.util.BytesRef;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -147,6 +149,29 @@ public class ByteBufferUtils
         return Base256Serializer.byteBuffer(string);
     }
 
+    /**
+     * Returns the specified {@link java.nio.ByteBuffer} as a Lucene {@link BytesRef}.
+     *
+     * @param byteBuffer the {@link java.nio.ByteBuffer} to be converted to {@link BytesRef}.
+     * @return the {@link BytesRef} representation of {@code byteBuffer}.
+     */
+    public static BytesRef bytesRef(ByteBuffer byteBuffer)
+    {
+        return new BytesRef(asArray(byteBuffer));
+    }
+
+    /**
+     * Returns a {@link java.nio.ByteBuffer} copy of the specified Lucene {@link BytesRef}.
+     *
+     * @param bytesRef the {@link BytesRef} to be converted to {@link java.nio.ByteBuffer}.
+     * @return the {@link java.nio.ByteBuffer} representation of {@code bytesRef}.
+     */
+    public static ByteBuffer byteBuffer(BytesRef bytesRef)
+    {
+        byte[] bytes = Arrays.copyOfRange(bytesRef.bytes, bytesRef.offset, bytesRef.offset + bytesRef.length);
+        return ByteBuffer.wrap(bytes);
+    }
+
     public static String toHex(ByteBuffer byteBuffer)
     {
         return ByteBufferUtil.bytesToHex(byteBuffer);
@@ -15,54 +15,72 @@
  */
 package com.stratio.cassandra.index.util;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A queue that executes each submitted task using one of possibly several pooled threads. Tasks can be submitted with
  * an identifier, ensuring that all tasks with same identifier will be executed orderly in the same thread. Each thread
- * has its own task queue.
+ * has its own task queue. Submissions never block each other, apart from waiting for room in the chosen thread queue.
+ * <p/>
+ * Each thread drains its queue in batches of up to a max number of tasks, optionally waiting a linger time for the
+ * batch to fill up, and notifies a {@link BatchListener} before and after running each batch, so the work done by the
+ * tasks of a batch can be applied at once.
  *
  * @author Andres de la Pena <adelapena@stratio.com>
  */
 public class TaskQueue
 {
+    private final Worker[] workers;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final BatchListener listener;
 
-    private NotifyingBlockingThreadPoolExecutor[] pools;
-
-    private ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** The number of submissions that have had to wait for room in their thread queue. */
+    private final AtomicLong blockedSubmissions = new AtomicLong();
 
     /**
-     * Returns a new {@link TaskQueue}
+     * Returns a new {@link TaskQueue} running the tasks one by one.
      *
      * @param numThreads The number of executor threads.
      * @param queuesSize The max number of tasks in each thread queue before blocking.
      */
     public TaskQueue(int numThreads, int queuesSize)
     {
+        this(numThreads, queuesSize, 1, 0, null);
+    }
 
-        pools = new NotifyingBlockingThreadPoolExecutor[numThreads];
+    /**
+     * Returns a new {@link TaskQueue} running the tasks in batches.
+     *
+     * @param numThreads   The number of executor threads.
+     * @param queuesSize   The max number of tasks in each thread queue before blocking.
+     * @param batchSize    The max number of tasks run in a batch.
+     * @param lingerMillis The max time in milliseconds to wait for a batch to fill up, {@code 0} means that batches
+     *                     contain only the already queued tasks.
+     * @param listener     The {@link BatchListener} to be notified, maybe {@code null}.
+     */
+    public TaskQueue(int numThreads, int queuesSize, int batchSize, long lingerMillis, BatchListener listener)
+    {
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.listener = listener;
+        workers = new Worker[numThreads];
         for (int i = 0; i < numThreads; i++)
         {
-            pools[i] = new NotifyingBlockingThreadPoolExecutor(1,
-                                                               queuesSize,
-                                                               Long.MAX_VALUE,
-                                                               TimeUnit.DAYS,
-                                                               0,
-                                                               TimeUnit.NANOSECONDS,
-                                                               null);
-            pools[i].submit(new Runnable()
-            {
-                @Override
-                public void run()
-                {
-                    Log.debug("Task queue starts");
-                }
-            });
+            workers[i] = new Worker(queuesSize);
+            Thread thread = new Thread(workers[i], "LuceneIndexing:" + i);
+            thread.setDaemon(true);
+            thread.start();
         }
+        Log.debug("Task queue starts");
     }
 
     /**
@@ -77,35 +95,38 @@ public class TaskQueue
      */
     public Future<?> submitAsynchronous(Object id, Runnable task)
     {
-        lock.readLock().lock();
         try
         {
-            int i = Math.abs((int) (id.hashCode() % pools.length));
-            return pools[i].submit(task);
+            int i = Math.abs((int) (id.hashCode() % workers.length));
+            return workers[i].submit(task, false);
         }
         catch (Exception e)
         {
             Log.error(e, "Task queue submission failed");
             throw new RuntimeException(e);
         }
-        finally
-        {
-            lock.readLock().unlock();
-        }
     }
 
+    /**
+     * Waits for the completion of all the tasks submitted before the call, by queueing a barrier task in each thread
+     * queue. The tasks submitted concurrently with the call are not awaited and are not blocked. The batch containing
+     * the barrier is finished before running it, so the work of the previous tasks is applied.
+     *
+     * @throws ExecutionException   If a barrier task fails.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
     private void awaitInner() throws ExecutionException, InterruptedException
     {
-        Future<?>[] futures = new Future<?>[pools.length];
-        for (int i = 0; i < pools.length; i++)
+        Future<?>[] futures = new Future<?>[workers.length];
+        for (int i = 0; i < workers.length; i++)
         {
-            Future<?> future = pools[i].submit(new Runnable()
+            Future<?> future = workers[i].submit(new Runnable()
             {
                 @Override
                 public void run()
                 {
                 }
-            });
+            }, true);
             futures[i] = future;
         }
         for (Future<?> future : futures)
@@ -116,7 +137,6 @@ public class TaskQueue
 
     public void await()
     {
-        lock.writeLock().lock();
         try
         {
             awaitInner();
@@ -131,21 +151,17 @@ public class TaskQueue
             Log.error(e, "Await failed");
             throw new RuntimeException(e);
         }
-        finally
-        {
-            lock.writeLock().unlock();
-        }
     }
 
     /**
-     * Submits a non value-returning task for synchronous execution. It waits for all synchronous tasks to be
-     * completed.
+     * Submits a non value-returning task for synchronous execution. It waits for all the previously submitted tasks to
+     * be completed before running the task in the calling thread. Asynchronous submissions are not blocked meanwhile,
+     * so the tasks submitted concurrently may or may not have been run when the task starts.
      *
      * @param task A task to be executed synchronously.
      */
     public void submitSynchronous(Runnable task)
     {
-        lock.writeLock().lock();
         try
         {
             awaitInner();
@@ -161,10 +177,188 @@ public class TaskQueue
             Log.error(e, "Task queue isolated submission failed");
             throw new RuntimeException(e);
         }
-        finally
+    }
+
+    /**
+     * Returns the number of tasks waiting in the thread queues.
+     *
+     * @return The number of queued tasks.
+     */
+    public int getQueuedTasks()
+    {
+        int queuedTasks = 0;
+        for (Worker worker : workers)
         {
-            lock.writeLock().unlock();
+            queuedTasks += worker.queue.size();
         }
+        return queuedTasks;
     }
 
+    /**
+     * Returns the number of submissions that have had to wait for room in their thread queue.
+     *
+     * @return The number of blocked submissions.
+     */
+    public long getBlockedSubmissions()
+    {
+        return blockedSubmissions.get();
+    }
+
+    /**
+     * Listener of the batches of tasks run by each thread. Both methods are called by the thread running the batch.
+     */
+    public interface BatchListener
+    {
+        /**
+         * Called before running the first task of a batch.
+         */
+        void beforeBatch();
+
+        /**
+         * Called after running the last task of a batch.
+         *
+         * @param numTasks The number of tasks of the batch.
+         */
+        void afterBatch(int numTasks);
+    }
+
+    /**
+     * A queued task, which may be a barrier requiring the previous tasks to be finished.
+     */
+    private static final class Task extends FutureTask<Object>
+    {
+        private final boolean barrier;
+
+        private Task(Runnable runnable, boolean barrier)
+        {
+            super(runnable, null);
+            this.barrier = barrier;
+        }
+    }
+
+    /**
+     * A thread running the tasks of its own queue in batches.
+     */
+    private final class Worker implements Runnable
+    {
+        private final BlockingQueue<Task> queue;
+        private final List<Task> batch = new ArrayList<>();
+
+        private Worker(int queueSize)
+        {
+            queue = new ArrayBlockingQueue<>(Math.max(1, queueSize), true);
+        }
+
+        private Future<?> submit(Runnable runnable, boolean barrier) throws InterruptedException
+        {
+            Task task = new Task(runnable, barrier);
+            if (!queue.offer(task))
+            {
+                blockedSubmissions.incrementAndGet();
+                queue.put(task);
+            }
+            return task;
+        }
+
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                try
+                {
+                    nextBatch();
+                    runBatch();
+                }
+                catch (InterruptedException e)
+                {
+                    Log.error(e, "Task queue thread interrupted");
+                    return;
+                }
+                finally
+                {
+                    batch.clear();
+                }
+            }
+        }
+
+        /**
+         * Takes the next batch of tasks from the queue, waiting for the first one and, during the linger time, for the
+         * rest.
+         *
+         * @throws InterruptedException If the thread is interrupted while waiting.
+         */
+        private void nextBatch() throws InterruptedException
+        {
+            batch.add(queue.take());
+            queue.drainTo(batch, batchSize - batch.size());
+            if (lingerNanos > 0)
+            {
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize)
+                {
+                    long remaining = deadline - System.nanoTime();
+                    Task task = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (task == null)
+                    {
+                        break;
+                    }
+                    batch.add(task);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+            }
+        }
+
+        /**
+         * Runs the current batch of tasks, finishing the batch before any barrier task.
+         */
+        private void runBatch()
+        {
+            int numTasks = 0;
+            for (Task task : batch)
+            {
+                if (task.barrier && numTasks > 0)
+                {
+                    afterBatch(numTasks);
+                    numTasks = 0;
+                }
+                if (numTasks == 0 && !task.barrier)
+                {
+                    beforeBatch();
+                }
+                task.run();
+                if (!task.barrier)
+                {
+                    numTasks++;
+                }
+            }
+            if (numTasks > 0)
+            {
+                afterBatch(numTasks);
+            }
+        }
+
+        private void beforeBatch()
+        {
+            if (listener != null)
+            {
+                listener.beforeBatch();
+            }
+        }
+
+        private void afterBatch(int numTasks)
+        {
+            if (listener != null)
+            {
+                try
+                {
+                    listener.afterBatch(numTasks);
+                }
+                catch (Exception e)
+                {
+                    Log.error(e, "Task queue batch failed");
+                }
+            }
+        }
+    }
 }
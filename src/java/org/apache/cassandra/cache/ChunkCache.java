@@ -0,0 +1,410 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.metrics.CacheMetrics;
+
+/**
+ * Node-wide cache of the decompressed chunks of compressed sstables, kept off-heap.
+ *
+ * To resist scans, a chunk is only admitted the second time it is missed while it is still remembered in a
+ * bounded on-heap set of recently missed chunks (the "A1out" queue of 2Q), so reading through cold data once
+ * doesn't evict the chunks that are actually hot.
+ */
+public class ChunkCache implements ICache<ChunkCache.Key, ByteBuffer>
+{
+    private static final Logger logger = LoggerFactory.getLogger(ChunkCache.class);
+
+    private static final int DEFAULT_CONCURENCY_LEVEL = 64;
+    private static final int MIN_RECENTLY_MISSED = 1024;
+
+    /** The shared chunk cache, or null if chunk caching is disabled. */
+    public static final ChunkCache instance = create(DatabaseDescriptor.getChunkCacheSizeInMB() * 1024 * 1024);
+
+    private final ConcurrentLinkedHashMap<Key, RefCountedMemory> map;
+    private final ConcurrentLinkedHashMap<Key, Boolean> recentlyMissed;
+    /** The keys of both maps grouped by data file, so that a file can be invalidated without scanning the cache. */
+    private final ConcurrentMap<String, Set<Key>> keysByPath = new ConcurrentHashMap<>();
+
+    public final CacheMetrics metrics;
+
+    private ChunkCache(long capacity)
+    {
+        EvictionListener<Key, RefCountedMemory> listener = new EvictionListener<Key, RefCountedMemory>()
+        {
+            public void onEviction(Key key, RefCountedMemory mem)
+            {
+                mem.unreference();
+                unindex(key);
+            }
+        };
+
+        map = new ConcurrentLinkedHashMap.Builder<Key, RefCountedMemory>()
+              .weigher(new Weigher<RefCountedMemory>()
+              {
+                  public int weightOf(RefCountedMemory value)
+                  {
+                      return (int) value.size();
+                  }
+              })
+              .maximumWeightedCapacity(capacity)
+              .concurrencyLevel(DEFAULT_CONCURENCY_LEVEL)
+              .listener(listener)
+              .build();
+
+        // remember about as many missed chunks as the cache holds chunks of the default length
+        recentlyMissed = new ConcurrentLinkedHashMap.Builder<Key, Boolean>()
+                         .maximumWeightedCapacity(Math.max(MIN_RECENTLY_MISSED, capacity / CompressionParameters.DEFAULT_CHUNK_LENGTH))
+                         .concurrencyLevel(DEFAULT_CONCURENCY_LEVEL)
+                         .listener(new EvictionListener<Key, Boolean>()
+                         {
+                             public void onEviction(Key key, Boolean value)
+                             {
+                                 unindex(key);
+                             }
+                         })
+                         .build();
+
+        metrics = new CacheMetrics("ChunkCache", this);
+    }
+
+    /**
+     * @param capacity the capacity of the cache in bytes
+     * @return a new chunk cache, or null if the capacity is not positive
+     */
+    public static ChunkCache create(long capacity)
+    {
+        if (capacity <= 0)
+            return null;
+
+        logger.info("Initializing chunk cache with capacity of {} MBs", capacity / (1024 * 1024));
+        return new ChunkCache(capacity);
+    }
+
+    /**
+     * Copies a cached chunk into the given buffer, counting the request in the cache metrics.
+     *
+     * @return the length of the chunk, or -1 if it is not cached.
+     */
+    public int get(Key key, byte[] buffer)
+    {
+        metrics.requests.mark();
+        RefCountedMemory mem = map.get(key);
+        if (mem == null || !mem.reference())
+            return -1;
+        try
+        {
+            int length = (int) mem.size();
+            if (length > buffer.length)
+                return -1;
+            mem.getBytes(0, buffer, 0, length);
+            metrics.hits.mark();
+            return length;
+        }
+        finally
+        {
+            mem.unreference();
+        }
+    }
+
+    /**
+     * Offers a chunk that has just been decompressed after a miss. It is cached only if it was missed recently
+     * already; otherwise it is just remembered as missed.
+     */
+    public void admit(Key key, byte[] buffer, int length)
+    {
+        if (recentlyMissed.remove(key) == null)
+        {
+            index(key);
+            recentlyMissed.put(key, Boolean.TRUE);
+            return;
+        }
+
+        RefCountedMemory mem = allocate(length);
+        if (mem == null)
+        {
+            unindex(key);
+            return; // out of memory.  never mind.
+        }
+        mem.setBytes(0, buffer, 0, length);
+        put(key, mem);
+    }
+
+    /**
+     * Drops all the chunks of the given data file, e.g. because its sstable is gone.
+     */
+    public void invalidate(String path)
+    {
+        Set<Key> keys = keysByPath.remove(path);
+        if (keys == null)
+            return;
+
+        for (Key key : keys)
+        {
+            recentlyMissed.remove(key);
+            remove(key);
+        }
+    }
+
+    private void index(Key key)
+    {
+        Set<Key> keys = keysByPath.get(key.path);
+        if (keys == null)
+        {
+            Set<Key> newKeys = Collections.newSetFromMap(new ConcurrentHashMap<Key, Boolean>());
+            keys = keysByPath.putIfAbsent(key.path, newKeys);
+            if (keys == null)
+                keys = newKeys;
+        }
+        keys.add(key);
+    }
+
+    /**
+     * Forgets a key that is in neither map anymore. The set of its file is kept, as the file is still open and is
+     * removed on invalidation. A key unindexed while it is concurrently added back is just left to the eviction.
+     */
+    private void unindex(Key key)
+    {
+        if (map.containsKey(key) || recentlyMissed.containsKey(key))
+            return;
+
+        Set<Key> keys = keysByPath.get(key.path);
+        if (keys != null)
+            keys.remove(key);
+    }
+
+    private static RefCountedMemory allocate(long size)
+    {
+        try
+        {
+            return new RefCountedMemory(size);
+        }
+        catch (OutOfMemoryError e)
+        {
+            return null;
+        }
+    }
+
+    private static RefCountedMemory serialize(ByteBuffer value)
+    {
+        RefCountedMemory mem = allocate(value.remaining());
+        if (mem != null)
+            mem.setBytes(0, value.duplicate());
+        return mem;
+    }
+
+    private void put(Key key, RefCountedMemory mem)
+    {
+        index(key);
+        RefCountedMemory old;
+        try
+        {
+            old = map.put(key, mem);
+        }
+        catch (Throwable t)
+        {
+            mem.unreference();
+            throw t;
+        }
+
+        if (old != null)
+            old.unreference();
+    }
+
+    public long capacity()
+    {
+        return map.capacity();
+    }
+
+    public void setCapacity(long capacity)
+    {
+        map.setCapacity(capacity);
+    }
+
+    public int size()
+    {
+        return map.size();
+    }
+
+    public long weightedSize()
+    {
+        return map.weightedSize();
+    }
+
+    public void clear()
+    {
+        map.clear();
+        recentlyMissed.clear();
+        keysByPath.clear();
+    }
+
+    public ByteBuffer get(Key key)
+    {
+        RefCountedMemory mem = map.get(key);
+        if (mem == null || !mem.reference())
+            return null;
+        try
+        {
+            byte[] bytes = new byte[(int) mem.size()];
+            mem.getBytes(0, bytes, 0, bytes.length);
+            return ByteBuffer.wrap(bytes);
+        }
+        finally
+        {
+            mem.unreference();
+        }
+    }
+
+    public void put(Key key, ByteBuffer value)
+    {
+        RefCountedMemory mem = serialize(value);
+        if (mem != null)
+            put(key, mem);
+    }
+
+    public boolean putIfAbsent(Key key, ByteBuffer value)
+    {
+        RefCountedMemory mem = serialize(value);
+        if (mem == null)
+            return false; // out of memory.  never mind.
+
+        index(key);
+        RefCountedMemory old;
+        try
+        {
+            old = map.putIfAbsent(key, mem);
+        }
+        catch (Throwable t)
+        {
+            mem.unreference();
+            throw t;
+        }
+
+        if (old != null)
+            mem.unreference();
+        return old == null;
+    }
+
+    public boolean replace(Key key, ByteBuffer oldToReplace, ByteBuffer value)
+    {
+        RefCountedMemory old = map.get(key);
+        if (old == null)
+            return false;
+
+        ByteBuffer oldValue = get(key);
+        if (oldValue == null || !oldValue.equals(oldToReplace))
+            return false;
+
+        RefCountedMemory mem = serialize(value);
+        if (mem == null)
+            return false; // out of memory.  never mind.
+
+        boolean success;
+        try
+        {
+            success = map.replace(key, old, mem);
+        }
+        catch (Throwable t)
+        {
+            mem.unreference();
+            throw t;
+        }
+
+        if (success)
+            old.unreference();
+        else
+            mem.unreference();
+        return success;
+    }
+
+    public void remove(Key key)
+    {
+        RefCountedMemory mem = map.remove(key);
+        if (mem != null)
+            mem.unreference();
+        unindex(key);
+    }
+
+    public Set<Key> keySet()
+    {
+        return map.keySet();
+    }
+
+    public Set<Key> hotKeySet(int n)
+    {
+        return map.descendingKeySetWithLimit(n);
+    }
+
+    public boolean containsKey(Key key)
+    {
+        return map.containsKey(key);
+    }
+
+    /**
+     * Identifies a chunk by the data file it belongs to and its position in the compressed file.
+     */
+    public static final class Key
+    {
+        public final String path;
+        public final long position;
+
+        public Key(String path, long position)
+        {
+            this.path = path;
+            this.position = position;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key that = (Key) o;
+            return position == that.position && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * path.hashCode() + (int) (position ^ (position >>> 32));
+        }
+
+        @Override
+        public String toString()
+        {
+            return path + '@' + position;
+        }
+    }
+}
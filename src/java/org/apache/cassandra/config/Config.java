@@ -152,6 +152,7 @@ public class Config
     public Integer commitlog_sync_period_in_ms;
     public int commitlog_segment_size_in_mb = 32;
     public int commitlog_periodic_queue_size = 1024 * FBUtilities.getAvailableProcessors();
+    public String commitlog_compression;
 
     public String endpoint_snitch;
     public Boolean dynamic_snitch = true;
@@ -200,6 +201,8 @@ public class Config
 
     public Integer file_cache_size_in_mb;
 
+    public long chunk_cache_size_in_mb = 0;
+
     public boolean inter_dc_tcp_nodelay = true;
 
     public MemtableAllocationType memtable_allocation_type = MemtableAllocationType.heap_buffers;
@@ -56,6 +56,8 @@ import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.IAllocator;
 import org.apache.cassandra.locator.DynamicEndpointSnitch;
@@ -110,6 +112,7 @@ public class DatabaseDescriptor
     private static long keyCacheSizeInMB;
     private static long counterCacheSizeInMB;
     private static IAllocator memoryAllocator;
+    private static ICompressor commitLogCompressor;
     private static long indexSummaryCapacityInMB;
 
     private static String localDC;
@@ -195,6 +198,12 @@ public class DatabaseDescriptor
         if (conf.commitlog_total_space_in_mb == null)
             conf.commitlog_total_space_in_mb = hasLargeAddressSpace() ? 8192 : 32;
 
+        if (conf.commitlog_compression != null)
+        {
+            commitLogCompressor = CompressionParameters.createCompressor(conf.commitlog_compression, Collections.<String, String>emptyMap());
+            logger.debug("Compressing commit log segments with {}", commitLogCompressor.getClass().getName());
+        }
+
         /* evaluate the DiskAccessMode Config directive, which also affects indexAccessMode selection */
         if (conf.disk_access_mode == Config.DiskAccessMode.auto)
         {
@@ -1100,6 +1109,20 @@ public class DatabaseDescriptor
         return conf.commitlog_segment_size_in_mb * 1024 * 1024;
     }
 
+    /**
+     * @return the compressor for new commitlog segments, or null if they are not compressed
+     */
+    public static ICompressor getCommitLogCompressor()
+    {
+        return commitLogCompressor;
+    }
+
+    @VisibleForTesting
+    public static void setCommitLogCompressor(ICompressor compressor)
+    {
+        commitLogCompressor = compressor;
+    }
+
     public static String getSavedCachesLocation()
     {
         return conf.saved_caches_directory;
@@ -1425,6 +1448,11 @@ public class DatabaseDescriptor
         return conf.file_cache_size_in_mb;
     }
 
+    public static long getChunkCacheSizeInMB()
+    {
+        return conf.chunk_cache_size_in_mb;
+    }
+
     public static long getTotalCommitlogSpaceInMB()
     {
         return conf.commitlog_total_space_in_mb;
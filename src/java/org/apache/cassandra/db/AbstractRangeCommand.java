@@ -53,9 +53,26 @@ public abstract class AbstractRangeCommand implements IReadCommand
         return searcher == null ? false : searcher.requiresFullScan(rowFilter);
     }
 
+    /**
+     * Returns {@code true} if this command should be run as a two-phase search, first collecting the keys of the
+     * globally sorted rows and then reading only the required full rows, {@code false} otherwise.
+     */
+    public boolean usesTwoPhaseSearch()
+    {
+        return requiresFullScan() && searcher.keysOnlyClause(rowFilter) != null;
+    }
+
+    /**
+     * Returns the command for the first phase of a two-phase search.
+     */
+    public AbstractRangeCommand keysOnly()
+    {
+        return withRowFilter(searcher.keysOnlyClause(rowFilter));
+    }
+
     public List<Row> combine(List<Row> rows)
     {
-        return searcher == null ? trim(rows) : trim(searcher.sort(rowFilter, rows));
+        return searcher == null ? trim(rows) : trim(searcher.sort(rowFilter, rows, limit()));
     }
 
     private List<Row> trim(List<Row> rows)
@@ -74,6 +91,7 @@ public abstract class AbstractRangeCommand implements IReadCommand
     public abstract MessageOut<? extends AbstractRangeCommand> createMessage();
     public abstract AbstractRangeCommand forSubRange(AbstractBounds<RowPosition> range);
     public abstract AbstractRangeCommand withUpdatedLimit(int newLimit);
+    public abstract AbstractRangeCommand withRowFilter(List<IndexExpression> newRowFilter);
 
     public abstract int limit();
     public abstract boolean countCQL3Rows();
@@ -19,6 +19,7 @@ package org.apache.cassandra.db;
 
 import java.io.*;
 import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
@@ -86,6 +87,14 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                                                                                           new LinkedBlockingQueue<Runnable>(),
                                                                                           new NamedThreadFactory("MemtableFlushWriter"),
                                                                                           "internal");
+    // writes the per-disk parts of flushes split by disk boundaries; kept apart from flushExecutor, whose threads
+    // wait for these parts, so that a flush can't starve the executor it is waiting on
+    private static final ExecutorService perDiskFlushExecutor = new JMXEnabledThreadPoolExecutor(DatabaseDescriptor.getFlushWriters() * Directories.dataDirectories.length,
+                                                                                                 StageManager.KEEPALIVE,
+                                                                                                 TimeUnit.SECONDS,
+                                                                                                 new LinkedBlockingQueue<Runnable>(),
+                                                                                                 new NamedThreadFactory("PerDiskMemtableFlushWriter"),
+                                                                                                 "internal");
     // post-flush executor is single threaded to provide guarantee that any flush Future on a CF will never return until prior flushes have completed
     public static final ExecutorService postFlushExecutor = new JMXEnabledThreadPoolExecutor(1,
                                                                                              StageManager.KEEPALIVE,
@@ -1017,7 +1026,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 memtable.cfs.data.markFlushing(memtable);
                 if (memtable.isClean() || truncate)
                 {
-                    memtable.cfs.replaceFlushed(memtable, null);
+                    memtable.cfs.replaceFlushed(memtable, Collections.<SSTableReader>emptyList());
                     memtable.setDiscarded();
                     iter.remove();
                 }
@@ -1034,7 +1043,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             for (final Memtable memtable : memtables)
             {
                 // flush the memtable
-                MoreExecutors.sameThreadExecutor().execute(memtable.flushRunnable());
+                flushMemtable(memtable);
 
                 // issue a read barrier for reclaiming the memory, and offload the wait to another thread
                 final OpOrder.Barrier readBarrier = readOrdering.newBarrier();
@@ -1053,6 +1062,71 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             postFlush.lastReplayPosition = memtables.get(0).getLastReplayPosition();
             postFlush.latch.countDown();
         }
+
+        /**
+         * Writes the memtable to one sstable per data directory, splitting it at the disk boundaries of its
+         * column family and writing the parts concurrently, then replaces it with the written sstables.
+         */
+        private void flushMemtable(Memtable memtable)
+        {
+            List<Memtable.FlushRunnable> flushRunnables = memtable.flushRunnables(memtable.cfs.getDiskBoundaries());
+            if (flushRunnables.size() == 1)
+            {
+                MoreExecutors.sameThreadExecutor().execute(flushRunnables.get(0));
+            }
+            else
+            {
+                List<Future<?>> futures = new ArrayList<>(flushRunnables.size());
+                for (Memtable.FlushRunnable flushRunnable : flushRunnables)
+                    futures.add(perDiskFlushExecutor.submit(flushRunnable));
+
+                // wait for every part, even if one of them fails, so that none is still being written when we clean up
+                Throwable failure = null;
+                for (Future<?> future : futures)
+                {
+                    try
+                    {
+                        Uninterruptibles.getUninterruptibly(future);
+                    }
+                    catch (ExecutionException e)
+                    {
+                        if (failure == null)
+                            failure = e.getCause();
+                    }
+                }
+                if (failure != null)
+                {
+                    abortFlush(flushRunnables);
+                    throw new RuntimeException(failure);
+                }
+            }
+
+            List<SSTableReader> sstables = new ArrayList<>(flushRunnables.size());
+            for (Memtable.FlushRunnable flushRunnable : flushRunnables)
+            {
+                SSTableReader sstable = flushRunnable.getSSTable();
+                if (sstable != null)
+                    sstables.add(sstable);
+            }
+            memtable.cfs.replaceFlushed(memtable, sstables);
+        }
+
+        /**
+         * Deletes the sstables already written by the parts of a failed flush. The memtable is not replaced, so its
+         * contents are still in the commit log, and keeping those sstables would only load them twice on restart.
+         */
+        private void abortFlush(List<Memtable.FlushRunnable> flushRunnables)
+        {
+            for (Memtable.FlushRunnable flushRunnable : flushRunnables)
+            {
+                SSTableReader sstable = flushRunnable.getSSTable();
+                if (sstable == null)
+                    continue;
+                logger.info("Deleting {} written by a failed flush", sstable);
+                sstable.markObsolete();
+                sstable.releaseReference();
+            }
+        }
     }
 
     /**
@@ -1351,9 +1425,89 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         data.markObsolete(sstables, compactionType);
     }
 
-    void replaceFlushed(Memtable memtable, SSTableReader sstable)
+    void replaceFlushed(Memtable memtable, Collection<SSTableReader> sstables)
+    {
+        compactionStrategyWrapper.replaceFlushed(memtable, sstables);
+    }
+
+    /**
+     * Splits the token ranges owned by this node into one part of roughly equal width per data directory, so that
+     * flushes write every part to its own disk and the resulting sstables don't overlap across disks.
+     *
+     * @return the upper (inclusive) token of every part but the last one, or an empty list if flushes must not be
+     * split, that is, if there is a single data directory or the partitioner doesn't spread tokens numerically.
+     */
+    List<Token> getDiskBoundaries()
+    {
+        int disks = Directories.dataDirectories.length;
+        if (disks <= 1)
+            return Collections.emptyList();
+        return getDiskBoundaries(partitioner, StorageService.instance.getLocalRanges(keyspace.getName()), disks);
+    }
+
+    /**
+     * Splits the given token ranges into the given number of parts of roughly equal width.
+     *
+     * @param localRanges the ranges to split, which may wrap around the ring; if empty, the whole ring is split
+     * @return the upper (inclusive) token of every part but the last one, or an empty list if there is a single part
+     * or the partitioner doesn't spread tokens numerically.
+     */
+    @VisibleForTesting
+    static List<Token> getDiskBoundaries(IPartitioner partitioner, Collection<Range<Token>> localRanges, int disks)
+    {
+        BigInteger max;
+        if (partitioner instanceof Murmur3Partitioner)
+            max = BigInteger.valueOf(Murmur3Partitioner.MAXIMUM);
+        else if (partitioner instanceof RandomPartitioner)
+            max = RandomPartitioner.MAXIMUM;
+        else
+            return Collections.emptyList();
+        if (disks <= 1)
+            return Collections.emptyList();
+
+        Token minimum = partitioner.getMinimumToken();
+        // before joining the ring we don't own anything yet, so just split the whole ring
+        List<Range<Token>> ranges = localRanges.isEmpty()
+                                  ? Collections.singletonList(new Range<>(minimum, minimum, partitioner))
+                                  : Range.normalize(localRanges);
+
+        List<BigInteger[]> bounds = new ArrayList<>(ranges.size());
+        BigInteger total = BigInteger.ZERO;
+        for (Range<Token> range : ranges)
+        {
+            BigInteger left = tokenValue(range.left);
+            BigInteger right = range.right.isMinimum(partitioner) ? max : tokenValue(range.right);
+            bounds.add(new BigInteger[]{ left, right });
+            total = total.add(right.subtract(left));
+        }
+
+        BigInteger perDisk = total.divide(BigInteger.valueOf(disks));
+        if (perDisk.signum() <= 0)
+            return Collections.emptyList();
+
+        List<Token> boundaries = new ArrayList<>(disks - 1);
+        BigInteger consumed = BigInteger.ZERO;
+        BigInteger next = perDisk;
+        for (BigInteger[] bound : bounds)
+        {
+            BigInteger width = bound[1].subtract(bound[0]);
+            while (boundaries.size() < disks - 1 && consumed.add(width).compareTo(next) >= 0)
+            {
+                BigInteger boundary = bound[0].add(next.subtract(consumed));
+                boundaries.add(partitioner instanceof Murmur3Partitioner
+                               ? new LongToken(boundary.longValue())
+                               : new BigIntegerToken(boundary));
+                next = next.add(perDisk);
+            }
+            consumed = consumed.add(width);
+        }
+        return boundaries;
+    }
+
+    private static BigInteger tokenValue(Token token)
     {
-        compactionStrategyWrapper.replaceFlushed(memtable, sstable);
+        Object value = token.getTokenValue();
+        return value instanceof BigInteger ? (BigInteger) value : BigInteger.valueOf((Long) value);
     }
 
     public boolean isValid()
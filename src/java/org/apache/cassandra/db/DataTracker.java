@@ -136,9 +136,9 @@ public class DataTracker
         while (!view.compareAndSet(currentView, newView));
     }
 
-    public void replaceFlushed(Memtable memtable, SSTableReader sstable)
+    public void replaceFlushed(Memtable memtable, Collection<SSTableReader> sstables)
     {
-        // sstable may be null if we flushed batchlog and nothing needed to be retained
+        // sstables may be empty if we flushed batchlog and nothing needed to be retained
 
         if (!cfstore.isValid())
         {
@@ -146,30 +146,31 @@ public class DataTracker
             do
             {
                 currentView = view.get();
-                newView = currentView.replaceFlushed(memtable, sstable);
-                if (sstable != null)
-                    newView = newView.replace(Arrays.asList(sstable), Collections.<SSTableReader>emptyList());
+                newView = currentView.replaceFlushed(memtable, sstables);
+                if (!sstables.isEmpty())
+                    newView = newView.replace(sstables, Collections.<SSTableReader>emptyList());
             }
             while (!view.compareAndSet(currentView, newView));
             return;
         }
 
         // back up before creating a new View (which makes the new one eligible for compaction)
-        if (sstable != null)
+        for (SSTableReader sstable : sstables)
             maybeIncrementallyBackup(sstable);
 
         View currentView, newView;
         do
         {
             currentView = view.get();
-            newView = currentView.replaceFlushed(memtable, sstable);
+            newView = currentView.replaceFlushed(memtable, sstables);
         }
         while (!view.compareAndSet(currentView, newView));
 
-        if (sstable != null)
+        if (!sstables.isEmpty())
         {
-            addNewSSTablesSize(Arrays.asList(sstable));
-            notifyAdded(sstable);
+            addNewSSTablesSize(sstables);
+            for (SSTableReader sstable : sstables)
+                notifyAdded(sstable);
         }
     }
 
@@ -693,18 +694,19 @@ public class DataTracker
             return new View(newLive, newFlushing, sstables, compacting, intervalTree);
         }
 
-        View replaceFlushed(Memtable flushedMemtable, SSTableReader newSSTable)
+        View replaceFlushed(Memtable flushedMemtable, Collection<SSTableReader> newSSTables)
         {
             int index = flushingMemtables.indexOf(flushedMemtable);
             List<Memtable> newQueuedMemtables = ImmutableList.<Memtable>builder()
                                                              .addAll(flushingMemtables.subList(0, index))
                                                              .addAll(flushingMemtables.subList(index + 1, flushingMemtables.size()))
                                                              .build();
-            Set<SSTableReader> newSSTables = newSSTable == null
-                                             ? sstables
-                                             : newSSTables(newSSTable);
-            SSTableIntervalTree intervalTree = buildIntervalTree(newSSTables);
-            return new View(liveMemtables, newQueuedMemtables, newSSTables, compacting, intervalTree);
+            // not performance-sensitive, don't obsess over doing a selection merge here
+            Set<SSTableReader> sstables = newSSTables.isEmpty()
+                                          ? this.sstables
+                                          : newSSTables(Collections.<SSTableReader>emptyList(), newSSTables);
+            SSTableIntervalTree intervalTree = buildIntervalTree(sstables);
+            return new View(liveMemtables, newQueuedMemtables, sstables, compacting, intervalTree);
         }
 
         View replace(Collection<SSTableReader> oldSSTables, Iterable<SSTableReader> replacements)
@@ -726,13 +728,6 @@ public class DataTracker
             return new View(liveMemtables, flushingMemtables, sstables, compactingNew, intervalTree);
         }
 
-        private Set<SSTableReader> newSSTables(SSTableReader newSSTable)
-        {
-            assert newSSTable != null;
-            // not performance-sensitive, don't obsess over doing a selection merge here
-            return newSSTables(Collections.<SSTableReader>emptyList(), Collections.singletonList(newSSTable));
-        }
-
         private Set<SSTableReader> newSSTables(Collection<SSTableReader> oldSSTables, Iterable<SSTableReader> replacements)
         {
             ImmutableSet<SSTableReader> oldSet = ImmutableSet.copyOf(oldSSTables);
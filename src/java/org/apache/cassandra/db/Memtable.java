@@ -19,7 +19,10 @@ package org.apache.cassandra.db;
 
 import java.io.File;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
@@ -39,6 +42,7 @@ import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.composites.CellNameType;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
 import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.sstable.SSTableWriter;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
@@ -207,9 +211,37 @@ public class Memtable
         return builder.toString();
     }
 
-    public FlushRunnable flushRunnable()
+    /**
+     * Splits the flush of this memtable at the given token boundaries, so that each part can be written
+     * to its own data directory concurrently.
+     *
+     * @param diskBoundaries the sorted upper (inclusive) tokens of every data directory but the last one,
+     *                       or an empty list to flush the whole memtable to a single sstable
+     * @return the flush tasks for the non-empty parts of this memtable
+     */
+    public List<FlushRunnable> flushRunnables(List<Token> diskBoundaries)
     {
-        return new FlushRunnable(lastReplayPosition.get());
+        ReplayPosition context = lastReplayPosition.get();
+        if (diskBoundaries.isEmpty())
+            return Collections.singletonList(new FlushRunnable(context, rows, null));
+
+        assert diskBoundaries.size() < Directories.dataDirectories.length;
+        List<FlushRunnable> runnables = new ArrayList<>(diskBoundaries.size() + 1);
+        RowPosition from = null;
+        for (int i = 0; i <= diskBoundaries.size(); i++)
+        {
+            RowPosition to = i < diskBoundaries.size() ? diskBoundaries.get(i).maxKeyBound(cfs.partitioner) : null;
+            ConcurrentNavigableMap<RowPosition, AtomicBTreeColumns> toFlush;
+            if (from == null)
+                toFlush = to == null ? rows : rows.headMap(to, true);
+            else
+                toFlush = to == null ? rows.tailMap(from, false) : rows.subMap(from, false, to, true);
+
+            if (!toFlush.isEmpty())
+                runnables.add(new FlushRunnable(context, toFlush, Directories.dataDirectories[i]));
+            from = to;
+        }
+        return runnables;
     }
 
     public String toString()
@@ -282,22 +314,38 @@ public class Memtable
     class FlushRunnable extends DiskAwareRunnable
     {
         private final ReplayPosition context;
+        private final ConcurrentNavigableMap<RowPosition, AtomicBTreeColumns> toFlush;
+        private final Directories.DataDirectory preferredDirectory;
+        private final int keyCount;
         private final long estimatedSize;
+        private volatile SSTableReader sstable;
 
-        FlushRunnable(ReplayPosition context)
+        FlushRunnable(ReplayPosition context,
+                      ConcurrentNavigableMap<RowPosition, AtomicBTreeColumns> toFlush,
+                      Directories.DataDirectory preferredDirectory)
         {
             this.context = context;
+            this.toFlush = toFlush;
+            this.preferredDirectory = preferredDirectory;
 
+            int keyCount = 0;
             long keySize = 0;
-            for (RowPosition key : rows.keySet())
+            for (RowPosition key : toFlush.keySet())
             {
                 //  make sure we don't write non-sensical keys
                 assert key instanceof DecoratedKey;
                 keySize += ((DecoratedKey)key).getKey().remaining();
+                keyCount++;
             }
+            this.keyCount = keyCount;
+
+            // partitions of a part of the memtable are not sized individually, so assume an even spread of the data
+            long dataSize = toFlush == rows
+                          ? liveDataSize.get()
+                          : (long) (liveDataSize.get() * ((double) keyCount / Math.max(1, rows.size())));
             estimatedSize = (long) ((keySize // index entries
                                     + keySize // keys in data file
-                                    + liveDataSize.get()) // data
+                                    + dataSize) // data
                                     * 1.2); // bloom filter and row index overhead
         }
 
@@ -310,8 +358,7 @@ public class Memtable
         {
             assert sstableDirectory != null : "Flush task is not bound to any disk";
 
-            SSTableReader sstable = writeSortedContents(context, sstableDirectory);
-            cfs.replaceFlushed(Memtable.this, sstable);
+            sstable = writeSortedContents(context, sstableDirectory);
         }
 
         protected Directories getDirectories()
@@ -319,10 +366,24 @@ public class Memtable
             return cfs.directories;
         }
 
+        @Override
+        protected Directories.DataDirectory getPreferredDirectory()
+        {
+            return preferredDirectory;
+        }
+
+        /**
+         * @return the sstable written by this task, or null if it has not run yet or nothing needed to be retained.
+         */
+        public SSTableReader getSSTable()
+        {
+            return sstable;
+        }
+
         private SSTableReader writeSortedContents(ReplayPosition context, File sstableDirectory)
         throws ExecutionException, InterruptedException
         {
-            logger.info("Writing {}", Memtable.this.toString());
+            logger.info("Writing {} partitions of {}", keyCount, Memtable.this.toString());
 
             SSTableReader ssTable;
             // errors when creating the writer that may leave empty temp files.
@@ -333,7 +394,7 @@ public class Memtable
                 int heavilyContendedRowCount = 0;
                 // (we can't clear out the map as-we-go to free up memory,
                 //  since the memtable is being used for queries in the "pending flush" category)
-                for (Map.Entry<RowPosition, AtomicBTreeColumns> entry : rows.entrySet())
+                for (Map.Entry<RowPosition, AtomicBTreeColumns> entry : toFlush.entrySet())
                 {
                     AtomicBTreeColumns cf = entry.getValue();
 
@@ -373,7 +434,7 @@ public class Memtable
                 }
 
                 if (heavilyContendedRowCount > 0)
-                    logger.debug(String.format("High update contention in %d/%d partitions of %s ", heavilyContendedRowCount, rows.size(), Memtable.this.toString()));
+                    logger.debug(String.format("High update contention in %d/%d partitions of %s ", heavilyContendedRowCount, keyCount, Memtable.this.toString()));
 
                 return ssTable;
             }
@@ -388,7 +449,7 @@ public class Memtable
         {
             MetadataCollector sstableMetadataCollector = new MetadataCollector(cfs.metadata.comparator).replayPosition(context);
             return new SSTableWriter(filename,
-                                     rows.size(),
+                                     keyCount,
                                      ActiveRepairService.UNREPAIRED_SSTABLE,
                                      cfs.metadata,
                                      cfs.partitioner,
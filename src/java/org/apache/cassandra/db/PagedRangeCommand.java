@@ -94,6 +94,20 @@ public class PagedRangeCommand extends AbstractRangeCommand
                                      countCQL3Rows);
     }
 
+    public AbstractRangeCommand withRowFilter(List<IndexExpression> newRowFilter)
+    {
+        return new PagedRangeCommand(keyspace,
+                                     columnFamily,
+                                     timestamp,
+                                     keyRange,
+                                     (SliceQueryFilter)predicate,
+                                     start,
+                                     stop,
+                                     newRowFilter,
+                                     limit,
+                                     countCQL3Rows);
+    }
+
     public int limit()
     {
         return limit;
@@ -111,6 +111,19 @@ public class RangeSliceCommand extends AbstractRangeCommand implements Pageable
                                      isPaging);
     }
 
+    public AbstractRangeCommand withRowFilter(List<IndexExpression> newRowFilter)
+    {
+        return new RangeSliceCommand(keyspace,
+                                     columnFamily,
+                                     timestamp,
+                                     predicate,
+                                     keyRange,
+                                     newRowFilter,
+                                     maxResults,
+                                     countCQL3Rows,
+                                     isPaging);
+    }
+
     public int limit()
     {
         return maxResults;
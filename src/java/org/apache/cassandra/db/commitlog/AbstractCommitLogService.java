@@ -78,7 +78,9 @@ public abstract class AbstractCommitLogService
 
                         // sync and signal
                         long syncStarted = System.currentTimeMillis();
+                        long syncStartedNanos = System.nanoTime();
                         commitLog.sync(shutdown);
+                        commitLog.metrics.syncTime.update(System.nanoTime() - syncStartedNanos, TimeUnit.NANOSECONDS);
                         lastSyncedAt = syncStarted;
                         syncComplete.signalAll();
 
@@ -21,6 +21,7 @@ import java.io.*;
 import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -67,6 +68,7 @@ public class CommitLog implements CommitLogMBean
     {
         DatabaseDescriptor.createAllDirectories();
 
+        metrics = new CommitLogMetrics();
         allocator = new CommitLogSegmentManager();
 
         executor = DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.batch
@@ -84,7 +86,7 @@ public class CommitLog implements CommitLogMBean
         }
 
         // register metrics
-        metrics = new CommitLogMetrics(executor, allocator);
+        metrics.attach(executor, allocator);
     }
 
     /**
@@ -144,9 +146,17 @@ public class CommitLog implements CommitLogMBean
      */
     public int recover(File... clogs) throws IOException
     {
+        long start = System.nanoTime();
         CommitLogReplayer recovery = new CommitLogReplayer();
         recovery.recover(clogs);
-        return recovery.blockForWrites();
+        int replayed = recovery.blockForWrites();
+
+        long elapsed = System.nanoTime() - start;
+        metrics.replayTime.update(elapsed, TimeUnit.NANOSECONDS);
+        metrics.replayedMutations.mark(replayed);
+        logger.info(String.format("Replayed %d mutations from %d commit log segments in %d ms (%.0f mutations/s)",
+                                  replayed, clogs.length, TimeUnit.NANOSECONDS.toMillis(elapsed), replayed * 1e9 / Math.max(elapsed, 1)));
+        return replayed;
     }
 
     /**
@@ -192,7 +202,7 @@ public class CommitLog implements CommitLogMBean
         {
             if (!syncAllSegments && segment.id > current.id)
                 return;
-            segment.sync();
+            metrics.bytesWritten.mark(segment.sync());
         }
     }
 
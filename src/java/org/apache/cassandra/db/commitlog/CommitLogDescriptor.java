@@ -25,10 +25,15 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.PureJavaCrc32;
@@ -44,6 +49,8 @@ public class CommitLogDescriptor
     public static final int VERSION_12 = 2;
     public static final int VERSION_20 = 3;
     public static final int VERSION_21 = 4;
+    // compressed segments, whose header also records the compressor class
+    public static final int VERSION_22 = 5;
     /**
      * Increment this number if there is a changes in the commit log disc layout or MessagingVersion changes.
      * Note: make sure to handle {@link #getMessagingVersion()}
@@ -55,11 +62,20 @@ public class CommitLogDescriptor
 
     final int version;
     public final long id;
+    // the class name of the compressor of the segment, or null if it is not compressed
+    public final String compression;
 
-    public CommitLogDescriptor(int version, long id)
+    public CommitLogDescriptor(int version, long id, String compression)
     {
+        assert compression == null || version >= VERSION_22;
         this.version = version;
         this.id = id;
+        this.compression = compression;
+    }
+
+    public CommitLogDescriptor(int version, long id)
+    {
+        this(version, id, null);
     }
 
     public CommitLogDescriptor(long id)
@@ -67,6 +83,49 @@ public class CommitLogDescriptor
         this(current_version, id);
     }
 
+    /**
+     * @return the descriptor of a new segment, which is compressed with the given compressor unless it is null
+     */
+    public static CommitLogDescriptor create(long id, ICompressor compressor)
+    {
+        return compressor == null
+               ? new CommitLogDescriptor(id)
+               : new CommitLogDescriptor(VERSION_22, id, compressor.getClass().getName());
+    }
+
+    /**
+     * @return the size of the header of the segment, which is variable for compressed segments
+     */
+    public int headerSize()
+    {
+        if (version < VERSION_22)
+            return HEADER_SIZE;
+        // [version, id, compression length, compression, checksum]
+        return HEADER_SIZE + 2 + compressionBytes().length;
+    }
+
+    private byte[] compressionBytes()
+    {
+        return compression == null ? new byte[0] : compression.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a new instance of the compressor of the segment, or null if it is not compressed
+     */
+    public ICompressor createCompressor()
+    {
+        if (compression == null)
+            return null;
+        try
+        {
+            return CompressionParameters.createCompressor(compression, Collections.<String, String>emptyMap());
+        }
+        catch (ConfigurationException e)
+        {
+            throw new IllegalStateException("Cannot create the compressor of commitlog " + fileName(), e);
+        }
+    }
+
     static void writeHeader(ByteBuffer out, CommitLogDescriptor descriptor)
     {
         out.putInt(0, descriptor.version);
@@ -75,7 +134,17 @@ public class CommitLogDescriptor
         crc.updateInt(descriptor.version);
         crc.updateInt((int) (descriptor.id & 0xFFFFFFFFL));
         crc.updateInt((int) (descriptor.id >>> 32));
-        out.putInt(12, crc.getCrc());
+        int position = 12;
+        if (descriptor.version >= VERSION_22)
+        {
+            byte[] compression = descriptor.compressionBytes();
+            out.putShort(position, (short) compression.length);
+            for (int i = 0; i < compression.length; i++)
+                out.put(position + 2 + i, compression[i]);
+            crc.update(compression, 0, compression.length);
+            position += 2 + compression.length;
+        }
+        out.putInt(position, crc.getCrc());
     }
 
     public static CommitLogDescriptor fromHeader(File file)
@@ -85,13 +154,25 @@ public class CommitLogDescriptor
             assert raf.getFilePointer() == 0;
             int version = raf.readInt();
             long id = raf.readLong();
-            int crc = raf.readInt();
             PureJavaCrc32 checkcrc = new PureJavaCrc32();
             checkcrc.updateInt(version);
             checkcrc.updateInt((int) (id & 0xFFFFFFFFL));
             checkcrc.updateInt((int) (id >>> 32));
+            String compression = null;
+            if (version >= VERSION_22)
+            {
+                int length = raf.readUnsignedShort();
+                if (length > 0)
+                {
+                    byte[] bytes = new byte[length];
+                    raf.readFully(bytes);
+                    checkcrc.update(bytes, 0, length);
+                    compression = new String(bytes, StandardCharsets.UTF_8);
+                }
+            }
+            int crc = raf.readInt();
             if (crc == checkcrc.getCrc())
-                return new CommitLogDescriptor(version, id);
+                return new CommitLogDescriptor(version, id, compression);
             return null;
         }
         catch (EOFException e)
@@ -126,6 +207,7 @@ public class CommitLogDescriptor
             case VERSION_20:
                 return MessagingService.VERSION_20;
             case VERSION_21:
+            case VERSION_22:
                 return MessagingService.VERSION_21;
             default:
                 throw new IllegalStateException("Unknown commitlog version " + version);
@@ -19,7 +19,13 @@
 package org.apache.cassandra.db.commitlog;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -32,12 +38,17 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.concurrent.Stage;
-import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.index.PerRowSecondaryIndex;
+import org.apache.cassandra.db.index.SecondaryIndex;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.MappedFileDataInput;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.utils.*;
 
@@ -48,28 +59,35 @@ public class CommitLogReplayer
     private static final Logger logger = LoggerFactory.getLogger(CommitLogReplayer.class);
     private static final int MAX_OUTSTANDING_REPLAY_COUNT = 1024;
     private static final int LEGACY_END_OF_SEGMENT_MARKER = 0;
+    // the minimum number of bytes of the sections decoded together by a thread
+    private static final int REPLAY_CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_DECODING_CHUNKS_PER_THREAD = 2;
 
     private final Set<Keyspace> keyspacesRecovered;
     private final List<Future<?>> futures;
-    private final Map<UUID, AtomicInteger> invalidMutations;
+    private final ConcurrentMap<UUID, AtomicInteger> invalidMutations;
     private final AtomicInteger replayedCount;
+    private final AtomicInteger reindexedCount;
     private final Map<UUID, ReplayPosition> cfPositions;
+    private final Map<UUID, Map<PerRowSecondaryIndex, ReplayPosition>> indexPositions;
     private final ReplayPosition globalPosition;
-    private final PureJavaCrc32 checksum;
-    private byte[] buffer;
+    // the single thread writers of the recovery in progress, each one applying the mutations of a subset of keys in order
+    private ExecutorService[] writers;
+    // the segment whose end has been found, so its following chunks must be ignored
+    private long endedSegmentId = -1;
 
     public CommitLogReplayer()
     {
         this.keyspacesRecovered = new NonBlockingHashSet<Keyspace>();
         this.futures = new ArrayList<Future<?>>();
-        this.buffer = new byte[4096];
-        this.invalidMutations = new HashMap<UUID, AtomicInteger>();
+        this.invalidMutations = new ConcurrentHashMap<UUID, AtomicInteger>();
         // count the number of replayed mutation. We don't really care about atomicity, but we need it to be a reference.
         this.replayedCount = new AtomicInteger();
-        this.checksum = new PureJavaCrc32();
+        this.reindexedCount = new AtomicInteger();
 
         // compute per-CF and global replay positions
         cfPositions = new HashMap<UUID, ReplayPosition>();
+        indexPositions = new HashMap<UUID, Map<PerRowSecondaryIndex, ReplayPosition>>();
         Ordering<ReplayPosition> replayPositionOrdering = Ordering.from(ReplayPosition.comparator);
         for (ColumnFamilyStore cfs : ColumnFamilyStore.all())
         {
@@ -84,23 +102,83 @@ public class CommitLogReplayer
                 rp = replayPositionOrdering.max(Arrays.asList(rp, truncatedAt));
 
             cfPositions.put(cfs.metadata.cfId, rp);
+
+            // custom indexes not flushed along with the memtables can be behind the sstables, so they may need to
+            // reindex writes that don't need to be replayed
+            Map<PerRowSecondaryIndex, ReplayPosition> cfIndexPositions = new HashMap<PerRowSecondaryIndex, ReplayPosition>();
+            for (SecondaryIndex index : cfs.indexManager.getIndexesNotBackedByCfs())
+            {
+                ReplayPosition indexRp = index.getReplayPosition();
+                if (indexRp == null || !(index instanceof PerRowSecondaryIndex))
+                    continue;
+                if (truncatedAt != null)
+                    indexRp = replayPositionOrdering.max(Arrays.asList(indexRp, truncatedAt));
+                if (indexRp.compareTo(rp) < 0)
+                    cfIndexPositions.put((PerRowSecondaryIndex) index, indexRp);
+            }
+            if (!cfIndexPositions.isEmpty())
+                indexPositions.put(cfs.metadata.cfId, cfIndexPositions);
         }
-        globalPosition = replayPositionOrdering.min(cfPositions.values());
-        logger.debug("Global replay position is {} from columnfamilies {}", globalPosition, FBUtilities.toString(cfPositions));
+        List<ReplayPosition> positions = new ArrayList<ReplayPosition>(cfPositions.values());
+        for (Map<PerRowSecondaryIndex, ReplayPosition> cfIndexPositions : indexPositions.values())
+            positions.addAll(cfIndexPositions.values());
+        globalPosition = replayPositionOrdering.min(positions);
+        logger.debug("Global replay position is {} from columnfamilies {} and indexes {}", globalPosition, FBUtilities.toString(cfPositions), indexPositions);
     }
 
     public void recover(File[] clogs) throws IOException
     {
-        for (final File file : clogs)
-            recover(file);
+        // The segments are scanned for their sections one after another, but the sections are read, uncompressed
+        // and deserialized in parallel. The decoded chunks are consumed in log order, so the mutations of each
+        // partition are still submitted in the order they were written.
+        int decodingThreads = FBUtilities.getAvailableProcessors();
+        ExecutorService decoders = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplayer", decodingThreads);
+        // the writers are shut down at the end of the recovery, letting the submitted writes finish, so that their
+        // threads don't outlive a failed recovery; blockForWrites waits for the writes
+        writers = new ExecutorService[DatabaseDescriptor.getConcurrentWriters()];
+        for (int i = 0; i < writers.length; i++)
+            writers[i] = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplayWriter", 1);
+        try
+        {
+            ReplayFilter replayFilter = ReplayFilter.create();
+            Deque<Pair<ReplayChunk, Future<ReplayChunk>>> decoding = new ArrayDeque<Pair<ReplayChunk, Future<ReplayChunk>>>();
+            for (File file : clogs)
+            {
+                for (ReplayChunk chunk : chunks(file))
+                {
+                    // bound the number of decoded chunks waiting to be applied
+                    if (decoding.size() >= MAX_DECODING_CHUNKS_PER_THREAD * decodingThreads)
+                        apply(decoding.poll(), replayFilter);
+                    // nothing after the first invalid section of a segment is scheduled
+                    if (chunk.descriptor.id == endedSegmentId)
+                        break;
+                    decoding.add(Pair.create(chunk, decoders.submit(chunk)));
+                }
+            }
+            while (!decoding.isEmpty())
+                apply(decoding.poll(), replayFilter);
+        }
+        finally
+        {
+            decoders.shutdownNow();
+            for (ExecutorService writer : writers)
+                writer.shutdown();
+        }
+    }
+
+    public void recover(File file) throws IOException
+    {
+        recover(new File[]{ file });
     }
 
     public int blockForWrites()
     {
         for (Map.Entry<UUID, AtomicInteger> entry : invalidMutations.entrySet())
             logger.info(String.format("Skipped %d mutations from unknown (probably removed) CF with id %s", entry.getValue().intValue(), entry.getKey()));
+        if (reindexedCount.get() > 0)
+            logger.info("Reindexed {} already flushed mutations in custom secondary indexes", reindexedCount.get());
 
-        // wait for all the writes to finish on the mutation stage
+        // wait for all the writes to finish on the replay writers
         FBUtilities.waitOnFutures(futures);
         logger.debug("Finished waiting on mutations from recovery");
 
@@ -148,12 +226,13 @@ public class CommitLogReplayer
         return end;
     }
 
-    private int getStartOffset(long segmentId, int version)
+    private int getStartOffset(CommitLogDescriptor descriptor)
     {
+        long segmentId = descriptor.id;
         if (globalPosition.segment < segmentId)
         {
-            if (version >= CommitLogDescriptor.VERSION_21)
-                return CommitLogDescriptor.HEADER_SIZE + CommitLogSegment.SYNC_MARKER_SIZE;
+            if (descriptor.version >= CommitLogDescriptor.VERSION_21)
+                return descriptor.headerSize() + CommitLogSegment.SYNC_MARKER_SIZE;
             else
                 return 0;
         }
@@ -225,222 +304,494 @@ public class CommitLogReplayer
         }
     }
 
-    public void recover(File file) throws IOException
+    /**
+     * Scans the sync markers of the specified segment, grouping its sections to be replayed into chunks that can be
+     * decoded independently.
+     */
+    private List<ReplayChunk> chunks(File file) throws IOException
     {
-        final ReplayFilter replayFilter = ReplayFilter.create();
         logger.info("Replaying {}", file.getPath());
         CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(file.getName());
-        final long segmentId = desc.id;
+        if (desc.version >= CommitLogDescriptor.VERSION_22)
+        {
+            // the compressor of compressed segments is only recorded in their header
+            CommitLogDescriptor headerDesc = CommitLogDescriptor.fromHeader(file);
+            if (headerDesc == null || !headerDesc.equals(desc))
+            {
+                logger.warn("Encountered bad header in commit log {}, skipping its replay", file.getPath());
+                return Collections.emptyList();
+            }
+            desc = headerDesc;
+        }
         logger.info("Replaying {} (CL version {}, messaging version {})",
                     file.getPath(),
                     desc.version,
                     desc.getMessagingVersion());
-        RandomAccessReader reader = RandomAccessReader.open(new File(file.getAbsolutePath()));
 
+        int offset = getStartOffset(desc);
+        if (offset < 0)
+        {
+            logger.debug("skipping replay of fully-flushed {}", file);
+            return Collections.emptyList();
+        }
+
+        ICompressor compressor = desc.createCompressor();
+        List<ReplayChunk> chunks = new ArrayList<ReplayChunk>();
+        ReplayChunk chunk = new ReplayChunk(file, desc, compressor);
+        chunks.add(chunk);
+        if (desc.version < CommitLogDescriptor.VERSION_21)
+        {
+            // legacy segments have no sync markers, so they are read up to their end of segment marker
+            chunk.add(new ReplaySection(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, offset));
+            return chunks;
+        }
+
+        RandomAccessReader reader = RandomAccessReader.open(new File(file.getAbsolutePath()));
         try
         {
             assert reader.length() <= Integer.MAX_VALUE;
-            int offset = getStartOffset(segmentId, desc.version);
-            if (offset < 0)
+            int prevEnd = desc.headerSize();
+            // the uncompressed position of the end of the last section of compressed segments
+            int uncompressedEnd = prevEnd;
+            while (true)
             {
-                logger.debug("skipping replay of fully-flushed {}", file);
-                return;
+                int end = readSyncMarker(desc, prevEnd, reader);
+                if (end <= prevEnd)
+                    break;
+
+                int start = prevEnd + CommitLogSegment.SYNC_MARKER_SIZE;
+                ReplaySection section;
+                if (compressor == null)
+                {
+                    section = new ReplaySection(start, end, start, end, offset);
+                }
+                else
+                {
+                    // the replay positions of compressed segments are positions in their uncompressed contents,
+                    // where each section starts after its uncompressed sync marker
+                    if (end < prevEnd + CommitLogSegment.COMPRESSED_MARKER_SIZE)
+                    {
+                        logger.warn("Encountered bad compressed section at position {} of commit log {}", prevEnd, reader.getPath());
+                        break;
+                    }
+                    int uncompressedLength = reader.readInt();
+                    int uncompressedStart = uncompressedEnd + CommitLogSegment.SYNC_MARKER_SIZE;
+                    uncompressedEnd = uncompressedStart + uncompressedLength;
+                    section = new ReplaySection(prevEnd + CommitLogSegment.COMPRESSED_MARKER_SIZE, end, uncompressedStart, uncompressedEnd, offset);
+                }
+                prevEnd = end;
+
+                // skip the sections before the replay position
+                if (section.end < offset)
+                    continue;
+
+                if (chunk.length >= REPLAY_CHUNK_SIZE)
+                {
+                    chunk = new ReplayChunk(file, desc, compressor);
+                    chunks.add(chunk);
+                }
+                chunk.add(section);
             }
+        }
+        finally
+        {
+            FileUtils.closeQuietly(reader);
+        }
+        return chunks;
+    }
+
+    /**
+     * Submits the mutations of the specified chunk, once decoded, to the replay writers.
+     */
+    private void apply(Pair<ReplayChunk, Future<ReplayChunk>> decoding, ReplayFilter replayFilter) throws IOException
+    {
+        ReplayChunk chunk = decoding.left;
+        Future<ReplayChunk> future = decoding.right;
 
-            int prevEnd = CommitLogDescriptor.HEADER_SIZE;
-            main: while (true)
+        // as when reading it sequentially, nothing after the end of a segment is replayed
+        long segmentId = chunk.descriptor.id;
+        if (segmentId == endedSegmentId)
+        {
+            future.cancel(true);
+            return;
+        }
+
+        try
+        {
+            future.get();
+        }
+        catch (InterruptedException e)
+        {
+            throw new AssertionError(e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            // handled like any other invalid section, discarding the rest of the segment
+            logger.warn("Unable to decode commit log {}, skipping the rest of the segment", chunk.file.getPath(), e.getCause());
+            endedSegmentId = segmentId;
+            return;
+        }
+        if (chunk.endOfSegment)
+            endedSegmentId = segmentId;
+
+        for (ReplayedMutation replayed : chunk.mutations)
+        {
+            // mutations of the same partition always go to the same single threaded writer, to be applied in order
+            int writer = (replayed.mutation.key().hashCode() & Integer.MAX_VALUE) % writers.length;
+            futures.add(writers[writer].submit(replayRunnable(replayed.mutation, segmentId, replayed.entryLocation, replayFilter)));
+            if (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
             {
+                // wait for the oldest half of the outstanding mutations, bounding the memtable growth during replay
+                List<Future<?>> oldest = futures.subList(0, futures.size() / 2);
+                FBUtilities.waitOnFutures(oldest);
+                oldest.clear();
+            }
+        }
+    }
 
-                int end = prevEnd;
-                if (desc.version < CommitLogDescriptor.VERSION_21)
-                    end = Integer.MAX_VALUE;
-                else
+    private Runnable replayRunnable(final Mutation mutation, final long segmentId, final long entryLocation, final ReplayFilter replayFilter)
+    {
+        return new WrappedRunnable()
+        {
+            public void runMayThrow() throws IOException
+            {
+                if (Schema.instance.getKSMetaData(mutation.getKeyspaceName()) == null)
+                    return;
+                if (pointInTimeExceeded(mutation))
+                    return;
+
+                final Keyspace keyspace = Keyspace.open(mutation.getKeyspaceName());
+
+                // Rebuild the mutation, omitting column families that
+                //    a) the user has requested that we ignore,
+                //    b) have already been flushed,
+                // or c) are part of a cf that was dropped.
+                // Keep in mind that the cf.name() is suspect. do every thing based on the cfid instead.
+                Mutation newMutation = null;
+                for (ColumnFamily columnFamily : replayFilter.filter(mutation))
+                {
+                    if (Schema.instance.getCF(columnFamily.id()) == null)
+                        continue; // dropped
+
+                    ReplayPosition rp = cfPositions.get(columnFamily.id());
+
+                    // replay if current segment is newer than last flushed one or,
+                    // if it is the last known segment, if we are after the replay position
+                    if (isAfter(segmentId, entryLocation, rp))
+                    {
+                        if (newMutation == null)
+                            newMutation = new Mutation(mutation.getKeyspaceName(), mutation.key());
+                        newMutation.add(columnFamily);
+                        replayedCount.incrementAndGet();
+                    }
+                    else
+                    {
+                        // the mutation is already flushed, but some custom indexes may have not persisted it
+                        Map<PerRowSecondaryIndex, ReplayPosition> cfIndexPositions = indexPositions.get(columnFamily.id());
+                        if (cfIndexPositions == null)
+                            continue;
+                        for (Map.Entry<PerRowSecondaryIndex, ReplayPosition> entry : cfIndexPositions.entrySet())
+                        {
+                            if (isAfter(segmentId, entryLocation, entry.getValue()))
+                            {
+                                entry.getKey().index(mutation.key(), columnFamily);
+                                reindexedCount.incrementAndGet();
+                                keyspacesRecovered.add(keyspace);
+                            }
+                        }
+                    }
+                }
+                if (newMutation != null)
                 {
-                    do { end = readSyncMarker(desc, end, reader); }
-                    while (end < offset && end > prevEnd);
+                    assert !newMutation.isEmpty();
+                    Keyspace.open(newMutation.getKeyspaceName()).apply(newMutation, false);
+                    keyspacesRecovered.add(keyspace);
                 }
+            }
+        };
+    }
 
-                if (end < prevEnd)
-                    break;
+    private void countInvalidMutation(UUID cfId)
+    {
+        AtomicInteger i = invalidMutations.get(cfId);
+        if (i == null)
+        {
+            AtomicInteger i2 = invalidMutations.putIfAbsent(cfId, i = new AtomicInteger());
+            if (i2 != null)
+                i = i2;
+        }
+        i.incrementAndGet();
+    }
 
-                if (logger.isDebugEnabled())
-                    logger.debug("Replaying {} between {} and {}", file, offset, end);
+    /**
+     * A section of a segment, between two sync markers, to be replayed.
+     */
+    private static class ReplaySection
+    {
+        // the positions of the section in the file
+        final int fileStart, fileEnd;
+        // the replay positions of the section, which are the file positions unless the segment is compressed
+        final int start, end;
+        // the replay position to start reading from
+        final int offset;
+
+        ReplaySection(int fileStart, int fileEnd, int start, int end, int offset)
+        {
+            this.fileStart = fileStart;
+            this.fileEnd = fileEnd;
+            this.start = start;
+            this.end = end;
+            this.offset = Math.max(start, offset);
+        }
+    }
 
-                reader.seek(offset);
+    private static class ReplayedMutation
+    {
+        final Mutation mutation;
+        final long entryLocation;
 
-                 /* read the logs populate Mutation and apply */
-                while (reader.getPosition() < end && !reader.isEOF())
-                {
-                    if (logger.isDebugEnabled())
-                        logger.debug("Reading mutation at {}", reader.getFilePointer());
+        ReplayedMutation(Mutation mutation, long entryLocation)
+        {
+            this.mutation = mutation;
+            this.entryLocation = entryLocation;
+        }
+    }
 
-                    long claimedCRC32;
-                    int serializedSize;
+    /**
+     * Consecutive sections of a segment, read and deserialized by one of the decoding threads.
+     */
+    private class ReplayChunk implements Callable<ReplayChunk>
+    {
+        final File file;
+        final CommitLogDescriptor descriptor;
+        final ICompressor compressor;
+        final List<ReplaySection> sections = new ArrayList<ReplaySection>();
+        // the number of bytes of the sections to be replayed
+        int length;
+
+        final List<ReplayedMutation> mutations = new ArrayList<ReplayedMutation>();
+        // whether the end of the segment was found while decoding
+        boolean endOfSegment;
+
+        private final PureJavaCrc32 checksum = new PureJavaCrc32();
+        private byte[] buffer = new byte[4096];
+        private byte[] uncompressedBuffer;
+
+        ReplayChunk(File file, CommitLogDescriptor descriptor, ICompressor compressor)
+        {
+            this.file = file;
+            this.descriptor = descriptor;
+            this.compressor = compressor;
+        }
+
+        void add(ReplaySection section)
+        {
+            sections.add(section);
+            length += section.end - section.offset;
+        }
+
+        public ReplayChunk call() throws IOException
+        {
+            RandomAccessReader reader = RandomAccessReader.open(new File(file.getAbsolutePath()));
+            try
+            {
+                for (ReplaySection section : sections)
+                {
+                    if (Thread.currentThread().isInterrupted())
+                        break; // cancelled, the segment has ended before this chunk
                     try
                     {
-                        // any of the reads may hit EOF
-                        serializedSize = reader.readInt();
-                        if (serializedSize == LEGACY_END_OF_SEGMENT_MARKER)
+                        FileDataInput sectionReader = compressor == null ? reader : uncompress(section, reader);
+                        if (sectionReader == null || !decode(section, sectionReader))
                         {
-                            logger.debug("Encountered end of segment marker at {}", reader.getFilePointer());
-                            break main;
+                            endOfSegment = true;
+                            break;
                         }
-
-                        // Mutation must be at LEAST 10 bytes:
-                        // 3 each for a non-empty Keyspace and Key (including the
-                        // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
-                        // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
-                        if (serializedSize < 10)
-                            break main;
-
-                        long claimedSizeChecksum;
-                        if (desc.version < CommitLogDescriptor.VERSION_21)
-                            claimedSizeChecksum = reader.readLong();
-                        else
-                            claimedSizeChecksum = reader.readInt() & 0xffffffffL;
-                        checksum.reset();
-                        if (desc.version < CommitLogDescriptor.VERSION_20)
-                            checksum.update(serializedSize);
-                        else
-                            checksum.updateInt(serializedSize);
-
-                        if (checksum.getValue() != claimedSizeChecksum)
-                            break main; // entry wasn't synced correctly/fully. that's
-                        // ok.
-
-                        if (serializedSize > buffer.length)
-                            buffer = new byte[(int) (1.2 * serializedSize)];
-                        reader.readFully(buffer, 0, serializedSize);
-                        if (desc.version < CommitLogDescriptor.VERSION_21)
-                            claimedCRC32 = reader.readLong();
-                        else
-                            claimedCRC32 = reader.readInt() & 0xffffffffL;
                     }
-                    catch (EOFException eof)
+                    catch (RuntimeException e)
                     {
-                        break main; // last CL entry didn't get completely written. that's ok.
+                        // the mutations of the previous sections are kept, as if the segment ended here
+                        logger.warn("Encountered bad section at position {} of commit log {}: {}", section.fileStart, file.getPath(), e.getMessage());
+                        endOfSegment = true;
+                        break;
                     }
+                }
+            }
+            finally
+            {
+                FileUtils.closeQuietly(reader);
+            }
+            return this;
+        }
 
-                    checksum.update(buffer, 0, serializedSize);
-                    if (claimedCRC32 != checksum.getValue())
+        /**
+         * Reads and uncompresses the specified compressed section.
+         *
+         * @return the reader of the uncompressed section, or null if it cannot be uncompressed
+         */
+        private FileDataInput uncompress(ReplaySection section, RandomAccessReader reader) throws IOException
+        {
+            int compressedLength = section.fileEnd - section.fileStart;
+            int uncompressedLength = section.end - section.start;
+            if (uncompressedLength < 0)
+            {
+                logger.warn("Encountered bad compressed section at position {} of commit log {}", section.fileStart, reader.getPath());
+                return null;
+            }
+            if (uncompressedBuffer == null || uncompressedLength > uncompressedBuffer.length)
+                uncompressedBuffer = new byte[(int) (1.2 * uncompressedLength)];
+            if (uncompressedLength > 0)
+            {
+                if (compressedLength > buffer.length)
+                    buffer = new byte[(int) (1.2 * compressedLength)];
+                reader.seek(section.fileStart);
+                reader.readFully(buffer, 0, compressedLength);
+                try
+                {
+                    if (compressor.uncompress(buffer, 0, compressedLength, uncompressedBuffer, 0) != uncompressedLength)
                     {
-                        // this entry must not have been fsynced. probably the rest is bad too,
-                        // but just in case there is no harm in trying them (since we still read on an entry boundary)
-                        continue;
+                        logger.warn("Encountered compressed section with bad length at position {} of commit log {}", section.fileStart, reader.getPath());
+                        return null;
                     }
+                }
+                catch (IOException e)
+                {
+                    logger.warn("Unable to uncompress section at position {} of commit log {}: {}", section.fileStart, reader.getPath(), e.getMessage());
+                    return null;
+                }
+            }
+            ByteBuffer uncompressed = ByteBuffer.wrap(uncompressedBuffer, 0, uncompressedLength).slice();
+            return new MappedFileDataInput(uncompressed, reader.getPath(), section.start, 0);
+        }
 
-                    /* deserialize the commit log entry */
-                    FastByteArrayInputStream bufIn = new FastByteArrayInputStream(buffer, 0, serializedSize);
-                    final Mutation mutation;
-                    try
-                    {
-                        mutation = Mutation.serializer.deserialize(new DataInputStream(bufIn),
-                                                                   desc.getMessagingVersion(),
-                                                                   ColumnSerializer.Flag.LOCAL);
-                        // doublecheck that what we read is [still] valid for the current schema
-                        for (ColumnFamily cf : mutation.getColumnFamilies())
-                            for (Cell cell : cf)
-                                cf.getComparator().validate(cell.name());
-                    }
-                    catch (UnknownColumnFamilyException ex)
-                    {
-                        if (ex.cfId == null)
-                            continue;
-                        AtomicInteger i = invalidMutations.get(ex.cfId);
-                        if (i == null)
-                        {
-                            i = new AtomicInteger(1);
-                            invalidMutations.put(ex.cfId, i);
-                        }
-                        else
-                            i.incrementAndGet();
-                        continue;
-                    }
-                    catch (Throwable t)
+        /**
+         * Deserializes the mutations of the specified section.
+         *
+         * @return false if the end of the segment has been found
+         */
+        private boolean decode(ReplaySection section, FileDataInput reader) throws IOException
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Replaying {} between {} and {}", file, section.offset, section.end);
+
+            reader.seek(section.offset);
+
+             /* read the logs populate Mutation and apply */
+            while (reader.getFilePointer() < section.end && !reader.isEOF())
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("Reading mutation at {}", reader.getFilePointer());
+
+                long claimedCRC32;
+                int serializedSize;
+                try
+                {
+                    // any of the reads may hit EOF
+                    serializedSize = reader.readInt();
+                    if (serializedSize == LEGACY_END_OF_SEGMENT_MARKER)
                     {
-                        JVMStabilityInspector.inspectThrowable(t);
-                        File f = File.createTempFile("mutation", "dat");
-                        DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
-                        try
-                        {
-                            out.write(buffer, 0, serializedSize);
-                        }
-                        finally
-                        {
-                            out.close();
-                        }
-                        String st = String.format("Unexpected error deserializing mutation; saved to %s and ignored.  This may be caused by replaying a mutation against a table with the same name but incompatible schema.  Exception follows: ",
-                                                  f.getAbsolutePath());
-                        logger.error(st, t);
-                        continue;
+                        logger.debug("Encountered end of segment marker at {}", reader.getFilePointer());
+                        return false;
                     }
 
-                    if (logger.isDebugEnabled())
-                        logger.debug("replaying mutation for {}.{}: {}", mutation.getKeyspaceName(), ByteBufferUtil.bytesToHex(mutation.key()), "{" + StringUtils.join(mutation.getColumnFamilies().iterator(), ", ") + "}");
+                    // Mutation must be at LEAST 10 bytes:
+                    // 3 each for a non-empty Keyspace and Key (including the
+                    // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
+                    // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
+                    if (serializedSize < 10)
+                        return false;
+
+                    long claimedSizeChecksum;
+                    if (descriptor.version < CommitLogDescriptor.VERSION_21)
+                        claimedSizeChecksum = reader.readLong();
+                    else
+                        claimedSizeChecksum = reader.readInt() & 0xffffffffL;
+                    checksum.reset();
+                    if (descriptor.version < CommitLogDescriptor.VERSION_20)
+                        checksum.update(serializedSize);
+                    else
+                        checksum.updateInt(serializedSize);
+
+                    if (checksum.getValue() != claimedSizeChecksum)
+                        return false; // entry wasn't synced correctly/fully. that's
+                    // ok.
+
+                    if (serializedSize > buffer.length)
+                        buffer = new byte[(int) (1.2 * serializedSize)];
+                    reader.readFully(buffer, 0, serializedSize);
+                    if (descriptor.version < CommitLogDescriptor.VERSION_21)
+                        claimedCRC32 = reader.readLong();
+                    else
+                        claimedCRC32 = reader.readInt() & 0xffffffffL;
+                }
+                catch (EOFException eof)
+                {
+                    return false; // last CL entry didn't get completely written. that's ok.
+                }
 
-                    final long entryLocation = reader.getFilePointer();
-                    Runnable runnable = new WrappedRunnable()
+                checksum.update(buffer, 0, serializedSize);
+                if (claimedCRC32 != checksum.getValue())
+                {
+                    // this entry must not have been fsynced. probably the rest is bad too,
+                    // but just in case there is no harm in trying them (since we still read on an entry boundary)
+                    continue;
+                }
+
+                /* deserialize the commit log entry */
+                FastByteArrayInputStream bufIn = new FastByteArrayInputStream(buffer, 0, serializedSize);
+                final Mutation mutation;
+                try
+                {
+                    mutation = Mutation.serializer.deserialize(new DataInputStream(bufIn),
+                                                               descriptor.getMessagingVersion(),
+                                                               ColumnSerializer.Flag.LOCAL);
+                    // doublecheck that what we read is [still] valid for the current schema
+                    for (ColumnFamily cf : mutation.getColumnFamilies())
+                        for (Cell cell : cf)
+                            cf.getComparator().validate(cell.name());
+                }
+                catch (UnknownColumnFamilyException ex)
+                {
+                    if (ex.cfId == null)
+                        continue;
+                    countInvalidMutation(ex.cfId);
+                    continue;
+                }
+                catch (Throwable t)
+                {
+                    JVMStabilityInspector.inspectThrowable(t);
+                    File f = File.createTempFile("mutation", "dat");
+                    DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
+                    try
                     {
-                        public void runMayThrow() throws IOException
-                        {
-                            if (Schema.instance.getKSMetaData(mutation.getKeyspaceName()) == null)
-                                return;
-                            if (pointInTimeExceeded(mutation))
-                                return;
-
-                            final Keyspace keyspace = Keyspace.open(mutation.getKeyspaceName());
-
-                            // Rebuild the mutation, omitting column families that
-                            //    a) the user has requested that we ignore,
-                            //    b) have already been flushed,
-                            // or c) are part of a cf that was dropped.
-                            // Keep in mind that the cf.name() is suspect. do every thing based on the cfid instead.
-                            Mutation newMutation = null;
-                            for (ColumnFamily columnFamily : replayFilter.filter(mutation))
-                            {
-                                if (Schema.instance.getCF(columnFamily.id()) == null)
-                                    continue; // dropped
-
-                                ReplayPosition rp = cfPositions.get(columnFamily.id());
-
-                                // replay if current segment is newer than last flushed one or,
-                                // if it is the last known segment, if we are after the replay position
-                                if (segmentId > rp.segment || (segmentId == rp.segment && entryLocation > rp.position))
-                                {
-                                    if (newMutation == null)
-                                        newMutation = new Mutation(mutation.getKeyspaceName(), mutation.key());
-                                    newMutation.add(columnFamily);
-                                    replayedCount.incrementAndGet();
-                                }
-                            }
-                            if (newMutation != null)
-                            {
-                                assert !newMutation.isEmpty();
-                                Keyspace.open(newMutation.getKeyspaceName()).apply(newMutation, false);
-                                keyspacesRecovered.add(keyspace);
-                            }
-                        }
-                    };
-                    futures.add(StageManager.getStage(Stage.MUTATION).submit(runnable));
-                    if (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
+                        out.write(buffer, 0, serializedSize);
+                    }
+                    finally
                     {
-                        FBUtilities.waitOnFutures(futures);
-                        futures.clear();
+                        out.close();
                     }
+                    String st = String.format("Unexpected error deserializing mutation; saved to %s and ignored.  This may be caused by replaying a mutation against a table with the same name but incompatible schema.  Exception follows: ",
+                                              f.getAbsolutePath());
+                    logger.error(st, t);
+                    continue;
                 }
 
-                if (desc.version < CommitLogDescriptor.VERSION_21)
-                    break;
+                if (logger.isDebugEnabled())
+                    logger.debug("replaying mutation for {}.{}: {}", mutation.getKeyspaceName(), ByteBufferUtil.bytesToHex(mutation.key()), "{" + StringUtils.join(mutation.getColumnFamilies().iterator(), ", ") + "}");
 
-                offset = end + CommitLogSegment.SYNC_MARKER_SIZE;
-                prevEnd = end;
+                mutations.add(new ReplayedMutation(mutation, reader.getFilePointer()));
             }
+            return true;
         }
-        finally
-        {
-            FileUtils.closeQuietly(reader);
-            logger.info("Finished reading {}", file);
-        }
+    }
+
+    private static boolean isAfter(long segmentId, long entryLocation, ReplayPosition rp)
+    {
+        return segmentId > rp.segment || (segmentId == rp.segment && entryLocation > rp.position);
     }
 
     protected boolean pointInTimeExceeded(Mutation fm)
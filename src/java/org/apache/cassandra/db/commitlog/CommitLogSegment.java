@@ -30,6 +30,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -44,6 +46,7 @@ import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.Mutation;
 import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.utils.CLibrary;
 import org.apache.cassandra.utils.PureJavaCrc32;
@@ -76,7 +79,26 @@ public class CommitLogSegment
     public static final int ENTRY_OVERHEAD_SIZE = 4 + 4 + 4;
 
     // The commit log (chained) sync marker/header size in bytes (int: length + int: checksum [segmentId, position])
-    static final int SYNC_MARKER_SIZE = 4 + 4;
+    public static final int SYNC_MARKER_SIZE = 4 + 4;
+
+    // The sync marker size of the compressed sections, which also contains the uncompressed length of the section
+    static final int COMPRESSED_MARKER_SIZE = SYNC_MARKER_SIZE + 4;
+
+    // The reusable output buffer of the threads compressing sections
+    private static final ThreadLocal<ICompressor.WrappedArray> compressedBuffer = new ThreadLocal<ICompressor.WrappedArray>()
+    {
+        protected ICompressor.WrappedArray initialValue()
+        {
+            return new ICompressor.WrappedArray(new byte[0]);
+        }
+    };
+
+    // The max number of in-memory buffers of closed compressed segments kept for new segments: enough for the segment
+    // being allocated from, the next one prepared by the segment manager and one being closed
+    private static final int MAX_POOLED_BUFFERS = 3;
+
+    // The in-memory buffers of closed compressed segments, reused by new segments instead of allocating them again
+    private static final BlockingQueue<ByteBuffer> bufferPool = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
 
     // The OpOrder used to order appends wrt sync
     private final OpOrder appendOrder = new OpOrder();
@@ -107,10 +129,18 @@ public class CommitLogSegment
     private final RandomAccessFile logFileAccessor;
     private final int fd;
 
-    private final MappedByteBuffer buffer;
+    // the segment contents; the mapped file, or an in-memory buffer whose sections are compressed into the file on sync
+    private final ByteBuffer buffer;
+    private final int endOfBuffer;
+
+    // the compressor of the segment, or null if it is memory-mapped and uncompressed
+    private final ICompressor compressor;
 
     public final CommitLogDescriptor descriptor;
 
+    // whether the segment has been closed, and its in-memory buffer, if any, given back to the pool
+    private boolean closed;
+
     /**
      * @return a newly minted segment file
      */
@@ -132,7 +162,8 @@ public class CommitLogSegment
     CommitLogSegment(String filePath)
     {
         id = getNextId();
-        descriptor = new CommitLogDescriptor(id);
+        compressor = DatabaseDescriptor.getCommitLogCompressor();
+        descriptor = CommitLogDescriptor.create(id, compressor);
         logFile = new File(DatabaseDescriptor.getCommitLogLocation(), descriptor.fileName());
         boolean isCreating = true;
 
@@ -157,20 +188,39 @@ public class CommitLogSegment
             if (isCreating)
                 logger.debug("Creating new commit log segment {}", logFile.getPath());
 
-            // Map the segment, extending or truncating it to the standard segment size.
-            // (We may have restarted after a segment size configuration change, leaving "incorrectly"
-            // sized segments on disk.)
-            logFileAccessor.setLength(DatabaseDescriptor.getCommitLogSegmentSize());
             fd = CLibrary.getfd(logFileAccessor.getFD());
+            int headerSize = descriptor.headerSize();
 
-            buffer = logFileAccessor.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, DatabaseDescriptor.getCommitLogSegmentSize());
-            // write the header
-            CommitLogDescriptor.writeHeader(buffer, descriptor);
-            // mark the initial sync marker as uninitialised
-            buffer.putInt(CommitLogDescriptor.HEADER_SIZE, 0);
-            buffer.putLong(CommitLogDescriptor.HEADER_SIZE + 4, 0);
-            allocatePosition.set(CommitLogDescriptor.HEADER_SIZE + SYNC_MARKER_SIZE);
-            lastSyncedOffset = CommitLogDescriptor.HEADER_SIZE;
+            if (compressor == null)
+            {
+                // Map the segment, extending or truncating it to the standard segment size.
+                // (We may have restarted after a segment size configuration change, leaving "incorrectly"
+                // sized segments on disk.)
+                logFileAccessor.setLength(DatabaseDescriptor.getCommitLogSegmentSize());
+
+                buffer = logFileAccessor.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, DatabaseDescriptor.getCommitLogSegmentSize());
+                // write the header
+                CommitLogDescriptor.writeHeader(buffer, descriptor);
+                // mark the initial sync marker as uninitialised
+                buffer.putInt(headerSize, 0);
+                buffer.putLong(headerSize + 4, 0);
+            }
+            else
+            {
+                // Compressed sections are appended to the file as they are synced, so it starts with just the header.
+                // The in-memory buffer keeps the uncompressed positions, so the replay positions are the same for
+                // both formats, and the header and sync marker space at its start are left unused.
+                logFileAccessor.setLength(0);
+                buffer = takeBuffer();
+                ByteBuffer header = ByteBuffer.allocate(headerSize);
+                CommitLogDescriptor.writeHeader(header, descriptor);
+                FileChannel channel = logFileAccessor.getChannel();
+                while (header.hasRemaining())
+                    channel.write(header);
+            }
+            endOfBuffer = buffer.capacity();
+            allocatePosition.set(headerSize + SYNC_MARKER_SIZE);
+            lastSyncedOffset = headerSize;
         }
         catch (IOException e)
         {
@@ -178,6 +228,18 @@ public class CommitLogSegment
         }
     }
 
+    /**
+     * @return a pooled in-memory buffer for a compressed segment, or a new one if there is none
+     */
+    private static ByteBuffer takeBuffer()
+    {
+        ByteBuffer buffer = bufferPool.poll();
+        if (buffer == null || buffer.capacity() != DatabaseDescriptor.getCommitLogSegmentSize())
+            return ByteBuffer.allocate(DatabaseDescriptor.getCommitLogSegmentSize());
+        buffer.clear();
+        return buffer;
+    }
+
     /**
      * Allocate space in this buffer for the provided mutation, and return the allocated Allocation object.
      * Returns null if there is not enough space in this segment, and a new segment is needed.
@@ -210,7 +272,7 @@ public class CommitLogSegment
         {
             int prev = allocatePosition.get();
             int next = prev + size;
-            if (next >= buffer.capacity())
+            if (next >= endOfBuffer)
                 return -1;
             if (allocatePosition.compareAndSet(prev, next))
                 return prev;
@@ -229,8 +291,8 @@ public class CommitLogSegment
             while (true)
             {
                 int prev = allocatePosition.get();
-                // we set allocatePosition past buffer.capacity() to make sure we always set discardedTailFrom
-                int next = buffer.capacity() + 1;
+                // we set allocatePosition past endOfBuffer to make sure we always set discardedTailFrom
+                int next = endOfBuffer + 1;
                 if (prev == next)
                     return;
                 if (allocatePosition.compareAndSet(prev, next))
@@ -253,14 +315,16 @@ public class CommitLogSegment
 
     /**
      * Forces a disk flush for this segment file.
+     *
+     * @return the number of bytes written to disk
      */
-    synchronized void sync()
+    synchronized int sync()
     {
         try
         {
-            // check we have more work to do
-            if (allocatePosition.get() <= lastSyncedOffset + SYNC_MARKER_SIZE)
-                return;
+            // check we have more work to do, and that the buffer has not been given to another segment
+            if (closed || allocatePosition.get() <= lastSyncedOffset + SYNC_MARKER_SIZE)
+                return 0;
 
             // allocate a new sync marker; this is both necessary in itself, but also serves to demarcate
             // the point at which we can safely consider records to have been completely written to
@@ -276,7 +340,7 @@ public class CommitLogSegment
                 // wait for modifications guards both discardedTailFrom, and any outstanding appends
                 waitForModifications();
 
-                if (discardedTailFrom < buffer.capacity() - SYNC_MARKER_SIZE)
+                if (discardedTailFrom < endOfBuffer - SYNC_MARKER_SIZE)
                 {
                     // if there's room in the discard section to write an empty header, use that as the nextMarker
                     nextMarker = discardedTailFrom;
@@ -284,7 +348,7 @@ public class CommitLogSegment
                 else
                 {
                     // not enough space left in the buffer, so mark the next sync marker as the EOF position
-                    nextMarker = buffer.capacity();
+                    nextMarker = endOfBuffer;
                 }
             }
             else
@@ -294,35 +358,20 @@ public class CommitLogSegment
 
             assert nextMarker > lastSyncedOffset;
 
-            // write previous sync marker to point to next sync marker
-            // we don't chain the crcs here to ensure this method is idempotent if it fails
             int offset = lastSyncedOffset;
-            final PureJavaCrc32 crc = new PureJavaCrc32();
-            crc.updateInt((int) (id & 0xFFFFFFFFL));
-            crc.updateInt((int) (id >>> 32));
-            crc.updateInt(offset);
-            buffer.putInt(offset, nextMarker);
-            buffer.putInt(offset + 4, crc.getCrc());
-
-            // zero out the next sync marker so replayer can cleanly exit
-            if (nextMarker < buffer.capacity())
-            {
-                buffer.putInt(nextMarker, 0);
-                buffer.putInt(nextMarker + 4, 0);
-            }
-
-            // actually perform the sync and signal those waiting for it
-            buffer.force();
+            int written = compressor == null ? writeMapped(offset, nextMarker) : writeCompressed(offset, nextMarker);
 
             if (close)
-                nextMarker = buffer.capacity();
+                nextMarker = endOfBuffer;
 
             lastSyncedOffset = nextMarker;
             syncComplete.signalAll();
 
-            CLibrary.trySkipCache(fd, offset, nextMarker);
+            if (compressor == null)
+                CLibrary.trySkipCache(fd, offset, nextMarker);
             if (close)
                 close();
+            return written;
         }
         catch (Exception e) // MappedByteBuffer.force() does not declare IOException but can actually throw it
         {
@@ -330,9 +379,63 @@ public class CommitLogSegment
         }
     }
 
+    // writes the section between the given sync markers to the mapped file and forces it, returning its size
+    private int writeMapped(int offset, int nextMarker)
+    {
+        // write previous sync marker to point to next sync marker
+        // we don't chain the crcs here to ensure this method is idempotent if it fails
+        buffer.putInt(offset, nextMarker);
+        buffer.putInt(offset + 4, syncMarkerCrc(offset));
+
+        // zero out the next sync marker so replayer can cleanly exit
+        if (nextMarker < endOfBuffer)
+        {
+            buffer.putInt(nextMarker, 0);
+            buffer.putInt(nextMarker + 4, 0);
+        }
+
+        // actually perform the sync
+        ((MappedByteBuffer) buffer).force();
+        return nextMarker - offset;
+    }
+
+    // compresses the section between the given sync markers, appending it to the file behind a sync marker holding its
+    // uncompressed length, and forces it, returning the number of bytes appended
+    private int writeCompressed(int offset, int nextMarker) throws IOException
+    {
+        int contentStart = offset + SYNC_MARKER_SIZE;
+        int length = nextMarker - contentStart;
+        ICompressor.WrappedArray output = compressedBuffer.get();
+        int neededLength = COMPRESSED_MARKER_SIZE + compressor.initialCompressedBufferLength(length);
+        if (output.buffer.length < neededLength)
+            output.buffer = new byte[neededLength];
+        int compressedLength = length == 0 ? 0 : compressor.compress(buffer.array(), contentStart, length, output, COMPRESSED_MARKER_SIZE);
+
+        // the sync marker points to the file position of the next one, and its crc covers the file position
+        FileChannel channel = logFileAccessor.getChannel();
+        int filePosition = (int) channel.position();
+        ByteBuffer section = ByteBuffer.wrap(output.buffer, 0, COMPRESSED_MARKER_SIZE + compressedLength);
+        section.putInt(0, filePosition + section.remaining());
+        section.putInt(4, syncMarkerCrc(filePosition));
+        section.putInt(8, length);
+        while (section.hasRemaining())
+            channel.write(section);
+        channel.force(false);
+        return section.limit();
+    }
+
+    private int syncMarkerCrc(int position)
+    {
+        final PureJavaCrc32 crc = new PureJavaCrc32();
+        crc.updateInt((int) (id & 0xFFFFFFFFL));
+        crc.updateInt((int) (id >>> 32));
+        crc.updateInt(position);
+        return crc.getCrc();
+    }
+
     public boolean isStillAllocating()
     {
-        return allocatePosition.get() < buffer.capacity();
+        return allocatePosition.get() < endOfBuffer;
     }
 
     /**
@@ -394,7 +497,7 @@ public class CommitLogSegment
         while (true)
         {
             WaitQueue.Signal signal = syncComplete.register();
-            if (lastSyncedOffset < buffer.capacity())
+            if (lastSyncedOffset < endOfBuffer)
             {
                 signal.awaitUninterruptibly();
             }
@@ -409,12 +512,21 @@ public class CommitLogSegment
     /**
      * Close the segment file.
      */
-    void close()
+    synchronized void close()
     {
         try
         {
-            if (FileUtils.isCleanerAvailable())
-                FileUtils.clean(buffer);
+            if (!closed)
+            {
+                if (compressor == null && FileUtils.isCleanerAvailable())
+                    FileUtils.clean((MappedByteBuffer) buffer);
+                // the in-memory buffer of compressed segments is given back as soon as they are closed, since fully
+                // written segments may be kept around until their mutations are flushed; it is dropped if the pool
+                // is full
+                if (compressor != null)
+                    bufferPool.offer(buffer);
+                closed = true;
+            }
             logFileAccessor.close();
         }
         catch (IOException e)
@@ -70,6 +70,7 @@ import org.apache.cassandra.db.OnDiskAtom;
 import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.db.compaction.CompactionInfo.Holder;
 import org.apache.cassandra.db.index.SecondaryIndexBuilder;
+import org.apache.cassandra.db.index.SecondaryIndexMerge;
 import org.apache.cassandra.dht.Bounds;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
@@ -1069,6 +1070,34 @@ public class CompactionManager implements CompactionManagerMBean
         return executor.submit(runnable);
     }
 
+    /**
+     * Runs a merge of the files of a custom secondary index on the compaction executor, so it competes with compactions
+     * for the compaction threads. The merge is tracked as a compaction only if there is something to merge once it runs.
+     */
+    public Future<?> submitIndexMerge(final SecondaryIndexMerge merge)
+    {
+        Runnable runnable = new Runnable()
+        {
+            public void run()
+            {
+                if (!merge.next())
+                    return;
+
+                metrics.beginCompaction(merge);
+                try
+                {
+                    merge.merge();
+                }
+                finally
+                {
+                    metrics.finishCompaction(merge);
+                }
+            }
+        };
+
+        return executor.submit(runnable);
+    }
+
     public Future<?> submitCacheWrite(final AutoSavingCache.Writer writer)
     {
         Runnable runnable = new Runnable()
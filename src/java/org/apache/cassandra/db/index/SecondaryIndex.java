@@ -38,6 +38,7 @@ import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.db.compaction.CompactionManager;
+import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.composites.CellName;
 import org.apache.cassandra.db.composites.CellNameType;
 import org.apache.cassandra.db.composites.SimpleDenseCellNameType;
@@ -169,6 +170,16 @@ public abstract class SecondaryIndex
      */
     public abstract void forceBlockingFlush();
 
+    /**
+     * Returns the commit log position before which all the writes are durably stored by this index, so commit log
+     * replay can reindex the writes after it even if they have been already flushed to the base table sstables.
+     * @return the commit log position, or null if the index is durable along with the base table
+     */
+    public ReplayPosition getReplayPosition()
+    {
+        return null;
+    }
+
     /**
      * Allow access to the underlying column family store if there is one
      * @return the underlying column family store or null
@@ -206,9 +217,11 @@ public abstract class SecondaryIndex
         Collection<SSTableReader> sstables = baseCfs.markCurrentSSTablesReferenced();
         try
         {
-            SecondaryIndexBuilder builder = new SecondaryIndexBuilder(baseCfs,
-                                                                      Collections.singleton(getIndexName()),
-                                                                      new ReducingKeyIterator(sstables));
+            SecondaryIndexBuilder builder = getBulkBuilder(sstables);
+            if (builder == null)
+                builder = new SecondaryIndexBuilder(baseCfs,
+                                                    Collections.singleton(getIndexName()),
+                                                    new ReducingKeyIterator(sstables));
             Future<?> future = CompactionManager.instance.submitIndexBuild(builder);
             FBUtilities.waitOnFuture(future);
             forceBlockingFlush();
@@ -222,6 +235,19 @@ public abstract class SecondaryIndex
     }
 
 
+    /**
+     * Returns a builder that indexes the specified sstables in bulk, instead of reindexing their partitions one at a
+     * time through {@link SecondaryIndexBuilder}. Returns null by default, meaning that there is no such builder or that
+     * it can't be used for these sstables.
+     *
+     * @param sstables the sstables to be indexed
+     * @return a bulk builder for the sstables, or null if the generic builder must be used
+     */
+    public SecondaryIndexBuilder getBulkBuilder(Collection<SSTableReader> sstables)
+    {
+        return null;
+    }
+
     /**
      * Builds the index using the data in the underlying CF, non blocking
      *
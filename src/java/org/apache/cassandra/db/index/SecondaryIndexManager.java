@@ -160,9 +160,24 @@ public class SecondaryIndexManager
         logger.info(String.format("Submitting index build of %s for data in %s",
                                   idxNames, StringUtils.join(sstables, ", ")));
 
-        SecondaryIndexBuilder builder = new SecondaryIndexBuilder(baseCfs, idxNames, new ReducingKeyIterator(sstables));
-        Future<?> future = CompactionManager.instance.submitIndexBuild(builder);
-        FBUtilities.waitOnFuture(future);
+        // indexes providing their own bulk builder are built separately
+        Set<String> genericIdxNames = new HashSet<>(idxNames);
+        for (SecondaryIndex index : getIndexesByNames(idxNames))
+        {
+            SecondaryIndexBuilder bulkBuilder = index.getBulkBuilder(sstables);
+            if (bulkBuilder != null)
+            {
+                FBUtilities.waitOnFuture(CompactionManager.instance.submitIndexBuild(bulkBuilder));
+                genericIdxNames.remove(index.getIndexName());
+            }
+        }
+
+        if (!genericIdxNames.isEmpty())
+        {
+            SecondaryIndexBuilder builder = new SecondaryIndexBuilder(baseCfs, genericIdxNames, new ReducingKeyIterator(sstables));
+            Future<?> future = CompactionManager.instance.submitIndexBuild(builder);
+            FBUtilities.waitOnFuture(future);
+        }
 
         flushIndexesBlocking();
 
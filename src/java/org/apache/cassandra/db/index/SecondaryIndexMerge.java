@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.index;
+
+import org.apache.cassandra.db.compaction.CompactionInfo;
+
+/**
+ * Merges the files of a custom secondary index, such as the segments of a Lucene index. Runs on the compaction manager,
+ * so merges share the compaction threads and throughput and can be followed and stopped like any other compaction.
+ */
+public abstract class SecondaryIndexMerge extends CompactionInfo.Holder
+{
+    /**
+     * Takes the next merge to be run, if any.
+     *
+     * @return true if there is something to merge, false otherwise
+     */
+    public abstract boolean next();
+
+    /**
+     * Runs the merge taken by {@link #next()}.
+     */
+    public abstract void merge();
+}
@@ -135,4 +135,67 @@ public abstract class SecondaryIndexSearcher
     {
         return rows;
     }
+
+    /**
+     * Combines the partial results of several local index queries, keeping only the first {@code limit} ones.
+     *
+     * @param clause
+     *            An {@link IndexExpression}.
+     * @param rows
+     *            The partial results to be combined.
+     * @param limit
+     *            The max number of rows to be kept.
+     * @return The combination of the partial results.
+     */
+    public List<Row> sort(List<IndexExpression> clause, List<Row> rows, int limit)
+    {
+        return sort(clause, rows);
+    }
+
+    /**
+     * Returns the clause to be sent to the replicas in the first phase of a two-phase search, in which they only
+     * return the keys of their hits and the values needed to sort them. The full rows of the globally sorted first
+     * hits are read in the second phase, using {@link #fetchCommands(AbstractRangeCommand, List)}.
+     *
+     * @param clause
+     *            An {@link IndexExpression}.
+     * @return The clause of the first phase of the search, or {@code null} if it can't be done in two phases.
+     */
+    public List<IndexExpression> keysOnlyClause(List<IndexExpression> clause)
+    {
+        return null;
+    }
+
+    /**
+     * Returns the commands reading the full rows of the specified key-only rows, obtained in the first phase of a
+     * two-phase search.
+     *
+     * @param command
+     *            The original range command.
+     * @param rows
+     *            The sorted key-only rows.
+     * @return The commands reading the full rows, or {@code null} if the full rows can't be read this way, so the
+     *         search must be run in a single phase.
+     */
+    public List<ReadCommand> fetchCommands(AbstractRangeCommand command, List<Row> rows)
+    {
+        return null;
+    }
+
+    /**
+     * Completes the full rows read in the second phase of a two-phase search with the key-only rows of the first phase.
+     *
+     * @param command
+     *            The original range command.
+     * @param keysOnlyRows
+     *            The sorted key-only rows.
+     * @param fullRows
+     *            The rows read by the commands returned by {@link #fetchCommands(AbstractRangeCommand, List)}, in the
+     *            same order as the commands.
+     * @return The search results.
+     */
+    public List<Row> merge(AbstractRangeCommand command, List<Row> keysOnlyRows, List<Row> fullRows)
+    {
+        return fullRows;
+    }
 }
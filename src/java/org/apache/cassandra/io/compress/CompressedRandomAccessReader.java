@@ -24,8 +24,10 @@ import java.util.zip.Adler32;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
+import org.apache.cassandra.io.util.CompressedMmappedSegmentedFile;
 import org.apache.cassandra.io.util.CompressedPoolingSegmentedFile;
 import org.apache.cassandra.io.util.PoolingSegmentedFile;
 import org.apache.cassandra.io.util.RandomAccessReader;
@@ -49,6 +51,18 @@ public class CompressedRandomAccessReader extends RandomAccessReader
         }
     }
 
+    public static CompressedRandomAccessReader open(String path, CompressionMetadata metadata, CompressedMmappedSegmentedFile owner)
+    {
+        try
+        {
+            return new CompressedRandomAccessReader(path, metadata, owner, owner);
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static CompressedRandomAccessReader open(String dataFilePath, CompressionMetadata metadata)
     {
         try
@@ -72,12 +86,29 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     // raw checksum bytes
     private final ByteBuffer checksumBytes = ByteBuffer.wrap(new byte[4]);
 
+    // mapped regions to take the compressed chunks from instead of reading them through the channel, if any
+    private final CompressedMmappedSegmentedFile mappedFile;
+
+    // checksum of the last chunk taken from the mapped regions
+    private int mappedChecksum;
+
+    // shared cache of decompressed chunks; only used by pooled readers, so compactions and other one-off
+    // scans of a whole sstable bypass it
+    private final ChunkCache chunkCache;
+
     protected CompressedRandomAccessReader(String dataFilePath, CompressionMetadata metadata, PoolingSegmentedFile owner) throws FileNotFoundException
+    {
+        this(dataFilePath, metadata, owner, null);
+    }
+
+    private CompressedRandomAccessReader(String dataFilePath, CompressionMetadata metadata, PoolingSegmentedFile owner, CompressedMmappedSegmentedFile mappedFile) throws FileNotFoundException
     {
         super(new File(dataFilePath), metadata.chunkLength(), owner);
         this.metadata = metadata;
+        this.mappedFile = mappedFile;
         checksum = metadata.hasPostCompressionAdlerChecksums ? new Adler32() : new CRC32();
         compressed = ByteBuffer.wrap(new byte[metadata.compressor().initialCompressedBufferLength(metadata.chunkLength())]);
+        chunkCache = owner == null ? null : ChunkCache.instance;
     }
 
     @Override
@@ -99,8 +130,18 @@ public class CompressedRandomAccessReader extends RandomAccessReader
 
     private void decompressChunk(CompressionMetadata.Chunk chunk) throws IOException
     {
-        if (channel.position() != chunk.offset)
-            channel.position(chunk.offset);
+        ChunkCache.Key cacheKey = null;
+        if (chunkCache != null)
+        {
+            cacheKey = new ChunkCache.Key(getPath(), chunk.offset);
+            int length = chunkCache.get(cacheKey, buffer);
+            if (length >= 0)
+            {
+                validBufferBytes = length;
+                bufferOffset = current & ~(buffer.length - 1);
+                return;
+            }
+        }
 
         if (compressed.capacity() < chunk.length)
             compressed = ByteBuffer.wrap(new byte[chunk.length]);
@@ -108,8 +149,26 @@ public class CompressedRandomAccessReader extends RandomAccessReader
             compressed.clear();
         compressed.limit(chunk.length);
 
-        if (channel.read(compressed) != chunk.length)
-            throw new CorruptBlockException(getPath(), chunk);
+        if (mappedFile == null)
+        {
+            if (channel.position() != chunk.offset)
+                channel.position(chunk.offset);
+
+            if (channel.read(compressed) != chunk.length)
+                throw new CorruptBlockException(getPath(), chunk);
+        }
+        else
+        {
+            ByteBuffer mappedChunk = mappedFile.chunk(chunk);
+            if (mappedChunk == null)
+                throw new CorruptBlockException(getPath(), chunk);
+
+            // a single bulk copy out of the page cache, and no system call at all
+            int checksumPosition = mappedChunk.limit();
+            compressed.put(mappedChunk);
+            mappedChunk.limit(checksumPosition + checksumBytes.capacity());
+            mappedChecksum = mappedChunk.getInt(checksumPosition);
+        }
 
         // technically flip() is unnecessary since all the remaining work uses the raw array, but if that changes
         // in the future this will save a lot of hair-pulling
@@ -142,12 +201,18 @@ public class CompressedRandomAccessReader extends RandomAccessReader
             checksum.reset();
         }
 
+        if (cacheKey != null)
+            chunkCache.admit(cacheKey, buffer, validBufferBytes);
+
         // buffer offset is always aligned
         bufferOffset = current & ~(buffer.length - 1);
     }
 
     private int checksum(CompressionMetadata.Chunk chunk) throws IOException
     {
+        if (mappedFile != null)
+            return mappedChecksum;
+
         assert channel.position() == chunk.offset + chunk.length;
         checksumBytes.clear();
         if (channel.read(checksumBytes) != checksumBytes.capacity())
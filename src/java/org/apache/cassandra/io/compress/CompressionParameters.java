@@ -165,6 +165,15 @@ public class CompressionParameters
         }
     }
 
+    /**
+     * Creates the compressor of the specified class, which may be given by its simple name for the compressors
+     * shipped in this package. Returns null if no class name is given.
+     */
+    public static ICompressor createCompressor(String className, Map<String, String> compressionOptions) throws ConfigurationException
+    {
+        return createCompressor(parseCompressorClass(className), compressionOptions);
+    }
+
     private static ICompressor createCompressor(Class<? extends ICompressor> compressorClass, Map<String, String> compressionOptions) throws ConfigurationException
     {
         if (compressorClass == null)
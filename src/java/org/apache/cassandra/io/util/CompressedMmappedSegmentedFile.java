@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.compress.CompressedRandomAccessReader;
+import org.apache.cassandra.io.compress.CompressedSequentialWriter;
+import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.utils.JVMStabilityInspector;
+
+/**
+ * A compressed file whose pooled readers take the compressed chunks (and their checksums) straight from mmapped
+ * regions of the file instead of reading them through the file channel.
+ */
+public class CompressedMmappedSegmentedFile extends CompressedPoolingSegmentedFile
+{
+    private static final Logger logger = LoggerFactory.getLogger(CompressedMmappedSegmentedFile.class);
+
+    /**
+     * Sorted array of compressed file offsets and mapped regions. Regions end on chunk boundaries, so every chunk
+     * and its checksum lie within a single region.
+     */
+    private final Segment[] segments;
+
+    public CompressedMmappedSegmentedFile(String path, CompressionMetadata metadata)
+    {
+        super(path, metadata);
+        this.segments = createSegments(path, metadata);
+    }
+
+    public static class Builder extends CompressedPoolingSegmentedFile.Builder
+    {
+        public Builder(CompressedSequentialWriter writer)
+        {
+            super(writer);
+        }
+
+        public SegmentedFile complete(String path)
+        {
+            return new CompressedMmappedSegmentedFile(path, metadata(path, false));
+        }
+
+        public SegmentedFile openEarly(String path)
+        {
+            // the file is still being written, so don't map it yet
+            return new CompressedPoolingSegmentedFile(path, metadata(path, true));
+        }
+    }
+
+    private static Segment[] createSegments(String path, CompressionMetadata metadata)
+    {
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        long segmentStart = 0;
+        for (long position = 0; position < metadata.dataLength; position += metadata.chunkLength())
+        {
+            CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
+            // "4" bytes for the checksum
+            if (chunk.offset + chunk.length + 4 - segmentStart > MmappedSegmentedFile.MAX_SEGMENT_SIZE)
+            {
+                segmentStart = chunk.offset;
+                boundaries.add(segmentStart);
+            }
+        }
+        boundaries.add(metadata.compressedFileLength);
+
+        Segment[] segments = new Segment[boundaries.size() - 1];
+        RandomAccessFile raf = null;
+        try
+        {
+            raf = new RandomAccessFile(path, "r");
+            for (int i = 0; i < segments.length; i++)
+            {
+                long start = boundaries.get(i);
+                long size = boundaries.get(i + 1) - start;
+                segments[i] = new Segment(start, raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start, size));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, path);
+        }
+        finally
+        {
+            FileUtils.closeQuietly(raf);
+        }
+        return segments;
+    }
+
+    /**
+     * @return a buffer positioned at the start of the given chunk and limited to its end, followed by its checksum,
+     * or null if the chunk lies outside of the mapped regions.
+     */
+    public ByteBuffer chunk(CompressionMetadata.Chunk chunk)
+    {
+        int idx = Arrays.binarySearch(segments, new Segment(chunk.offset, null));
+        if (idx < 0)
+            // round down to entry at insertion point
+            idx = -(idx + 2);
+        if (idx < 0)
+            return null;
+
+        Segment segment = segments[idx];
+        long start = chunk.offset - segment.left;
+        if (start + chunk.length + 4 > segment.right.capacity())
+            return null;
+
+        ByteBuffer buffer = segment.right.duplicate();
+        buffer.position((int) start).limit((int) start + chunk.length);
+        return buffer;
+    }
+
+    protected RandomAccessReader createReader(String path)
+    {
+        return CompressedRandomAccessReader.open(path, metadata, this);
+    }
+
+    @Override
+    public void cleanup()
+    {
+        super.cleanup();
+
+        if (!FileUtils.isCleanerAvailable())
+            return;
+
+        // see MmappedSegmentedFile.cleanup(): no reader may access the segments once they are unmapped
+        try
+        {
+            for (Segment segment : segments)
+                FileUtils.clean(segment.right);
+            logger.debug("All segments have been unmapped successfully");
+        }
+        catch (Exception e)
+        {
+            JVMStabilityInspector.inspectThrowable(e);
+            // This is not supposed to happen
+            logger.error("Error while unmapping segments", e);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 */
 package org.apache.cassandra.io.util;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.io.compress.CompressedRandomAccessReader;
 import org.apache.cassandra.io.compress.CompressedSequentialWriter;
 import org.apache.cassandra.io.compress.CompressionMetadata;
@@ -68,6 +69,8 @@ public class CompressedPoolingSegmentedFile extends PoolingSegmentedFile impleme
     public void cleanup()
     {
         super.cleanup();
+        if (ChunkCache.instance != null)
+            ChunkCache.instance.invalidate(path);
         metadata.close();
     }
 }
@@ -19,6 +19,7 @@ package org.apache.cassandra.io.util;
 
 import java.io.File;
 
+import org.apache.cassandra.db.BlacklistedDirectories;
 import org.apache.cassandra.db.Directories;
 import org.apache.cassandra.utils.WrappedRunnable;
 
@@ -34,7 +35,9 @@ public abstract class DiskAwareRunnable extends WrappedRunnable
         while (true)
         {
             writeSize = getExpectedWriteSize();
-            directory = getDirectories().getWriteableLocation();
+            directory = getPreferredDirectory();
+            if (directory == null || BlacklistedDirectories.isUnwritable(getDirectories().getLocationForDisk(directory)))
+                directory = getDirectories().getWriteableLocation();
             if (directory != null || !reduceScopeForLimitedSpace())
                 break;
         }
@@ -60,6 +63,16 @@ public abstract class DiskAwareRunnable extends WrappedRunnable
      */
     protected abstract Directories getDirectories();
 
+    /**
+     * Get the data directory this task should be written to if it is still writeable, e.g. because the
+     * task only covers the part of the token space that is assigned to that disk.
+     * @return the preferred data directory, or null to pick the least loaded one.
+     */
+    protected Directories.DataDirectory getPreferredDirectory()
+    {
+        return null;
+    }
+
     /**
      * Executes this task on given {@code sstableDirectory}.
      * @param sstableDirectory sstable directory to work on
@@ -81,7 +81,9 @@ public abstract class SegmentedFile
 
     public static Builder getCompressedBuilder(CompressedSequentialWriter writer)
     {
-        return new CompressedPoolingSegmentedFile.Builder(writer);
+        return DatabaseDescriptor.getDiskAccessMode() == Config.DiskAccessMode.mmap
+               ? new CompressedMmappedSegmentedFile.Builder(writer)
+               : new CompressedPoolingSegmentedFile.Builder(writer);
     }
 
     public abstract FileDataInput getSegment(long position);
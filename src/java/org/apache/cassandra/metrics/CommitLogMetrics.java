@@ -19,6 +19,7 @@ package org.apache.cassandra.metrics;
 
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
 
 import com.yammer.metrics.core.Timer;
 import org.apache.cassandra.db.commitlog.AbstractCommitLogService;
@@ -34,17 +35,39 @@ public class CommitLogMetrics
     public static final MetricNameFactory factory = new DefaultNameFactory("CommitLog");
 
     /** Number of completed tasks */
-    public final Gauge<Long> completedTasks;
+    public Gauge<Long> completedTasks;
     /** Number of pending tasks */
-    public final Gauge<Long> pendingTasks;
+    public Gauge<Long> pendingTasks;
     /** Current size used by all the commit log segments */
-    public final Gauge<Long> totalCommitLogSize;
+    public Gauge<Long> totalCommitLogSize;
     /** Time spent waiting for a CLS to be allocated - under normal conditions this should be zero */
     public final Timer waitingOnSegmentAllocation;
     /** The time spent waiting on CL sync; for Periodic this is only occurs when the sync is lagging its sync interval */
     public final Timer waitingOnCommit;
+    /** Time spent by each sync of the commit log segments, including the compression of compressed segments */
+    public final Timer syncTime;
+    /** Bytes written to disk by the syncs of the commit log segments, after compression for compressed segments */
+    public final Meter bytesWritten;
+    /** Time spent replaying the commit log segments on startup, including the flush of the replayed mutations */
+    public final Timer replayTime;
+    /** Mutations replayed from the commit log segments */
+    public final Meter replayedMutations;
 
-    public CommitLogMetrics(final AbstractCommitLogService service, final CommitLogSegmentManager allocator)
+    public CommitLogMetrics()
+    {
+        waitingOnSegmentAllocation = Metrics.newTimer(factory.createMetricName("WaitingOnSegmentAllocation"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+        waitingOnCommit = Metrics.newTimer(factory.createMetricName("WaitingOnCommit"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+        syncTime = Metrics.newTimer(factory.createMetricName("SyncTime"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+        bytesWritten = Metrics.newMeter(factory.createMetricName("BytesWritten"), "bytes", TimeUnit.SECONDS);
+        replayTime = Metrics.newTimer(factory.createMetricName("ReplayTime"), TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+        replayedMutations = Metrics.newMeter(factory.createMetricName("ReplayedMutations"), "mutations", TimeUnit.SECONDS);
+    }
+
+    /**
+     * Registers the gauges depending on the commit log service and segment manager, which may be created after the
+     * metrics because the sync thread records its time as soon as it starts.
+     */
+    public void attach(final AbstractCommitLogService service, final CommitLogSegmentManager allocator)
     {
         completedTasks = Metrics.newGauge(factory.createMetricName("CompletedTasks"), new Gauge<Long>()
         {
@@ -67,7 +90,5 @@ public class CommitLogMetrics
                 return allocator.bytesUsed();
             }
         });
-        waitingOnSegmentAllocation = Metrics.newTimer(factory.createMetricName("WaitingOnSegmentAllocation"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
-        waitingOnCommit = Metrics.newTimer(factory.createMetricName("WaitingOnCommit"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
     }
 }
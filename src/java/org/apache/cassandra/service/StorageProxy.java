@@ -1504,6 +1504,13 @@ public class StorageProxy implements StorageProxyMBean
     public static List<Row> getRangeSlice(AbstractRangeCommand command, ConsistencyLevel consistency_level)
     throws UnavailableException, ReadTimeoutException
     {
+        if (command.usesTwoPhaseSearch() && !StorageService.instance.isBootstrapMode() && TwoPhaseSearchSupport.instance.isSupported())
+        {
+            List<Row> rows = getTwoPhaseRangeSlice(command, consistency_level);
+            if (rows != null)
+                return rows;
+        }
+
         Tracing.trace("Computing ranges to query");
         long startTime = System.nanoTime();
 
@@ -1723,6 +1730,37 @@ public class StorageProxy implements StorageProxyMBean
         return command.combine(rows);
     }
 
+    /**
+     * Runs an index search requiring a full scan in two phases: the replicas first return only the keys of their
+     * sorted hits, and then only the full rows of the globally sorted first hits are read, with one command per
+     * partition. Returns null if the index can't read the full rows, so the search must be run in a single phase.
+     */
+    private static List<Row> getTwoPhaseRangeSlice(AbstractRangeCommand command, ConsistencyLevel consistency_level)
+    throws UnavailableException, ReadTimeoutException
+    {
+        List<Row> keys = getRangeSlice(command.keysOnly(), consistency_level);
+        if (keys.size() > command.limit())
+            keys = keys.subList(0, command.limit());
+        if (keys.isEmpty())
+            return keys;
+
+        List<ReadCommand> commands = command.searcher.fetchCommands(command, keys);
+        if (commands == null)
+        {
+            Tracing.trace("Two-phase search not supported by the index, running it in a single phase");
+            return null;
+        }
+        Tracing.trace("Reading {} full rows selected by two-phase search from {} partitions", keys.size(), commands.size());
+        try
+        {
+            return command.searcher.merge(command, keys, read(commands, consistency_level));
+        }
+        catch (IsBootstrappingException | InvalidRequestException e)
+        {
+            throw new AssertionError(e); // checked before the search, and no serial consistency in range slices
+        }
+    }
+
     private static List<Row> trim(AbstractRangeCommand command, List<Row> rows)
     {
         // When maxIsColumns, we let the caller trim the result.
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.net.InetAddress;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.gms.*;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * Tracks whether all the live nodes understand the first phase of two-phase index searches, which older nodes would
+ * fail on because of its extra index expression. The support is derived from the gossiped release versions, and it
+ * is recomputed on gossip changes rather than on every range query.
+ */
+public class TwoPhaseSearchSupport implements IEndpointStateChangeSubscriber
+{
+    public static final TwoPhaseSearchSupport instance = new TwoPhaseSearchSupport();
+
+    /** The first release of this fork whose replicas understand the first phase of two-phase searches. */
+    private static final int[] MIN_VERSION = { 2, 1, 2, 1 };
+
+    private static final Pattern VERSION_PATTERN = Pattern.compile("(\\d+)\\.(\\d+)\\.(\\d+)(?:\\.(\\d+))?");
+
+    private volatile boolean supported;
+
+    private TwoPhaseSearchSupport()
+    {
+        Gossiper.instance.register(this);
+        refresh();
+    }
+
+    /**
+     * @return true if all the live nodes, as far as gossip has told us, support two-phase searches
+     */
+    public boolean isSupported()
+    {
+        return supported;
+    }
+
+    // Synchronized so that a refresh triggered by a gossip change is never overwritten by an older one.
+    private synchronized void refresh()
+    {
+        supported = computeSupported();
+    }
+
+    private static boolean computeSupported()
+    {
+        for (InetAddress endpoint : Gossiper.instance.getLiveMembers())
+        {
+            if (endpoint.equals(FBUtilities.getBroadcastAddress()))
+                continue;
+            EndpointState state = Gossiper.instance.getEndpointStateForEndpoint(endpoint);
+            VersionedValue version = state == null ? null : state.getApplicationState(ApplicationState.RELEASE_VERSION);
+            if (version == null || !supports(version.value))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param releaseVersion a release version as gossiped by a node, such as "2.1.2.1" or "2.1.3-SNAPSHOT"
+     * @return true if a node with that release version supports two-phase searches
+     */
+    @VisibleForTesting
+    static boolean supports(String releaseVersion)
+    {
+        if (releaseVersion == null)
+            return false;
+        Matcher matcher = VERSION_PATTERN.matcher(releaseVersion);
+        if (!matcher.lookingAt())
+            return false;
+        for (int i = 0; i < MIN_VERSION.length; i++)
+        {
+            String group = matcher.group(i + 1);
+            int component = group == null ? 0 : Integer.parseInt(group);
+            if (component != MIN_VERSION[i])
+                return component > MIN_VERSION[i];
+        }
+        return true;
+    }
+
+    public void onChange(InetAddress endpoint, ApplicationState state, VersionedValue value)
+    {
+        if (state == ApplicationState.RELEASE_VERSION)
+            refresh();
+    }
+
+    public void onJoin(InetAddress endpoint, EndpointState epState)
+    {
+        refresh();
+    }
+
+    public void beforeChange(InetAddress endpoint, EndpointState currentState, ApplicationState newStateKey, VersionedValue newValue) {}
+
+    public void onAlive(InetAddress endpoint, EndpointState state)
+    {
+        refresh();
+    }
+
+    public void onDead(InetAddress endpoint, EndpointState state)
+    {
+        refresh();
+    }
+
+    public void onRestart(InetAddress endpoint, EndpointState state)
+    {
+        refresh();
+    }
+
+    public void onRemove(InetAddress endpoint)
+    {
+        refresh();
+    }
+}
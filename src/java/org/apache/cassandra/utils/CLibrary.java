@@ -187,6 +187,40 @@ public final class CLibrary
         }
     }
 
+    /**
+     * Advises the kernel that the whole specified file will be accessed in the near future, so it can start reading
+     * it into the page cache. It is a no-op if JNA is unavailable or the OS is not Linux.
+     */
+    public static void tryWillNeed(String path)
+    {
+        if (!System.getProperty("os.name").toLowerCase().contains("linux"))
+            return;
+
+        int fd = tryOpenDirectory(path);
+        if (fd < 0)
+            return;
+
+        try
+        {
+            posix_fadvise(fd, 0, 0, POSIX_FADV_WILLNEED);
+        }
+        catch (UnsatisfiedLinkError e)
+        {
+            // JNA is unavailable, just skipping the advice
+        }
+        catch (RuntimeException e)
+        {
+            if (!(e instanceof LastErrorException))
+                throw e;
+
+            logger.warn(String.format("posix_fadvise(%d, WILLNEED) failed, errno (%d).", fd, errno(e)));
+        }
+        finally
+        {
+            tryCloseFD(fd);
+        }
+    }
+
     public static int tryFcntl(int fd, int command, int flags)
     {
         // fcntl return value may or may not be useful, depending on the command
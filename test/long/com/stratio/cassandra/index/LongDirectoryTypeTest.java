@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares the searches per second of the different {@link DirectoryType}s, checking that all of them return the same
+ * results and that the off-heap memory is released when the directory is closed.
+ */
+public class LongDirectoryTypeTest
+{
+    private static final Logger logger = LoggerFactory.getLogger(LongDirectoryTypeTest.class);
+
+    private static final String FIELD = "key";
+    private static final int NUM_DOCS = 200000;
+    private static final int NUM_SEARCHES = 200000;
+    private static final long OFF_HEAP_BYTES = 64 * 1024 * 1024;
+
+    @Test
+    public void testSearchesPerSecond() throws Exception
+    {
+        File path = Files.createTempDirectory("lucene").toFile();
+        try
+        {
+            Directory directory = FSDirectory.open(path);
+            IndexWriter writer = new IndexWriter(directory,
+                                                 new IndexWriterConfig(Version.LUCENE_48, new KeywordAnalyzer()));
+            for (int i = 0; i < NUM_DOCS; i++)
+            {
+                Document document = new Document();
+                document.add(new StringField(FIELD, String.valueOf(i), Field.Store.YES));
+                writer.addDocument(document);
+            }
+            writer.close();
+            directory.close();
+
+            run("fs", FSDirectory.open(path));
+            run("niofs", new NIOFSDirectory(path));
+            MMapIndexDirectory mmapDirectory = new MMapIndexDirectory(path);
+            run("mmap", mmapDirectory);
+            Assert.assertTrue(mmapDirectory.getMappedBytes() > 0);
+            OffHeapDirectory offHeapDirectory = new OffHeapDirectory(FSDirectory.open(path), OFF_HEAP_BYTES);
+            run("off_heap", offHeapDirectory);
+            Assert.assertEquals(0, offHeapDirectory.getOffHeapBytes());
+        }
+        finally
+        {
+            FileUtils.deleteRecursive(path);
+        }
+    }
+
+    private static void run(String name, Directory directory) throws Exception
+    {
+        IndexReader reader = DirectoryReader.open(directory);
+        IndexSearcher searcher = new IndexSearcher(reader);
+        Assert.assertEquals(NUM_DOCS, reader.numDocs());
+        if (directory instanceof OffHeapDirectory)
+        {
+            Assert.assertTrue(((OffHeapDirectory) directory).getOffHeapBytes() > 0);
+        }
+
+        Random random = new Random(0);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < NUM_SEARCHES; i++)
+        {
+            String key = String.valueOf(random.nextInt(NUM_DOCS));
+            int doc = searcher.search(new TermQuery(new Term(FIELD, key)), 1).scoreDocs[0].doc;
+            Assert.assertEquals(key, searcher.doc(doc).get(FIELD));
+        }
+        long elapsed = System.nanoTime() - startTime;
+        logger.info(String.format("Directory type %s: %.0f searches/s", name, NUM_SEARCHES * 1000000000.0 / elapsed));
+
+        reader.close();
+        directory.close();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.Version;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares the heap usage and latency of sorting by fields uninverted by the {@link FieldCache} against sorting by
+ * fields with doc values, as indexed by the column mappers. The number of documents can be set with the
+ * {@code cassandra.test.sort_docs} system property, such as 50000000 for reproducing a big index.
+ */
+public class LongDocValuesSortTest
+{
+    private static final Logger logger = LoggerFactory.getLogger(LongDocValuesSortTest.class);
+
+    private static final int NUM_DOCS = Integer.getInteger("cassandra.test.sort_docs", 1000000);
+    private static final int NUM_HITS = 100;
+    private static final String LONG_FIELD = "long";
+    private static final String LONG_DV_FIELD = "long_dv";
+    private static final String STRING_FIELD = "string";
+    private static final String STRING_DV_FIELD = "string_dv";
+
+    @Test
+    public void testSortHeapUsage() throws Exception
+    {
+        File file = Files.createTempDirectory("doc_values").toFile();
+        Directory directory = FSDirectory.open(file);
+        try
+        {
+            IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_48, new KeywordAnalyzer());
+            config.setRAMBufferSizeMB(256);
+            IndexWriter writer = new IndexWriter(directory, config);
+            Random random = new Random(0);
+            for (int i = 0; i < NUM_DOCS; i++)
+            {
+                long number = random.nextLong();
+                String string = Long.toHexString(random.nextLong());
+                Document document = new Document();
+                document.add(new LongField(LONG_FIELD, number, Field.Store.NO));
+                document.add(new LongField(LONG_DV_FIELD, number, Field.Store.NO));
+                document.add(new NumericDocValuesField(LONG_DV_FIELD, number));
+                document.add(new StringField(STRING_FIELD, string, Field.Store.NO));
+                document.add(new StringField(STRING_DV_FIELD, string, Field.Store.NO));
+                document.add(new SortedDocValuesField(STRING_DV_FIELD, new BytesRef(string)));
+                writer.addDocument(document);
+            }
+            writer.close();
+
+            DirectoryReader reader = DirectoryReader.open(directory);
+            IndexSearcher searcher = new IndexSearcher(reader);
+
+            TopDocs longDocValues = sort(searcher, new SortField(LONG_DV_FIELD, SortField.Type.LONG));
+            TopDocs longUninverted = sort(searcher, new SortField(LONG_FIELD, SortField.Type.LONG));
+            TopDocs stringDocValues = sort(searcher, new SortField(STRING_DV_FIELD, SortField.Type.STRING));
+            TopDocs stringUninverted = sort(searcher, new SortField(STRING_FIELD, SortField.Type.STRING));
+
+            // Both ways must produce the same order
+            assertSameHits(longUninverted, longDocValues);
+            assertSameHits(stringUninverted, stringDocValues);
+
+            reader.close();
+        }
+        finally
+        {
+            FieldCache.DEFAULT.purgeAllCaches();
+            directory.close();
+            for (File child : file.listFiles())
+            {
+                Assert.assertTrue(child.delete());
+            }
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    private static TopDocs sort(IndexSearcher searcher, SortField sortField) throws Exception
+    {
+        long heapBefore = usedHeap();
+        long startTime = System.nanoTime();
+        TopDocs topDocs = searcher.search(new MatchAllDocsQuery(), NUM_HITS, new Sort(sortField));
+        long firstTime = System.nanoTime() - startTime;
+        long heapAfter = usedHeap();
+
+        startTime = System.nanoTime();
+        searcher.search(new MatchAllDocsQuery(), NUM_HITS, new Sort(sortField));
+        long secondTime = System.nanoTime() - startTime;
+
+        long fieldCacheBytes = 0;
+        for (FieldCache.CacheEntry entry : FieldCache.DEFAULT.getCacheEntries())
+        {
+            if (entry.getFieldName().equals(sortField.getField()))
+            {
+                fieldCacheBytes += RamUsageEstimator.sizeOf(entry.getValue());
+            }
+        }
+        logger.info(String.format("Sorting %d docs by %s: field cache %.1f MB, heap growth %.1f MB, " +
+                                  "first sort %d ms, next sort %d ms",
+                                  NUM_DOCS,
+                                  sortField,
+                                  fieldCacheBytes / 1048576.0,
+                                  (heapAfter - heapBefore) / 1048576.0,
+                                  firstTime / 1000000,
+                                  secondTime / 1000000));
+        return topDocs;
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void assertSameHits(TopDocs expected, TopDocs actual)
+    {
+        Assert.assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+        for (int i = 0; i < expected.scoreDocs.length; i++)
+        {
+            ScoreDoc expectedDoc = expected.scoreDocs[i];
+            ScoreDoc actualDoc = actual.scoreDocs[i];
+            Assert.assertEquals(expectedDoc.doc, actualDoc.doc);
+        }
+    }
+}
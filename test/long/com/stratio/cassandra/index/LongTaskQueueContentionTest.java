@@ -0,0 +1,261 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.stratio.cassandra.index.util.TaskQueue;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Measures the indexing throughput of a {@link TaskQueue} while partition deletions and commits run concurrently,
+ * compared with indexing alone and with the former global write lock around deletions and commits.
+ */
+public class LongTaskQueueContentionTest
+{
+    private static final Logger logger = LoggerFactory.getLogger(LongTaskQueueContentionTest.class);
+
+    private static final String FIELD = "key";
+    private static final int NUM_KEYS = 10000;
+    private static final int NUM_WRITERS = 4;
+    private static final int WRITES_PER_WRITER = 50000;
+    private static final int INDEXING_THREADS = 4;
+    private static final int QUEUES_SIZE = 50;
+    private static final int COMMIT_INTERVAL_MS = 100;
+
+    @Test
+    public void testWriteThroughputWithDeletes() throws Exception
+    {
+        double alone = run(false, null);
+        double concurrent = run(true, null);
+        double locked = run(true, new ReentrantReadWriteLock());
+        logger.info(String.format("Indexing alone: %.0f writes/s", alone));
+        logger.info(String.format("Indexing with concurrent deletes and commits: %.0f writes/s", concurrent));
+        logger.info(String.format("Indexing with globally locked deletes and commits: %.0f writes/s", locked));
+    }
+
+    @Test
+    public void testDeletionsAreOrderedWithIndexing() throws Exception
+    {
+        RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory,
+                                                   new IndexWriterConfig(Version.LUCENE_48, new KeywordAnalyzer()));
+        TaskQueue queue = new TaskQueue(INDEXING_THREADS, QUEUES_SIZE);
+        for (int i = 0; i < NUM_KEYS; i++)
+        {
+            final String key = String.valueOf(i);
+            queue.submitAsynchronous(key, upsert(writer, key));
+            if (i % 2 == 0)
+            {
+                queue.submitAsynchronous(key, delete(writer, key));
+            }
+        }
+        queue.submitSynchronous(commit(writer));
+
+        IndexReader reader = DirectoryReader.open(directory);
+        Assert.assertEquals(NUM_KEYS / 2, reader.numDocs());
+        reader.close();
+        writer.close();
+        directory.close();
+    }
+
+    /**
+     * Runs the writers, optionally with a concurrent deleter, returning the observed writes per second.
+     *
+     * @param withDeletes If deletions and commits must be run concurrently with the writes.
+     * @param globalLock  The lock emulating the former global locking, or {@code null} for no global locking.
+     * @return The number of writes per second.
+     */
+    private double run(boolean withDeletes, final ReadWriteLock globalLock) throws Exception
+    {
+        RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory,
+                                                   new IndexWriterConfig(Version.LUCENE_48, new KeywordAnalyzer()));
+        final TaskQueue queue = new TaskQueue(INDEXING_THREADS, QUEUES_SIZE);
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        Thread deleter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                Random random = new Random(1);
+                long lastCommit = System.currentTimeMillis();
+                while (running.get())
+                {
+                    String key = String.valueOf(random.nextInt(NUM_KEYS));
+                    if (globalLock != null)
+                    {
+                        globalLock.writeLock().lock();
+                    }
+                    try
+                    {
+                        queue.submitAsynchronous(key, delete(writer, key));
+                        if (System.currentTimeMillis() - lastCommit > COMMIT_INTERVAL_MS)
+                        {
+                            queue.submitSynchronous(commit(writer));
+                            lastCommit = System.currentTimeMillis();
+                        }
+                    }
+                    finally
+                    {
+                        if (globalLock != null)
+                        {
+                            globalLock.writeLock().unlock();
+                        }
+                    }
+                }
+            }
+        };
+
+        List<Thread> writers = new ArrayList<>(NUM_WRITERS);
+        for (int i = 0; i < NUM_WRITERS; i++)
+        {
+            final int seed = i;
+            writers.add(new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    Random random = new Random(seed);
+                    for (int j = 0; j < WRITES_PER_WRITER; j++)
+                    {
+                        String key = String.valueOf(random.nextInt(NUM_KEYS));
+                        if (globalLock != null)
+                        {
+                            globalLock.readLock().lock();
+                        }
+                        try
+                        {
+                            queue.submitAsynchronous(key, upsert(writer, key));
+                        }
+                        finally
+                        {
+                            if (globalLock != null)
+                            {
+                                globalLock.readLock().unlock();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        long startTime = System.nanoTime();
+        if (withDeletes)
+        {
+            deleter.start();
+        }
+        for (Thread thread : writers)
+        {
+            thread.start();
+        }
+        for (Thread thread : writers)
+        {
+            thread.join();
+        }
+        queue.await();
+        long elapsed = System.nanoTime() - startTime;
+        running.set(false);
+        if (withDeletes)
+        {
+            deleter.join();
+        }
+
+        queue.submitSynchronous(commit(writer));
+        writer.close();
+        directory.close();
+        return NUM_WRITERS * WRITES_PER_WRITER * 1000000000.0 / elapsed;
+    }
+
+    private static Runnable upsert(final IndexWriter writer, final String key)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Document document = new Document();
+                    document.add(new StringField(FIELD, key, Field.Store.NO));
+                    writer.updateDocument(new Term(FIELD, key), document);
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    private static Runnable delete(final IndexWriter writer, final String key)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    writer.deleteDocuments(new Term(FIELD, key));
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    private static Runnable commit(final IndexWriter writer)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    writer.commit();
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.microbench;
+
+import com.stratio.cassandra.index.schema.Schema;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.ColumnIdentifier;
+import org.apache.cassandra.db.ArrayBackedSortedColumns;
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.composites.CellNameType;
+import org.apache.cassandra.db.composites.Composite;
+import org.apache.cassandra.db.composites.Composites;
+import org.apache.cassandra.db.marshal.DoubleType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.TimestampType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tables, index schema, rows and searches shared by the Lucene row index benchmarks. There is a skinny table, with one
+ * row per partition, and a wide table, with several clustered rows per partition, both with the same indexed columns.
+ */
+public final class BenchmarkData
+{
+    /** The keyspace of the benchmark tables. */
+    public static final String KEYSPACE = "microbench";
+
+    /** The name of the indexed column of the benchmark tables. */
+    public static final String INDEXED_COLUMN = "lucene";
+
+    /** The index schema of the benchmark tables. */
+    public static final String SCHEMA = "{fields:{" +
+                                        "name:{type:\"string\"}," +
+                                        "description:{type:\"text\"," +
+                                        "analyzer:\"org.apache.lucene.analysis.en.EnglishAnalyzer\"}," +
+                                        "score:{type:\"double\"}," +
+                                        "created:{type:\"date\",pattern:\"yyyy/MM/dd\"}}}";
+
+    /** The JSON searches by name, from the cheapest to the most expensive one. */
+    public static final Map<String, String> SEARCHES = new HashMap<>();
+
+    private static final Map<String, String> TABLES = new HashMap<>();
+
+    private static final String[] WORDS = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing",
+                                           "elit", "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore",
+                                           "et", "dolore", "magna", "aliqua", "enim", "ad", "minim", "veniam"};
+
+    private static final int NUM_NAMES = 1000;
+    private static final int DESCRIPTION_WORDS = 20;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    static
+    {
+        TABLES.put("skinny", "CREATE TABLE %s.skinny (id int PRIMARY KEY, " +
+                             "name text, description text, score double, created timestamp, lucene text)");
+        TABLES.put("wide", "CREATE TABLE %s.wide (id int, seq int, " +
+                           "name text, description text, score double, created timestamp, lucene text, " +
+                           "PRIMARY KEY (id, seq))");
+
+        SEARCHES.put("match", "{query:{type:\"match\",field:\"name\",value:\"name42\"}}");
+        SEARCHES.put("boolean", "{query:{type:\"boolean\",must:[" +
+                                "{type:\"phrase\",field:\"description\",values:[\"lorem\",\"ipsum\"]}," +
+                                "{type:\"wildcard\",field:\"name\",value:\"name1*\"}]}," +
+                                "filter:{type:\"range\",field:\"score\",lower:10.0,upper:50.0}}");
+        SEARCHES.put("sorted", "{filter:{type:\"range\",field:\"created\"," +
+                               "lower:\"2014/01/01\",upper:\"2014/06/30\"}," +
+                               "sort:{fields:[{field:\"score\",reverse:true},{field:\"name\"}]}}");
+    }
+
+    private BenchmarkData()
+    {
+    }
+
+    /**
+     * Returns the CQL statement creating the specified benchmark table in {@link #KEYSPACE}.
+     *
+     * @param table The table name, {@code skinny} or {@code wide}.
+     * @return The CQL statement creating the table.
+     */
+    public static String createTable(String table)
+    {
+        String cql = TABLES.get(table);
+        if (cql == null)
+        {
+            throw new IllegalArgumentException("Unknown benchmark table " + table);
+        }
+        return String.format(cql, KEYSPACE);
+    }
+
+    /**
+     * Returns the CQL statement creating a Lucene index over the specified benchmark table.
+     *
+     * @param table The table name, {@code skinny} or {@code wide}.
+     * @return The CQL statement creating the index.
+     */
+    public static String createIndex(String table)
+    {
+        return String.format("CREATE CUSTOM INDEX %s_index ON %s.%s (%s) " +
+                             "USING 'org.apache.cassandra.db.index.stratio.RowIndex' " +
+                             "WITH OPTIONS = {'refresh_seconds':'1', 'schema':'%s'}",
+                             table,
+                             KEYSPACE,
+                             table,
+                             INDEXED_COLUMN,
+                             SCHEMA);
+    }
+
+    /**
+     * Returns the metadata of the specified benchmark table, without creating it.
+     *
+     * @param table The table name, {@code skinny} or {@code wide}.
+     * @return The table metadata.
+     */
+    public static CFMetaData metadata(String table)
+    {
+        return CFMetaData.compile(createTable(table), KEYSPACE);
+    }
+
+    /**
+     * Returns the definition of the indexed column of the specified benchmark table metadata.
+     *
+     * @param metadata The table metadata.
+     * @return The definition of the indexed column.
+     */
+    public static ColumnDefinition indexedColumn(CFMetaData metadata)
+    {
+        return metadata.getColumnDefinition(new ColumnIdentifier(INDEXED_COLUMN, true));
+    }
+
+    /**
+     * Returns the index {@link Schema} of the benchmark tables.
+     *
+     * @return The index {@link Schema}.
+     */
+    public static Schema schema()
+    {
+        try
+        {
+            return Schema.fromJson(SCHEMA);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the search with the specified name.
+     *
+     * @param name The search name, {@code match}, {@code boolean} or {@code sorted}.
+     * @return The JSON search.
+     */
+    public static String search(String name)
+    {
+        String json = SEARCHES.get(name);
+        if (json == null)
+        {
+            throw new IllegalArgumentException("Unknown benchmark search " + name);
+        }
+        return json;
+    }
+
+    /**
+     * Returns a random name.
+     *
+     * @param random The source of randomness.
+     * @return A random name.
+     */
+    public static String name(Random random)
+    {
+        return "name" + random.nextInt(NUM_NAMES);
+    }
+
+    /**
+     * Returns a random text description.
+     *
+     * @param random The source of randomness.
+     * @return A random description.
+     */
+    public static String description(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < DESCRIPTION_WORDS; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a random score.
+     *
+     * @param random The source of randomness.
+     * @return A random score.
+     */
+    public static double score(Random random)
+    {
+        return random.nextDouble() * 100;
+    }
+
+    /**
+     * Returns a random date in 2014.
+     *
+     * @param random The source of randomness.
+     * @return A random date.
+     */
+    public static Date created(Random random)
+    {
+        return new Date(1388534400000L + random.nextInt(365) * DAY_MILLIS);
+    }
+
+    /**
+     * Returns a storage engine {@link Row} of the specified benchmark table with random column values, as it is
+     * received by the index when it is written. The clustering value is ignored for skinny tables.
+     *
+     * @param metadata The table metadata.
+     * @param id       The partition key value.
+     * @param seq      The clustering key value.
+     * @param random   The source of randomness.
+     * @return A new {@link Row}.
+     */
+    public static Row row(CFMetaData metadata, int id, int seq, Random random)
+    {
+        ByteBuffer partitionKey = Int32Type.instance.decompose(id);
+        DecoratedKey key = DatabaseDescriptor.getPartitioner().decorateKey(partitionKey);
+        CellNameType comparator = metadata.comparator;
+        Composite prefix = metadata.clusteringColumns().isEmpty() ? Composites.EMPTY : comparator.make(seq);
+        long timestamp = System.currentTimeMillis() * 1000;
+
+        ColumnFamily columnFamily = ArrayBackedSortedColumns.factory.create(metadata);
+        columnFamily.addColumn(comparator.rowMarker(prefix), ByteBufferUtil.EMPTY_BYTE_BUFFER, timestamp);
+        addCell(columnFamily, prefix, "name", UTF8Type.instance.decompose(name(random)), timestamp);
+        addCell(columnFamily, prefix, "description", UTF8Type.instance.decompose(description(random)), timestamp);
+        addCell(columnFamily, prefix, "score", DoubleType.instance.decompose(score(random)), timestamp);
+        addCell(columnFamily, prefix, "created", TimestampType.instance.decompose(created(random)), timestamp);
+        return new Row(key, columnFamily);
+    }
+
+    private static void addCell(ColumnFamily columnFamily,
+                                Composite prefix,
+                                String column,
+                                ByteBuffer value,
+                                long timestamp)
+    {
+        CFMetaData metadata = columnFamily.metadata();
+        ColumnDefinition definition = metadata.getColumnDefinition(new ColumnIdentifier(column, true));
+        columnFamily.addColumn(metadata.comparator.create(prefix, definition), value, timestamp);
+    }
+}
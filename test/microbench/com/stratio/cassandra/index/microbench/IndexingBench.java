@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.microbench;
+
+import com.stratio.cassandra.index.DirectoryType;
+import com.stratio.cassandra.index.FilterCache;
+import com.stratio.cassandra.index.LuceneIndex;
+import com.stratio.cassandra.index.RowIndexMetrics;
+import com.stratio.cassandra.index.RowMapper;
+import com.stratio.cassandra.index.RowMapperSkinny;
+import com.stratio.cassandra.index.schema.Schema;
+import com.stratio.cassandra.index.util.TaskQueue;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the upserts per second applied by {@link LuceneIndex#upsert(DecoratedKey, Term, Document)} through an
+ * indexing {@link TaskQueue}, set up as {@code RowService} does, for several indexing batch sizes. Each invocation
+ * submits a group of upserts and waits for all of them to be applied, so queueing doesn't hide the indexing cost.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexingBench
+{
+    private static final int NUM_DOCS = 100000;
+    private static final int UPSERTS_PER_INVOCATION = 1000;
+    private static final int QUEUES_SIZE = 50;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    @Param({"4"})
+    public int indexingThreads;
+
+    private File path;
+    private LuceneIndex luceneIndex;
+    private RowIndexMetrics metrics;
+    private TaskQueue indexQueue;
+    private DecoratedKey[] keys;
+    private Term[] terms;
+    private Document[] documents;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        DatabaseDescriptor.setPartitioner(new Murmur3Partitioner());
+        CFMetaData metadata = BenchmarkData.metadata("skinny");
+        Schema schema = BenchmarkData.schema();
+        RowMapper rowMapper = RowMapper.build(metadata, BenchmarkData.indexedColumn(metadata), schema);
+
+        path = Files.createTempDirectory("indexing_bench").toFile();
+        luceneIndex = new LuceneIndex(rowMapper,
+                                      Collections.singletonList(path.getAbsolutePath()),
+                                      60.0,
+                                      1.0,
+                                      64,
+                                      5,
+                                      30,
+                                      DirectoryType.FS,
+                                      64,
+                                      1,
+                                      schema.analyzer());
+        indexQueue = new TaskQueue(indexingThreads,
+                                   QUEUES_SIZE,
+                                   batchSize,
+                                   0,
+                                   new TaskQueue.BatchListener()
+                                   {
+                                       @Override
+                                       public void beforeBatch()
+                                       {
+                                           luceneIndex.beginBatch();
+                                       }
+
+                                       @Override
+                                       public void afterBatch(int numTasks)
+                                       {
+                                           metrics.indexingBatchSize.update(numTasks);
+                                           luceneIndex.flushBatch();
+                                       }
+                                   });
+        metrics = new RowIndexMetrics(BenchmarkData.KEYSPACE,
+                                      metadata.cfName,
+                                      "indexing_bench_" + batchSize,
+                                      luceneIndex,
+                                      new FilterCache(32),
+                                      indexQueue);
+        luceneIndex.init(((RowMapperSkinny) rowMapper).sort(), metrics);
+
+        // Build the documents in advance, so only indexing is measured
+        Random random = new Random(0);
+        keys = new DecoratedKey[NUM_DOCS];
+        terms = new Term[NUM_DOCS];
+        documents = new Document[NUM_DOCS];
+        for (int i = 0; i < NUM_DOCS; i++)
+        {
+            Row row = BenchmarkData.row(metadata, i, 0, random);
+            keys[i] = row.key;
+            terms[i] = rowMapper.term(row.key);
+            documents[i] = rowMapper.document(row);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        indexQueue.await();
+        luceneIndex.close();
+        metrics.release();
+        FileUtils.deleteRecursive(path);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPSERTS_PER_INVOCATION)
+    public void upsert()
+    {
+        for (int i = 0; i < UPSERTS_PER_INVOCATION; i++)
+        {
+            final int doc = next++ % NUM_DOCS;
+            indexQueue.submitAsynchronous(keys[doc], new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    luceneIndex.upsert(keys[doc], terms[doc], documents[doc]);
+                }
+            });
+        }
+        indexQueue.await();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.microbench;
+
+import com.stratio.cassandra.index.ClusteringKeyMapper;
+import com.stratio.cassandra.index.DirectoryType;
+import com.stratio.cassandra.index.FilterCache;
+import com.stratio.cassandra.index.LuceneIndex;
+import com.stratio.cassandra.index.PartitionKeyMapper;
+import com.stratio.cassandra.index.RowIndexMetrics;
+import com.stratio.cassandra.index.RowMapper;
+import com.stratio.cassandra.index.RowMapperSkinny;
+import com.stratio.cassandra.index.RowMapperWide;
+import com.stratio.cassandra.index.SearchResult;
+import com.stratio.cassandra.index.schema.Schema;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading the row keys of a number of hits from the partition and clustering key doc values, both directly
+ * with {@link PartitionKeyMapper} and {@link ClusteringKeyMapper} and as part of a whole {@link LuceneIndex#search},
+ * for skinny and wide tables.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyFieldsBench
+{
+    private static final int NUM_DOCS = 100000;
+    private static final int ROWS_PER_PARTITION = 10;
+
+    @Param({"skinny", "wide"})
+    public String table;
+
+    /** The number of hits whose keys are read by each invocation. */
+    @Param({"100", "10000"})
+    public int hits;
+
+    private File path;
+    private LuceneIndex luceneIndex;
+    private RowIndexMetrics metrics;
+    private RAMDirectory directory;
+    private IndexReader reader;
+    private List<AtomicReaderContext> leaves;
+    private PartitionKeyMapper partitionKeyMapper;
+    private ClusteringKeyMapper clusteringKeyMapper;
+    private int[] docIds;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        DatabaseDescriptor.setPartitioner(new Murmur3Partitioner());
+        CFMetaData metadata = BenchmarkData.metadata(table);
+        Schema schema = BenchmarkData.schema();
+        RowMapper rowMapper = RowMapper.build(metadata, BenchmarkData.indexedColumn(metadata), schema);
+        boolean wide = rowMapper instanceof RowMapperWide;
+        Sort sort = wide ? ((RowMapperWide) rowMapper).sort() : ((RowMapperSkinny) rowMapper).sort();
+        partitionKeyMapper = PartitionKeyMapper.instance(metadata);
+        clusteringKeyMapper = wide ? ClusteringKeyMapper.instance(metadata, schema) : null;
+
+        path = Files.createTempDirectory("key_fields_bench").toFile();
+        luceneIndex = new LuceneIndex(rowMapper,
+                                      Collections.singletonList(path.getAbsolutePath()),
+                                      60.0,
+                                      1.0,
+                                      64,
+                                      5,
+                                      30,
+                                      DirectoryType.FS,
+                                      64,
+                                      1,
+                                      schema.analyzer());
+        metrics = new RowIndexMetrics(BenchmarkData.KEYSPACE,
+                                      metadata.cfName,
+                                      "key_fields_bench_" + table + "_" + hits,
+                                      luceneIndex,
+                                      new FilterCache(32),
+                                      null);
+        luceneIndex.init(sort, metrics);
+
+        // The same documents are written to the index and to a plain directory read with the key mappers
+        directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_48, schema.analyzer()));
+        Random random = new Random(0);
+        for (int i = 0; i < NUM_DOCS; i++)
+        {
+            Row row = wide
+                      ? BenchmarkData.row(metadata, i / ROWS_PER_PARTITION, i % ROWS_PER_PARTITION, random)
+                      : BenchmarkData.row(metadata, i, 0, random);
+            Document document = rowMapper.document(row);
+            luceneIndex.upsert(row.key, rowMapper.term(row.key), document);
+            writer.addDocument(document);
+        }
+        writer.close();
+        luceneIndex.commit(null);
+        luceneIndex.refresh();
+
+        reader = DirectoryReader.open(directory);
+        leaves = reader.leaves();
+        docIds = new int[NUM_DOCS];
+        for (int i = 0; i < NUM_DOCS; i++)
+        {
+            docIds[i] = random.nextInt(NUM_DOCS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        reader.close();
+        directory.close();
+        luceneIndex.close();
+        metrics.release();
+        FileUtils.deleteRecursive(path);
+    }
+
+    @Benchmark
+    public void readKeys(Blackhole blackhole) throws IOException
+    {
+        for (int i = 0; i < hits; i++)
+        {
+            int doc = docIds[next++ % NUM_DOCS];
+            AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+            int docId = doc - leaf.docBase;
+            blackhole.consume(partitionKeyMapper.partitionKey(leaf.reader(), docId));
+            if (clusteringKeyMapper != null)
+            {
+                blackhole.consume(clusteringKeyMapper.clusteringKey(leaf.reader(), docId));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<SearchResult> search()
+    {
+        return luceneIndex.search(new MatchAllDocsQuery(), null, null, hits, false);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.microbench;
+
+import com.stratio.cassandra.index.RowMapper;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.lucene.document.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the documents per second built by {@link RowMapper#document(Row)} from the rows of skinny and wide tables.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RowMapperBench
+{
+    private static final int NUM_ROWS = 1024;
+    private static final int ROWS_PER_PARTITION = 16;
+
+    @Param({"skinny", "wide"})
+    public String table;
+
+    private RowMapper rowMapper;
+    private Row[] rows;
+    private int next = 0;
+
+    @Setup
+    public void setup()
+    {
+        DatabaseDescriptor.setPartitioner(new Murmur3Partitioner());
+        CFMetaData metadata = BenchmarkData.metadata(table);
+        rowMapper = RowMapper.build(metadata, BenchmarkData.indexedColumn(metadata), BenchmarkData.schema());
+        Random random = new Random(0);
+        rows = new Row[NUM_ROWS];
+        for (int i = 0; i < NUM_ROWS; i++)
+        {
+            rows[i] = BenchmarkData.row(metadata, i / ROWS_PER_PARTITION, i % ROWS_PER_PARTITION, random);
+        }
+    }
+
+    @Benchmark
+    public Document document()
+    {
+        Row row = rows[next++ % NUM_ROWS];
+        return rowMapper.document(row);
+    }
+}
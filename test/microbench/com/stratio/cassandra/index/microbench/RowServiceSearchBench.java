@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.microbench;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.cql3.QueryProcessor;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.Keyspace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the end-to-end searches per second of {@code RowService#search} over an embedded column family store,
+ * issued as internal CQL queries over the magic column of skinny and wide tables. Each search reads its hits from the
+ * base table, so both the index and the storage engine costs are included.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1G", "-javaagent:lib/jamm-0.2.8.jar"})
+@State(Scope.Benchmark)
+public class RowServiceSearchBench
+{
+    private static final int NUM_PARTITIONS = 10000;
+    private static final int ROWS_PER_PARTITION = 10;
+    private static final int LIMIT = 100;
+
+    @Param({"skinny", "wide"})
+    public String table;
+
+    @Param({"match", "boolean", "sorted"})
+    public String search;
+
+    private String select;
+    private String json;
+
+    @Setup
+    public void setup() throws Throwable
+    {
+        SchemaLoader.prepareServer();
+        QueryProcessor.executeOnceInternal(String.format("CREATE KEYSPACE IF NOT EXISTS %s WITH replication = " +
+                                                         "{'class': 'SimpleStrategy', 'replication_factor': '1'}",
+                                                         BenchmarkData.KEYSPACE));
+        QueryProcessor.executeOnceInternal(BenchmarkData.createTable(table));
+        QueryProcessor.executeOnceInternal(BenchmarkData.createIndex(table));
+
+        // Load half of the data into an SSTable and keep the other half in the memtable
+        boolean wide = "wide".equals(table);
+        int rowsPerPartition = wide ? ROWS_PER_PARTITION : 1;
+        String insert = wide
+                        ? String.format("INSERT INTO %s.%s (id, seq, name, description, score, created) " +
+                                        "VALUES (?, ?, ?, ?, ?, ?)", BenchmarkData.KEYSPACE, table)
+                        : String.format("INSERT INTO %s.%s (id, name, description, score, created) " +
+                                        "VALUES (?, ?, ?, ?, ?)", BenchmarkData.KEYSPACE, table);
+        Random random = new Random(0);
+        for (int i = 0; i < NUM_PARTITIONS; i++)
+        {
+            for (int j = 0; j < rowsPerPartition; j++)
+            {
+                String name = BenchmarkData.name(random);
+                String description = BenchmarkData.description(random);
+                Double score = BenchmarkData.score(random);
+                if (wide)
+                {
+                    QueryProcessor.executeInternal(insert,
+                                                   i,
+                                                   j,
+                                                   name,
+                                                   description,
+                                                   score,
+                                                   BenchmarkData.created(random));
+                }
+                else
+                {
+                    QueryProcessor.executeInternal(insert, i, name, description, score, BenchmarkData.created(random));
+                }
+            }
+            if (i == NUM_PARTITIONS / 2)
+            {
+                Keyspace.open(BenchmarkData.KEYSPACE).getColumnFamilyStore(table).forceBlockingFlush();
+            }
+        }
+
+        select = String.format("SELECT * FROM %s.%s WHERE %s = ? LIMIT %d",
+                               BenchmarkData.KEYSPACE,
+                               table,
+                               BenchmarkData.INDEXED_COLUMN,
+                               LIMIT);
+        json = BenchmarkData.search(search);
+
+        // Make all the writes visible to searches
+        QueryProcessor.executeInternal(select, "{refresh:true}");
+    }
+
+    @Benchmark
+    public UntypedResultSet search()
+    {
+        return QueryProcessor.executeInternal(select, json);
+    }
+}
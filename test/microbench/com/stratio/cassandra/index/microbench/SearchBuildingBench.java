@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.microbench;
+
+import com.stratio.cassandra.index.query.Search;
+import com.stratio.cassandra.index.schema.Schema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the searches per second parsed by {@link Search#fromJson(String)}, and parsed, validated and translated
+ * into Lucene queries and sorts with the index {@link Schema}, as it is done for each CQL search.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBuildingBench
+{
+    @Param({"match", "boolean", "sorted"})
+    public String search;
+
+    private Schema schema;
+    private String json;
+
+    @Setup
+    public void setup()
+    {
+        schema = BenchmarkData.schema();
+        json = BenchmarkData.search(search);
+    }
+
+    @Benchmark
+    public Search parse()
+    {
+        return Search.fromJson(json);
+    }
+
+    @Benchmark
+    public void parseAndBuild(Blackhole blackhole)
+    {
+        Search search = Search.fromJson(json);
+        search.validate(schema);
+        blackhole.consume(search.query(schema, null));
+        blackhole.consume(search.sort(schema));
+    }
+}
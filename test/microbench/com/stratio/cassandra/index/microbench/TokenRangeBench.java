@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.microbench;
+
+import com.stratio.cassandra.index.TokenMapper;
+import com.stratio.cassandra.index.TokenMapperGeneric;
+import com.stratio.cassandra.index.TokenMapperMurmur;
+import com.stratio.cassandra.index.TokenRangeQuery;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the token range searches per second filtered with the generic {@link TokenRangeQuery} over binary token
+ * terms and with the {@link TokenMapperMurmur} numeric range over long tokens, for several range widths.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TokenRangeBench
+{
+    private static final int NUM_DOCS = 200000;
+
+    /** The size of the whole Murmur3 token ring. */
+    private static final double RING_SIZE = Math.pow(2, 64);
+
+    @Param({"murmur", "generic"})
+    public String mapper;
+
+    /** The fraction of the token ring covered by each searched range. */
+    @Param({"0.001", "0.1"})
+    public double rangeFraction;
+
+    private RAMDirectory directory;
+    private IndexReader reader;
+    private IndexSearcher searcher;
+    private TokenMapper tokenMapper;
+    private Random random;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        DatabaseDescriptor.setPartitioner(new Murmur3Partitioner());
+        CFMetaData metadata = BenchmarkData.metadata("skinny");
+        TokenMapper murmurMapper = new TokenMapperMurmur(metadata);
+        TokenMapper genericMapper = new TokenMapperGeneric(metadata);
+
+        // Index the tokens with both mappers
+        directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_48,
+                                                                              new KeywordAnalyzer()));
+        for (int i = 0; i < NUM_DOCS; i++)
+        {
+            DecoratedKey key = DatabaseDescriptor.getPartitioner().decorateKey(Int32Type.instance.decompose(i));
+            Document document = new Document();
+            murmurMapper.addFields(document, key);
+            genericMapper.addFields(document, key);
+            writer.addDocument(document);
+        }
+        writer.close();
+
+        reader = DirectoryReader.open(directory);
+        searcher = new IndexSearcher(reader);
+        tokenMapper = "murmur".equals(mapper) ? murmurMapper : genericMapper;
+        random = new Random(0);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        reader.close();
+        directory.close();
+    }
+
+    @Benchmark
+    public int search() throws IOException
+    {
+        double width = rangeFraction * RING_SIZE;
+        long lower = (long) (Long.MIN_VALUE + random.nextDouble() * (RING_SIZE - width));
+        long upper = (long) (lower + width);
+        Query query = tokenMapper.query(new LongToken(lower), new LongToken(upper), true, true);
+        TotalHitCountCollector collector = new TotalHitCountCollector();
+        searcher.search(query, collector);
+        return collector.getTotalHits();
+    }
+}
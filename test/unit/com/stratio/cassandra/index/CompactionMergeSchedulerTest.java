@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.apache.cassandra.db.index.SecondaryIndexMerge;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CompactionMergeSchedulerTest
+{
+    private static final int NUM_DOCS = 100;
+
+    /**
+     * {@link CompactionMergeScheduler} queueing the submitted merges instead of running them in the compaction
+     * executor, so that the test decides when they are run.
+     */
+    private static class QueueingMergeScheduler extends CompactionMergeScheduler
+    {
+        private final BlockingQueue<SecondaryIndexMerge> submitted = new LinkedBlockingQueue<>();
+
+        private QueueingMergeScheduler(int maxMerges)
+        {
+            super(null, maxMerges);
+        }
+
+        @Override
+        void submit(SecondaryIndexMerge merge)
+        {
+            submitted.add(merge);
+        }
+    }
+
+    @Test
+    public void testStallsIndexingWhileMergesArePending() throws Exception
+    {
+        QueueingMergeScheduler scheduler = new QueueingMergeScheduler(1);
+        LogDocMergePolicy mergePolicy = new LogDocMergePolicy();
+        mergePolicy.setMergeFactor(2);
+        mergePolicy.setMinMergeDocs(1);
+        IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_48, new KeywordAnalyzer());
+        config.setMaxBufferedDocs(2);
+        config.setMergePolicy(mergePolicy);
+        config.setMergeScheduler(scheduler);
+        RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory, config);
+
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread indexer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for (int i = 0; i < NUM_DOCS; i++)
+                    {
+                        Document document = new Document();
+                        document.add(new StringField("key", String.valueOf(i), Field.Store.NO));
+                        writer.addDocument(document);
+                    }
+                }
+                catch (Throwable t)
+                {
+                    error.set(t);
+                }
+            }
+        };
+        indexer.start();
+
+        // No merge is run, so the indexer ends up stalled with the only merge slot taken
+        SecondaryIndexMerge merge = scheduler.submitted.poll(10, TimeUnit.SECONDS);
+        Assert.assertNotNull(merge);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (indexer.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(Thread.State.TIMED_WAITING, indexer.getState());
+        Assert.assertTrue(indexer.isAlive());
+        Assert.assertTrue(writer.hasPendingMerges());
+        Assert.assertTrue(scheduler.submitted.isEmpty());
+
+        // Running the merges lets the indexer go on
+        while (merge != null)
+        {
+            if (merge.next())
+            {
+                merge.merge();
+            }
+            merge = indexer.isAlive() || !scheduler.submitted.isEmpty()
+                    ? scheduler.submitted.poll(100, TimeUnit.MILLISECONDS)
+                    : null;
+            if (merge == null && indexer.isAlive())
+            {
+                merge = scheduler.submitted.poll(10, TimeUnit.SECONDS);
+            }
+        }
+        indexer.join(10000);
+        Assert.assertFalse(indexer.isAlive());
+        Assert.assertNull(error.get());
+        Assert.assertEquals(NUM_DOCS, writer.numDocs());
+
+        writer.close(false);
+        directory.close();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FilterCacheTest
+{
+    private static final String FIELD = "tenant";
+    private static final int NUM_DOCS = 100;
+    private static final int NUM_TENANTS = 4;
+
+    private RAMDirectory directory;
+    private IndexWriter writer;
+    private DirectoryReader reader;
+
+    @Before
+    public void before() throws Exception
+    {
+        directory = new RAMDirectory();
+        writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_48, new KeywordAnalyzer()));
+        for (int i = 0; i < NUM_DOCS; i++)
+        {
+            Document document = new Document();
+            document.add(new StringField(FIELD, String.valueOf(i % NUM_TENANTS), Field.Store.NO));
+            writer.addDocument(document);
+            if (i == NUM_DOCS / 2)
+            {
+                writer.commit(); // Two segments
+            }
+        }
+        writer.commit();
+        reader = DirectoryReader.open(writer, true);
+    }
+
+    @After
+    public void after() throws Exception
+    {
+        reader.close();
+        writer.close();
+        directory.close();
+    }
+
+    private static Query tenant(int tenant)
+    {
+        return new TermQuery(new Term(FIELD, String.valueOf(tenant)));
+    }
+
+    private int count(FilterCache filterCache, Query query) throws Exception
+    {
+        return new IndexSearcher(reader).search(filterCache.query(query), NUM_DOCS).totalHits;
+    }
+
+    private void reopen() throws Exception
+    {
+        DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer, true);
+        if (newReader != null)
+        {
+            reader.close();
+            reader = newReader;
+        }
+    }
+
+    @Test
+    public void testAdmittedOnSecondUse() throws Exception
+    {
+        FilterCache filterCache = new FilterCache(1);
+        int numSegments = reader.leaves().size();
+
+        Assert.assertEquals(NUM_DOCS / NUM_TENANTS, count(filterCache, tenant(0)));
+        Assert.assertEquals(0, filterCache.size());
+
+        Assert.assertEquals(NUM_DOCS / NUM_TENANTS, count(filterCache, tenant(0)));
+        Assert.assertEquals(numSegments, filterCache.size());
+        Assert.assertTrue(filterCache.weightedSize() > 0);
+        long hits = filterCache.hits();
+
+        Assert.assertEquals(NUM_DOCS / NUM_TENANTS, count(filterCache, tenant(0)));
+        Assert.assertEquals(numSegments, filterCache.size());
+        Assert.assertEquals(hits + numSegments, filterCache.hits());
+    }
+
+    @Test
+    public void testDisabled() throws Exception
+    {
+        FilterCache filterCache = new FilterCache(0);
+        Query query = filterCache.query(tenant(1));
+        Assert.assertEquals(new ConstantScoreQuery(tenant(1)), query);
+        Assert.assertEquals(NUM_DOCS / NUM_TENANTS, count(filterCache, tenant(1)));
+        Assert.assertEquals(NUM_DOCS / NUM_TENANTS, count(filterCache, tenant(1)));
+        Assert.assertEquals(0, filterCache.size());
+        Assert.assertEquals(0, filterCache.capacity());
+    }
+
+    @Test
+    public void testDeletionsApplied() throws Exception
+    {
+        FilterCache filterCache = new FilterCache(1);
+        count(filterCache, tenant(2));
+        count(filterCache, tenant(2));
+        Assert.assertTrue(filterCache.size() > 0);
+
+        writer.deleteDocuments(tenant(2));
+        reopen();
+        Assert.assertEquals(0, count(filterCache, tenant(2)));
+        Assert.assertEquals(NUM_DOCS / NUM_TENANTS, count(filterCache, tenant(3)));
+    }
+
+    @Test
+    public void testMergedSegmentsEvicted() throws Exception
+    {
+        FilterCache filterCache = new FilterCache(1);
+        count(filterCache, tenant(0));
+        count(filterCache, tenant(0));
+        Assert.assertTrue(filterCache.size() > 0);
+
+        writer.forceMerge(1);
+        reopen();
+        Assert.assertEquals(0, filterCache.size());
+        Assert.assertEquals(0, filterCache.weightedSize());
+        Assert.assertEquals(NUM_DOCS / NUM_TENANTS, count(filterCache, tenant(0)));
+        Assert.assertEquals(1, filterCache.size());
+    }
+
+    @Test
+    public void testInvalidateAll() throws Exception
+    {
+        FilterCache filterCache = new FilterCache(1);
+        count(filterCache, tenant(0));
+        count(filterCache, tenant(0));
+        Assert.assertTrue(filterCache.size() > 0);
+
+        filterCache.invalidateAll();
+        Assert.assertEquals(0, filterCache.size());
+        Assert.assertEquals(0, filterCache.weightedSize());
+
+        // The history is also discarded, so the query must be seen twice again
+        count(filterCache, tenant(0));
+        Assert.assertEquals(0, filterCache.size());
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class LuceneIndexTest
+{
+    private static final String ID = "id";
+    private static final String VALUE = "value";
+
+    private static LuceneIndex luceneIndex(int numShards)
+    {
+        List<String> paths = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++)
+        {
+            paths.add("shard" + i);
+        }
+        return new LuceneIndex(null, paths, 1D, 0D, 64, 5, 30, DirectoryType.FS, 0, 1, new KeywordAnalyzer());
+    }
+
+    private static DecoratedKey key(int i)
+    {
+        return new Murmur3Partitioner().decorateKey(ByteBufferUtil.bytes(i));
+    }
+
+    @Test
+    public void testShardSingle()
+    {
+        LuceneIndex index = luceneIndex(1);
+        Assert.assertEquals(1, index.getNumShards());
+        for (int i = 0; i < 100; i++)
+        {
+            Assert.assertEquals(0, index.shard(key(i)));
+        }
+    }
+
+    @Test
+    public void testShardRouting()
+    {
+        LuceneIndex index = luceneIndex(4);
+        Assert.assertEquals(4, index.getNumShards());
+        int[] counts = new int[4];
+        for (int i = 0; i < 1000; i++)
+        {
+            int shard = index.shard(key(i));
+            Assert.assertTrue(shard >= 0 && shard < 4);
+            Assert.assertEquals(shard, index.shard(key(i)));
+            counts[shard]++;
+        }
+        for (int count : counts)
+        {
+            Assert.assertTrue("Unbalanced shards " + Arrays.toString(counts), count > 100);
+        }
+    }
+
+    @Test
+    public void testAfterSameShard()
+    {
+        ScoreDoc after = new ScoreDoc(5, 1.5f, 2);
+        Assert.assertSame(after, LuceneIndex.after(2, 10, after));
+        Assert.assertNull(LuceneIndex.after(2, 10, null));
+    }
+
+    @Test
+    public void testAfterOtherShard()
+    {
+        // The tied hits of the previous shards are skipped
+        ScoreDoc after = new ScoreDoc(5, 1.5f, 2);
+        ScoreDoc start = LuceneIndex.after(1, 10, after);
+        Assert.assertEquals(9, start.doc);
+        Assert.assertEquals(1.5f, start.score, 0f);
+        Assert.assertEquals(1, start.shardIndex);
+
+        // The tied hits of the next shards are kept
+        start = LuceneIndex.after(3, 10, after);
+        Assert.assertEquals(-1, start.doc);
+        Assert.assertEquals(3, start.shardIndex);
+    }
+
+    @Test
+    public void testAfterFieldDoc()
+    {
+        Object[] fields = {42L};
+        FieldDoc after = new FieldDoc(5, Float.NaN, fields, 0);
+        ScoreDoc start = LuceneIndex.after(1, 10, after);
+        Assert.assertTrue(start instanceof FieldDoc);
+        Assert.assertSame(fields, ((FieldDoc) start).fields);
+        Assert.assertEquals(-1, start.doc);
+    }
+
+    @Test
+    public void testShardedPaging() throws Exception
+    {
+        int numShards = 3;
+        int numDocs = 300;
+        int pageSize = 7;
+        IndexSearcher[] searchers = new IndexSearcher[numShards];
+        IndexWriter[] writers = new IndexWriter[numShards];
+        for (int i = 0; i < numShards; i++)
+        {
+            writers[i] = new IndexWriter(new RAMDirectory(),
+                                         new IndexWriterConfig(Version.LUCENE_48, new KeywordAnalyzer()));
+        }
+        for (int i = 0; i < numDocs; i++)
+        {
+            Document document = new Document();
+            document.add(new StringField(ID, String.valueOf(i), Field.Store.YES));
+            document.add(new NumericDocValuesField(VALUE, i % 10)); // Lots of ties
+            writers[i % numShards].addDocument(document);
+        }
+        for (int i = 0; i < numShards; i++)
+        {
+            searchers[i] = new IndexSearcher(DirectoryReader.open(writers[i], true));
+        }
+
+        for (Sort sort : new Sort[]{new Sort(new SortField(VALUE, SortField.Type.LONG)), null})
+        {
+            Set<String> ids = new HashSet<>();
+            long lastValue = Long.MIN_VALUE;
+            ScoreDoc after = null;
+            while (true)
+            {
+                ScoreDoc[] page = page(searchers, sort, after, pageSize);
+                if (page.length == 0)
+                {
+                    break;
+                }
+                for (ScoreDoc scoreDoc : page)
+                {
+                    String id = searchers[scoreDoc.shardIndex].doc(scoreDoc.doc).get(ID);
+                    Assert.assertTrue("Duplicated hit " + id, ids.add(id));
+                    if (sort != null)
+                    {
+                        long value = (Long) ((FieldDoc) scoreDoc).fields[0];
+                        Assert.assertTrue(value >= lastValue);
+                        lastValue = value;
+                    }
+                }
+                after = page[page.length - 1];
+            }
+            Assert.assertEquals(numDocs, ids.size());
+        }
+
+        for (int i = 0; i < numShards; i++)
+        {
+            searchers[i].getIndexReader().close();
+            writers[i].close();
+        }
+    }
+
+    /**
+     * Returns the merged page of hits after the specified one, searching each shard as {@link LuceneIndex} does.
+     */
+    private static ScoreDoc[] page(IndexSearcher[] searchers, Sort sort, ScoreDoc after, int count) throws Exception
+    {
+        TopDocs[] shardHits = new TopDocs[searchers.length];
+        for (int shard = 0; shard < searchers.length; shard++)
+        {
+            IndexSearcher searcher = searchers[shard];
+            ScoreDoc start = LuceneIndex.after(shard, searcher.getIndexReader().maxDoc(), after);
+            shardHits[shard] = sort == null
+                               ? searcher.searchAfter(start, new MatchAllDocsQuery(), count)
+                               : searcher.searchAfter(start, new MatchAllDocsQuery(), count, sort);
+            for (ScoreDoc scoreDoc : shardHits[shard].scoreDocs)
+            {
+                scoreDoc.shardIndex = shard;
+            }
+        }
+        return TopDocs.merge(sort, count, shardHits).scoreDocs;
+    }
+
+    private static IndexWriter indexWriter(Directory directory) throws IOException
+    {
+        return new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_48, new KeywordAnalyzer()));
+    }
+
+    /**
+     * Returns a shard directory with some documents committed with the specified commit data.
+     */
+    private static Directory shardDirectory(int numDocs, Map<String, String> commitData) throws IOException
+    {
+        Directory directory = new RAMDirectory();
+        IndexWriter writer = indexWriter(directory);
+        for (int i = 0; i < numDocs; i++)
+        {
+            Document document = new Document();
+            document.add(new StringField(ID, String.valueOf(i), Field.Store.YES));
+            writer.addDocument(document);
+        }
+        writer.setCommitData(commitData);
+        writer.close();
+        return directory;
+    }
+
+    @Test
+    public void testCheckFormatOutdated() throws IOException
+    {
+        Map<String, String> oldCommitData = new HashMap<>();
+        oldCommitData.put(LuceneIndex.FORMAT_VERSION_KEY, "2");
+        oldCommitData.put(LuceneIndex.REPLAY_POSITION_KEY, "1:2");
+        Directory directory = shardDirectory(10, oldCommitData);
+
+        // The documents are discarded and the rebuild is flagged in the same commit
+        IndexWriter writer = indexWriter(directory);
+        Assert.assertTrue(LuceneIndex.checkFormat(writer, 1));
+        Assert.assertEquals(0, writer.numDocs());
+        writer.rollback();
+
+        // A restart before the rebuild still finds it pending
+        writer = indexWriter(directory);
+        Map<String, String> commitData = writer.getCommitData();
+        Assert.assertEquals(LuceneIndex.FORMAT_VERSION, commitData.get(LuceneIndex.FORMAT_VERSION_KEY));
+        Assert.assertEquals("1", commitData.get(LuceneIndex.SHARDS_KEY));
+        Assert.assertTrue(commitData.containsKey(LuceneIndex.REBUILD_PENDING_KEY));
+        Assert.assertFalse(commitData.containsKey(LuceneIndex.REPLAY_POSITION_KEY));
+        Assert.assertEquals(0, writer.numDocs());
+        Assert.assertTrue(LuceneIndex.checkFormat(writer, 1));
+
+        // The rebuild clears the flag along with the commit of the rebuilt documents
+        writer.addDocument(new Document());
+        LuceneIndex.clearRebuildPending(writer);
+        writer.close();
+        writer = indexWriter(directory);
+        Assert.assertFalse(LuceneIndex.checkFormat(writer, 1));
+        Assert.assertEquals(1, writer.numDocs());
+        writer.close();
+    }
+
+    @Test
+    public void testCheckFormatShards() throws IOException
+    {
+        Map<String, String> commitData = new HashMap<>();
+        commitData.put(LuceneIndex.FORMAT_VERSION_KEY, LuceneIndex.FORMAT_VERSION);
+        commitData.put(LuceneIndex.SHARDS_KEY, "2");
+        Directory directory = shardDirectory(10, commitData);
+
+        // Same format and shards
+        IndexWriter writer = indexWriter(directory);
+        Assert.assertFalse(LuceneIndex.checkFormat(writer, 2));
+        Assert.assertEquals(10, writer.numDocs());
+        writer.close();
+
+        // The documents are distributed into another number of shards
+        writer = indexWriter(directory);
+        Assert.assertTrue(LuceneIndex.checkFormat(writer, 3));
+        Assert.assertEquals(0, writer.numDocs());
+        Assert.assertEquals("3", writer.getCommitData().get(LuceneIndex.SHARDS_KEY));
+        writer.close();
+    }
+
+    @Test
+    public void testCheckFormatEmpty() throws IOException
+    {
+        // A new or empty index only needs the current format to be recorded
+        Directory directory = shardDirectory(0, new HashMap<String, String>());
+        IndexWriter writer = indexWriter(directory);
+        Assert.assertFalse(LuceneIndex.checkFormat(writer, 1));
+        writer.close();
+        writer = indexWriter(directory);
+        Assert.assertEquals(LuceneIndex.FORMAT_VERSION, writer.getCommitData().get(LuceneIndex.FORMAT_VERSION_KEY));
+        Assert.assertFalse(writer.getCommitData().containsKey(LuceneIndex.REBUILD_PENDING_KEY));
+        writer.close();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class OffHeapDirectoryTest
+{
+
+    private static void write(OffHeapDirectory directory, String name, long value) throws IOException
+    {
+        IndexOutput output = directory.createOutput(name, IOContext.DEFAULT);
+        try
+        {
+            output.writeLong(value);
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    private static long read(OffHeapDirectory directory, String name) throws IOException
+    {
+        IndexInput input = directory.openInput(name, IOContext.READ);
+        try
+        {
+            return input.readLong();
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    @Test
+    public void testLoad() throws IOException
+    {
+        OffHeapDirectory directory = new OffHeapDirectory(new RAMDirectory(), 1024);
+        write(directory, "_0.cfs", 1L);
+        Assert.assertEquals(0, directory.getOffHeapBytes());
+        Assert.assertEquals(1L, read(directory, "_0.cfs"));
+        Assert.assertEquals(8, directory.getOffHeapBytes());
+        Assert.assertEquals(1L, read(directory, "_0.cfs"));
+        Assert.assertEquals(8, directory.getOffHeapBytes());
+        directory.close();
+        Assert.assertEquals(0, directory.getOffHeapBytes());
+    }
+
+    @Test
+    public void testMaxBytes() throws IOException
+    {
+        OffHeapDirectory directory = new OffHeapDirectory(new RAMDirectory(), 12);
+        write(directory, "_0.cfs", 1L);
+        write(directory, "_1.cfs", 2L);
+        Assert.assertEquals(1L, read(directory, "_0.cfs"));
+        Assert.assertEquals(2L, read(directory, "_1.cfs"));
+        Assert.assertEquals(8, directory.getOffHeapBytes());
+        directory.close();
+    }
+
+    @Test
+    public void testMergeNotLoaded() throws IOException
+    {
+        OffHeapDirectory directory = new OffHeapDirectory(new RAMDirectory(), 1024);
+        write(directory, "_0.cfs", 1L);
+        IndexInput input = directory.openInput("_0.cfs", new IOContext(IOContext.Context.MERGE));
+        Assert.assertEquals(1L, input.readLong());
+        input.close();
+        Assert.assertEquals(0, directory.getOffHeapBytes());
+        directory.close();
+    }
+
+    @Test
+    public void testDeleteFile() throws IOException
+    {
+        OffHeapDirectory directory = new OffHeapDirectory(new RAMDirectory(), 1024);
+        write(directory, "_0.cfs", 1L);
+        IndexInput input = directory.openInput("_0.cfs", IOContext.READ);
+        directory.deleteFile("_0.cfs");
+        Assert.assertEquals(0, directory.getOffHeapBytes());
+        Assert.assertFalse(directory.fileExists("_0.cfs"));
+
+        // Open inputs keep reading the released copy
+        Assert.assertEquals(1L, input.readLong());
+        input.close();
+        directory.close();
+    }
+
+    @Test
+    public void testRewrittenFile() throws IOException
+    {
+        OffHeapDirectory directory = new OffHeapDirectory(new RAMDirectory(), 1024);
+        write(directory, "_0.cfs", 1L);
+        Assert.assertEquals(1L, read(directory, "_0.cfs"));
+        write(directory, "_0.cfs", 2L);
+        Assert.assertEquals(0, directory.getOffHeapBytes());
+        Assert.assertEquals(2L, read(directory, "_0.cfs"));
+        directory.close();
+    }
+
+    @Test
+    public void testSegmentsGenNotLoaded() throws IOException
+    {
+        OffHeapDirectory directory = new OffHeapDirectory(new RAMDirectory(), 1024);
+        write(directory, IndexFileNames.SEGMENTS_GEN, 1L);
+        Assert.assertEquals(1L, read(directory, IndexFileNames.SEGMENTS_GEN));
+        Assert.assertEquals(0, directory.getOffHeapBytes());
+        write(directory, IndexFileNames.SEGMENTS_GEN, 2L);
+        Assert.assertEquals(2L, read(directory, IndexFileNames.SEGMENTS_GEN));
+        directory.close();
+    }
+}
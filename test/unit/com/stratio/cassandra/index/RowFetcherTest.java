@@ -0,0 +1,331 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.Timer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RowFetcherTest
+{
+
+    private static RowFetcher rowFetcher(Executor executor, int concurrency)
+    {
+        Timer queueLatency = Metrics.newTimer(new MetricName("test", "RowFetcher", "QueueLatency"),
+                                              TimeUnit.MICROSECONDS,
+                                              TimeUnit.SECONDS);
+        Timer latency = Metrics.newTimer(new MetricName("test", "RowFetcher", "Latency"),
+                                         TimeUnit.MICROSECONDS,
+                                         TimeUnit.SECONDS);
+        return new RowFetcher(executor, concurrency, queueLatency, latency);
+    }
+
+    private static void awaitPermits(RowFetcher rowFetcher, int permits) throws InterruptedException
+    {
+        // Permits are released right after the waiting threads are notified
+        for (int i = 0; i < 100 && rowFetcher.availablePermits() != permits; i++)
+        {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(permits, rowFetcher.availablePermits());
+    }
+
+    @Test
+    public void testSequential()
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            final Thread caller = Thread.currentThread();
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 10; i++)
+            {
+                final int value = i;
+                tasks.add(new Callable<Integer>()
+                {
+                    @Override
+                    public Integer call()
+                    {
+                        Assert.assertSame(caller, Thread.currentThread());
+                        return value;
+                    }
+                });
+            }
+            List<Integer> results = rowFetcher(executor, 1).fetch(tasks);
+            for (int i = 0; i < 10; i++)
+            {
+                Assert.assertEquals(i, results.get(i).intValue());
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelOrderAndConcurrency() throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 50; i++)
+            {
+                final int value = i;
+                tasks.add(new Callable<Integer>()
+                {
+                    @Override
+                    public Integer call() throws InterruptedException
+                    {
+                        int current = running.incrementAndGet();
+                        while (true)
+                        {
+                            int max = maxRunning.get();
+                            if (current <= max || maxRunning.compareAndSet(max, current))
+                            {
+                                break;
+                            }
+                        }
+                        Thread.sleep(50 - value);
+                        running.decrementAndGet();
+                        return value;
+                    }
+                });
+            }
+            RowFetcher rowFetcher = rowFetcher(executor, 3);
+            List<Integer> results = rowFetcher.fetch(tasks);
+            for (int i = 0; i < 50; i++)
+            {
+                Assert.assertEquals(i, results.get(i).intValue());
+            }
+            Assert.assertTrue(maxRunning.get() <= 3);
+            awaitPermits(rowFetcher, 3);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureReleasesPermits() throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            final IllegalStateException failure = new IllegalStateException("test");
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            tasks.add(new Callable<Integer>()
+            {
+                @Override
+                public Integer call()
+                {
+                    throw failure;
+                }
+            });
+            for (int i = 0; i < 10; i++)
+            {
+                tasks.add(new Callable<Integer>()
+                {
+                    @Override
+                    public Integer call() throws InterruptedException
+                    {
+                        Thread.sleep(10);
+                        return 0;
+                    }
+                });
+            }
+            RowFetcher rowFetcher = rowFetcher(executor, 2);
+            try
+            {
+                rowFetcher.fetch(tasks);
+                Assert.fail("Expected failure");
+            }
+            catch (RuntimeException e)
+            {
+                Assert.assertSame(failure, e.getCause());
+            }
+            awaitPermits(rowFetcher, 2);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInterruption() throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            final CountDownLatch started = new CountDownLatch(2);
+            final CountDownLatch release = new CountDownLatch(1);
+            final AtomicInteger interrupted = new AtomicInteger();
+            final AtomicInteger completed = new AtomicInteger();
+            final List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 5; i++)
+            {
+                tasks.add(new Callable<Integer>()
+                {
+                    @Override
+                    public Integer call()
+                    {
+                        started.countDown();
+                        while (true)
+                        {
+                            try
+                            {
+                                release.await();
+                                break;
+                            }
+                            catch (InterruptedException e)
+                            {
+                                interrupted.incrementAndGet();
+                            }
+                        }
+                        completed.incrementAndGet();
+                        return 0;
+                    }
+                });
+            }
+
+            final RowFetcher rowFetcher = rowFetcher(executor, 2);
+            final AtomicInteger outcome = new AtomicInteger();
+            Thread caller = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        rowFetcher.fetch(tasks);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // The interruption is reported and the interrupt status is kept
+                        if (e.getCause() instanceof InterruptedException && isInterrupted())
+                        {
+                            outcome.set(1);
+                        }
+                    }
+                }
+            };
+            caller.start();
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            caller.interrupt();
+            caller.join(TimeUnit.SECONDS.toMillis(10));
+
+            Assert.assertFalse(caller.isAlive());
+            Assert.assertEquals(1, outcome.get());
+
+            // The running tasks are not interrupted, and keep their permits until they finish
+            Assert.assertEquals(0, rowFetcher.availablePermits());
+            release.countDown();
+            awaitPermits(rowFetcher, 2);
+            Assert.assertEquals(0, interrupted.get());
+            Assert.assertEquals(2, completed.get());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureCancelsPendingTasks() throws InterruptedException
+    {
+        // Runs the first task right away and keeps the next ones waiting until the fetch has failed
+        final List<Runnable> waiting = new ArrayList<>();
+        Executor executor = new Executor()
+        {
+            private boolean first = true;
+
+            @Override
+            public void execute(Runnable command)
+            {
+                if (first)
+                {
+                    first = false;
+                    command.run();
+                }
+                else
+                {
+                    waiting.add(command);
+                }
+            }
+        };
+        final IllegalStateException failure = new IllegalStateException("test");
+        final AtomicInteger run = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        tasks.add(new Callable<Integer>()
+        {
+            @Override
+            public Integer call()
+            {
+                throw failure;
+            }
+        });
+        for (int i = 0; i < 3; i++)
+        {
+            tasks.add(new Callable<Integer>()
+            {
+                @Override
+                public Integer call()
+                {
+                    run.incrementAndGet();
+                    return 0;
+                }
+            });
+        }
+        RowFetcher rowFetcher = rowFetcher(executor, 4);
+        try
+        {
+            rowFetcher.fetch(tasks);
+            Assert.fail("Expected failure");
+        }
+        catch (RuntimeException e)
+        {
+            Assert.assertSame(failure, e.getCause());
+        }
+
+        // The cancelled tasks release their permits without waiting to be run, and don't read anything when run
+        Assert.assertEquals(3, waiting.size());
+        awaitPermits(rowFetcher, 4);
+        for (Runnable command : waiting)
+        {
+            command.run();
+        }
+        Assert.assertEquals(0, run.get());
+        Assert.assertEquals(4, rowFetcher.availablePermits());
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.ColumnIdentifier;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.index.SecondaryIndex;
+import org.apache.cassandra.io.sstable.CQLSSTableWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class RowIndexBuilderTest extends CQLTester
+{
+    private static final String TABLE = "CREATE TABLE %s (pk int, ck int, lucene text, v text, s text static, " +
+                                        "PRIMARY KEY (pk, ck))";
+    private static final int PARTITIONS = 10;
+    private static final int ROWS_PER_PARTITION = 10;
+
+    private String indexName;
+
+    /**
+     * Creates a table whose data is spread across several SSTables, with overwrites, row deletions and partition
+     * deletions, so the SSTables have to be merged to get the live rows.
+     */
+    private void createTableWithData() throws Throwable
+    {
+        createTable(TABLE);
+        for (int pk = 0; pk < PARTITIONS; pk++)
+        {
+            execute("INSERT INTO %s (pk, s) VALUES (?, ?)", pk, "s" + pk);
+            for (int ck = 0; ck < ROWS_PER_PARTITION; ck++)
+            {
+                execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?)", pk, ck, "old");
+            }
+        }
+        flush();
+        for (int pk = 0; pk < PARTITIONS; pk++)
+        {
+            for (int ck = 0; ck < ROWS_PER_PARTITION; ck += 2)
+            {
+                execute("UPDATE %s SET v = ? WHERE pk = ? AND ck = ?", "new", pk, ck);
+            }
+            execute("DELETE FROM %s WHERE pk = ? AND ck = ?", pk, ROWS_PER_PARTITION - 1);
+        }
+        flush();
+        execute("DELETE FROM %s WHERE pk = ?", PARTITIONS - 1);
+        flush();
+    }
+
+    private void createLuceneIndex(int shards) throws Throwable
+    {
+        indexName = currentTable() + "_idx";
+        createIndex(String.format("CREATE CUSTOM INDEX %s ON %%s (lucene) " +
+                                  "USING 'org.apache.cassandra.db.index.stratio.RowIndex' " +
+                                  "WITH OPTIONS = {'refresh_seconds':'1', 'shards':'%d', 'rebuild_threads':'3', " +
+                                  "'schema':'{fields:{v:{type:\"string\"},s:{type:\"string\"}}}'}",
+                                  indexName,
+                                  shards));
+    }
+
+    /**
+     * Returns the created {@link RowIndex} once its initial build, which runs in background, has finished.
+     */
+    private RowIndex builtIndex() throws Throwable
+    {
+        RowIndex index = null;
+        for (SecondaryIndex secondaryIndex : currentCfs().indexManager.getIndexes())
+        {
+            if (secondaryIndex instanceof RowIndex && indexName.equals(secondaryIndex.getIndexName()))
+            {
+                index = (RowIndex) secondaryIndex;
+            }
+        }
+        Assert.assertNotNull(index);
+        ByteBuffer column = new ColumnIdentifier("lucene", true).bytes;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (!index.isIndexBuilt(column) && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(index.isIndexBuilt(column));
+        return index;
+    }
+
+    private ColumnFamilyStore currentCfs()
+    {
+        return Keyspace.open(KEYSPACE).getColumnFamilyStore(currentTable());
+    }
+
+    private UntypedResultSet search(String search) throws Throwable
+    {
+        return execute("SELECT * FROM %s WHERE lucene = ? LIMIT 10000", search);
+    }
+
+    private void assertDocuments(RowIndex index) throws Throwable
+    {
+        int livePartitions = PARTITIONS - 1;
+        int liveRows = ROWS_PER_PARTITION - 1;
+
+        UntypedResultSet all = search("{refresh:true}");
+        Assert.assertEquals(livePartitions * liveRows, all.size());
+        Set<String> keys = new HashSet<>();
+        for (UntypedResultSet.Row row : all)
+        {
+            int pk = row.getInt("pk");
+            int ck = row.getInt("ck");
+            Assert.assertTrue("Duplicated row " + pk + ":" + ck, keys.add(pk + ":" + ck));
+            Assert.assertTrue(pk < livePartitions);
+            Assert.assertTrue(ck < liveRows);
+            Assert.assertEquals("s" + pk, row.getString("s"));
+        }
+
+        UntypedResultSet updated = search("{filter:{type:\"match\",field:\"v\",value:\"new\"},refresh:true}");
+        Assert.assertEquals(livePartitions * ((liveRows + 1) / 2), updated.size());
+        for (UntypedResultSet.Row row : updated)
+        {
+            Assert.assertEquals(0, row.getInt("ck") % 2);
+        }
+
+        UntypedResultSet notUpdated = search("{filter:{type:\"match\",field:\"v\",value:\"old\"},refresh:true}");
+        Assert.assertEquals(livePartitions * (liveRows / 2), notUpdated.size());
+        for (UntypedResultSet.Row row : notUpdated)
+        {
+            Assert.assertEquals(1, row.getInt("ck") % 2);
+        }
+
+        UntypedResultSet statics = search("{filter:{type:\"match\",field:\"s\",value:\"s0\"},refresh:true}");
+        Assert.assertEquals(liveRows, statics.size());
+
+        // No stale nor deleted documents are left
+        Assert.assertEquals(livePartitions * liveRows, index.estimateResultRows());
+    }
+
+    private void testRebuild(int shards) throws Throwable
+    {
+        createTableWithData();
+
+        // The index creation builds the index from the existing SSTables
+        createLuceneIndex(shards);
+        RowIndex index = builtIndex();
+        assertDocuments(index);
+
+        // An explicit rebuild replaces the index contents
+        ColumnFamilyStore.rebuildSecondaryIndex(KEYSPACE, currentTable(), indexName);
+        assertDocuments(index);
+
+        // The rebuilt index keeps being updated
+        execute("UPDATE %s SET v = ? WHERE pk = ? AND ck = ?", "other", 0, 1);
+        UntypedResultSet other = search("{filter:{type:\"match\",field:\"v\",value:\"other\"},refresh:true}");
+        Assert.assertEquals(1, other.size());
+    }
+
+    @Test
+    public void testRebuild() throws Throwable
+    {
+        testRebuild(1);
+    }
+
+    @Test
+    public void testRebuildShards() throws Throwable
+    {
+        testRebuild(3);
+    }
+
+    /**
+     * Returns the number of rows with the specified value.
+     */
+    private int count(String value) throws Throwable
+    {
+        String search = "{filter:{type:\"match\",field:\"v\",value:\"" + value + "\"},refresh:true}";
+        return search(search).size();
+    }
+
+    private void testLoadNewSSTables(int shards) throws Throwable
+    {
+        createTable(TABLE);
+        createLuceneIndex(shards);
+        RowIndex index = builtIndex();
+
+        // Partitions 0 to 4 are written locally
+        for (int pk = 0; pk < 5; pk++)
+        {
+            for (int ck = 0; ck < 5; ck++)
+            {
+                execute("INSERT INTO %s (pk, ck, v) VALUES (?, ?, ?)", pk, ck, "local");
+            }
+        }
+        flush();
+
+        // Partitions 3 to 9 are received in new SSTables, as if they were streamed, overlapping the local partitions 3
+        // and 4, whose rows 3 and 4 are overwritten
+        File directory = currentCfs().directories.getDirectoryForNewSSTables();
+        String table = KEYSPACE + "." + currentTable();
+        CQLSSTableWriter writer = CQLSSTableWriter.builder()
+                                                  .inDirectory(directory)
+                                                  .withPartitioner(DatabaseDescriptor.getPartitioner())
+                                                  .forTable(String.format(TABLE, table))
+                                                  .using("INSERT INTO " + table + " (pk, ck, v) VALUES (?, ?, ?)")
+                                                  .build();
+        for (int pk = 3; pk < 10; pk++)
+        {
+            for (int ck = 3; ck < 8; ck++)
+            {
+                writer.addRow(pk, ck, "streamed");
+            }
+        }
+        writer.close();
+        currentCfs().loadNewSSTables();
+
+        // The new partitions are built in bulk and the overlapping ones are reindexed with their merged rows
+        UntypedResultSet all = search("{refresh:true}");
+        Set<String> keys = new HashSet<>();
+        for (UntypedResultSet.Row row : all)
+        {
+            int pk = row.getInt("pk");
+            int ck = row.getInt("ck");
+            Assert.assertTrue("Duplicated row " + pk + ":" + ck, keys.add(pk + ":" + ck));
+            Assert.assertEquals(ck >= 3 && pk >= 3 ? "streamed" : "local", row.getString("v"));
+        }
+        Assert.assertEquals(3 * 5 + 2 * 8 + 5 * 5, all.size());
+        Assert.assertEquals(3 * 5 + 2 * 3, count("local"));
+        Assert.assertEquals(7 * 5, count("streamed"));
+        Assert.assertEquals(all.size(), index.estimateResultRows());
+
+        // A full rebuild gives the same documents
+        ColumnFamilyStore.rebuildSecondaryIndex(KEYSPACE, currentTable(), indexName);
+        Assert.assertEquals(3 * 5 + 2 * 3, count("local"));
+        Assert.assertEquals(7 * 5, count("streamed"));
+        Assert.assertEquals(all.size(), index.estimateResultRows());
+    }
+
+    @Test
+    public void testLoadNewSSTables() throws Throwable
+    {
+        testLoadNewSSTables(1);
+    }
+
+    @Test
+    public void testLoadNewSSTablesShards() throws Throwable
+    {
+        testLoadNewSSTables(3);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.stratio.cassandra.index.schema.Columns;
+import com.stratio.cassandra.index.schema.Schema;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.cql3.ColumnIdentifier;
+import org.apache.cassandra.db.ArrayBackedSortedColumns;
+import org.apache.cassandra.db.BufferCell;
+import org.apache.cassandra.db.BufferDeletedCell;
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.composites.Composite;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+public class RowMapperWideTest
+{
+
+    private static final long TIMESTAMP = 1000;
+    private static final long NOW = 2000;
+
+    private static final CFMetaData metadata = CFMetaData.compile("CREATE TABLE test ("
+                                                                  + "pk text, ck int, lucene text, "
+                                                                  + "v text, w text, s text static, l list<text>, "
+                                                                  + "PRIMARY KEY (pk, ck))", "ks");
+
+    private static RowMapperWide rowMapper(String json) throws IOException
+    {
+        ColumnDefinition indexedColumn = definition("lucene");
+        return (RowMapperWide) RowMapper.build(metadata, indexedColumn, Schema.fromJson(json));
+    }
+
+    private static ColumnDefinition definition(String name)
+    {
+        return metadata.getColumnDefinition(new ColumnIdentifier(name, true));
+    }
+
+    private static Composite prefix(int clusteringKey)
+    {
+        return metadata.comparator.make(clusteringKey);
+    }
+
+    private static CellName cellName(Composite prefix, String column)
+    {
+        return metadata.comparator.create(prefix, definition(column));
+    }
+
+    private static void add(ColumnFamily columnFamily, Composite prefix, String column, String value)
+    {
+        columnFamily.addColumn(new BufferCell(cellName(prefix, column), UTF8Type.instance.decompose(value), TIMESTAMP));
+    }
+
+    private static void addMarker(ColumnFamily columnFamily, Composite prefix)
+    {
+        CellName marker = metadata.comparator.rowMarker(prefix);
+        columnFamily.addColumn(new BufferCell(marker, ByteBufferUtil.EMPTY_BYTE_BUFFER, TIMESTAMP));
+    }
+
+    private static ColumnFamily columnFamily()
+    {
+        return ArrayBackedSortedColumns.factory.create(metadata);
+    }
+
+    @Test
+    public void testIsComplete() throws IOException
+    {
+        RowMapperWide rowMapper = rowMapper("{fields:{v:{type:\"string\"}}}");
+        ColumnFamily columnFamily = columnFamily();
+        add(columnFamily, prefix(1), "v", "a");
+        Assert.assertTrue(rowMapper.isComplete(columnFamily, NOW));
+    }
+
+    @Test
+    public void testIsCompleteWithoutIndexedColumn() throws IOException
+    {
+        RowMapperWide rowMapper = rowMapper("{fields:{v:{type:\"string\"}}}");
+        ColumnFamily columnFamily = columnFamily();
+        add(columnFamily, prefix(1), "w", "a");
+        Assert.assertFalse(rowMapper.isComplete(columnFamily, NOW));
+    }
+
+    @Test
+    public void testIsCompleteWithDeletedColumn() throws IOException
+    {
+        RowMapperWide rowMapper = rowMapper("{fields:{v:{type:\"string\"}}}");
+        ColumnFamily columnFamily = columnFamily();
+        columnFamily.addColumn(new BufferDeletedCell(cellName(prefix(1), "v"), (int) (NOW / 1000), TIMESTAMP));
+        Assert.assertFalse(rowMapper.isComplete(columnFamily, NOW));
+    }
+
+    @Test
+    public void testIsCompleteWithCollection() throws IOException
+    {
+        RowMapperWide rowMapper = rowMapper("{fields:{v:{type:\"string\"}, l:{type:\"string\"}}}");
+        ColumnFamily columnFamily = columnFamily();
+        add(columnFamily, prefix(1), "v", "a");
+        Assert.assertFalse(rowMapper.isComplete(columnFamily, NOW));
+    }
+
+    @Test
+    public void testIsCompleteWithStaticColumn() throws IOException
+    {
+        RowMapperWide rowMapper = rowMapper("{fields:{v:{type:\"string\"}, s:{type:\"string\"}}}");
+
+        ColumnFamily withoutStatic = columnFamily();
+        add(withoutStatic, prefix(1), "v", "a");
+        Assert.assertFalse(rowMapper.isComplete(withoutStatic, NOW));
+
+        ColumnFamily withStatic = columnFamily();
+        add(withStatic, metadata.comparator.staticPrefix(), "s", "b");
+        add(withStatic, prefix(1), "v", "a");
+        Map<CellName, ColumnFamily> rows = rowMapper.splitCells(withStatic);
+        Assert.assertTrue(rowMapper.isComplete(rows.values().iterator().next(), NOW));
+    }
+
+    @Test
+    public void testSplitCells() throws IOException
+    {
+        RowMapperWide rowMapper = rowMapper("{fields:{v:{type:\"string\"}}}");
+        ColumnFamily columnFamily = columnFamily();
+        add(columnFamily, prefix(1), "v", "a");
+        add(columnFamily, prefix(2), "v", "b");
+        add(columnFamily, prefix(2), "w", "c");
+
+        Map<CellName, ColumnFamily> rows = rowMapper.splitCells(columnFamily);
+        Assert.assertEquals(2, rows.size());
+        for (Map.Entry<CellName, ColumnFamily> entry : rows.entrySet())
+        {
+            // The missing row marker is added
+            ColumnFamily row = entry.getValue();
+            Assert.assertEquals(entry.getKey(), row.iterator().next().name());
+            Assert.assertEquals(entry.getKey(), rowMapper.clusteringKey(row));
+        }
+        Assert.assertEquals(2, rows.get(metadata.comparator.rowMarker(prefix(1))).getColumnCount());
+        Assert.assertEquals(3, rows.get(metadata.comparator.rowMarker(prefix(2))).getColumnCount());
+    }
+
+    @Test
+    public void testSplitCellsWithStaticColumn() throws IOException
+    {
+        RowMapperWide rowMapper = rowMapper("{fields:{v:{type:\"string\"}, s:{type:\"string\"}}}");
+        ColumnFamily columnFamily = columnFamily();
+        add(columnFamily, metadata.comparator.staticPrefix(), "s", "b");
+        add(columnFamily, prefix(1), "v", "a");
+        add(columnFamily, prefix(2), "v", "c");
+
+        Map<CellName, ColumnFamily> rows = rowMapper.splitCells(columnFamily);
+        Assert.assertEquals(2, rows.size());
+        for (Map.Entry<CellName, ColumnFamily> entry : rows.entrySet())
+        {
+            ColumnFamily row = entry.getValue();
+            Assert.assertEquals(entry.getKey(), rowMapper.clusteringKey(row));
+            Columns columns = rowMapper.columns(new Row(rowMapper.partitionKey(UTF8Type.instance.decompose("p")), row));
+            Assert.assertEquals("b", columns.getColumn("s").getValue());
+        }
+    }
+
+    @Test
+    public void testSplitCellsWithOnlyStaticColumn() throws IOException
+    {
+        RowMapperWide rowMapper = rowMapper("{fields:{s:{type:\"string\"}}}");
+        ColumnFamily columnFamily = columnFamily();
+        add(columnFamily, metadata.comparator.staticPrefix(), "s", "b");
+        Assert.assertTrue(rowMapper.splitCells(columnFamily).isEmpty());
+    }
+
+    @Test
+    public void testSplitRowsWithStaticColumn() throws IOException
+    {
+        RowMapperWide rowMapper = rowMapper("{fields:{v:{type:\"string\"}, s:{type:\"string\"}}}");
+        ColumnFamily columnFamily = columnFamily();
+        add(columnFamily, metadata.comparator.staticPrefix(), "s", "b");
+        addMarker(columnFamily, prefix(1));
+        add(columnFamily, prefix(1), "v", "a");
+        addMarker(columnFamily, prefix(2));
+        add(columnFamily, prefix(2), "v", "c");
+
+        Map<CellName, ColumnFamily> rows = rowMapper.splitRows(columnFamily);
+        Assert.assertEquals(2, rows.size());
+        ColumnFamily row = rows.get(metadata.comparator.rowMarker(prefix(1)));
+        Assert.assertEquals(3, row.getColumnCount());
+        Columns columns = rowMapper.columns(new Row(rowMapper.partitionKey(UTF8Type.instance.decompose("p")), row));
+        Assert.assertEquals("a", columns.getColumn("v").getValue());
+        Assert.assertEquals("b", columns.getColumn("s").getValue());
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import com.stratio.cassandra.index.schema.ColumnMapper;
+import com.stratio.cassandra.index.schema.ColumnMapperInteger;
+import com.stratio.cassandra.index.schema.ColumnMapperString;
+import com.stratio.cassandra.index.schema.Schema;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+public class SearchCacheTest
+{
+    private static final String SORTED = "{filter:{type:\"match\",field:\"name\",value:\"alice\"}," +
+                                         "sort:{fields:[{field:\"age\",reverse:false}]}}";
+    private static final String RELEVANCE = "{query:{type:\"match\",field:\"name\",value:\"alice\"}}";
+    private static final String FILTER = "{filter:{type:\"match\",field:\"name\",value:\"alice\"}}";
+
+    private RowIndexMetrics metrics;
+    private SearchCache searchCache;
+
+    @Before
+    public void before()
+    {
+        Map<String, ColumnMapper<?>> mappers = new HashMap<>();
+        mappers.put("name", new ColumnMapperString(true));
+        mappers.put("age", new ColumnMapperInteger(1f));
+        Schema schema = new Schema(StandardAnalyzer.class.getName(), mappers);
+        FilterCache filterCache = new FilterCache(1);
+        metrics = new RowIndexMetrics("ks", "table", "search_cache_test", null, filterCache, null);
+        searchCache = new SearchCache(schema, metrics, filterCache);
+    }
+
+    @After
+    public void after()
+    {
+        metrics.release();
+    }
+
+    @Test
+    public void testHit()
+    {
+        SearchCache.CachedSearch first = searchCache.get(ByteBufferUtil.bytes(SORTED));
+        Assert.assertEquals(1, metrics.searchCacheMisses.count());
+        Assert.assertEquals(0, metrics.searchCacheHits.count());
+
+        // Equal contents in another buffer
+        SearchCache.CachedSearch second = searchCache.get(ByteBufferUtil.bytes(SORTED));
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, metrics.searchCacheMisses.count());
+        Assert.assertEquals(1, metrics.searchCacheHits.count());
+
+        searchCache.get(ByteBufferUtil.bytes(RELEVANCE));
+        Assert.assertEquals(2, metrics.searchCacheMisses.count());
+    }
+
+    @Test
+    public void testRequestBufferNotRetained()
+    {
+        ByteBuffer json = ByteBufferUtil.bytes(SORTED);
+        SearchCache.CachedSearch first = searchCache.get(json);
+
+        // Reuse the request buffer for another search
+        ByteBuffer reused = json.duplicate();
+        while (reused.hasRemaining())
+        {
+            reused.put((byte) ' ');
+        }
+        Assert.assertSame(first, searchCache.get(ByteBufferUtil.bytes(SORTED)));
+        Assert.assertEquals(1, metrics.searchCacheHits.count());
+    }
+
+    @Test
+    public void testCachedSearch()
+    {
+        SearchCache.CachedSearch sorted = searchCache.get(ByteBufferUtil.bytes(SORTED));
+        Assert.assertNotNull(sorted.getSort());
+        Assert.assertFalse(sorted.usesRelevance());
+        Assert.assertTrue(sorted.usesRelevanceOrSorting());
+        Assert.assertTrue(sorted.query(null) instanceof BooleanQuery);
+
+        SearchCache.CachedSearch relevance = searchCache.get(ByteBufferUtil.bytes(RELEVANCE));
+        Assert.assertNull(relevance.getSort());
+        Assert.assertTrue(relevance.usesRelevance());
+        Assert.assertTrue(relevance.usesRelevanceOrSorting());
+
+        SearchCache.CachedSearch filter = searchCache.get(ByteBufferUtil.bytes(FILTER));
+        Assert.assertFalse(filter.usesRelevanceOrSorting());
+        Assert.assertEquals(filter.query(new MatchAllDocsQuery()), filter.query(new MatchAllDocsQuery()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid()
+    {
+        searchCache.get(ByteBufferUtil.bytes("{filter:{type:\"match\",field:\"unknown\",value:\"alice\"}}"));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.apache.cassandra.db.BufferDecoratedKey;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.lucene.search.ScoreDoc;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SearchIteratorTest
+{
+
+    private static final int BATCH_SIZE = 10;
+
+    /**
+     * {@link SearchIterator} over a fixed list of hits, whose rows are accepted if their hit number is a multiple of
+     * {@link #step}.
+     */
+    private static class TestSearchIterator extends SearchIterator
+    {
+        private final List<SearchResult> hits;
+        private final int step;
+        private final List<Integer> pageSizes = new ArrayList<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        private TestSearchIterator(int numHits, int step, int limit, int maxPageSize, int filteringPageSize)
+        {
+            super(limit, maxPageSize, filteringPageSize, BATCH_SIZE);
+            this.step = step;
+            this.hits = new ArrayList<>(numHits);
+            for (int i = 0; i < numHits; i++)
+            {
+                BufferDecoratedKey key = new BufferDecoratedKey(new LongToken((long) i), ByteBufferUtil.bytes(i));
+                hits.add(new SearchResult(key, null, new ScoreDoc(i, 1.0f)));
+            }
+        }
+
+        @Override
+        protected List<SearchResult> search(SearchResult after, int count)
+        {
+            pageSizes.add(count);
+            int from = after == null ? 0 : hits.indexOf(after) + 1;
+            return new ArrayList<>(hits.subList(from, Math.min(from + count, hits.size())));
+        }
+
+        @Override
+        protected List<Row> rows(List<SearchResult> searchResults)
+        {
+            batchSizes.add(searchResults.size());
+            List<Row> rows = new ArrayList<>(searchResults.size());
+            for (SearchResult searchResult : searchResults)
+            {
+                rows.add(new Row(searchResult.getPartitionKey(), null));
+            }
+            return rows;
+        }
+
+        @Override
+        protected boolean accepted(Row row)
+        {
+            return number(row) % step == 0;
+        }
+    }
+
+    private static int number(Row row)
+    {
+        return ByteBufferUtil.toInt(row.key.getKey());
+    }
+
+    private static List<Integer> collect(SearchIterator iterator, int limit)
+    {
+        List<Integer> numbers = new ArrayList<>();
+        while (numbers.size() < limit && iterator.hasNext())
+        {
+            numbers.add(number(iterator.next()));
+        }
+        return numbers;
+    }
+
+    @Test
+    public void testOrderAcrossBatches()
+    {
+        TestSearchIterator iterator = new TestSearchIterator(95, 1, 1000, 1000, 100);
+        List<Integer> numbers = collect(iterator, 1000);
+        Assert.assertEquals(95, numbers.size());
+        for (int i = 0; i < numbers.size(); i++)
+        {
+            Assert.assertEquals(i, numbers.get(i).intValue());
+        }
+        for (int batchSize : iterator.batchSizes)
+        {
+            Assert.assertTrue(batchSize <= BATCH_SIZE);
+        }
+        Assert.assertEquals(10, iterator.batchSizes.size());
+    }
+
+    @Test
+    public void testOrderAcrossPages()
+    {
+        TestSearchIterator iterator = new TestSearchIterator(95, 1, 1000, 25, 10);
+        List<Integer> numbers = collect(iterator, 1000);
+        Assert.assertEquals(95, numbers.size());
+        for (int i = 0; i < numbers.size(); i++)
+        {
+            Assert.assertEquals(i, numbers.get(i).intValue());
+        }
+        Assert.assertEquals(4, iterator.numPages);
+        Assert.assertEquals(95, iterator.numDocs);
+    }
+
+    @Test
+    public void testFilteringAcrossPages()
+    {
+        TestSearchIterator iterator = new TestSearchIterator(200, 3, 20, 100, 15);
+        List<Integer> numbers = collect(iterator, 20);
+        Assert.assertEquals(20, numbers.size());
+        for (int i = 0; i < numbers.size(); i++)
+        {
+            Assert.assertEquals(3 * i, numbers.get(i).intValue());
+        }
+
+        // The first page is sized by the limit, the next ones by the missing rows or the filtering page size
+        Assert.assertEquals(20, iterator.pageSizes.get(0).intValue());
+        Assert.assertEquals(15, iterator.pageSizes.get(1).intValue());
+        Assert.assertEquals(15, iterator.pageSizes.get(2).intValue());
+        Assert.assertEquals(15, iterator.pageSizes.get(3).intValue());
+    }
+
+    @Test
+    public void testStopsReadingAtLimit()
+    {
+        TestSearchIterator iterator = new TestSearchIterator(1000, 1, 25, 1000, 100);
+        List<Integer> numbers = collect(iterator, 25);
+        Assert.assertEquals(25, numbers.size());
+        Assert.assertEquals(24, numbers.get(24).intValue());
+        Assert.assertEquals(1, iterator.pageSizes.size());
+        Assert.assertEquals(3, iterator.batchSizes.size());
+    }
+
+    @Test
+    public void testNoHits()
+    {
+        TestSearchIterator iterator = new TestSearchIterator(0, 1, 10, 1000, 100);
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals(1, iterator.numPages);
+        Assert.assertTrue(iterator.batchSizes.isEmpty());
+    }
+
+}
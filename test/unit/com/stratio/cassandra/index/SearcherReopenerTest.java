@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TrackingIndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SearcherReopenerTest
+{
+    private static final String FIELD = "key";
+
+    private RAMDirectory directory;
+    private IndexWriter indexWriter;
+    private TrackingIndexWriter writer;
+    private SearcherManager manager;
+    private RowIndexMetrics metrics;
+    private SearcherReopener reopener;
+
+    @Before
+    public void before() throws Exception
+    {
+        directory = new RAMDirectory();
+        indexWriter = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_48, new KeywordAnalyzer()));
+        writer = new TrackingIndexWriter(indexWriter);
+        manager = new SearcherManager(indexWriter, true, null);
+        metrics = new RowIndexMetrics("ks", "table", "reopener_test", null, null, null);
+    }
+
+    @After
+    public void after() throws Exception
+    {
+        if (reopener != null)
+        {
+            reopener.close();
+        }
+        metrics.release();
+        manager.close();
+        indexWriter.close();
+        directory.close();
+    }
+
+    private void start(double maxStaleSecs, double minStaleSecs)
+    {
+        reopener = new SearcherReopener(writer, manager, maxStaleSecs, minStaleSecs, metrics);
+        reopener.start();
+    }
+
+    private void write(String key) throws Exception
+    {
+        Document document = new Document();
+        document.add(new StringField(FIELD, key, Field.Store.NO));
+        writer.updateDocument(new Term(FIELD, key), document);
+        reopener.written();
+    }
+
+    private int count(String key) throws Exception
+    {
+        IndexSearcher searcher = manager.acquire();
+        try
+        {
+            return searcher.getIndexReader().docFreq(new Term(FIELD, key));
+        }
+        finally
+        {
+            manager.release(searcher);
+        }
+    }
+
+    @Test
+    public void testIdleNotReopened() throws Exception
+    {
+        start(0.1, 0.01);
+        Thread.sleep(300);
+        Assert.assertEquals(0, metrics.reopenLatency.count());
+        Assert.assertEquals(0, reopener.getStalenessMillis());
+    }
+
+    @Test
+    public void testWaitForCurrentGeneration() throws Exception
+    {
+        start(3600, 0.01);
+        write("a");
+        Assert.assertEquals(0, count("a"));
+
+        long startTime = System.nanoTime();
+        reopener.waitForCurrentGeneration();
+        long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startTime);
+
+        Assert.assertTrue(elapsedSeconds < 60);
+        Assert.assertEquals(1, count("a"));
+        Assert.assertEquals(0, reopener.getStalenessMillis());
+        Assert.assertEquals(1, metrics.forcedReopens.count());
+    }
+
+    @Test
+    public void testMaxStaleness() throws Exception
+    {
+        start(0.1, 0.01);
+        write("a");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (count("a") == 0 && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, count("a"));
+        Assert.assertEquals(0, metrics.forcedReopens.count());
+    }
+
+    @Test
+    public void testMinStaleness() throws Exception
+    {
+        start(3600, 0.5);
+        write("a");
+        reopener.waitForCurrentGeneration();
+        write("b");
+        long startTime = System.nanoTime();
+        reopener.waitForCurrentGeneration();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        // The second reopen has to wait for the min interval since the first one
+        Assert.assertTrue("Waited only " + elapsedMillis + " ms", elapsedMillis >= 400);
+        Assert.assertEquals(1, count("b"));
+        Assert.assertEquals(2, metrics.reopenLatency.count());
+    }
+
+    @Test
+    public void testCloseWakesWaitingSearches() throws Exception
+    {
+        // Not started, so the waiting search is only woken up by closing
+        reopener = new SearcherReopener(writer, manager, 3600, 0.01, metrics);
+        write("a");
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread waiter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    reopener.waitForCurrentGeneration();
+                    done.countDown();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        waiter.start();
+        Assert.assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        reopener.close();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        reopener = null;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.ColumnIdentifier;
+import org.apache.cassandra.cql3.QueryOptions;
+import org.apache.cassandra.cql3.QueryProcessor;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.AbstractRangeCommand;
+import org.apache.cassandra.db.Cell;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.IndexExpression;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.RangeSliceCommand;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.RowPosition;
+import org.apache.cassandra.db.composites.Composites;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.service.QueryState;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.transport.messages.ResultMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.apache.cassandra.cql3.Operator.EQ;
+
+/**
+ * Tests the two-phase execution of sorted searches: the keys-only first phase, the per-partition second phase and
+ * the merge of both of them, both in process and through {@link org.apache.cassandra.service.StorageProxy}.
+ */
+public class TwoPhaseSearchTest extends CQLTester
+{
+
+    private static final int PARTITIONS = 4;
+    private static final int ROWS_PER_PARTITION = 5;
+
+    private static final String SORTED_SEARCH = "{filter:{type:\"match\",field:\"v\",value:\"a\"}," +
+                                                "sort:{fields:[{field:\"n\",reverse:false}]},refresh:true}";
+
+    private void createIndexedTable() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk text, ck int, lucene text, n int, v text, s text static, " +
+                    "PRIMARY KEY (pk, ck))");
+        createIndex("CREATE CUSTOM INDEX ON %s (lucene) " +
+                    "USING 'org.apache.cassandra.db.index.stratio.RowIndex' " +
+                    "WITH OPTIONS = {'refresh_seconds':'1', " +
+                    "'schema':'{fields:{n:{type:\"integer\"},v:{type:\"string\"}}}'}");
+        for (int i = 0; i < PARTITIONS; i++)
+        {
+            execute("INSERT INTO %s (pk, s) VALUES (?, ?)", "p" + i, "s" + i);
+            for (int j = 0; j < ROWS_PER_PARTITION; j++)
+            {
+                // Interleave the sort values across partitions
+                int n = (i + j * PARTITIONS) * 7 % (PARTITIONS * ROWS_PER_PARTITION);
+                execute("INSERT INTO %s (pk, ck, n, v) VALUES (?, ?, ?, ?)", "p" + i, j, n, "a");
+            }
+        }
+    }
+
+    private String sortedQuery(int limit)
+    {
+        return String.format("SELECT * FROM %s.%s WHERE lucene = '%s' LIMIT %d",
+                             KEYSPACE,
+                             currentTable(),
+                             SORTED_SEARCH,
+                             limit);
+    }
+
+    private static List<Integer> sortValues(UntypedResultSet result)
+    {
+        List<Integer> values = new ArrayList<>();
+        for (UntypedResultSet.Row row : result)
+        {
+            values.add(row.getInt("n"));
+        }
+        return values;
+    }
+
+    private AbstractRangeCommand sortedCommand(int limit)
+    {
+        ByteBuffer indexedColumn = new ColumnIdentifier("lucene", true).bytes;
+        List<IndexExpression> clause = Collections.singletonList(new IndexExpression(indexedColumn,
+                                                                                     EQ,
+                                                                                     UTF8Type.instance.decompose(
+                                                                                             SORTED_SEARCH)));
+        RowPosition min = StorageService.getPartitioner().getMinimumToken().minKeyBound();
+        return new RangeSliceCommand(KEYSPACE,
+                                     currentTable(),
+                                     System.currentTimeMillis(),
+                                     new SliceQueryFilter(Composites.EMPTY, Composites.EMPTY, false, Integer.MAX_VALUE),
+                                     new Range<>(min, min),
+                                     clause,
+                                     limit,
+                                     true,
+                                     false);
+    }
+
+    private static Set<String> columnNames(Row row, CFMetaData metadata)
+    {
+        Set<String> names = new HashSet<>();
+        for (Cell cell : row.cf)
+        {
+            names.add(cell.name().cql3ColumnName(metadata).toString());
+        }
+        return names;
+    }
+
+    @Test
+    public void testKeysOnlyRowsAndMerge() throws Throwable
+    {
+        createIndexedTable();
+        CFMetaData metadata = currentTableMetadata();
+        Keyspace keyspace = Keyspace.open(KEYSPACE);
+
+        AbstractRangeCommand command = sortedCommand(6);
+        Assert.assertTrue(command.usesTwoPhaseSearch());
+        AbstractRangeCommand keysOnlyCommand = command.keysOnly();
+        List<Row> keys = keysOnlyCommand.combine(keysOnlyCommand.executeLocally());
+        Assert.assertEquals(6, keys.size());
+        for (Row row : keys)
+        {
+            Set<String> names = columnNames(row, metadata);
+            Assert.assertTrue("Row marker missing: " + names, names.contains(""));
+            Assert.assertTrue("Sort column missing: " + names, names.contains("n"));
+            Assert.assertFalse("Unexpected column: " + names, names.contains("v"));
+        }
+
+        // Delete one of the selected rows between both phases
+        Row deleted = keys.get(0);
+        ByteBuffer deletedClusteringKey = null;
+        for (Cell cell : deleted.cf)
+        {
+            if (!cell.name().isStatic())
+            {
+                deletedClusteringKey = cell.name().get(0);
+            }
+        }
+        execute("DELETE FROM %s WHERE pk = ? AND ck = ?",
+                UTF8Type.instance.compose(deleted.key.getKey()),
+                Int32Type.instance.compose(deletedClusteringKey));
+
+        List<ReadCommand> commands = command.searcher.fetchCommands(command, keys);
+        Set<ByteBuffer> partitions = new HashSet<>();
+        for (Row row : keys)
+        {
+            partitions.add(row.key.getKey());
+        }
+        Assert.assertEquals("Expected a single command per partition", partitions.size(), commands.size());
+
+        List<Row> fullRows = new ArrayList<>(commands.size());
+        for (ReadCommand fetchCommand : commands)
+        {
+            fullRows.add(fetchCommand.getRow(keyspace));
+        }
+        List<Row> merged = command.searcher.merge(command, keys, fullRows);
+        Assert.assertEquals("Deleted rows should be dropped", keys.size() - 1, merged.size());
+        for (Row row : merged)
+        {
+            Set<String> names = columnNames(row, metadata);
+            Assert.assertTrue("Static column missing: " + names, names.contains("s"));
+            Assert.assertTrue("Regular column missing: " + names, names.contains("v"));
+        }
+    }
+
+    @Test
+    public void testLimitAndOrder() throws Throwable
+    {
+        createIndexedTable();
+        for (int limit : new int[]{1, 5, PARTITIONS * ROWS_PER_PARTITION, PARTITIONS * ROWS_PER_PARTITION + 3})
+        {
+            UntypedResultSet result = QueryProcessor.process(sortedQuery(limit), ConsistencyLevel.ONE);
+            List<Integer> values = sortValues(result);
+            int expected = Math.min(limit, PARTITIONS * ROWS_PER_PARTITION);
+            Assert.assertEquals(expected, values.size());
+            for (int i = 0; i < values.size(); i++)
+            {
+                Assert.assertEquals(Integer.valueOf(i), values.get(i));
+            }
+            for (UntypedResultSet.Row row : result)
+            {
+                Assert.assertTrue(row.has("s"));
+                Assert.assertEquals("a", row.getString("v"));
+            }
+        }
+    }
+
+    @Test
+    public void testPaging() throws Throwable
+    {
+        createIndexedTable();
+        List<Integer> all = sortValues(QueryProcessor.process(sortedQuery(10), ConsistencyLevel.ONE));
+
+        QueryOptions options = QueryOptions.create(ConsistencyLevel.ONE,
+                                                   Collections.<ByteBuffer>emptyList(),
+                                                   false,
+                                                   4,
+                                                   null,
+                                                   ConsistencyLevel.SERIAL);
+        ResultMessage.Rows page = (ResultMessage.Rows) QueryProcessor.instance.process(sortedQuery(10),
+                                                                                      QueryState.forInternalCalls(),
+                                                                                      options);
+        List<Integer> firstPage = sortValues(UntypedResultSet.create(page.result));
+        Assert.assertEquals(all.subList(0, 4), firstPage);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WriteModeTest
+{
+
+    @Test
+    public void testFromOption()
+    {
+        Assert.assertEquals(WriteMode.READ_BEFORE_WRITE, WriteMode.fromOption("read_before_write"));
+        Assert.assertEquals(WriteMode.BLIND, WriteMode.fromOption("blind"));
+        Assert.assertEquals(WriteMode.INSERT_ONLY, WriteMode.fromOption("INSERT_ONLY"));
+    }
+
+    @Test
+    public void testFromOptionTrimmed()
+    {
+        Assert.assertEquals(WriteMode.BLIND, WriteMode.fromOption(" Blind "));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromOptionUnknown()
+    {
+        WriteMode.fromOption("read_after_write");
+    }
+
+}
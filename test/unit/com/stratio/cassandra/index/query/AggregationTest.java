@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.query;
+
+import com.stratio.cassandra.index.schema.ColumnMapper;
+import com.stratio.cassandra.index.schema.ColumnMapperDouble;
+import com.stratio.cassandra.index.schema.ColumnMapperInteger;
+import com.stratio.cassandra.index.schema.ColumnMapperString;
+import com.stratio.cassandra.index.schema.Schema;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.stratio.cassandra.index.query.builder.SearchBuilders.match;
+import static com.stratio.cassandra.index.query.builder.SearchBuilders.search;
+
+public class AggregationTest
+{
+    private static final Object[][] ROWS = {{"alice", 20, 1.5},
+                                            {"bob", 30, 2.5},
+                                            {"alice", 40, 3.5},
+                                            {"carol", null, null},
+                                            {"bob", 50, 2.5}};
+
+    private static Schema schema()
+    {
+        Map<String, ColumnMapper<?>> mappers = new HashMap<>();
+        mappers.put("name", new ColumnMapperString(true));
+        mappers.put("age", new ColumnMapperInteger(1f));
+        mappers.put("score", new ColumnMapperDouble(1f));
+        return new Schema(StandardAnalyzer.class.getName(), mappers);
+    }
+
+    /**
+     * Runs the specified {@link Aggregator} over an index containing {@link #ROWS}, split in two segments.
+     */
+    private static Object aggregate(Aggregation aggregation) throws Exception
+    {
+        Schema schema = schema();
+        String[] fields = {"name", "age", "score"};
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory,
+                                             new IndexWriterConfig(Version.LUCENE_48, new KeywordAnalyzer()));
+        for (int i = 0; i < ROWS.length; i++)
+        {
+            Document document = new Document();
+            for (int j = 0; j < fields.length; j++)
+            {
+                Object value = ROWS[i][j];
+                if (value != null)
+                {
+                    document.add(schema.getMapper(fields[j]).docValuesField(fields[j], value));
+                }
+            }
+            writer.addDocument(document);
+            if (i == ROWS.length / 2)
+            {
+                writer.commit();
+            }
+        }
+        writer.close();
+
+        DirectoryReader reader = DirectoryReader.open(directory);
+        Assert.assertEquals(2, reader.leaves().size());
+        Aggregator aggregator = aggregation.aggregator(schema);
+        new IndexSearcher(reader).search(new MatchAllDocsQuery(), aggregator);
+        reader.close();
+        directory.close();
+        return aggregator.result();
+    }
+
+    @Test
+    public void testCount() throws Exception
+    {
+        Assert.assertEquals(5L, aggregate(new CountAggregation()));
+    }
+
+    @Test
+    public void testTermsString() throws Exception
+    {
+        Map<String, Long> expected = new TreeMap<>();
+        expected.put("alice", 2L);
+        expected.put("bob", 2L);
+        expected.put("carol", 1L);
+        Assert.assertEquals(expected, aggregate(new TermsAggregation("name")));
+    }
+
+    @Test
+    public void testTermsInteger() throws Exception
+    {
+        Map<String, Long> expected = new TreeMap<>();
+        expected.put("20", 1L);
+        expected.put("30", 1L);
+        expected.put("40", 1L);
+        expected.put("50", 1L);
+        Assert.assertEquals(expected, aggregate(new TermsAggregation("age")));
+    }
+
+    @Test
+    public void testTermsDouble() throws Exception
+    {
+        Map<String, Long> expected = new TreeMap<>();
+        expected.put("1.5", 1L);
+        expected.put("2.5", 2L);
+        expected.put("3.5", 1L);
+        Assert.assertEquals(expected, aggregate(new TermsAggregation("score")));
+    }
+
+    @Test
+    public void testRangeString() throws Exception
+    {
+        RangeAggregation aggregation = new RangeAggregation("name",
+                                                            Arrays.asList(new RangeAggregation.Range(null, "bob"),
+                                                                          new RangeAggregation.Range("b", "c"),
+                                                                          new RangeAggregation.Range("bob", null)));
+        Assert.assertEquals(Arrays.asList(2L, 2L, 3L), aggregate(aggregation));
+    }
+
+    @Test
+    public void testRangeInteger() throws Exception
+    {
+        RangeAggregation aggregation = new RangeAggregation("age",
+                                                            Arrays.asList(new RangeAggregation.Range(null, 30),
+                                                                          new RangeAggregation.Range(30, 50),
+                                                                          new RangeAggregation.Range(50, null)));
+        Assert.assertEquals(Arrays.asList(1L, 2L, 1L), aggregate(aggregation));
+    }
+
+    @Test
+    public void testRangeDouble() throws Exception
+    {
+        RangeAggregation aggregation = new RangeAggregation("score",
+                                                            Arrays.asList(new RangeAggregation.Range(2, 3),
+                                                                          new RangeAggregation.Range(1.5, 2.5)));
+        Assert.assertEquals(Arrays.asList(2L, 1L), aggregate(aggregation));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotFoundField()
+    {
+        new TermsAggregation("unknown").aggregator(schema());
+    }
+
+    @Test
+    public void testMerge()
+    {
+        Search search = search().aggregation("count", new CountAggregation())
+                                .aggregation("names", new TermsAggregation("name"))
+                                .aggregation("ages", new RangeAggregation("age", null))
+                                .build();
+
+        Map<String, Object> results1 = new LinkedHashMap<>();
+        results1.put("count", 3);
+        results1.put("names", singletonMap("alice", 2, "bob", 1));
+        results1.put("ages", Arrays.asList(1, 2));
+
+        Map<String, Object> results2 = new LinkedHashMap<>();
+        results2.put("count", 2L);
+        results2.put("names", singletonMap("bob", 1, "carol", 1));
+        results2.put("ages", Arrays.asList(0L, 2L));
+
+        Map<String, Object> merged = search.mergeAggregations(results1, results2);
+        Assert.assertEquals(5L, merged.get("count"));
+        Map<String, Long> names = new TreeMap<>();
+        names.put("alice", 2L);
+        names.put("bob", 2L);
+        names.put("carol", 1L);
+        Assert.assertEquals(names, merged.get("names"));
+        Assert.assertEquals(Arrays.asList(1L, 4L), merged.get("ages"));
+    }
+
+    private static Map<String, Integer> singletonMap(String key1, int value1, String key2, int value2)
+    {
+        Map<String, Integer> map = new HashMap<>();
+        map.put(key1, value1);
+        map.put(key2, value2);
+        return map;
+    }
+
+    @Test
+    public void testJson()
+    {
+        String json = search().filter(match("name", "alice"))
+                              .aggregation("count", new CountAggregation())
+                              .aggregation("names", new TermsAggregation("name"))
+                              .aggregation("ages",
+                                           new RangeAggregation("age",
+                                                                Arrays.asList(new RangeAggregation.Range(null, 30),
+                                                                              new RangeAggregation.Range(30, null))))
+                              .toJson();
+        Search search = Search.fromJson(json);
+        Assert.assertEquals(json, search.toJson());
+        Assert.assertTrue(search.usesAggregations());
+        Assert.assertFalse(Search.fromJson("{filter:{type:\"match\",field:\"name\",value:\"alice\"}}")
+                                 .usesAggregations());
+        search.validate(schema());
+    }
+}
@@ -21,6 +21,8 @@ import java.util.UUID;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
+import org.apache.lucene.util.BytesRef;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -527,6 +529,17 @@ public class ColumnMapperBigDecimalTest
         Assert.assertFalse(field.fieldType().stored());
     }
 
+    @Test
+    public void testDocValuesField()
+    {
+        ColumnMapperBigDecimal mapper = new ColumnMapperBigDecimal(4, 4);
+        Field field = mapper.docValuesField("name", 42.43);
+        Assert.assertNotNull(field);
+        Assert.assertEquals("name", field.name());
+        Assert.assertEquals(DocValuesType.SORTED, field.fieldType().docValueType());
+        Assert.assertEquals(new BytesRef(mapper.indexValue("name", 42.43)), field.binaryValue());
+    }
+
     @Test
     public void testExtractAnalyzers()
     {
@@ -22,6 +22,8 @@ import java.util.UUID;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
+import org.apache.lucene.util.BytesRef;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -445,6 +447,17 @@ public class ColumnMapperBigIntegerTest
         Assert.assertFalse(field.fieldType().stored());
     }
 
+    @Test
+    public void testDocValuesField()
+    {
+        ColumnMapperBigInteger mapper = new ColumnMapperBigInteger(10);
+        Field field = mapper.docValuesField("name", 42);
+        Assert.assertNotNull(field);
+        Assert.assertEquals("name", field.name());
+        Assert.assertEquals(DocValuesType.SORTED, field.fieldType().docValueType());
+        Assert.assertEquals(new BytesRef(mapper.indexValue("name", 42)), field.binaryValue());
+    }
+
     @Test
     public void testExtractAnalyzers()
     {
@@ -23,6 +23,8 @@ import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.Hex;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
+import org.apache.lucene.util.BytesRef;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -164,6 +166,17 @@ public class ColumnMapperBlobTest
         Assert.assertEquals(false, field.fieldType().stored());
     }
 
+    @Test
+    public void testDocValuesField()
+    {
+        ColumnMapperBlob mapper = new ColumnMapperBlob();
+        Field field = mapper.docValuesField("name", "f1B2");
+        Assert.assertNotNull(field);
+        Assert.assertEquals("name", field.name());
+        Assert.assertEquals(DocValuesType.SORTED, field.fieldType().docValueType());
+        Assert.assertEquals(new BytesRef(mapper.indexValue("name", "f1B2")), field.binaryValue());
+    }
+
     @Test
     public void testExtractAnalyzers()
     {
@@ -20,8 +20,10 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import org.apache.cassandra.db.marshal.*;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -158,6 +160,17 @@ public class ColumnMapperDateTest
         Assert.assertEquals(false, field.fieldType().stored());
     }
 
+    @Test
+    public void testDocValuesField()
+    {
+        ColumnMapperDate mapper = new ColumnMapperDate(PATTERN);
+        Field field = mapper.docValuesField("name", "2014-03-19");
+        Assert.assertNotNull(field);
+        Assert.assertEquals("name", field.name());
+        Assert.assertEquals(DocValuesType.NUMERIC, field.fieldType().docValueType());
+        Assert.assertEquals(mapper.indexValue("name", "2014-03-19"), field.numericValue());
+    }
+
     @Test
     public void testExtractAnalyzers()
     {
@@ -191,4 +204,13 @@ public class ColumnMapperDateTest
         String json = "{fields:{age:{}}";
         Schema.fromJson(json);
     }
+
+    @Test
+    public void testPreservesOrder()
+    {
+        ColumnMapperDate mapper = new ColumnMapperDate(PATTERN);
+        Assert.assertTrue(mapper.preservesOrder(TimestampType.instance));
+        Assert.assertFalse(mapper.preservesOrder(LongType.instance));
+        Assert.assertFalse(mapper.preservesOrder(UTF8Type.instance));
+    }
 }
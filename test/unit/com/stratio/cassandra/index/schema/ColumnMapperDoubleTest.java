@@ -17,8 +17,10 @@ package com.stratio.cassandra.index.schema;
 
 import java.io.IOException;
 
+import org.apache.cassandra.db.marshal.*;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -136,6 +138,17 @@ public class ColumnMapperDoubleTest
         Assert.assertEquals(false, field.fieldType().stored());
     }
 
+    @Test
+    public void testDocValuesField()
+    {
+        ColumnMapperDouble mapper = new ColumnMapperDouble(1f);
+        Field field = mapper.docValuesField("name", "3.2");
+        Assert.assertNotNull(field);
+        Assert.assertEquals("name", field.name());
+        Assert.assertEquals(DocValuesType.NUMERIC, field.fieldType().docValueType());
+        Assert.assertEquals(Double.doubleToRawLongBits(3.2d), field.numericValue().longValue());
+    }
+
     @Test
     public void testExtractAnalyzers()
     {
@@ -169,4 +182,15 @@ public class ColumnMapperDoubleTest
         String json = "{fields:{age:{}}";
         Schema.fromJson(json);
     }
+
+    @Test
+    public void testPreservesOrder()
+    {
+        ColumnMapperDouble mapper = new ColumnMapperDouble(1f);
+        Assert.assertTrue(mapper.preservesOrder(Int32Type.instance));
+        Assert.assertTrue(mapper.preservesOrder(FloatType.instance));
+        Assert.assertTrue(mapper.preservesOrder(DoubleType.instance));
+        Assert.assertFalse(mapper.preservesOrder(LongType.instance));
+        Assert.assertFalse(mapper.preservesOrder(DecimalType.instance));
+    }
 }
@@ -17,8 +17,10 @@ package com.stratio.cassandra.index.schema;
 
 import java.io.IOException;
 
+import org.apache.cassandra.db.marshal.*;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -137,6 +139,17 @@ public class ColumnMapperFloatTest
         Assert.assertEquals(false, field.fieldType().stored());
     }
 
+    @Test
+    public void testDocValuesField()
+    {
+        ColumnMapperFloat mapper = new ColumnMapperFloat(1f);
+        Field field = mapper.docValuesField("name", "3.2");
+        Assert.assertNotNull(field);
+        Assert.assertEquals("name", field.name());
+        Assert.assertEquals(DocValuesType.NUMERIC, field.fieldType().docValueType());
+        Assert.assertEquals(Float.floatToRawIntBits(3.2f), field.numericValue().longValue());
+    }
+
     @Test
     public void testExtractAnalyzers()
     {
@@ -170,4 +183,13 @@ public class ColumnMapperFloatTest
         String json = "{fields:{age:{}}";
         Schema.fromJson(json);
     }
+
+    @Test
+    public void testPreservesOrder()
+    {
+        ColumnMapperFloat mapper = new ColumnMapperFloat(1f);
+        Assert.assertTrue(mapper.preservesOrder(FloatType.instance));
+        Assert.assertFalse(mapper.preservesOrder(Int32Type.instance));
+        Assert.assertFalse(mapper.preservesOrder(DoubleType.instance));
+    }
 }
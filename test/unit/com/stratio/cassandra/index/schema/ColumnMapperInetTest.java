@@ -22,6 +22,8 @@ import java.util.UUID;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
+import org.apache.lucene.util.BytesRef;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -147,6 +149,17 @@ public class ColumnMapperInetTest
         Assert.assertEquals(false, field.fieldType().stored());
     }
 
+    @Test
+    public void testDocValuesField()
+    {
+        ColumnMapperInet mapper = new ColumnMapperInet();
+        Field field = mapper.docValuesField("name", "192.168.0.13");
+        Assert.assertNotNull(field);
+        Assert.assertEquals("name", field.name());
+        Assert.assertEquals(DocValuesType.SORTED, field.fieldType().docValueType());
+        Assert.assertEquals(new BytesRef(mapper.indexValue("name", "192.168.0.13")), field.binaryValue());
+    }
+
     @Test
     public void testExtractAnalyzers()
     {
@@ -17,8 +17,10 @@ package com.stratio.cassandra.index.schema;
 
 import java.io.IOException;
 
+import org.apache.cassandra.db.marshal.*;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -138,6 +140,17 @@ public class ColumnMapperLongTest
         Assert.assertEquals(false, field.fieldType().stored());
     }
 
+    @Test
+    public void testDocValuesField()
+    {
+        ColumnMapperLong mapper = new ColumnMapperLong(1f);
+        Field field = mapper.docValuesField("name", "3.2");
+        Assert.assertNotNull(field);
+        Assert.assertEquals("name", field.name());
+        Assert.assertEquals(DocValuesType.NUMERIC, field.fieldType().docValueType());
+        Assert.assertEquals(3L, field.numericValue().longValue());
+    }
+
     @Test
     public void testExtractAnalyzers()
     {
@@ -171,4 +184,14 @@ public class ColumnMapperLongTest
         String json = "{fields:{age:{}}";
         Schema.fromJson(json);
     }
+
+    @Test
+    public void testPreservesOrder()
+    {
+        ColumnMapperLong mapper = new ColumnMapperLong(1f);
+        Assert.assertTrue(mapper.preservesOrder(Int32Type.instance));
+        Assert.assertTrue(mapper.preservesOrder(LongType.instance));
+        Assert.assertFalse(mapper.preservesOrder(DoubleType.instance));
+        Assert.assertFalse(mapper.preservesOrder(UTF8Type.instance));
+    }
 }
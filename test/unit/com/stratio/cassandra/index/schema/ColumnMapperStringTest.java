@@ -18,8 +18,11 @@ package com.stratio.cassandra.index.schema;
 import java.io.IOException;
 import java.util.UUID;
 
+import org.apache.cassandra.db.marshal.*;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
+import org.apache.lucene.util.BytesRef;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -145,6 +148,17 @@ public class ColumnMapperStringTest
         Assert.assertEquals(false, field.fieldType().stored());
     }
 
+    @Test
+    public void testDocValuesField()
+    {
+        ColumnMapperString mapper = new ColumnMapperString(false);
+        Field field = mapper.docValuesField("name", "hello");
+        Assert.assertNotNull(field);
+        Assert.assertEquals("name", field.name());
+        Assert.assertEquals(DocValuesType.SORTED, field.fieldType().docValueType());
+        Assert.assertEquals(new BytesRef(mapper.indexValue("name", "hello")), field.binaryValue());
+    }
+
     @Test
     public void testExtractAnalyzers()
     {
@@ -178,4 +192,15 @@ public class ColumnMapperStringTest
         String json = "{fields:{age:{}}";
         Schema.fromJson(json);
     }
+
+    @Test
+    public void testPreservesOrder()
+    {
+        ColumnMapperString mapper = new ColumnMapperString(false);
+        Assert.assertTrue(mapper.preservesOrder(UTF8Type.instance));
+        Assert.assertTrue(mapper.preservesOrder(AsciiType.instance));
+        Assert.assertFalse(mapper.preservesOrder(Int32Type.instance));
+        Assert.assertFalse(mapper.preservesOrder(UUIDType.instance));
+        Assert.assertFalse(new ColumnMapperString(true).preservesOrder(UTF8Type.instance));
+    }
 }
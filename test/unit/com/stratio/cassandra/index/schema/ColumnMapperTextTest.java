@@ -161,6 +161,14 @@ public class ColumnMapperTextTest
         Assert.assertEquals(false, field.fieldType().stored());
     }
 
+    @Test
+    public void testDocValuesField()
+    {
+        ColumnMapperText mapper = new ColumnMapperText("org.apache.lucene.analysis.en.EnglishAnalyzer");
+        Field field = mapper.docValuesField("name", "hello");
+        Assert.assertNull(field);
+    }
+
     @Test
     public void testExtractAnalyzers()
     {
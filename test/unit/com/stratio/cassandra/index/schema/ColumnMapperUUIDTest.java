@@ -20,6 +20,8 @@ import java.util.UUID;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
+import org.apache.lucene.util.BytesRef;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -101,6 +103,17 @@ public class ColumnMapperUUIDTest
         Assert.assertFalse(field.fieldType().stored());
     }
 
+    @Test
+    public void testDocValuesField()
+    {
+        ColumnMapperUUID mapper = new ColumnMapperUUID();
+        Field field = mapper.docValuesField("name", UUID.fromString("550e8400-e29b-41d4-a716-446655440000"));
+        Assert.assertNotNull(field);
+        Assert.assertEquals("name", field.name());
+        Assert.assertEquals(DocValuesType.SORTED, field.fieldType().docValueType());
+        Assert.assertEquals(new BytesRef(mapper.indexValue("name", UUID.fromString("550e8400-e29b-41d4-a716-446655440000"))), field.binaryValue());
+    }
+
     @Test
     public void testExtractAnalyzers()
     {
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2014, Stratio.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.cassandra.index.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TaskQueueTest
+{
+
+    /**
+     * {@link TaskQueue.BatchListener} recording the sizes of the run batches and checking that they don't overlap.
+     */
+    private static class RecordingListener implements TaskQueue.BatchListener
+    {
+        private final List<Integer> batches = Collections.synchronizedList(new ArrayList<Integer>());
+        private final AtomicInteger open = new AtomicInteger();
+
+        @Override
+        public void beforeBatch()
+        {
+            Assert.assertEquals(1, open.incrementAndGet());
+        }
+
+        @Override
+        public void afterBatch(int numTasks)
+        {
+            Assert.assertEquals(0, open.decrementAndGet());
+            batches.add(numTasks);
+        }
+
+        private int numTasks()
+        {
+            int numTasks = 0;
+            synchronized (batches)
+            {
+                for (int batch : batches)
+                {
+                    numTasks += batch;
+                }
+            }
+            return numTasks;
+        }
+    }
+
+    private static Runnable blocker(final CountDownLatch started, final CountDownLatch release)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                started.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private static Runnable counter(final AtomicInteger count)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                count.incrementAndGet();
+            }
+        };
+    }
+
+    @Test
+    public void testBatching() throws Exception
+    {
+        RecordingListener listener = new RecordingListener();
+        TaskQueue queue = new TaskQueue(1, 100, 10, 0, listener);
+        AtomicInteger count = new AtomicInteger();
+
+        // Block the thread while the next tasks are queued
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submitAsynchronous("id", blocker(started, release));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 25; i++)
+        {
+            queue.submitAsynchronous("id", counter(count));
+        }
+        Assert.assertEquals(25, queue.getQueuedTasks());
+        release.countDown();
+        queue.await();
+
+        Assert.assertEquals(25, count.get());
+        Assert.assertEquals(26, listener.numTasks());
+        Assert.assertEquals(Integer.valueOf(1), listener.batches.get(0));
+        Assert.assertEquals(Integer.valueOf(10), listener.batches.get(1));
+        Assert.assertEquals(Integer.valueOf(10), listener.batches.get(2));
+        Assert.assertEquals(Integer.valueOf(5), listener.batches.get(3));
+        Assert.assertEquals(4, listener.batches.size());
+    }
+
+    @Test
+    public void testNoBatching() throws Exception
+    {
+        RecordingListener listener = new RecordingListener();
+        TaskQueue queue = new TaskQueue(1, 100, 1, 0, listener);
+        AtomicInteger count = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submitAsynchronous("id", blocker(started, release));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++)
+        {
+            queue.submitAsynchronous("id", counter(count));
+        }
+        release.countDown();
+        queue.await();
+
+        Assert.assertEquals(5, count.get());
+        Assert.assertEquals(6, listener.batches.size());
+        Assert.assertEquals(6, listener.numTasks());
+    }
+
+    @Test
+    public void testBarrierFinishesBatch() throws Exception
+    {
+        RecordingListener listener = new RecordingListener();
+        TaskQueue queue = new TaskQueue(1, 100, 100, 0, listener);
+        AtomicInteger count = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submitAsynchronous("id", blocker(started, release));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++)
+        {
+            queue.submitAsynchronous("id", counter(count));
+        }
+        final AtomicInteger seen = new AtomicInteger(-1);
+        final AtomicInteger numTasks = new AtomicInteger(-1);
+        final RecordingListener finalListener = listener;
+        final AtomicInteger finalCount = count;
+        Runnable task = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // Sees the work of the previous tasks, whose batch has been finished
+                seen.set(finalCount.get());
+                numTasks.set(finalListener.numTasks());
+            }
+        };
+        release.countDown();
+        queue.submitSynchronous(task);
+
+        Assert.assertEquals(3, seen.get());
+        Assert.assertEquals(4, numTasks.get());
+    }
+
+    @Test
+    public void testSameIdOrdered() throws Exception
+    {
+        TaskQueue queue = new TaskQueue(4, 10, 8, 1, null);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 1000; i++)
+        {
+            final int value = i;
+            queue.submitAsynchronous("id", new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    order.add(value);
+                }
+            });
+        }
+        queue.await();
+
+        Assert.assertEquals(1000, order.size());
+        for (int i = 0; i < order.size(); i++)
+        {
+            Assert.assertEquals(Integer.valueOf(i), order.get(i));
+        }
+    }
+
+    @Test
+    public void testBlockedSubmissions() throws Exception
+    {
+        final TaskQueue queue = new TaskQueue(1, 1, 1, 0, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submitAsynchronous("id", blocker(started, release));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        AtomicInteger count = new AtomicInteger();
+        queue.submitAsynchronous("id", counter(count)); // Fills the queue
+        Assert.assertEquals(0, queue.getBlockedSubmissions());
+
+        final AtomicInteger blockedCount = count;
+        Thread submitter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                queue.submitAsynchronous("id", counter(blockedCount));
+            }
+        };
+        submitter.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (queue.getBlockedSubmissions() == 0 && System.nanoTime() < deadline)
+        {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(1, queue.getBlockedSubmissions());
+
+        release.countDown();
+        submitter.join();
+        queue.await();
+        Assert.assertEquals(2, count.get());
+    }
+}
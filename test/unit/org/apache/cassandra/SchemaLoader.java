@@ -270,7 +270,8 @@ public class SchemaLoader
         schema.add(KSMetaData.testMetadata(ks_prsi,
                                            simple,
                                            opts_rf1,
-                                           perRowIndexedCFMD(ks_prsi, "Indexed1")));
+                                           perRowIndexedCFMD(ks_prsi, "Indexed1"),
+                                           perRowIndexedCFMD(ks_prsi, "Indexed2", "indexe2", RecoveryManagerIndexTest.LaggingIndex.class)));
 
         // CQLKeyspace
         schema.add(KSMetaData.testMetadata(ks_cql,
@@ -339,16 +340,21 @@ public class SchemaLoader
     }
 
     private static CFMetaData perRowIndexedCFMD(String ksName, String cfName)
+    {
+        return perRowIndexedCFMD(ksName, cfName, "indexe1", PerRowSecondaryIndexTest.TestIndex.class);
+    }
+
+    private static CFMetaData perRowIndexedCFMD(String ksName, String cfName, String indexName, Class<? extends SecondaryIndex> indexClass)
     {
         final Map<String, String> indexOptions = Collections.singletonMap(
                                                       SecondaryIndex.CUSTOM_INDEX_OPTION_NAME,
-                                                      PerRowSecondaryIndexTest.TestIndex.class.getName());
+                                                      indexClass.getName());
 
         CFMetaData cfm =  CFMetaData.sparseCFMetaData(ksName, cfName, AsciiType.instance).keyValidator(AsciiType.instance);
 
         ByteBuffer cName = ByteBufferUtil.bytes("indexed");
         return cfm.addOrReplaceColumnDefinition(ColumnDefinition.regularDef(cfm, cName, AsciiType.instance, null)
-                                                                .setIndex("indexe1", IndexType.CUSTOM, indexOptions));
+                                                                .setIndex(indexName, IndexType.CUSTOM, indexOptions));
     }
 
     private static void useCompression(List<KSMetaData> schema)
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChunkCacheTest
+{
+    private static final int CHUNK_LENGTH = 1024;
+
+    private static byte[] chunk(int value)
+    {
+        byte[] bytes = new byte[CHUNK_LENGTH];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+
+    @Test
+    public void testAdmittedOnSecondMiss()
+    {
+        ChunkCache cache = ChunkCache.create(16 * CHUNK_LENGTH);
+        ChunkCache.Key key = new ChunkCache.Key("a-Data.db", 0);
+        byte[] buffer = new byte[CHUNK_LENGTH];
+
+        assertEquals(-1, cache.get(key, buffer));
+        cache.admit(key, chunk(1), CHUNK_LENGTH);
+        assertEquals(-1, cache.get(key, buffer));
+        assertEquals(0, cache.size());
+
+        cache.admit(key, chunk(1), CHUNK_LENGTH);
+        assertEquals(CHUNK_LENGTH, cache.get(key, buffer));
+        assertArrayEquals(chunk(1), buffer);
+        assertEquals(CHUNK_LENGTH, cache.weightedSize());
+    }
+
+    @Test
+    public void testScanDoesNotEvictHotChunks()
+    {
+        ChunkCache cache = ChunkCache.create(4 * CHUNK_LENGTH);
+        byte[] buffer = new byte[CHUNK_LENGTH];
+        for (int i = 0; i < 4; i++)
+        {
+            ChunkCache.Key key = new ChunkCache.Key("hot-Data.db", i * CHUNK_LENGTH);
+            cache.admit(key, chunk(i), CHUNK_LENGTH);
+            cache.admit(key, chunk(i), CHUNK_LENGTH);
+        }
+
+        // every chunk of the scan is missed only once
+        for (int i = 0; i < 100; i++)
+            cache.admit(new ChunkCache.Key("cold-Data.db", i * CHUNK_LENGTH), chunk(i), CHUNK_LENGTH);
+
+        for (int i = 0; i < 4; i++)
+        {
+            assertEquals(CHUNK_LENGTH, cache.get(new ChunkCache.Key("hot-Data.db", i * CHUNK_LENGTH), buffer));
+            assertArrayEquals(chunk(i), buffer);
+        }
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        ChunkCache cache = ChunkCache.create(16 * CHUNK_LENGTH);
+        ChunkCache.Key a = new ChunkCache.Key("a-Data.db", 0);
+        ChunkCache.Key b = new ChunkCache.Key("b-Data.db", 0);
+        for (int i = 0; i < 2; i++)
+        {
+            cache.admit(a, chunk(1), CHUNK_LENGTH);
+            cache.admit(b, chunk(2), CHUNK_LENGTH);
+        }
+        assertEquals(2, cache.size());
+
+        cache.invalidate("a-Data.db");
+        byte[] buffer = new byte[CHUNK_LENGTH];
+        assertEquals(-1, cache.get(a, buffer));
+        assertEquals(CHUNK_LENGTH, cache.get(b, buffer));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidateRecentlyMissed()
+    {
+        ChunkCache cache = ChunkCache.create(16 * CHUNK_LENGTH);
+        ChunkCache.Key a = new ChunkCache.Key("a-Data.db", 0);
+        ChunkCache.Key b = new ChunkCache.Key("b-Data.db", 0);
+        cache.admit(a, chunk(1), CHUNK_LENGTH);
+        cache.admit(b, chunk(2), CHUNK_LENGTH);
+
+        // the chunks of the invalidated file are not remembered as missed anymore
+        cache.invalidate("a-Data.db");
+        cache.admit(a, chunk(1), CHUNK_LENGTH);
+        cache.admit(b, chunk(2), CHUNK_LENGTH);
+        byte[] buffer = new byte[CHUNK_LENGTH];
+        assertEquals(-1, cache.get(a, buffer));
+        assertEquals(CHUNK_LENGTH, cache.get(b, buffer));
+
+        // nor are the chunks missed again afterwards, nor the ones put directly
+        cache.put(new ChunkCache.Key("a-Data.db", CHUNK_LENGTH), ByteBuffer.wrap(chunk(3)));
+        assertEquals(2, cache.size());
+        cache.invalidate("a-Data.db");
+        cache.admit(a, chunk(1), CHUNK_LENGTH);
+        assertEquals(-1, cache.get(a, buffer));
+        assertEquals(1, cache.size());
+        assertEquals(CHUNK_LENGTH, cache.get(b, buffer));
+    }
+
+    @Test
+    public void testInvalidateAfterEviction()
+    {
+        ChunkCache cache = ChunkCache.create(2 * CHUNK_LENGTH);
+        for (int i = 0; i < 10; i++)
+        {
+            ChunkCache.Key key = new ChunkCache.Key("a-Data.db", i * CHUNK_LENGTH);
+            cache.admit(key, chunk(i), CHUNK_LENGTH);
+            cache.admit(key, chunk(i), CHUNK_LENGTH);
+        }
+        assertEquals(2, cache.size());
+
+        cache.invalidate("a-Data.db");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+    }
+}
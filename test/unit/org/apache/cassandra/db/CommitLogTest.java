@@ -21,6 +21,13 @@ package org.apache.cassandra.db;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.zip.CRC32;
@@ -42,12 +49,16 @@ import org.apache.cassandra.db.composites.CellNameType;
 import org.apache.cassandra.db.filter.NamesQueryFilter;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.gms.Gossiper;
+import org.apache.cassandra.io.compress.ICompressor;
+import org.apache.cassandra.io.compress.LZ4Compressor;
+import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.JVMStabilityInspector;
 import org.apache.cassandra.utils.KillerForTests;
+import org.apache.cassandra.utils.PureJavaCrc32;
 
 import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
 
@@ -371,4 +382,285 @@ public class CommitLogTest extends SchemaLoader
         row = command.getRow(notDurableKs);
         Assert.assertEquals(null, row.cf);
     }
+
+    @Test
+    public void testCompressedRecovery() throws Exception
+    {
+        File segment = segment(lz4(), null, mutations("compressed", 10), mutations("compressed", 10));
+
+        // the header records the compressor
+        try (DataInputStream in = new DataInputStream(new FileInputStream(segment)))
+        {
+            Assert.assertEquals(CommitLogDescriptor.VERSION_22, in.readInt());
+        }
+        Assert.assertTrue(segment.getName().startsWith("CommitLog-" + CommitLogDescriptor.VERSION_22 + "-"));
+        CommitLogDescriptor descriptor = CommitLogDescriptor.fromHeader(segment);
+        Assert.assertNotNull(descriptor);
+        Assert.assertEquals(LZ4Compressor.class.getName(), descriptor.compression);
+
+        Assert.assertEquals(20, CommitLog.instance.recover(segment));
+        Keyspace keyspace = Keyspace.open("Keyspace1");
+        for (int i = 0; i < 20; i++)
+        {
+            ColumnFamily cf = Util.getColumnFamily(keyspace, Util.dk("compressed" + i), "Standard1");
+            Assert.assertNotNull(cf);
+            Assert.assertEquals(ByteBuffer.allocate(100), cf.getColumn(Util.cellname("c1")).value());
+        }
+    }
+
+    @Test
+    public void testCompressedRecoveryWithTruncatedTail() throws Exception
+    {
+        File segment = segment(lz4(), null, mutations("compressed", 10), mutations("tail", 1));
+
+        // the last section is cut, as if the node died while it was being written
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw"))
+        {
+            file.setLength(file.length() - 5);
+        }
+        Assert.assertEquals(10, CommitLog.instance.recover(segment));
+    }
+
+    @Test
+    public void testCompressedRecoveryWithGarbageTail() throws Exception
+    {
+        File segment = segment(lz4(), null, mutations("compressed", 10), mutations("compressed", 10));
+
+        // garbage after the last section is not taken as a new section
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw"))
+        {
+            file.seek(file.length());
+            file.write(garbage(100));
+        }
+        Assert.assertEquals(20, CommitLog.instance.recover(segment));
+    }
+
+    @Test
+    public void testCompressedRecoveryStopsAtInvalidSection() throws Exception
+    {
+        File segment = segment(lz4(), null, mutations("compressed", 1), mutations("compressed", 1), mutations("compressed", 1));
+
+        // the compressed contents of the second section are damaged, leaving its sync marker and the next ones intact
+        CommitLogDescriptor descriptor = CommitLogDescriptor.fromHeader(segment);
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw"))
+        {
+            file.seek(descriptor.headerSize());
+            int secondSection = file.readInt();
+            file.seek(secondSection + CommitLogSegment.SYNC_MARKER_SIZE + 4);
+            file.write(garbage(20));
+        }
+        Assert.assertEquals(1, CommitLog.instance.recover(segment));
+    }
+
+    @Test
+    public void testRecoveryWithTruncatedSection() throws Exception
+    {
+        List<ReplayPosition> positions = new ArrayList<>();
+        File segment = segment(null, positions, mutations("truncated", 10), mutations("truncated", 10));
+
+        // the file ends in the middle of the second batch
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw"))
+        {
+            file.setLength(positions.get(0).position + 20);
+        }
+        Assert.assertEquals(10, CommitLog.instance.recover(segment));
+    }
+
+    @Test
+    public void testRecoveryWithGarbageTail() throws Exception
+    {
+        List<ReplayPosition> positions = new ArrayList<>();
+        File segment = segment(null, positions, mutations("garbage", 10), mutations("garbage", 10));
+
+        // garbage instead of the zeroed sync marker after the last section
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw"))
+        {
+            file.seek(positions.get(1).position - CommitLogSegment.SYNC_MARKER_SIZE);
+            file.write(garbage(100));
+        }
+        Assert.assertEquals(20, CommitLog.instance.recover(segment));
+    }
+
+    @Test
+    public void testRecoveryStopsAtInvalidSection() throws Exception
+    {
+        List<ReplayPosition> positions = new ArrayList<>();
+        File segment = segment(null, positions, mutations("invalid", 10), mutations("invalid", 10), mutations("invalid", 10));
+
+        // the first entry after the first batch is damaged, so nothing after it is replayed, even if it is valid
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw"))
+        {
+            file.seek(positions.get(0).position);
+            file.write(garbage(8));
+        }
+        Assert.assertEquals(10, CommitLog.instance.recover(segment));
+    }
+
+    @Test
+    public void testRecoveryWithEndOfSegmentMarker() throws Exception
+    {
+        List<ReplayPosition> positions = new ArrayList<>();
+        File segment = segment(null, positions, mutations("ended", 10), mutations("ended", 10));
+
+        // a zeroed sync marker after the first batch ends the segment
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw"))
+        {
+            file.seek(positions.get(0).position - CommitLogSegment.SYNC_MARKER_SIZE);
+            file.write(new byte[CommitLogSegment.SYNC_MARKER_SIZE]);
+        }
+        Assert.assertEquals(10, CommitLog.instance.recover(segment));
+    }
+
+    @Test
+    public void testRecoveryWithLegacyEndOfSegmentMarker() throws Exception
+    {
+        File segment = legacySegment(mutations("legacy", 2), mutations("legacy", 1));
+        Assert.assertEquals(2, CommitLog.instance.recover(segment));
+    }
+
+    @Test
+    public void testRecoveryWithMixedVersions() throws Exception
+    {
+        File legacy = legacySegment(mutations("legacy", 5));
+        File uncompressed = segment(null, null, mutations("uncompressed", 10));
+        File compressed = segment(lz4(), null, mutations("compressed", 20));
+        Assert.assertEquals(35, CommitLog.instance.recover(legacy, uncompressed, compressed));
+    }
+
+    @Test
+    public void testRecoveryKeepsPartitionOrder() throws Exception
+    {
+        // enough sections to be decoded in several chunks, with the mutations of each partition spread across them
+        List<List<Mutation>> batches = new ArrayList<>();
+        int count = 0;
+        for (int batch = 0; batch < 60; batch++)
+        {
+            List<Mutation> mutations = new ArrayList<>();
+            for (int i = 0; i < 10; i++)
+            {
+                ByteBuffer value = ByteBuffer.allocate(4096);
+                value.putInt(0, count);
+                Mutation rm = new Mutation("PerRowSecondaryIndex", bytes("k" + (count % 7)));
+                rm.add("Indexed2", Util.cellname("indexed"), value, 0);
+                mutations.add(rm);
+                count++;
+            }
+            batches.add(mutations);
+        }
+        File segment = segment(null, null, batches.toArray(new List[batches.size()]));
+
+        RecoveryManagerIndexTest.LaggingIndex.reset();
+        Assert.assertEquals(count, CommitLog.instance.recover(segment));
+        Map<ByteBuffer, Integer> last = new HashMap<>();
+        for (Row row : RecoveryManagerIndexTest.LaggingIndex.indexedRows)
+        {
+            int value = row.cf.getColumn(Util.cellname("indexed")).value().getInt(0);
+            Integer previous = last.put(row.key.getKey(), value);
+            Assert.assertTrue(previous + " replayed before " + value, previous == null || previous < value);
+        }
+        Assert.assertEquals(count, RecoveryManagerIndexTest.LaggingIndex.indexedRows.size());
+    }
+
+    private static ICompressor lz4()
+    {
+        return LZ4Compressor.create(Collections.<String, String>emptyMap());
+    }
+
+    private static byte[] garbage(int length)
+    {
+        byte[] garbage = new byte[length];
+        new Random(0).nextBytes(garbage);
+        return garbage;
+    }
+
+    private static List<Mutation> mutations(String prefix, int count)
+    {
+        List<Mutation> mutations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            Mutation rm = new Mutation("Keyspace1", bytes(prefix + i));
+            rm.add("Standard1", Util.cellname("c1"), ByteBuffer.allocate(100), 0);
+            mutations.add(rm);
+        }
+        return mutations;
+    }
+
+    /**
+     * Writes the specified batches of mutations into a new segment, syncing after each batch.
+     *
+     * @param compressor the compressor of the segment, or null for a memory-mapped segment
+     * @param positions  if not null, receives the replay position after each batch
+     * @return a copy of the segment file
+     */
+    @SafeVarargs
+    private final File segment(ICompressor compressor, List<ReplayPosition> positions, List<Mutation>... batches) throws IOException
+    {
+        ICompressor previous = DatabaseDescriptor.getCommitLogCompressor();
+        DatabaseDescriptor.setCommitLogCompressor(compressor);
+        try
+        {
+            CommitLog.instance.resetUnsafe();
+            for (List<Mutation> batch : batches)
+            {
+                for (Mutation rm : batch)
+                    CommitLog.instance.add(rm);
+                CommitLog.instance.sync(true);
+                if (positions != null)
+                    positions.add(CommitLog.instance.getContext());
+            }
+
+            List<String> segments = CommitLog.instance.getActiveSegmentNames();
+            Assert.assertEquals(1, segments.size());
+            File copy = new File(tmpDirectory(), segments.get(0));
+            copy.deleteOnExit();
+            Files.copy(new File(DatabaseDescriptor.getCommitLogLocation(), segments.get(0)).toPath(), copy.toPath());
+            return copy;
+        }
+        finally
+        {
+            DatabaseDescriptor.setCommitLogCompressor(previous);
+            CommitLog.instance.resetUnsafe();
+        }
+    }
+
+    /**
+     * Writes a segment in the format of 2.0, without sync markers, whose batches of mutations are separated by an
+     * end of segment marker.
+     */
+    @SafeVarargs
+    private final File legacySegment(List<Mutation>... batches) throws IOException
+    {
+        // newer than any segment written by this node
+        long id = System.currentTimeMillis() + 1000000;
+        File file = new File(tmpDirectory(), "CommitLog-" + CommitLogDescriptor.VERSION_20 + "-" + id + ".log");
+        file.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file)))
+        {
+            for (int i = 0; i < batches.length; i++)
+            {
+                if (i > 0)
+                    out.writeInt(0);
+                for (Mutation rm : batches[i])
+                {
+                    DataOutputBuffer buffer = new DataOutputBuffer();
+                    Mutation.serializer.serialize(rm, buffer, MessagingService.VERSION_20);
+                    PureJavaCrc32 checksum = new PureJavaCrc32();
+                    checksum.updateInt(buffer.getLength());
+                    out.writeInt(buffer.getLength());
+                    out.writeLong(checksum.getValue());
+                    checksum.update(buffer.getData(), 0, buffer.getLength());
+                    out.write(buffer.getData(), 0, buffer.getLength());
+                    out.writeLong(checksum.getValue());
+                }
+            }
+        }
+        return file;
+    }
+
+    private static File tmpDirectory() throws IOException
+    {
+        File directory = Files.createTempDirectory("commitlog").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
 }
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.dht.BigIntegerToken;
+import org.apache.cassandra.dht.ByteOrderedPartitioner;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.LocalPartitioner;
+import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.RandomPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the split of the local token ranges into the per-disk parts written by flushes.
+ */
+public class DiskBoundariesTest
+{
+    private static final IPartitioner murmur3 = new Murmur3Partitioner();
+    private static final IPartitioner random = new RandomPartitioner();
+
+    @Test
+    public void testSingleDisk()
+    {
+        assertTrue(boundaries(murmur3, Collections.<Range<Token>>emptyList(), 1).isEmpty());
+        assertTrue(boundaries(random, Collections.<Range<Token>>emptyList(), 1).isEmpty());
+        assertTrue(boundaries(murmur3, Arrays.asList(murmur3Range(-100, 100)), 1).isEmpty());
+    }
+
+    @Test
+    public void testNonNumericPartitioners()
+    {
+        assertTrue(boundaries(new ByteOrderedPartitioner(), Collections.<Range<Token>>emptyList(), 3).isEmpty());
+        assertTrue(boundaries(new LocalPartitioner(BytesType.instance), Collections.<Range<Token>>emptyList(), 3).isEmpty());
+    }
+
+    @Test
+    public void testMurmur3WholeRing()
+    {
+        for (int disks = 2; disks <= 8; disks++)
+        {
+            BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+            BigInteger width = BigInteger.valueOf(Long.MAX_VALUE).subtract(min);
+            assertEvenlySpread(min, width, disks, boundaries(murmur3, Collections.<Range<Token>>emptyList(), disks));
+        }
+    }
+
+    @Test
+    public void testRandomWholeRing()
+    {
+        for (int disks = 2; disks <= 8; disks++)
+        {
+            BigInteger min = BigInteger.ONE.negate();
+            BigInteger width = RandomPartitioner.MAXIMUM.subtract(min);
+            assertEvenlySpread(min, width, disks, boundaries(random, Collections.<Range<Token>>emptyList(), disks));
+        }
+    }
+
+    @Test
+    public void testMurmur3DisjointRanges()
+    {
+        List<Range<Token>> ranges = Arrays.asList(murmur3Range(200, 300), murmur3Range(0, 100));
+        assertEquals(Arrays.<Token>asList(new LongToken(100L)), boundaries(murmur3, ranges, 2));
+        assertEquals(Arrays.<Token>asList(new LongToken(50L), new LongToken(100L), new LongToken(250L)),
+                     boundaries(murmur3, ranges, 4));
+    }
+
+    @Test
+    public void testRandomDisjointRanges()
+    {
+        List<Range<Token>> ranges = Arrays.asList(randomRange(0, 100), randomRange(200, 300));
+        assertEquals(Arrays.<Token>asList(new BigIntegerToken(BigInteger.valueOf(100))), boundaries(random, ranges, 2));
+        assertEquals(Arrays.<Token>asList(new BigIntegerToken(BigInteger.valueOf(50)),
+                                          new BigIntegerToken(BigInteger.valueOf(100)),
+                                          new BigIntegerToken(BigInteger.valueOf(250))),
+                     boundaries(random, ranges, 4));
+    }
+
+    @Test
+    public void testMurmur3WrappingRange()
+    {
+        // (1000, -1000] wraps around the ring, so it is split into (min, -1000] and (1000, min]
+        Range<Token> range = murmur3Range(1000, -1000);
+        assertEquals(Arrays.<Token>asList(new LongToken(-1001L)), boundaries(murmur3, Arrays.asList(range), 2));
+        for (int disks = 2; disks <= 8; disks++)
+        {
+            List<Token> boundaries = boundaries(murmur3, Arrays.asList(range), disks);
+            assertEquals(disks - 1, boundaries.size());
+            for (int i = 0; i < boundaries.size(); i++)
+            {
+                assertTrue(range.contains(boundaries.get(i)));
+                if (i > 0)
+                    assertTrue(boundaries.get(i - 1).compareTo(boundaries.get(i)) < 0);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomWrappingRange()
+    {
+        // (max - 100, 100] wraps around the ring: it holds the 101 tokens of (min, 100] and the 100 of (max - 100, max]
+        Range<Token> range = new Range<Token>(new BigIntegerToken(RandomPartitioner.MAXIMUM.subtract(BigInteger.valueOf(100))),
+                                              new BigIntegerToken(BigInteger.valueOf(100)),
+                                              random);
+        assertEquals(Arrays.<Token>asList(new BigIntegerToken(BigInteger.valueOf(99))),
+                     boundaries(random, Arrays.asList(range), 2));
+        List<Token> boundaries = boundaries(random, Arrays.asList(range), 4);
+        assertEquals(Arrays.<Token>asList(new BigIntegerToken(BigInteger.valueOf(49)),
+                                          new BigIntegerToken(BigInteger.valueOf(99)),
+                                          new BigIntegerToken(RandomPartitioner.MAXIMUM.subtract(BigInteger.valueOf(51)))),
+                     boundaries);
+        for (Token boundary : boundaries)
+            assertTrue(range.contains(boundary));
+    }
+
+    private static List<Token> boundaries(IPartitioner partitioner, Collection<Range<Token>> ranges, int disks)
+    {
+        return ColumnFamilyStore.getDiskBoundaries(partitioner, ranges, disks);
+    }
+
+    private static Range<Token> murmur3Range(long left, long right)
+    {
+        return new Range<Token>(new LongToken(left), new LongToken(right), murmur3);
+    }
+
+    private static Range<Token> randomRange(long left, long right)
+    {
+        return new Range<Token>(new BigIntegerToken(BigInteger.valueOf(left)),
+                                new BigIntegerToken(BigInteger.valueOf(right)),
+                                random);
+    }
+
+    /**
+     * Asserts that the boundaries split the ring section starting after {@code min} with the given width into parts
+     * of the same width, give or take the rounding.
+     */
+    private static void assertEvenlySpread(BigInteger min, BigInteger width, int disks, List<Token> boundaries)
+    {
+        assertEquals(disks - 1, boundaries.size());
+        BigInteger perDisk = width.divide(BigInteger.valueOf(disks));
+        BigInteger previous = min;
+        for (Token boundary : boundaries)
+        {
+            BigInteger value = value(boundary);
+            assertEquals(perDisk, value.subtract(previous));
+            previous = value;
+        }
+        BigInteger last = min.add(width).subtract(previous);
+        assertTrue(last.compareTo(perDisk) >= 0);
+        assertTrue(last.compareTo(perDisk.add(BigInteger.valueOf(disks))) < 0);
+    }
+
+    private static BigInteger value(Token token)
+    {
+        Object value = token.getTokenValue();
+        return value instanceof BigInteger ? (BigInteger) value : BigInteger.valueOf((Long) value);
+    }
+}
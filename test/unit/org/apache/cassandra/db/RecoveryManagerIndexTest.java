@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.db.commitlog.CommitLog;
+import org.apache.cassandra.db.commitlog.ReplayPosition;
+import org.apache.cassandra.db.compaction.CompactionManager;
+import org.apache.cassandra.db.index.PerRowSecondaryIndexTest;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the commit log replay of custom indexes whose replay position lags the sstables one.
+ */
+public class RecoveryManagerIndexTest extends SchemaLoader
+{
+    private static final String KEYSPACE = "PerRowSecondaryIndex";
+    private static final String CF = "Indexed2";
+
+    @Before
+    public void clearTestStub()
+    {
+        LaggingIndex.reset();
+    }
+
+    @Test
+    public void testReindexFlushedWrites() throws Exception
+    {
+        // Flush everything that may be in the commit log now to start fresh
+        FBUtilities.waitOnFutures(Keyspace.open(Keyspace.SYSTEM_KS).flush());
+        CompactionManager.instance.disableAutoCompaction();
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(CF);
+
+        for (int i = 0; i < 5; i++)
+            insertRow("key" + i);
+        // the index has durably stored only the first writes
+        LaggingIndex.replayPosition = CommitLog.instance.getContext();
+        for (int i = 5; i < 10; i++)
+            insertRow("key" + i);
+        cfs.forceBlockingFlush();
+        LaggingIndex.indexedRows.clear();
+
+        CommitLog.instance.resetUnsafe();
+        int replayed = CommitLog.instance.recover();
+
+        // the flushed writes are not applied again, but the ones after the index position are reindexed
+        assertEquals(0, replayed);
+        Set<ByteBuffer> expected = new HashSet<>();
+        for (int i = 5; i < 10; i++)
+            expected.add(ByteBufferUtil.bytes("key" + i));
+        Set<ByteBuffer> indexed = new HashSet<>();
+        for (Row row : LaggingIndex.indexedRows)
+            indexed.add(row.key.getKey());
+        assertEquals(expected, indexed);
+        assertEquals(5, LaggingIndex.indexedRows.size());
+    }
+
+    @Test
+    public void testIndexUpToDate() throws Exception
+    {
+        FBUtilities.waitOnFutures(Keyspace.open(Keyspace.SYSTEM_KS).flush());
+        CompactionManager.instance.disableAutoCompaction();
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(CF);
+
+        for (int i = 0; i < 5; i++)
+            insertRow("key" + i);
+        cfs.forceBlockingFlush();
+        LaggingIndex.replayPosition = CommitLog.instance.getContext();
+        LaggingIndex.indexedRows.clear();
+
+        CommitLog.instance.resetUnsafe();
+        int replayed = CommitLog.instance.recover();
+
+        assertEquals(0, replayed);
+        assertTrue(LaggingIndex.indexedRows.isEmpty());
+    }
+
+    private void insertRow(String key)
+    {
+        Mutation rm = new Mutation(KEYSPACE, ByteBufferUtil.bytes(key));
+        rm.add(CF, Util.cellname("indexed"), ByteBufferUtil.bytes("foo"), 1);
+        rm.apply();
+    }
+
+    /**
+     * Index not backed by a column family store, durable only up to a configurable commit log position, which records
+     * the indexed rows in order.
+     */
+    public static class LaggingIndex extends PerRowSecondaryIndexTest.TestIndex
+    {
+        public static volatile ReplayPosition replayPosition;
+        public static final List<Row> indexedRows = Collections.synchronizedList(new ArrayList<Row>());
+
+        public static void reset()
+        {
+            replayPosition = null;
+            indexedRows.clear();
+        }
+
+        @Override
+        public void index(ByteBuffer rowKey, ColumnFamily cf)
+        {
+            indexedRows.add(new Row(rowKey, cf));
+        }
+
+        @Override
+        public String getIndexName()
+        {
+            return "indexe2";
+        }
+
+        @Override
+        public ColumnFamilyStore getIndexCfs()
+        {
+            return null;
+        }
+
+        @Override
+        public ReplayPosition getReplayPosition()
+        {
+            return replayPosition;
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.cassandra.io.compress;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Random;
 
@@ -31,10 +32,16 @@ import org.apache.cassandra.db.marshal.BytesType;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.io.util.CompressedMmappedSegmentedFile;
+import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileMark;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.MmappedSegmentedFile;
 import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.io.util.SegmentedFile;
 import org.apache.cassandra.io.util.SequentialWriter;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
@@ -96,6 +103,47 @@ public class CompressedRandomAccessReaderTest
         }
     }
 
+    @Test
+    public void testMmappedReads() throws IOException, ConfigurationException
+    {
+        File f = File.createTempFile("compressedmmap", "1");
+        String filename = f.getAbsolutePath();
+        long maxSegmentSize = MmappedSegmentedFile.MAX_SEGMENT_SIZE;
+        try
+        {
+            MetadataCollector sstableMetadataCollector = new MetadataCollector(new SimpleDenseCellNameType(BytesType.instance)).replayPosition(null);
+            ICompressor compressor = LZ4Compressor.create(Collections.<String, String>emptyMap());
+            CompressedSequentialWriter writer = new CompressedSequentialWriter(f, filename + ".metadata", new CompressionParameters(compressor, 32, Collections.<String, String>emptyMap()), sstableMetadataCollector);
+
+            byte[] data = new byte[1000];
+            new Random(42).nextBytes(data);
+            writer.write(data);
+            writer.close();
+
+            // spread the chunks across several mapped regions
+            MmappedSegmentedFile.MAX_SEGMENT_SIZE = 100;
+            SegmentedFile file = new CompressedMmappedSegmentedFile(filename, new CompressionMetadata(filename + ".metadata", f.length(), true));
+            for (int position : new int[]{ 0, 31, 32, 500, 999 })
+            {
+                FileDataInput input = file.getSegment(position);
+                byte[] b = new byte[data.length - position];
+                input.readFully(b);
+                assertArrayEquals(Arrays.copyOfRange(data, position, data.length), b);
+                FileUtils.closeQuietly(input);
+            }
+            file.cleanup();
+        }
+        finally
+        {
+            MmappedSegmentedFile.MAX_SEGMENT_SIZE = maxSegmentSize;
+            if (f.exists())
+                f.delete();
+            File metadata = new File(filename + ".metadata");
+            if (metadata.exists())
+                metadata.delete();
+        }
+    }
+
     private void testResetAndTruncate(File f, boolean compressed, int junkSize) throws IOException
     {
         final String filename = f.getAbsolutePath();
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TwoPhaseSearchSupportTest extends SchemaLoader
+{
+    @Test
+    public void testSupportedVersions()
+    {
+        assertTrue(TwoPhaseSearchSupport.supports("2.1.2.1"));
+        assertTrue(TwoPhaseSearchSupport.supports("2.1.2.1-SNAPSHOT"));
+        assertTrue(TwoPhaseSearchSupport.supports("2.1.2.10"));
+        assertTrue(TwoPhaseSearchSupport.supports("2.1.3"));
+        assertTrue(TwoPhaseSearchSupport.supports("2.2.0-beta1"));
+        assertTrue(TwoPhaseSearchSupport.supports("3.0.0"));
+    }
+
+    @Test
+    public void testUnsupportedVersions()
+    {
+        assertFalse(TwoPhaseSearchSupport.supports("2.1.2"));
+        assertFalse(TwoPhaseSearchSupport.supports("2.1.2.0"));
+        assertFalse(TwoPhaseSearchSupport.supports("2.1.2-SNAPSHOT"));
+        assertFalse(TwoPhaseSearchSupport.supports("2.0.11"));
+        assertFalse(TwoPhaseSearchSupport.supports("1.2.19"));
+    }
+
+    @Test
+    public void testUnknownVersions()
+    {
+        assertFalse(TwoPhaseSearchSupport.supports(null));
+        assertFalse(TwoPhaseSearchSupport.supports(""));
+        assertFalse(TwoPhaseSearchSupport.supports("Unknown"));
+        assertFalse(TwoPhaseSearchSupport.supports("2.1"));
+    }
+}